@@ -0,0 +1,58 @@
+package API;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Listener del ciclo de vida de la aplicacion.
+ *
+ * Libera recursos compartidos (pool de conexiones, hilos de miniaturas, metadatos, huerfanos y
+ * compactacion de operaciones, sockets de colaboracion) al detener o redesplegar la aplicacion para
+ * no dejar conexiones abiertas contra MySQL.
+ *
+ */
+@WebListener
+public class AppContextListener implements ServletContextListener {
+
+    /**
+     * Inicio de la aplicacion; el pool se crea de forma perezosa al primer uso.
+     * En modo embebido (DB_URL jdbc:h2:) primero se crea el esquema si falta,
+     * antes de que los trabajos en segundo plano o los requests lo consulten.
+     * Programa en segundo plano el completado de metadatos multimedia faltantes,
+     * el reconciliador periodico de archivos huerfanos y el compactador del
+     * registro de operaciones.
+     *
+     * @param sce evento del contenedor.
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            DB.prepararEsquema();
+        } catch (SQLException | IOException ex) {
+            throw new IllegalStateException("esquema_embebido_fallido", ex);
+        }
+        MediaStorage storage = ArchivosService.storage(sce.getServletContext());
+        MetadatosService.programarBackfill(storage);
+        HuerfanosService.iniciar(storage);
+        OperacionesDiagrama.iniciar();
+    }
+
+    /**
+     * Cierra el pool de conexiones compartido, los trabajos en segundo plano y
+     * los sockets de colaboracion.
+     *
+     * @param sce evento del contenedor.
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        MiniaturasService.shutdown();
+        MetadatosService.shutdown();
+        HuerfanosService.shutdown();
+        OperacionesDiagrama.shutdown();
+        ColaboracionHub.shutdown();
+        DB.shutdown();
+    }
+}
@@ -0,0 +1,596 @@
+package API;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.ServletContext;
+
+/**
+ * Reglas compartidas de archivos multimedia.
+ *
+ * Centraliza la validacion de tipo/extension, el almacenamiento y el alta
+ * del registro en archivos_multimedia, para que la subida multipart de
+ * {@link ArchivosServlet} y la subida por fragmentos de {@link SubidasServlet}
+ * apliquen exactamente las mismas reglas.
+ *
+ * El contenido se guarda deduplicado en el {@link MediaStorage} configurado:
+ * cada archivo se identifica por su SHA-256 (calculado mientras se escribe a
+ * disco) y se guarda una sola vez bajo uploads/ab/cd/&lt;sha256&gt;.&lt;ext&gt;;
+ * la tabla blobs_multimedia cuenta cuantas filas de archivos_multimedia lo
+ * usan y el objeto se borra cuando deja de tener referencias.
+ *
+ */
+public final class ArchivosService {
+    public static final String STORAGE_TIPO = DB.getValue("STORAGE_TIPO", "storage.tipo", "local");
+
+    private static final int BUFFER_BYTES = 65536;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static MediaStorage storage;
+
+    /**
+     * Contenido recibido en un archivo temporal, con su hash ya calculado.
+     */
+    public static final class Blob {
+        public final String sha256;
+        public final long tamano_bytes;
+        public final File temporal;
+        /**
+         * true si {@link #registrarBlob} guardo el contenido en el
+         * almacenamiento (el contenido era nuevo).
+         */
+        public boolean movido;
+        /**
+         * Clave final en el almacenamiento (asignada por {@link #registrarBlob}).
+         */
+        public String clave;
+
+        Blob(String sha256, long tamano_bytes, File temporal) {
+            this.sha256 = sha256;
+            this.tamano_bytes = tamano_bytes;
+            this.temporal = temporal;
+        }
+    }
+
+    /**
+     * Objetos que quedaron sin uso al liberar referencias; se borran despues
+     * del commit con {@link #borrarLiberados}.
+     */
+    public static final class Liberacion {
+        /**
+         * Rutas de archivos_multimedia que no eran blobs (legado).
+         */
+        public final List<String> legado = new ArrayList<>();
+        /**
+         * Claves de blobs cuya fila se borro por quedar sin referencias.
+         */
+        public final List<String> sin_uso = new ArrayList<>();
+    }
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private ArchivosService() {
+    }
+
+    /**
+     * Devuelve el almacenamiento multimedia configurado (creado en el primer uso).
+     *
+     * Configuracion (variable de entorno / propiedad JVM):
+     *
+     * - STORAGE_TIPO: local (por defecto) o s3.
+     * - STORAGE_DIR: raiz local; sin configurar se usa la carpeta del
+     *   contexto (comportamiento anterior, se pierde al redesplegar).
+     * - STORAGE_TMP_DIR: temporales; por defecto STORAGE_DIR/.subidas
+     *   (mismo volumen) o WEB-INF/subidas.
+     * - S3_ENDPOINT, S3_BUCKET, S3_REGION, S3_ACCESS_KEY, S3_SECRET_KEY.
+     *
+     *
+     * @param context contexto del servlet.
+     * @return almacenamiento compartido.
+     */
+    public static MediaStorage storage(ServletContext context) {
+        synchronized (ArchivosService.class) {
+            if (storage == null) {
+                storage = crearStorage(context);
+            }
+            return storage;
+        }
+    }
+
+    /**
+     * Crea el almacenamiento segun la configuracion.
+     *
+     * @param context contexto del servlet.
+     * @return almacenamiento local o S3.
+     */
+    private static MediaStorage crearStorage(ServletContext context) {
+        String dir = DB.getValue("STORAGE_DIR", "storage.dir", null);
+        String tmp = DB.getValue("STORAGE_TMP_DIR", "storage.tmp_dir", null);
+        if ("s3".equalsIgnoreCase(STORAGE_TIPO)) {
+            File temporales = tmp != null ? new File(tmp)
+                    : new File(System.getProperty("java.io.tmpdir"), "casos-subidas");
+            return new S3MediaStorage(
+                    DB.getValue("S3_ENDPOINT", "s3.endpoint", "http://localhost:9000"),
+                    DB.getValue("S3_BUCKET", "s3.bucket", "casos"),
+                    DB.getValue("S3_REGION", "s3.region", "us-east-1"),
+                    DB.getValue("S3_ACCESS_KEY", "s3.access_key", ""),
+                    DB.getValue("S3_SECRET_KEY", "s3.secret_key", ""),
+                    temporales);
+        }
+        String real = context.getRealPath("/");
+        if (dir == null && real == null) {
+            // WAR sin desempaquetar: no hay carpeta del contexto donde escribir.
+            dir = new File(System.getProperty("java.io.tmpdir"), "casos-media").getPath();
+        }
+        File raiz = new File(dir != null ? dir : real);
+        File temporales;
+        if (tmp != null) {
+            temporales = new File(tmp);
+        } else if (dir != null) {
+            temporales = new File(raiz, ".subidas");
+        } else {
+            temporales = new File(context.getRealPath("/WEB-INF/subidas"));
+        }
+        return new LocalMediaStorage(raiz, temporales);
+    }
+
+    /**
+     * Obtiene (y crea si falta) la carpeta local de archivos temporales.
+     *
+     * @param context contexto del servlet.
+     * @return carpeta de temporales o null si no se pudo crear.
+     */
+    public static File temporalesDir(ServletContext context) {
+        File dir = storage(context).temporales();
+        if (!dir.exists() && !dir.mkdirs()) {
+            return null;
+        }
+        return dir;
+    }
+
+    /**
+     * Clave de un blob, repartida en dos niveles por prefijo del hash
+     * (uploads/ab/cd/abcd...ef.jpg) para acotar el tamanio de cada directorio.
+     *
+     * @param sha256 hash en hexadecimal.
+     * @param extension extension validada.
+     * @return clave relativa (ruta_archivo).
+     */
+    public static String claveBlob(String sha256, String extension) {
+        return "uploads/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + "." + extension;
+    }
+
+    /**
+     * Copia un stream a un archivo temporal calculando SHA-256 al vuelo.
+     *
+     * @param in stream de origen (no se cierra).
+     * @param dir carpeta de temporales.
+     * @return blob con hash, tamanio y archivo temporal.
+     * @throws IOException si falla la escritura (el temporal se borra).
+     */
+    public static Blob recibirBlob(InputStream in, File dir) throws IOException {
+        File temporal = new File(dir, UUID.randomUUID().toString().replace("-", "") + ".tmp");
+        MessageDigest digest = sha256Digest();
+        long total = 0;
+        boolean ok = false;
+        try (OutputStream out = Files.newOutputStream(temporal.toPath())) {
+            byte[] buffer = new byte[BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            ok = true;
+        } finally {
+            if (!ok) {
+                temporal.delete();
+            }
+        }
+        return new Blob(toHex(digest.digest()), total, temporal);
+    }
+
+    /**
+     * Registra una referencia al blob y lo guarda si es nuevo.
+     * Debe llamarse dentro de la transaccion que inserta archivos_multimedia.
+     *
+     * Flujo:
+     *
+     * - INSERT ... ON DUPLICATE KEY UPDATE referencias + 1: la fila queda
+     *   bloqueada hasta el commit, por lo que subidas concurrentes del mismo
+     *   contenido (o un borrado del ultimo uso) se serializan.
+     * - Si el objeto no existe en el almacenamiento, se guarda desde el
+     *   temporal. El temporal no se consume: el llamador lo borra.
+     *
+     *
+     * @param con conexion en transaccion.
+     * @param storage almacenamiento multimedia.
+     * @param blob blob recibido.
+     * @param extension extension validada.
+     * @return ruta_archivo (clave) del blob.
+     * @throws SQLException si falla el registro.
+     * @throws IOException si falla el guardado.
+     */
+    public static String registrarBlob(Connection con, MediaStorage storage, Blob blob, String extension)
+            throws SQLException, IOException {
+        String ruta_archivo = claveBlob(blob.sha256, extension);
+        String sql = "INSERT INTO blobs_multimedia (sha256, extension, ruta_archivo, tamano_bytes, referencias) "
+                + "VALUES (?,?,?,?,1) ON DUPLICATE KEY UPDATE referencias = referencias + 1";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, blob.sha256);
+            ps.setString(2, extension);
+            ps.setString(3, ruta_archivo);
+            ps.setLong(4, blob.tamano_bytes);
+            ps.executeUpdate();
+        }
+        blob.clave = ruta_archivo;
+        // Tambien repara un blob cuyo objeto se perdio.
+        if (storage.info(ruta_archivo) == null) {
+            storage.guardar(ruta_archivo, blob.temporal);
+            blob.movido = true;
+        }
+        return ruta_archivo;
+    }
+
+    /**
+     * Guarda el objeto de un blob antes de abrir la transaccion, para que la
+     * escritura (hasta varios GB, o un PUT a S3) no ocurra con filas
+     * bloqueadas. {@link #registrarBlob} despues solo confirma que sigue en el
+     * almacenamiento y lo repara si un borrado concurrente del ultimo uso lo
+     * quito.
+     *
+     * No marca el blob como movido: si la transaccion falla, otra subida del
+     * mismo contenido puede estar usando el objeto, asi que no se borra; si
+     * queda sin fila lo recoge {@link HuerfanosService}.
+     *
+     *
+     * @param storage almacenamiento multimedia.
+     * @param blob blob con hash calculado.
+     * @param extension extension validada.
+     * @throws IOException si falla el guardado.
+     */
+    public static void precargarBlob(MediaStorage storage, Blob blob, String extension) throws IOException {
+        String clave = claveBlob(blob.sha256, extension);
+        if (storage.info(clave) == null) {
+            storage.guardar(clave, blob.temporal);
+        }
+    }
+
+    /**
+     * Deshace el efecto de {@link #registrarBlob} tras un rollback y borra el
+     * temporal si no se conserva. No lanza excepciones.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param blob blob recibido (puede ser null).
+     * @param conservarTemporal true para dejar el temporal (subida por
+     *                          fragmentos que puede reintentarse).
+     */
+    public static void descartarBlob(MediaStorage storage, Blob blob, boolean conservarTemporal) {
+        if (blob == null) {
+            return;
+        }
+        try {
+            if (blob.movido && blob.clave != null) {
+                storage.borrar(blob.clave);
+            }
+        } catch (IOException ex) {
+            // El recolector de almacenamiento limpia lo que quede huerfano.
+        }
+        if (!conservarTemporal) {
+            blob.temporal.delete();
+        }
+    }
+
+    /**
+     * Descuenta las referencias a blobs de las filas de archivos_multimedia
+     * que se van a borrar y elimina los blobs que quedan sin uso.
+     * Debe llamarse en la misma transaccion, antes del DELETE de las filas
+     * (incluido el borrado en cascada de un usuario).
+     *
+     * No toca el almacenamiento: si el DELETE o el commit fallan, el
+     * rollback restaura las filas y el contenido sigue ahi. El llamador pasa
+     * el resultado a {@link #borrarLiberados} despues del commit.
+     *
+     *
+     * @param con conexion en transaccion.
+     * @param columna "id_archivo" o "id_usuario".
+     * @param id valor de la columna.
+     * @return rutas de legado y claves de blobs que quedaron sin uso.
+     * @throws SQLException si falla alguna consulta.
+     */
+    public static Liberacion liberarBlobs(Connection con, String columna, int id) throws SQLException {
+        if (!"id_archivo".equals(columna) && !"id_usuario".equals(columna)) {
+            throw new IllegalArgumentException(columna);
+        }
+        // Subconsultas correlacionadas en lugar de UPDATE ... JOIN para que la
+        // sentencia sea valida tanto en MySQL como en H2 (modo embebido).
+        String usos = "(SELECT COUNT(*) FROM archivos_multimedia a WHERE a." + columna + " = ? "
+                + "AND a.ruta_archivo = blobs_multimedia.ruta_archivo)";
+        String sqlDescontar = "UPDATE blobs_multimedia SET referencias = CASE WHEN referencias > " + usos
+                + " THEN referencias - " + usos + " ELSE 0 END "
+                + "WHERE ruta_archivo IN (SELECT ruta_archivo FROM archivos_multimedia WHERE " + columna + " = ?)";
+        String sqlRutas = "SELECT a.ruta_archivo, b.referencias FROM archivos_multimedia a "
+                + "LEFT JOIN blobs_multimedia b ON b.ruta_archivo = a.ruta_archivo WHERE a." + columna + " = ?";
+        String sqlBorrar = "DELETE FROM blobs_multimedia WHERE ruta_archivo = ? AND referencias = 0";
+
+        try (PreparedStatement ps = con.prepareStatement(sqlDescontar)) {
+            ps.setInt(1, id);
+            ps.setInt(2, id);
+            ps.setInt(3, id);
+            ps.executeUpdate();
+        }
+        List<String> sinUso = new ArrayList<>();
+        Liberacion liberacion = new Liberacion();
+        try (PreparedStatement ps = con.prepareStatement(sqlRutas)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String ruta = rs.getString("ruta_archivo");
+                    int referencias = rs.getInt("referencias");
+                    if (rs.wasNull()) {
+                        liberacion.legado.add(ruta);
+                    } else if (referencias == 0 && !sinUso.contains(ruta)) {
+                        sinUso.add(ruta);
+                    }
+                }
+            }
+        }
+        try (PreparedStatement ps = con.prepareStatement(sqlBorrar)) {
+            for (String ruta : sinUso) {
+                ps.setString(1, ruta);
+                if (ps.executeUpdate() > 0) {
+                    liberacion.sin_uso.add(ruta);
+                }
+            }
+        }
+        return liberacion;
+    }
+
+    /**
+     * Borra, tras el commit de {@link #liberarBlobs}, los objetos que
+     * quedaron sin uso. No lanza excepciones: lo que no se pueda borrar lo
+     * recoge {@link HuerfanosService}.
+     *
+     * Cada blob se borra en una transaccion corta que antes revalida con
+     * SELECT ... FOR UPDATE que sigue sin fila (igual que el recolector): una
+     * subida concurrente del mismo contenido espera y vuelve a escribirlo.
+     *
+     *
+     * @param storage almacenamiento multimedia.
+     * @param liberacion resultado de liberarBlobs.
+     */
+    public static void borrarLiberados(MediaStorage storage, Liberacion liberacion) {
+        // Archivos anteriores a la deduplicacion: nadie mas los referencia.
+        borrarArchivosFisicos(storage, liberacion.legado);
+        for (String clave : liberacion.sin_uso) {
+            try (Connection con = DB.getConnection()) {
+                boolean auto_commit = con.getAutoCommit();
+                con.setAutoCommit(false);
+                try {
+                    if (!HuerfanosService.existe(con,
+                            "SELECT 1 FROM blobs_multimedia WHERE ruta_archivo = ? FOR UPDATE", clave)) {
+                        borrarArchivoFisico(storage, clave);
+                    }
+                    con.commit();
+                } catch (Exception ex) {
+                    con.rollback();
+                    throw ex;
+                } finally {
+                    con.setAutoCommit(auto_commit);
+                }
+            } catch (Exception ex) {
+                // Queda huerfano hasta la siguiente pasada del recolector.
+            }
+        }
+    }
+
+    /**
+     * Borra un objeto del almacenamiento junto con sus miniaturas (si existen).
+     *
+     * @param storage almacenamiento multimedia.
+     * @param clave clave del original.
+     * @throws IOException si falla el borrado.
+     */
+    public static void borrarArchivoFisico(MediaStorage storage, String clave) throws IOException {
+        storage.borrar(clave);
+        MiniaturasService.borrarVariantes(storage, clave);
+    }
+
+    /**
+     * Borra objetos tras un commit; los errores se ignoran (el recolector de
+     * almacenamiento los reintenta).
+     *
+     * @param storage almacenamiento multimedia.
+     * @param claves claves a borrar.
+     */
+    public static void borrarArchivosFisicos(MediaStorage storage, List<String> claves) {
+        for (String clave : claves) {
+            try {
+                borrarArchivoFisico(storage, clave);
+            } catch (IOException | IllegalArgumentException ex) {
+                // Queda huerfano hasta la siguiente pasada del recolector.
+            }
+        }
+    }
+
+    /**
+     * Mueve un archivo dentro del mismo volumen (rename atomico si se puede).
+     *
+     * @param origen archivo origen.
+     * @param destino archivo destino.
+     * @throws IOException si falla el movimiento.
+     */
+    public static void moveFile(File origen, File destino) throws IOException {
+        try {
+            Files.move(origen.toPath(), destino.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.move(origen.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Obtiene la extension de un filename.
+     *
+     * Se busca el ultimo punto y devuelve el sufijo en minusculas.
+     *
+     *
+     * @param filename nombre del archivo.
+     * @return extension en minusculas o cadena vacia si no hay.
+     */
+    public static String getExtension(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int idx = filename.lastIndexOf('.');
+        if (idx == -1 || idx == filename.length() - 1) {
+            return "";
+        }
+        return filename.substring(idx + 1).toLowerCase();
+    }
+
+    /**
+     * Valida la extension en funcion del tipo de media.
+     *
+     * Se compara extension contra un whitelist segun tipo_media.
+     *
+     *
+     * @param tipo_media tipo normalizado (AUDIO, VIDEO, IMAGEN).
+     * @param extension extension en minusculas.
+     * @return true si la extension es valida.
+     */
+    public static boolean extensionValida(String tipo_media, String extension) {
+        if (extension == null || extension.isEmpty()) {
+            return false;
+        }
+        if ("AUDIO".equals(tipo_media)) {
+            return "mp3".equals(extension);
+        }
+        if ("VIDEO".equals(tipo_media)) {
+            return "mp4".equals(extension);
+        }
+        if ("IMAGEN".equals(tipo_media)) {
+            return "jpg".equals(extension) || "jpeg".equals(extension);
+        }
+        return false;
+    }
+
+    /**
+     * Normaliza el tipo de media a valores soportados.
+     *
+     * Se recorta el texto, se convierte a mayusculas y se valida contra el catalogo permitido.
+     *
+     *
+     * @param tipo texto recibido.
+     * @return tipo en mayusculas o null si no es valido.
+     */
+    public static String normalizeTipoMedia(String tipo) {
+        if (tipo == null || tipo.trim().isEmpty()) {
+            return null;
+        }
+        String normalized = tipo.trim().toUpperCase();
+        if ("IMAGEN".equals(normalized) || "AUDIO".equals(normalized) || "VIDEO".equals(normalized)) {
+            return normalized;
+        }
+        return null;
+    }
+
+    /**
+     * Inserta el registro de un archivo ya guardado en disco.
+     *
+     * @param con conexion abierta (puede estar dentro de una transaccion).
+     * @param id_usuario propietario.
+     * @param tipo_media tipo normalizado.
+     * @param titulo titulo opcional.
+     * @param descripcion descripcion opcional.
+     * @param tamano_bytes tamanio real del archivo guardado.
+     * @param duracion_segundos duracion opcional.
+     * @param ancho ancho opcional.
+     * @param alto alto opcional.
+     * @param ruta_archivo ruta relativa (uploads/...).
+     * @return id_archivo generado o null si el driver no lo devolvio.
+     * @throws SQLException si falla el INSERT.
+     */
+    public static Integer insertArchivo(Connection con, int id_usuario, String tipo_media, String titulo,
+            String descripcion, long tamano_bytes, Double duracion_segundos, Integer ancho, Integer alto,
+            String ruta_archivo) throws SQLException {
+        String sql = "INSERT INTO archivos_multimedia (id_usuario, tipo_media, titulo, descripcion, tamano_bytes, "
+                + "duracion_segundos, ancho, alto, ruta_archivo) VALUES (?,?,?,?,?,?,?,?,?)";
+        try (PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, id_usuario);
+            ps.setString(2, tipo_media);
+            if (titulo == null || titulo.trim().isEmpty()) {
+                ps.setNull(3, Types.VARCHAR);
+            } else {
+                ps.setString(3, titulo);
+            }
+            if (descripcion == null || descripcion.trim().isEmpty()) {
+                ps.setNull(4, Types.LONGVARCHAR);
+            } else {
+                ps.setString(4, descripcion);
+            }
+            ps.setLong(5, tamano_bytes);
+            if (duracion_segundos == null) {
+                ps.setNull(6, Types.DECIMAL);
+            } else {
+                ps.setDouble(6, duracion_segundos.doubleValue());
+            }
+            if (ancho == null) {
+                ps.setNull(7, Types.INTEGER);
+            } else {
+                ps.setInt(7, ancho.intValue());
+            }
+            if (alto == null) {
+                ps.setNull(8, Types.INTEGER);
+            } else {
+                ps.setInt(8, alto.intValue());
+            }
+            ps.setString(9, ruta_archivo);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getInt(1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return instancia nueva de SHA-256.
+     */
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Todo JRE esta obligado a incluir SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @param bytes bytes a codificar.
+     * @return representacion hexadecimal en minusculas.
+     */
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+}
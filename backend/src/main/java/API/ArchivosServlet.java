@@ -3,25 +3,19 @@ package API;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.Statement;
 import java.sql.Timestamp;
-import java.sql.Types;
-import java.util.UUID;
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.MultipartConfig;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 import javax.servlet.http.Part;
 
 /**
@@ -42,7 +36,8 @@ public class ArchivosServlet extends HttpServlet {
      * Flujo:
      *
      * - Si viene id_archivo, valida propiedad y devuelve metadatos.
-     * - Si no viene, lista archivos del usuario (o del indicado si admin).
+     * - Si no viene, lista archivos del usuario (o del indicado si admin),
+     *   paginados por cursor (limit, cursor; responde next_cursor).
      *
      *
      * @param request request HTTP actual.
@@ -53,8 +48,8 @@ public class ArchivosServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         // Rama 1: lectura puntual por id_archivo.
@@ -74,10 +69,14 @@ public class ArchivosServlet extends HttpServlet {
                             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
                             return;
                         }
-                        JsonObjectBuilder body = Json.createObjectBuilder()
-                                .add("ok", true)
-                                .add("archivo", buildArchivo(rs, request));
-                        ResponseUtil.writeOk(response, body.build());
+                        try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                            gen.writeStartObject();
+                            gen.write("ok", true);
+                            gen.writeStartObject("archivo");
+                            writeArchivo(gen, rs, request.getContextPath());
+                            gen.writeEnd();
+                            gen.writeEnd();
+                        }
                         return;
                     }
                 }
@@ -100,22 +99,46 @@ public class ArchivosServlet extends HttpServlet {
             return;
         }
 
-        // Lista archivos del usuario solicitado.
+        Integer limit = CursorUtil.parseLimit(request.getParameter("limit"));
+        Integer ultimo_visto = CursorUtil.decode(request.getParameter("cursor"));
+        if (limit == null || ultimo_visto == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "paginacion_invalida");
+            return;
+        }
+
+        // Lista archivos del usuario solicitado; keyset sobre idx_multimedia_usuario.
         String sql = "SELECT id_archivo, id_usuario, tipo_media, titulo, descripcion, tamano_bytes, duracion_segundos, "
                 + "ancho, alto, ruta_archivo, fecha_creacion, fecha_actualizacion "
-                + "FROM archivos_multimedia WHERE id_usuario = ? ORDER BY id_archivo";
+                + "FROM archivos_multimedia WHERE id_usuario = ? AND id_archivo > ? ORDER BY id_archivo LIMIT ?";
         try (Connection con = DB.getConnection();
              PreparedStatement ps = con.prepareStatement(sql)) {
             ps.setInt(1, id_usuario.intValue());
-            try (ResultSet rs = ps.executeQuery()) {
-                JsonArrayBuilder archivos = Json.createArrayBuilder();
+            ps.setInt(2, ultimo_visto.intValue());
+            ps.setInt(3, limit.intValue() + 1);
+            DB.streamResults(ps);
+            try (ResultSet rs = ps.executeQuery();
+                 JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                gen.writeStartObject();
+                gen.write("ok", true);
+                gen.writeStartArray("archivos");
+                int escritos = 0;
+                int ultimo_id = 0;
+                boolean hay_mas = false;
                 while (rs.next()) {
-                    archivos.add(buildArchivo(rs, request));
+                    // Se pidio limit + 1 filas: la extra solo indica que hay otra pagina.
+                    if (escritos == limit.intValue()) {
+                        hay_mas = true;
+                        break;
+                    }
+                    ultimo_id = rs.getInt("id_archivo");
+                    gen.writeStartObject();
+                    writeArchivo(gen, rs, request.getContextPath());
+                    gen.writeEnd();
+                    escritos++;
                 }
-                JsonObjectBuilder body = Json.createObjectBuilder()
-                        .add("ok", true)
-                        .add("archivos", archivos);
-                ResponseUtil.writeOk(response, body.build());
+                gen.writeEnd();
+                CursorUtil.writeNext(gen, hay_mas, ultimo_id);
+                gen.writeEnd();
             }
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_archivos");
@@ -130,8 +153,10 @@ public class ArchivosServlet extends HttpServlet {
      *
      * - Lee parametros y archivo multipart.
      * - Valida extension por tipo de media.
-     * - Guarda el archivo en /uploads con nombre unico.
-     * - Inserta metadatos y ruta relativa en BD.
+     * - Copia el archivo a un temporal calculando su SHA-256.
+     * - Imagenes: lee ancho/alto de la cabecera y rechaza bombas de descompresion.
+     * - Registra el blob (una copia por contenido en /uploads) e inserta
+     *   metadatos y ruta relativa en BD en la misma transaccion.
      *
      *
      * @param request request HTTP actual (multipart/form-data).
@@ -142,8 +167,8 @@ public class ArchivosServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_usuario = parseInt(request.getParameter("id_usuario"));
@@ -152,7 +177,7 @@ public class ArchivosServlet extends HttpServlet {
         } else if (id_usuario == null) {
             id_usuario = id_usuario_sesion;
         }
-        String tipo_media = normalizeTipoMedia(request.getParameter("tipo_media"));
+        String tipo_media = ArchivosService.normalizeTipoMedia(request.getParameter("tipo_media"));
         String titulo = request.getParameter("titulo");
         String descripcion = request.getParameter("descripcion");
         Integer ancho = parseInt(request.getParameter("ancho"));
@@ -168,75 +193,77 @@ public class ArchivosServlet extends HttpServlet {
 
         // Valida extension segun tipo multimedia.
         String originalName = getFileName(archivoPart);
-        String extension = getExtension(originalName);
-        if (!extensionValida(tipo_media, extension)) {
+        String extension = ArchivosService.getExtension(originalName);
+        if (!ArchivosService.extensionValida(tipo_media, extension)) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "extension_invalida");
             return;
         }
 
-        // Prepara carpeta de uploads dentro del contexto del servlet.
-        String uploadsPath = getServletContext().getRealPath("/uploads");
-        File uploadsDir = new File(uploadsPath);
-        if (!uploadsDir.exists() && !uploadsDir.mkdirs()) {
+        // Prepara el almacenamiento y la carpeta de temporales.
+        MediaStorage storage = ArchivosService.storage(getServletContext());
+        File temporalesDir = ArchivosService.temporalesDir(getServletContext());
+        if (temporalesDir == null) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_directorio");
             return;
         }
 
-        // Genera nombre unico para evitar colisiones.
-        String nombreArchivo = UUID.randomUUID().toString() + "." + extension;
-        File destino = new File(uploadsDir, nombreArchivo);
+        // Copia a un temporal calculando SHA-256 mientras se escribe.
+        ArchivosService.Blob blob;
         try (InputStream in = archivoPart.getInputStream()) {
-            Files.copy(in, destino.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            blob = ArchivosService.recibirBlob(in, temporalesDir);
         }
 
-        String ruta_archivo = "uploads/" + nombreArchivo;
-        long tamano_bytes = archivoPart.getSize();
-
-        // Inserta metadatos y ruta relativa en BD.
-        String sql = "INSERT INTO archivos_multimedia (id_usuario, tipo_media, titulo, descripcion, tamano_bytes, "
-                + "duracion_segundos, ancho, alto, ruta_archivo) VALUES (?,?,?,?,?,?,?,?,?)";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setInt(1, id_usuario.intValue());
-            ps.setString(2, tipo_media);
-            if (titulo == null || titulo.trim().isEmpty()) {
-                ps.setNull(3, Types.VARCHAR);
-            } else {
-                ps.setString(3, titulo);
-            }
-            if (descripcion == null || descripcion.trim().isEmpty()) {
-                ps.setNull(4, Types.LONGVARCHAR);
-            } else {
-                ps.setString(4, descripcion);
-            }
-            ps.setLong(5, tamano_bytes);
-            if (duracion_segundos == null) {
-                ps.setNull(6, Types.DECIMAL);
-            } else {
-                ps.setDouble(6, duracion_segundos.doubleValue());
+        // Imagenes: ancho/alto se leen de la cabecera (no del cliente) y se
+        // rechazan las que excedan el limite de pixeles sin decodificarlas.
+        if ("IMAGEN".equals(tipo_media)) {
+            MetadatosService.Metadatos meta = MetadatosService.extraer(blob.temporal, tipo_media);
+            String invalida = MetadatosService.validarImagen(meta);
+            if (invalida != null) {
+                blob.temporal.delete();
+                ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, invalida);
+                return;
             }
-            if (ancho == null) {
-                ps.setNull(7, Types.INTEGER);
-            } else {
-                ps.setInt(7, ancho.intValue());
+            ancho = meta.ancho;
+            alto = meta.alto;
+        }
+
+        // Registra el blob (deduplicado) y los metadatos en una sola transaccion.
+        try (Connection con = DB.getConnection()) {
+            // Guarda el contenido antes de bloquear la fila del blob; dentro solo se confirma.
+            ArchivosService.precargarBlob(storage, blob, extension);
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            String ruta_archivo;
+            Integer id_generado;
+            try {
+                ruta_archivo = ArchivosService.registrarBlob(con, storage, blob, extension);
+                id_generado = ArchivosService.insertArchivo(con, id_usuario.intValue(), tipo_media, titulo,
+                        descripcion, blob.tamano_bytes, duracion_segundos, ancho, alto, ruta_archivo);
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                ArchivosService.descartarBlob(storage, blob, false);
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
             }
-            if (alto == null) {
-                ps.setNull(8, Types.INTEGER);
+            // El contenido ya esta en el almacenamiento: el temporal sobra.
+            blob.temporal.delete();
+            // Las miniaturas se generan en segundo plano; la respuesta no espera.
+            if ("IMAGEN".equals(tipo_media)) {
+                MiniaturasService.programar(storage, ruta_archivo);
             } else {
-                ps.setInt(8, alto.intValue());
+                MetadatosService.programar(storage, ruta_archivo, tipo_media);
             }
-            ps.setString(9, ruta_archivo);
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
-                JsonObjectBuilder body = Json.createObjectBuilder()
-                        .add("ok", true)
-                        .add("ruta_archivo", ruta_archivo);
-                if (keys.next()) {
-                    body.add("id_archivo", keys.getInt(1));
-                }
-                ResponseUtil.writeOk(response, body.build());
+            JsonObjectBuilder body = Json.createObjectBuilder()
+                    .add("ok", true)
+                    .add("ruta_archivo", ruta_archivo);
+            if (id_generado != null) {
+                body.add("id_archivo", id_generado.intValue());
             }
+            ResponseUtil.writeOk(response, body.build());
         } catch (Exception ex) {
+            blob.temporal.delete();
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_subir_archivo");
         }
     }
@@ -245,8 +272,9 @@ public class ArchivosServlet extends HttpServlet {
      * Elimina un archivo multimedia (registro y archivo fisico).
      * No retorna valor; responde 400/403/404/500 segun validaciones.
      *
-     * Se valida la propiedad, se elimina el registro de BD y luego
-     * borra el archivo fisico si existe en el filesystem.
+     * Se valida la propiedad, se descuenta la referencia al blob y se elimina
+     * el registro de BD; el archivo fisico se borra solo cuando ya ningun
+     * registro lo usa.
      *
      *
      * @param request request HTTP actual.
@@ -257,8 +285,8 @@ public class ArchivosServlet extends HttpServlet {
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_archivo = parseInt(request.getParameter("id_archivo"));
@@ -267,8 +295,8 @@ public class ArchivosServlet extends HttpServlet {
             return;
         }
 
-        // Obtiene propietario y ruta antes de borrar.
-        String sqlSelect = "SELECT id_usuario, ruta_archivo FROM archivos_multimedia WHERE id_archivo = ?";
+        // Obtiene propietario antes de borrar.
+        String sqlSelect = "SELECT id_usuario FROM archivos_multimedia WHERE id_archivo = ?";
         String sqlDelete = "DELETE FROM archivos_multimedia WHERE id_archivo = ?";
         try (Connection con = DB.getConnection();
              PreparedStatement psSelect = con.prepareStatement(sqlSelect)) {
@@ -279,25 +307,31 @@ public class ArchivosServlet extends HttpServlet {
                     return;
                 }
                 int id_usuario_propietario = rs.getInt("id_usuario");
-                String ruta = rs.getString("ruta_archivo");
                 if (!es_admin && (id_usuario_sesion == null || id_usuario_propietario != id_usuario_sesion.intValue())) {
                     ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
                     return;
                 }
 
-                // Borra registro primero para mantener consistencia con BD.
-                try (PreparedStatement psDelete = con.prepareStatement(sqlDelete)) {
-                    psDelete.setInt(1, id_archivo.intValue());
-                    psDelete.executeUpdate();
-                }
-
-                // Borra archivo fisico si existe.
-                if (ruta != null) {
-                    File file = new File(getServletContext().getRealPath("/"), ruta);
-                    if (file.exists()) {
-                        file.delete();
+                // Descuenta la referencia al blob y borra el registro en la misma transaccion.
+                MediaStorage storage = ArchivosService.storage(getServletContext());
+                ArchivosService.Liberacion liberacion;
+                con.setAutoCommit(false);
+                try {
+                    liberacion = ArchivosService.liberarBlobs(con, "id_archivo", id_archivo.intValue());
+                    try (PreparedStatement psDelete = con.prepareStatement(sqlDelete)) {
+                        psDelete.setInt(1, id_archivo.intValue());
+                        psDelete.executeUpdate();
                     }
+                    con.commit();
+                } catch (Exception ex) {
+                    con.rollback();
+                    throw ex;
+                } finally {
+                    con.setAutoCommit(true);
                 }
+
+                // El contenido sin uso se borra solo despues del commit.
+                ArchivosService.borrarLiberados(storage, liberacion);
                 JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
                 ResponseUtil.writeOk(response, body.build());
             }
@@ -307,54 +341,53 @@ public class ArchivosServlet extends HttpServlet {
     }
 
     /**
-     * Convierte una fila de archivo en JSON agregando URL publica.
+     * Escribe una fila de archivo en el objeto abierto agregando URL publica.
      *
-     * Se construye metadatos y deriva url_publica desde contextPath.
+     * Se escribe metadatos y deriva url_publica desde contextPath. La URL
+     * apunta a /api/media porque el contenido puede no estar dentro del WAR.
      *
      *
+     * @param gen generador posicionado dentro de un objeto.
      * @param rs ResultSet posicionado.
-     * @param request request actual para construir URL.
-     * @return builder con metadatos del archivo.
+     * @param context_path contextPath del request para construir URL.
      * @throws Exception si falla lectura de datos.
      */
-    private JsonObjectBuilder buildArchivo(ResultSet rs, HttpServletRequest request) throws Exception {
-        JsonObjectBuilder archivo = Json.createObjectBuilder();
-        archivo.add("id_archivo", rs.getInt("id_archivo"));
-        archivo.add("id_usuario", rs.getInt("id_usuario"));
-        archivo.add("tipo_media", rs.getString("tipo_media"));
-        JsonUtil.add(archivo, "titulo", rs.getString("titulo"));
-        JsonUtil.add(archivo, "descripcion", rs.getString("descripcion"));
-        archivo.add("tamano_bytes", rs.getLong("tamano_bytes"));
+    static void writeArchivo(JsonGenerator gen, ResultSet rs, String context_path) throws Exception {
+        gen.write("id_archivo", rs.getInt("id_archivo"));
+        gen.write("id_usuario", rs.getInt("id_usuario"));
+        gen.write("tipo_media", rs.getString("tipo_media"));
+        JsonUtil.write(gen, "titulo", rs.getString("titulo"));
+        JsonUtil.write(gen, "descripcion", rs.getString("descripcion"));
+        gen.write("tamano_bytes", rs.getLong("tamano_bytes"));
         if (rs.getObject("duracion_segundos") == null) {
-            JsonUtil.add(archivo, "duracion_segundos", (String) null);
+            JsonUtil.write(gen, "duracion_segundos", (String) null);
         } else {
-            archivo.add("duracion_segundos", rs.getBigDecimal("duracion_segundos"));
+            gen.write("duracion_segundos", rs.getBigDecimal("duracion_segundos"));
         }
         int ancho = rs.getInt("ancho");
         if (rs.wasNull()) {
-            JsonUtil.add(archivo, "ancho", (Integer) null);
+            JsonUtil.write(gen, "ancho", (Integer) null);
         } else {
-            archivo.add("ancho", ancho);
+            gen.write("ancho", ancho);
         }
         int alto = rs.getInt("alto");
         if (rs.wasNull()) {
-            JsonUtil.add(archivo, "alto", (Integer) null);
+            JsonUtil.write(gen, "alto", (Integer) null);
         } else {
-            archivo.add("alto", alto);
+            gen.write("alto", alto);
         }
         String ruta = rs.getString("ruta_archivo");
-        JsonUtil.add(archivo, "ruta_archivo", ruta);
+        JsonUtil.write(gen, "ruta_archivo", ruta);
         if (ruta != null) {
-            String urlPublica = request.getContextPath() + "/" + ruta;
-            archivo.add("url_publica", urlPublica);
+            String urlPublica = context_path + "/api/media?id_archivo=" + rs.getInt("id_archivo");
+            gen.write("url_publica", urlPublica);
         } else {
-            JsonUtil.add(archivo, "url_publica", (String) null);
+            JsonUtil.write(gen, "url_publica", (String) null);
         }
         Timestamp creado = rs.getTimestamp("fecha_creacion");
         Timestamp actualizado = rs.getTimestamp("fecha_actualizacion");
-        JsonUtil.add(archivo, "fecha_creacion", creado == null ? null : creado.toString());
-        JsonUtil.add(archivo, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
-        return archivo;
+        JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+        JsonUtil.write(gen, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
     }
 
     /**
@@ -381,72 +414,6 @@ public class ArchivosServlet extends HttpServlet {
         return null;
     }
 
-    /**
-     * Obtiene la extension de un filename.
-     *
-     * Se busca el ultimo punto y devuelve el sufijo en minusculas.
-     *
-     *
-     * @param filename nombre del archivo.
-     * @return extension en minusculas o cadena vacia si no hay.
-     */
-    private String getExtension(String filename) {
-        if (filename == null) {
-            return "";
-        }
-        int idx = filename.lastIndexOf('.');
-        if (idx == -1 || idx == filename.length() - 1) {
-            return "";
-        }
-        return filename.substring(idx + 1).toLowerCase();
-    }
-
-    /**
-     * Valida la extension en funcion del tipo de media.
-     *
-     * Se compara extension contra un whitelist segun tipo_media.
-     *
-     *
-     * @param tipo_media tipo normalizado (AUDIO, VIDEO, IMAGEN).
-     * @param extension extension en minusculas.
-     * @return true si la extension es valida.
-     */
-    private boolean extensionValida(String tipo_media, String extension) {
-        if (extension == null || extension.isEmpty()) {
-            return false;
-        }
-        if ("AUDIO".equals(tipo_media)) {
-            return "mp3".equals(extension);
-        }
-        if ("VIDEO".equals(tipo_media)) {
-            return "mp4".equals(extension);
-        }
-        if ("IMAGEN".equals(tipo_media)) {
-            return "jpg".equals(extension) || "jpeg".equals(extension);
-        }
-        return false;
-    }
-
-    /**
-     * Normaliza el tipo de media a valores soportados.
-     *
-     * Se recorta el texto, se convierte a mayusculas y se valida contra el catalogo permitido.
-     *
-     *
-     * @param tipo texto recibido.
-     * @return tipo en mayusculas o null si no es valido.
-     */
-    private String normalizeTipoMedia(String tipo) {
-        if (tipo == null || tipo.trim().isEmpty()) {
-            return null;
-        }
-        String normalized = tipo.trim().toUpperCase();
-        if ("IMAGEN".equals(normalized) || "AUDIO".equals(normalized) || "VIDEO".equals(normalized)) {
-            return normalized;
-        }
-        return null;
-    }
-
     /**
      * Parsea un entero desde query string.
      *
@@ -487,42 +454,6 @@ public class ArchivosServlet extends HttpServlet {
         }
     }
 
-    /**
-     * Obtiene id_usuario de la sesion si existe.
-     *
-     * Se lee el atributo "id_usuario" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_usuario o null si no hay sesion.
-     */
-    private Integer getSessionUserId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_usuario");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
-    /**
-     * Obtiene id_rol de la sesion si existe.
-     *
-     * Se lee el atributo "id_rol" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_rol o null si no hay sesion.
-     */
-    private Integer getSessionRoleId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_rol");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
     /**
      * Determina si el rol corresponde a administrador (id_rol = 1).
      *
@@ -18,6 +18,11 @@ import javax.servlet.http.HttpSession;
  * Intercepta cada request y valida que exista una sesion con id_usuario.
  * Permite excepciones explicitas para login y preflight CORS.
  *
+ * Con AUTH_MODO=token no se usa HttpSession: se verifica en memoria el
+ * token firmado del header Authorization ({@link TokenService}) y sus datos
+ * quedan como atributos del request ("id_usuario", "id_rol"), que los
+ * servlets leen antes que la sesion.
+ *
  */
 @WebFilter(urlPatterns = {"/api/*"})
 public class AuthFilter implements Filter {
@@ -40,7 +45,8 @@ public class AuthFilter implements Filter {
      * No retorna valor; puede responder 401 si no hay sesion.
      *
      * Se deriva el path relativo al contexto para comparar rutas,
-     * omite login/OPTIONS y valida el atributo de sesion "id_usuario".
+     * omite login/OPTIONS y valida el atributo de sesion "id_usuario"
+     * (o el token firmado en modo token).
      *
      *
      * @param request request generico.
@@ -63,6 +69,20 @@ public class AuthFilter implements Filter {
             return;
         }
 
+        if (TokenService.ACTIVO) {
+            String token = TokenService.leerToken(req);
+            TokenService.Identidad identidad = TokenService.verificar(token);
+            if (identidad == null) {
+                ResponseUtil.writeError(res, HttpServletResponse.SC_UNAUTHORIZED,
+                        token == null ? "sesion_no_iniciada" : "token_invalido");
+                return;
+            }
+            req.setAttribute("id_usuario", identidad.id_usuario);
+            req.setAttribute("id_rol", identidad.id_rol);
+            chain.doFilter(request, response);
+            return;
+        }
+
         HttpSession session = req.getSession(false);
         if (session == null || session.getAttribute("id_usuario") == null) {
             ResponseUtil.writeError(res, HttpServletResponse.SC_UNAUTHORIZED, "sesion_no_iniciada");
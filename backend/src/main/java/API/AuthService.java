@@ -4,7 +4,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import javax.json.JsonObjectBuilder;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 /**
@@ -105,4 +107,73 @@ public final class AuthService {
         session.setAttribute("nombre_usuario", result.nombre_usuario);
         session.setAttribute("nombre_rol", result.nombre_rol);
     }
+
+    /**
+     * Obtiene id_usuario del usuario autenticado.
+     *
+     * @param request request HTTP actual.
+     * @return id_usuario o null si no hay sesion ni token.
+     */
+    public static Integer getUserId(HttpServletRequest request) {
+        return getAuthAttribute(request, "id_usuario");
+    }
+
+    /**
+     * Obtiene id_rol del usuario autenticado.
+     *
+     * @param request request HTTP actual.
+     * @return id_rol o null si no hay sesion ni token.
+     */
+    public static Integer getRoleId(HttpServletRequest request) {
+        return getAuthAttribute(request, "id_rol");
+    }
+
+    /**
+     * Lee un dato de autenticacion del request o de la sesion.
+     *
+     * En modo token no hay HttpSession: AuthFilter deja id_usuario e id_rol
+     * como atributos del request tras verificar el token, por lo que se
+     * leen primero ahi y solo despues de la sesion (modo sesion).
+     *
+     *
+     * @param request request HTTP actual.
+     * @param nombre nombre del atributo.
+     * @return valor Integer o null si no existe o no es Integer.
+     */
+    private static Integer getAuthAttribute(HttpServletRequest request, String nombre) {
+        Object value = request.getAttribute(nombre);
+        if (value == null) {
+            HttpSession session = request.getSession(false);
+            value = session == null ? null : session.getAttribute(nombre);
+        }
+        return value instanceof Integer ? (Integer) value : null;
+    }
+
+    /**
+     * Registra un login exitoso segun AUTH_MODO.
+     * No retorna valor; modifica la sesion o la respuesta.
+     *
+     * En modo sesion delega en {@link #applySession}. En modo token no crea
+     * HttpSession: emite un token firmado, lo fija en la cookie HttpOnly y lo
+     * agrega a la respuesta ("token", "token_tipo" = Bearer y "expira_en" en
+     * segundos) para clientes que usan el header Authorization.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual (recibe la cookie).
+     * @param result datos de autenticacion exitosa.
+     * @param body respuesta JSON del login.
+     */
+    public static void applyLogin(HttpServletRequest request, HttpServletResponse response, AuthResult result,
+            JsonObjectBuilder body) {
+        if (!TokenService.ACTIVO) {
+            applySession(request, result);
+            return;
+        }
+        String token = TokenService.emitir(result.id_usuario, result.id_rol);
+        response.addCookie(TokenService.cookie(request, token));
+        body.add("token", token)
+                .add("token_tipo", "Bearer")
+                .add("expira_en", TokenService.TTL_S);
+    }
 }
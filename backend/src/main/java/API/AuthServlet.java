@@ -15,7 +15,8 @@ import javax.servlet.http.HttpSession;
  * Servlet de autenticacion que maneja login y logout por /api/auth/*.
  *
  * Expone endpoints JSON para iniciar/cerrar sesion. El login crea
- * HttpSession y devuelve datos basicos del usuario/rol.
+ * HttpSession (o, con AUTH_MODO=token, devuelve un token firmado) y devuelve
+ * datos basicos del usuario/rol.
  *
  */
 @WebServlet(name = "AuthServlet", urlPatterns = {"/api/auth/login", "/api/auth/logout"})
@@ -46,6 +47,11 @@ public class AuthServlet extends HttpServlet {
             if (session != null) {
                 session.invalidate();
             }
+            // En modo token no hay estado en el servidor: solo se borra la cookie
+            // y el cliente descarta el token (vence con AUTH_TOKEN_TTL_S).
+            if (TokenService.ACTIVO) {
+                response.addCookie(TokenService.cookie(request, ""));
+            }
             // Logout siempre responde OK para simplificar el frontend.
             JsonObject body = Json.createObjectBuilder().add("ok", true).build();
             ResponseUtil.writeOk(response, body);
@@ -75,15 +81,14 @@ public class AuthServlet extends HttpServlet {
                 return;
             }
 
-            // Crea sesion y retorna datos basicos del usuario.
-            AuthService.applySession(request, result);
-
             JsonObjectBuilder builder = Json.createObjectBuilder()
                     .add("ok", true)
                     .add("id_usuario", result.id_usuario)
                     .add("id_rol", result.id_rol)
                     .add("nombre_usuario", result.nombre_usuario)
                     .add("nombre_rol", result.nombre_rol);
+            // Crea sesion (o emite token en modo token) y retorna datos basicos del usuario.
+            AuthService.applyLogin(request, response, result, builder);
             ResponseUtil.writeOk(response, builder.build());
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_autenticacion");
@@ -0,0 +1,330 @@
+package API;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.http.HttpServletRequest;
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+/**
+ * Reparte a los editores abiertos los cambios de elementos y conexiones de
+ * cada diagrama (canal de {@link DiagramaSocket}).
+ *
+ * Los servlets llaman a {@link #publicar} despues de confirmar la escritura,
+ * con las mismas operaciones que guardaron en {@link OperacionesDiagrama};
+ * el delta se serializa una sola vez y se encola en cada suscriptor del
+ * diagrama. Cada suscriptor tiene una cola acotada (COLABORACION_COLA) y a lo
+ * sumo un envio asincrono en curso, por lo que el request nunca espera a la
+ * red: si un cliente lento llena su cola se le cierra el socket (1013,
+ * "cola_llena") y debe recargar con el snapshot, sin frenar a los demas.
+ *
+ * Formato del delta:
+ * {"entidad":"elemento|conexion","accion":"crear|actualizar|geometria|borrar",
+ *  "id_diagrama":N,"secuencia":N,"autor":id_usuario,"cliente":"...","items":[{...}]}
+ * Cada item trae el id y los campos escritos (geometria: solo los recibidos;
+ * borrar: solo el id). "cliente" es el header X-Cliente-Id del request para
+ * que la pestania que origino el cambio lo ignore; al suscriptor con el
+ * mismo id de cliente no se le envia.
+ *
+ */
+public final class ColaboracionHub {
+    private static final Logger LOG = Logger.getLogger(ColaboracionHub.class.getName());
+
+    public static final String HEADER_CLIENTE = "X-Cliente-Id";
+    public static final int COLA_MAX = (int) DB.getLongValue("COLABORACION_COLA", "colaboracion.cola", 256);
+
+    // id_diagrama -> suscriptores; el set vacio se quita al salir el ultimo.
+    // ConcurrentMap: putIfAbsent/remove(k, v) atomicos sin depender de Java 8.
+    private static final ConcurrentMap<Integer, Set<Suscriptor>> SUSCRIPTORES = new ConcurrentHashMap<>();
+    private static final AtomicLong PUBLICADOS = new AtomicLong();
+    private static final AtomicLong DESCONECTADOS = new AtomicLong();
+
+    // Cerrar un socket envia el frame de cierre y puede bloquear; se hace fuera del request.
+    private static final ThreadPoolExecutor CIERRES = TrabajosUtil.nuevoPool("colaboracion-cierre", 1, 1024);
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private ColaboracionHub() {
+    }
+
+    /**
+     * Registra un socket en el canal del diagrama.
+     *
+     * @param id_diagrama diagrama abierto en el editor.
+     * @param session socket del cliente.
+     * @param cliente id de pestania enviado por el cliente (puede ser null).
+     */
+    static void suscribir(int id_diagrama, Session session, String cliente) {
+        Suscriptor suscriptor = new Suscriptor(id_diagrama, session, cliente);
+        session.getUserProperties().put(Suscriptor.class.getName(), suscriptor);
+        while (true) {
+            Set<Suscriptor> set = SUSCRIPTORES.get(id_diagrama);
+            if (set == null) {
+                Set<Suscriptor> nuevo = Collections.newSetFromMap(new ConcurrentHashMap<Suscriptor, Boolean>());
+                set = SUSCRIPTORES.putIfAbsent(id_diagrama, nuevo);
+                if (set == null) {
+                    set = nuevo;
+                }
+            }
+            set.add(suscriptor);
+            // Si desuscribir quito el set entre get y add, se reintenta con uno nuevo.
+            if (SUSCRIPTORES.get(id_diagrama) == set) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Quita un socket de su canal; es idempotente.
+     *
+     * @param session socket cerrado o con error.
+     */
+    static void desuscribir(Session session) {
+        Object value = session.getUserProperties().remove(Suscriptor.class.getName());
+        if (value instanceof Suscriptor) {
+            quitar((Suscriptor) value);
+        }
+    }
+
+    /**
+     * Publica cambios ya confirmados en BD a los suscriptores de cada diagrama.
+     * No bloquea: solo encola; sin suscriptores no serializa nada.
+     *
+     * Las operaciones consecutivas del mismo diagrama, entidad y accion viajan
+     * en un solo delta (p. ej. un lote), cuya "secuencia" es la de la ultima.
+     *
+     *
+     * @param request request que origino el cambio (header X-Cliente-Id).
+     * @param autor id_usuario que hizo el cambio.
+     * @param operaciones operaciones registradas, en orden.
+     */
+    public static void publicar(HttpServletRequest request, Integer autor,
+            List<OperacionesDiagrama.Operacion> operaciones) {
+        if (SUSCRIPTORES.isEmpty()) {
+            return;
+        }
+        String cliente = request.getHeader(HEADER_CLIENTE);
+        int inicio = 0;
+        while (inicio < operaciones.size()) {
+            OperacionesDiagrama.Operacion primera = operaciones.get(inicio);
+            int fin = inicio + 1;
+            while (fin < operaciones.size() && mismoDelta(primera, operaciones.get(fin))) {
+                fin++;
+            }
+            Set<Suscriptor> set = SUSCRIPTORES.get(primera.id_diagrama);
+            if (set != null && !set.isEmpty()) {
+                JsonArrayBuilder items = Json.createArrayBuilder();
+                for (int i = inicio; i < fin; i++) {
+                    OperacionesDiagrama.Operacion operacion = operaciones.get(i);
+                    items.add(operacion.datos != null ? operacion.datos : Json.createObjectBuilder()
+                            .add("id_" + operacion.entidad, operacion.id_entidad).build());
+                }
+                JsonObjectBuilder delta = Json.createObjectBuilder()
+                        .add("entidad", primera.entidad)
+                        .add("accion", primera.accion)
+                        .add("id_diagrama", primera.id_diagrama)
+                        .add("secuencia", operaciones.get(fin - 1).secuencia);
+                JsonUtil.add(delta, "autor", autor);
+                JsonUtil.add(delta, "cliente", cliente);
+                enviar(set, delta.add("items", items).build().toString(), cliente);
+            }
+            inicio = fin;
+        }
+    }
+
+    /**
+     * @param a operacion inicial del grupo.
+     * @param b operacion siguiente.
+     * @return true si b puede viajar en el mismo delta que a.
+     */
+    private static boolean mismoDelta(OperacionesDiagrama.Operacion a, OperacionesDiagrama.Operacion b) {
+        return a.id_diagrama == b.id_diagrama && a.entidad.equals(b.entidad) && a.accion.equals(b.accion);
+    }
+
+    /**
+     * @param set suscriptores del diagrama.
+     * @param mensaje delta serializado.
+     * @param cliente id de pestania que origino el cambio (no se le envia).
+     */
+    private static void enviar(Set<Suscriptor> set, String mensaje, String cliente) {
+        PUBLICADOS.incrementAndGet();
+        for (Suscriptor suscriptor : set) {
+            if (cliente == null || !cliente.equals(suscriptor.cliente)) {
+                suscriptor.encolar(mensaje);
+            }
+        }
+    }
+
+    /**
+     * Escribe los contadores del canal en formato de texto de Prometheus.
+     *
+     * @param out destino.
+     */
+    static void exportar(StringBuilder out) {
+        long suscriptores = 0;
+        for (Set<Suscriptor> set : SUSCRIPTORES.values()) {
+            suscriptores += set.size();
+        }
+        out.append("# HELP casos_colaboracion_suscriptores Sockets de edicion abiertos.\n");
+        out.append("# TYPE casos_colaboracion_suscriptores gauge\n");
+        out.append("casos_colaboracion_suscriptores ").append(suscriptores).append('\n');
+        out.append("# HELP casos_colaboracion_deltas_total Deltas publicados.\n");
+        out.append("# TYPE casos_colaboracion_deltas_total counter\n");
+        out.append("casos_colaboracion_deltas_total ").append(PUBLICADOS.get()).append('\n');
+        out.append("# HELP casos_colaboracion_desconexiones_total Sockets cerrados por cola llena o error de envio.\n");
+        out.append("# TYPE casos_colaboracion_desconexiones_total counter\n");
+        out.append("casos_colaboracion_desconexiones_total ").append(DESCONECTADOS.get()).append('\n');
+    }
+
+    /**
+     * Cierra todos los sockets y el hilo de cierres; se invoca al detener la aplicacion.
+     */
+    public static void shutdown() {
+        CIERRES.shutdownNow();
+        for (Set<Suscriptor> set : SUSCRIPTORES.values()) {
+            for (Suscriptor suscriptor : set) {
+                try {
+                    suscriptor.session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "apagado"));
+                } catch (IOException | RuntimeException ex) {
+                    // El contenedor tambien los cierra al detenerse.
+                }
+            }
+        }
+        SUSCRIPTORES.clear();
+    }
+
+    /**
+     * @param suscriptor suscriptor a quitar de su canal.
+     */
+    private static void quitar(Suscriptor suscriptor) {
+        Set<Suscriptor> set = SUSCRIPTORES.get(suscriptor.id_diagrama);
+        if (set != null && set.remove(suscriptor) && set.isEmpty()) {
+            SUSCRIPTORES.remove(suscriptor.id_diagrama, set);
+        }
+    }
+
+    /**
+     * Quita al suscriptor y cierra su socket en segundo plano.
+     *
+     * @param suscriptor suscriptor lento o con error.
+     * @param motivo razon enviada en el frame de cierre.
+     */
+    private static void desconectar(final Suscriptor suscriptor, final String motivo) {
+        if (!suscriptor.activo.compareAndSet(true, false)) {
+            return;
+        }
+        quitar(suscriptor);
+        suscriptor.cola.clear();
+        DESCONECTADOS.incrementAndGet();
+        try {
+            CIERRES.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        suscriptor.session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, motivo));
+                    } catch (IOException | RuntimeException ex) {
+                        LOG.log(Level.FINE, "No se pudo cerrar el socket de colaboracion", ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Apagando o demasiados cierres pendientes: el timeout del contenedor lo cerrara.
+        }
+    }
+
+    /**
+     * Socket suscrito con su cola de salida.
+     *
+     * Un solo envio asincrono en curso por socket (el contenedor no admite
+     * envios concurrentes en la misma sesion); al completarse, el handler
+     * toma el siguiente mensaje de la cola.
+     */
+    private static final class Suscriptor implements SendHandler {
+        private final int id_diagrama;
+        private final Session session;
+        private final String cliente;
+        private final ArrayBlockingQueue<String> cola = new ArrayBlockingQueue<>(COLA_MAX);
+        private final AtomicBoolean enviando = new AtomicBoolean();
+        private final AtomicBoolean activo = new AtomicBoolean(true);
+
+        /**
+         * @param id_diagrama canal del suscriptor.
+         * @param session socket del cliente.
+         * @param cliente id de pestania o null.
+         */
+        private Suscriptor(int id_diagrama, Session session, String cliente) {
+            this.id_diagrama = id_diagrama;
+            this.session = session;
+            this.cliente = cliente;
+        }
+
+        /**
+         * @param mensaje delta serializado.
+         */
+        private void encolar(String mensaje) {
+            if (!activo.get()) {
+                return;
+            }
+            if (!cola.offer(mensaje)) {
+                desconectar(this, "cola_llena");
+                return;
+            }
+            enviarSiguiente();
+        }
+
+        /**
+         * Inicia el envio del siguiente mensaje si no hay otro en curso.
+         */
+        private void enviarSiguiente() {
+            while (activo.get() && enviando.compareAndSet(false, true)) {
+                String mensaje = cola.poll();
+                if (mensaje != null) {
+                    try {
+                        session.getAsyncRemote().sendText(mensaje, this);
+                    } catch (RuntimeException ex) {
+                        // Socket ya cerrado por el cliente.
+                        desconectar(this, "error_envio");
+                    }
+                    return;
+                }
+                enviando.set(false);
+                // Otro hilo pudo encolar entre poll y set(false).
+                if (cola.isEmpty()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Fin de un envio asincrono.
+         *
+         * @param result resultado del envio.
+         */
+        @Override
+        public void onResult(SendResult result) {
+            if (!result.isOK()) {
+                desconectar(this, "error_envio");
+                return;
+            }
+            enviando.set(false);
+            enviarSiguiente();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package API;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+
+/**
+ * Filtro que abre una conexion por request para /api/*.
+ *
+ * Acompana a {@link AuthFilter}: mientras el request se procesa, todas las
+ * llamadas a {@link DB#getConnection()} comparten una misma conexion del pool
+ * (verificaciones de propiedad y consulta principal). La conexion solo se
+ * presta si algun servlet la pide y se devuelve al terminar el request.
+ *
+ */
+@WebFilter(urlPatterns = {"/api/*"})
+public class ConexionRequestFilter implements Filter {
+
+    /**
+     * Inicializacion del filtro (sin configuracion adicional).
+     *
+     * @param filterConfig configuracion del contenedor.
+     */
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    /**
+     * Abre el alcance de conexion, continua la cadena y lo libera siempre.
+     *
+     * @param request request generico.
+     * @param response response generico.
+     * @param chain cadena de filtros/servlet destino.
+     * @throws IOException si ocurre error de escritura en respuesta.
+     * @throws ServletException si falla el flujo del contenedor.
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        boolean owner = RequestConnection.begin();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (owner) {
+                RequestConnection.end();
+            }
+        }
+    }
+
+    /**
+     * Liberacion del filtro (sin recursos a liberar).
+     */
+    @Override
+    public void destroy() {
+    }
+}
@@ -7,16 +7,18 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 /**
  * Servlet CRUD de conexiones entre elementos de un diagrama UML.
@@ -28,6 +30,10 @@ import javax.servlet.http.HttpSession;
 @WebServlet(name = "ConexionesServlet", urlPatterns = {"/api/conexiones"})
 public class ConexionesServlet extends HttpServlet {
 
+    private static final String SQL_CONEXION = "SELECT id_conexion, id_diagrama, id_elemento_origen, "
+            + "id_elemento_destino, tipo_conexion, etiqueta, puntos_json, estilo_json, version, fecha_creacion, "
+            + "fecha_actualizacion FROM conexiones_diagrama WHERE id_conexion = ?";
+
     /**
      * Obtiene una conexion por id o lista conexiones de un diagrama.
      * No retorna valor; responde 400/403/404/500 segun validaciones.
@@ -35,7 +41,8 @@ public class ConexionesServlet extends HttpServlet {
      * Flujo:
      *
      * - Si viene id_conexion, consulta un registro y valida acceso.
-     * - Si no viene, requiere id_diagrama y lista todas las conexiones.
+     * - Si no viene, requiere id_diagrama y lista sus conexiones paginadas
+     *   por cursor (limit, cursor; responde next_cursor).
      *
      *
      * @param request request HTTP actual.
@@ -46,31 +53,33 @@ public class ConexionesServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         // Rama 1: lectura puntual por id_conexion.
         Integer id_conexion = parseInt(request.getParameter("id_conexion"));
         if (id_conexion != null) {
             // Lectura puntual por id_conexion.
-            String sql = "SELECT id_conexion, id_diagrama, id_elemento_origen, id_elemento_destino, tipo_conexion, "
-                    + "etiqueta, puntos_json, estilo_json, fecha_creacion, fecha_actualizacion "
-                    + "FROM conexiones_diagrama WHERE id_conexion = ?";
             try (Connection con = DB.getConnection();
-                 PreparedStatement ps = con.prepareStatement(sql)) {
+                 PreparedStatement ps = con.prepareStatement(SQL_CONEXION)) {
                 ps.setInt(1, id_conexion.intValue());
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.next()) {
                         int id_diagrama = rs.getInt("id_diagrama");
+                        OwnershipCache.putConexion(id_conexion.intValue(), id_diagrama);
                         if (!es_admin && !isOwnerDiagram(id_diagrama, id_usuario_sesion)) {
                             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
                             return;
                         }
-                        JsonObjectBuilder body = Json.createObjectBuilder()
-                                .add("ok", true)
-                                .add("conexion", buildConexion(rs));
-                        ResponseUtil.writeOk(response, body.build());
+                        try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                            gen.writeStartObject();
+                            gen.write("ok", true);
+                            gen.writeStartObject("conexion");
+                            writeConexion(gen, rs);
+                            gen.writeEnd();
+                            gen.writeEnd();
+                        }
                         return;
                     }
                 }
@@ -92,21 +101,46 @@ public class ConexionesServlet extends HttpServlet {
             return;
         }
 
+        Integer limit = CursorUtil.parseLimit(request.getParameter("limit"));
+        Integer ultimo_visto = CursorUtil.decode(request.getParameter("cursor"));
+        if (limit == null || ultimo_visto == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "paginacion_invalida");
+            return;
+        }
+
+        // Keyset sobre idx_conexiones_diagrama (id_diagrama, id_conexion implicito).
         String sql = "SELECT id_conexion, id_diagrama, id_elemento_origen, id_elemento_destino, tipo_conexion, "
-                + "etiqueta, puntos_json, estilo_json, fecha_creacion, fecha_actualizacion "
-                + "FROM conexiones_diagrama WHERE id_diagrama = ? ORDER BY id_conexion";
+                + "etiqueta, puntos_json, estilo_json, version, fecha_creacion, fecha_actualizacion "
+                + "FROM conexiones_diagrama WHERE id_diagrama = ? AND id_conexion > ? ORDER BY id_conexion LIMIT ?";
         try (Connection con = DB.getConnection();
              PreparedStatement ps = con.prepareStatement(sql)) {
             ps.setInt(1, id_diagrama.intValue());
-            try (ResultSet rs = ps.executeQuery()) {
-                JsonArrayBuilder conexiones = Json.createArrayBuilder();
+            ps.setInt(2, ultimo_visto.intValue());
+            ps.setInt(3, limit.intValue() + 1);
+            DB.streamResults(ps);
+            try (ResultSet rs = ps.executeQuery();
+                 JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                gen.writeStartObject();
+                gen.write("ok", true);
+                gen.writeStartArray("conexiones");
+                int escritos = 0;
+                int ultimo_id = 0;
+                boolean hay_mas = false;
                 while (rs.next()) {
-                    conexiones.add(buildConexion(rs));
+                    // Se pidio limit + 1 filas: la extra solo indica que hay otra pagina.
+                    if (escritos == limit.intValue()) {
+                        hay_mas = true;
+                        break;
+                    }
+                    ultimo_id = rs.getInt("id_conexion");
+                    gen.writeStartObject();
+                    writeConexion(gen, rs);
+                    gen.writeEnd();
+                    escritos++;
                 }
-                JsonObjectBuilder body = Json.createObjectBuilder()
-                        .add("ok", true)
-                        .add("conexiones", conexiones);
-                ResponseUtil.writeOk(response, body.build());
+                gen.writeEnd();
+                CursorUtil.writeNext(gen, hay_mas, ultimo_id);
+                gen.writeEnd();
             }
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_conexiones");
@@ -129,8 +163,8 @@ public class ConexionesServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         JsonObject payload = JsonUtil.readJsonObject(request);
@@ -151,37 +185,59 @@ public class ConexionesServlet extends HttpServlet {
             return;
         }
 
-        // Inserta conexion y retorna id generado.
+        // Inserta conexion y su operacion en una transaccion; retorna id generado.
         String sql = "INSERT INTO conexiones_diagrama (id_diagrama, id_elemento_origen, id_elemento_destino, "
                 + "tipo_conexion, etiqueta, puntos_json, estilo_json) VALUES (?,?,?,?,?,?,?)";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setInt(1, id_diagrama.intValue());
-            ps.setInt(2, id_elemento_origen.intValue());
-            ps.setInt(3, id_elemento_destino.intValue());
-            ps.setString(4, tipo_conexion);
-            if (etiqueta == null || etiqueta.trim().isEmpty()) {
-                ps.setNull(5, Types.VARCHAR);
-            } else {
-                ps.setString(5, etiqueta);
-            }
-            if (puntos_json == null || puntos_json.trim().isEmpty()) {
-                ps.setNull(6, Types.LONGVARCHAR);
-            } else {
-                ps.setString(6, puntos_json);
-            }
-            if (estilo_json == null || estilo_json.trim().isEmpty()) {
-                ps.setNull(7, Types.LONGVARCHAR);
-            } else {
-                ps.setString(7, estilo_json);
-            }
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
+        try (Connection con = DB.getConnection()) {
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                long secuencia = OperacionesDiagrama.reservar(con, id_diagrama.intValue(), 1);
+                ps.setInt(1, id_diagrama.intValue());
+                ps.setInt(2, id_elemento_origen.intValue());
+                ps.setInt(3, id_elemento_destino.intValue());
+                ps.setString(4, tipo_conexion);
+                if (etiqueta == null || etiqueta.trim().isEmpty()) {
+                    ps.setNull(5, Types.VARCHAR);
+                } else {
+                    ps.setString(5, etiqueta);
+                }
+                if (puntos_json == null || puntos_json.trim().isEmpty()) {
+                    ps.setNull(6, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(6, puntos_json);
+                }
+                if (estilo_json == null || estilo_json.trim().isEmpty()) {
+                    ps.setNull(7, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(7, estilo_json);
+                }
+                ps.executeUpdate();
                 JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
-                if (keys.next()) {
-                    body.add("id_conexion", keys.getInt(1));
+                List<OperacionesDiagrama.Operacion> operaciones = new ArrayList<>();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        int id_conexion = keys.getInt(1);
+                        body.add("id_conexion", id_conexion).add("version", 0);
+                        operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama.intValue(), secuencia,
+                                OperacionesDiagrama.CONEXION, OperacionesDiagrama.CREAR, id_conexion,
+                                itemConexion(id_conexion, id_diagrama.intValue(), id_elemento_origen.intValue(),
+                                        id_elemento_destino.intValue(), tipo_conexion, etiqueta, puntos_json,
+                                        estilo_json, Integer.valueOf(0))));
+                    }
+                }
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, operaciones);
+                con.commit();
+                for (OperacionesDiagrama.Operacion operacion : operaciones) {
+                    OwnershipCache.putConexion(operacion.id_entidad, id_diagrama.intValue());
                 }
+                ColaboracionHub.publicar(request, id_usuario_sesion, operaciones);
                 ResponseUtil.writeOk(response, body.build());
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
             }
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_crear_conexion");
@@ -190,9 +246,10 @@ public class ConexionesServlet extends HttpServlet {
 
     /**
      * Actualiza una conexion existente si el usuario es propietario o admin.
-     * No retorna valor; responde 400/403/404/500 segun validaciones.
+     * No retorna valor; responde 400/403/404/409/500 segun validaciones.
      *
-     * Se validan campos, se verifica la propiedad y se ejecuta UPDATE.
+     * Se validan campos, se verifica la propiedad y se ejecuta UPDATE,
+     * condicionado a la "version" del payload si viene (409 si cambio).
      *
      *
      * @param request request HTTP actual.
@@ -203,8 +260,8 @@ public class ConexionesServlet extends HttpServlet {
     @Override
     protected void doPut(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         JsonObject payload = JsonUtil.readJsonObject(request);
@@ -216,47 +273,100 @@ public class ConexionesServlet extends HttpServlet {
         String etiqueta = JsonUtil.getString(payload, "etiqueta");
         String puntos_json = JsonUtil.getString(payload, "puntos_json");
         String estilo_json = JsonUtil.getString(payload, "estilo_json");
+        Integer version = JsonUtil.getInt(payload, "version");
+        Integer version_nueva = version == null ? null : Integer.valueOf(version.intValue() + 1);
 
         if (id_conexion == null || id_diagrama == null || id_elemento_origen == null || id_elemento_destino == null || tipo_conexion == null) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "datos_incompletos");
             return;
         }
-        if (!es_admin && !isOwnerDiagram(id_diagrama.intValue(), id_usuario_sesion)) {
+        // El diagrama actual tambien debe ser propio: el UPDATE puede sacar la conexion de el.
+        if (!es_admin && (!isOwnerDiagram(id_diagrama.intValue(), id_usuario_sesion)
+                || !isOwnerConexion(id_conexion.intValue(), id_usuario_sesion))) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
             return;
         }
 
-        // Actualiza campos editables de la conexion.
+        // Actualiza campos editables de la conexion y registra la operacion.
+        // Control optimista: con "version" en el payload solo aplica si coincide (NULL = sin verificar).
         String sql = "UPDATE conexiones_diagrama SET id_diagrama = ?, id_elemento_origen = ?, id_elemento_destino = ?, "
-                + "tipo_conexion = ?, etiqueta = ?, puntos_json = ?, estilo_json = ? WHERE id_conexion = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_diagrama.intValue());
-            ps.setInt(2, id_elemento_origen.intValue());
-            ps.setInt(3, id_elemento_destino.intValue());
-            ps.setString(4, tipo_conexion);
-            if (etiqueta == null || etiqueta.trim().isEmpty()) {
-                ps.setNull(5, Types.VARCHAR);
-            } else {
-                ps.setString(5, etiqueta);
-            }
-            if (puntos_json == null || puntos_json.trim().isEmpty()) {
-                ps.setNull(6, Types.LONGVARCHAR);
-            } else {
-                ps.setString(6, puntos_json);
-            }
-            if (estilo_json == null || estilo_json.trim().isEmpty()) {
-                ps.setNull(7, Types.LONGVARCHAR);
-            } else {
-                ps.setString(7, estilo_json);
-            }
-            ps.setInt(8, id_conexion.intValue());
-            int updated = ps.executeUpdate();
-            if (updated == 0) {
-                ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "conexion_no_encontrada");
-                return;
+                + "tipo_conexion = ?, etiqueta = ?, puntos_json = ?, estilo_json = ?, version = version + 1 "
+                + "WHERE id_conexion = ? AND version = COALESCE(?, version)";
+        try (Connection con = DB.getConnection()) {
+            // El UPDATE puede mover la conexion a otro diagrama: el de origen registra un borrado.
+            Integer id_diagrama_actual = OwnershipCache.conexionDiagram(id_conexion.intValue());
+            boolean movida = id_diagrama_actual != null && !id_diagrama_actual.equals(id_diagrama);
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                // Mismo orden de locks que el resto de escrituras: diagramas por id ascendente.
+                long secuencia_origen = 0;
+                long secuencia;
+                if (movida && id_diagrama_actual.intValue() < id_diagrama.intValue()) {
+                    secuencia_origen = OperacionesDiagrama.reservar(con, id_diagrama_actual.intValue(), 1);
+                    secuencia = OperacionesDiagrama.reservar(con, id_diagrama.intValue(), 1);
+                } else {
+                    secuencia = OperacionesDiagrama.reservar(con, id_diagrama.intValue(), 1);
+                    if (movida) {
+                        secuencia_origen = OperacionesDiagrama.reservar(con, id_diagrama_actual.intValue(), 1);
+                    }
+                }
+                ps.setInt(1, id_diagrama.intValue());
+                ps.setInt(2, id_elemento_origen.intValue());
+                ps.setInt(3, id_elemento_destino.intValue());
+                ps.setString(4, tipo_conexion);
+                if (etiqueta == null || etiqueta.trim().isEmpty()) {
+                    ps.setNull(5, Types.VARCHAR);
+                } else {
+                    ps.setString(5, etiqueta);
+                }
+                if (puntos_json == null || puntos_json.trim().isEmpty()) {
+                    ps.setNull(6, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(6, puntos_json);
+                }
+                if (estilo_json == null || estilo_json.trim().isEmpty()) {
+                    ps.setNull(7, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(7, estilo_json);
+                }
+                ps.setInt(8, id_conexion.intValue());
+                if (version == null) {
+                    ps.setNull(9, Types.INTEGER);
+                } else {
+                    ps.setInt(9, version.intValue());
+                }
+                int updated = ps.executeUpdate();
+                if (updated == 0) {
+                    con.rollback();
+                    // Sin filas: otra edicion cambio la version (409 con la fila actual) o no existe.
+                    if (version == null || !writeConflicto(response, con, id_conexion.intValue())) {
+                        ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "conexion_no_encontrada");
+                    }
+                    return;
+                }
+                List<OperacionesDiagrama.Operacion> operaciones = new ArrayList<>();
+                if (movida) {
+                    operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama_actual.intValue(), secuencia_origen,
+                            OperacionesDiagrama.CONEXION, OperacionesDiagrama.BORRAR, id_conexion.intValue(), null));
+                }
+                operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama.intValue(), secuencia,
+                        OperacionesDiagrama.CONEXION, OperacionesDiagrama.ACTUALIZAR, id_conexion.intValue(),
+                        itemConexion(id_conexion.intValue(), id_diagrama.intValue(), id_elemento_origen.intValue(),
+                                id_elemento_destino.intValue(), tipo_conexion, etiqueta, puntos_json, estilo_json,
+                                version_nueva)));
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, operaciones);
+                con.commit();
+                OwnershipCache.putConexion(id_conexion.intValue(), id_diagrama.intValue());
+                ColaboracionHub.publicar(request, id_usuario_sesion, operaciones);
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
             }
             JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
+            JsonUtil.add(body, "version", version_nueva);
             ResponseUtil.writeOk(response, body.build());
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_actualizar_conexion");
@@ -278,8 +388,8 @@ public class ConexionesServlet extends HttpServlet {
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_conexion = parseInt(request.getParameter("id_conexion"));
@@ -293,14 +403,38 @@ public class ConexionesServlet extends HttpServlet {
         }
 
         String sql = "DELETE FROM conexiones_diagrama WHERE id_conexion = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_conexion.intValue());
-            int deleted = ps.executeUpdate();
-            if (deleted == 0) {
+        try (Connection con = DB.getConnection()) {
+            // Se resuelve antes del DELETE para saber en que diagrama registrar la operacion.
+            Integer id_diagrama = OwnershipCache.conexionDiagram(id_conexion.intValue());
+            if (id_diagrama == null) {
+                OwnershipCache.removeConexion(id_conexion.intValue());
                 ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "conexion_no_encontrada");
                 return;
             }
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                long secuencia = OperacionesDiagrama.reservar(con, id_diagrama.intValue(), 1);
+                ps.setInt(1, id_conexion.intValue());
+                int deleted = ps.executeUpdate();
+                OwnershipCache.removeConexion(id_conexion.intValue());
+                if (deleted == 0) {
+                    con.rollback();
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "conexion_no_encontrada");
+                    return;
+                }
+                List<OperacionesDiagrama.Operacion> operaciones = Collections.singletonList(
+                        new OperacionesDiagrama.Operacion(id_diagrama.intValue(), secuencia,
+                                OperacionesDiagrama.CONEXION, OperacionesDiagrama.BORRAR, id_conexion.intValue(), null));
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, operaciones);
+                con.commit();
+                ColaboracionHub.publicar(request, id_usuario_sesion, operaciones);
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
+            }
             JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
             ResponseUtil.writeOk(response, body.build());
         } catch (Exception ex) {
@@ -309,36 +443,97 @@ public class ConexionesServlet extends HttpServlet {
     }
 
     /**
-     * Construye el JSON de una conexion.
+     * Escribe los campos de una conexion en el objeto abierto del generador.
      *
      * Se extrae columnas, maneja nulls y formatea timestamps.
      *
      *
+     * @param gen generador posicionado dentro de un objeto.
      * @param rs ResultSet posicionado en un registro valido.
-     * @return builder con campos de la conexion.
      * @throws Exception si falla la lectura del ResultSet.
      */
-    private JsonObjectBuilder buildConexion(ResultSet rs) throws Exception {
-        JsonObjectBuilder conexion = Json.createObjectBuilder();
-        conexion.add("id_conexion", rs.getInt("id_conexion"));
-        conexion.add("id_diagrama", rs.getInt("id_diagrama"));
-        conexion.add("id_elemento_origen", rs.getInt("id_elemento_origen"));
-        conexion.add("id_elemento_destino", rs.getInt("id_elemento_destino"));
-        conexion.add("tipo_conexion", rs.getString("tipo_conexion"));
-        JsonUtil.add(conexion, "etiqueta", rs.getString("etiqueta"));
-        JsonUtil.add(conexion, "puntos_json", rs.getString("puntos_json"));
-        JsonUtil.add(conexion, "estilo_json", rs.getString("estilo_json"));
+    static void writeConexion(JsonGenerator gen, ResultSet rs) throws Exception {
+        gen.write("id_conexion", rs.getInt("id_conexion"));
+        gen.write("id_diagrama", rs.getInt("id_diagrama"));
+        gen.write("id_elemento_origen", rs.getInt("id_elemento_origen"));
+        gen.write("id_elemento_destino", rs.getInt("id_elemento_destino"));
+        gen.write("tipo_conexion", rs.getString("tipo_conexion"));
+        JsonUtil.write(gen, "etiqueta", rs.getString("etiqueta"));
+        JsonUtil.write(gen, "puntos_json", rs.getString("puntos_json"));
+        JsonUtil.write(gen, "estilo_json", rs.getString("estilo_json"));
+        gen.write("version", rs.getInt("version"));
         Timestamp creado = rs.getTimestamp("fecha_creacion");
         Timestamp actualizado = rs.getTimestamp("fecha_actualizacion");
-        JsonUtil.add(conexion, "fecha_creacion", creado == null ? null : creado.toString());
-        JsonUtil.add(conexion, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
-        return conexion;
+        JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+        JsonUtil.write(gen, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+    }
+
+    /**
+     * Arma el item de un delta de colaboracion con los valores escritos
+     * (textos vacios quedan en null, igual que en BD).
+     *
+     * @param id_conexion id de la conexion.
+     * @param id_diagrama diagrama de la conexion.
+     * @param id_elemento_origen elemento origen.
+     * @param id_elemento_destino elemento destino.
+     * @param tipo_conexion tipo ya normalizado.
+     * @param etiqueta etiqueta recibida.
+     * @param puntos_json puntos recibidos.
+     * @param estilo_json estilo recibido.
+     * @param version version resultante de la fila, o null si no se conoce.
+     * @return item para {@link ColaboracionHub#publicar}.
+     */
+    private JsonObject itemConexion(int id_conexion, int id_diagrama, int id_elemento_origen, int id_elemento_destino,
+            String tipo_conexion, String etiqueta, String puntos_json, String estilo_json, Integer version) {
+        JsonObjectBuilder item = Json.createObjectBuilder()
+                .add("id_conexion", id_conexion)
+                .add("id_diagrama", id_diagrama)
+                .add("id_elemento_origen", id_elemento_origen)
+                .add("id_elemento_destino", id_elemento_destino)
+                .add("tipo_conexion", tipo_conexion);
+        JsonUtil.add(item, "etiqueta", etiqueta == null || etiqueta.trim().isEmpty() ? null : etiqueta);
+        JsonUtil.add(item, "puntos_json", puntos_json == null || puntos_json.trim().isEmpty() ? null : puntos_json);
+        JsonUtil.add(item, "estilo_json", estilo_json == null || estilo_json.trim().isEmpty() ? null : estilo_json);
+        JsonUtil.add(item, "version", version);
+        return item.build();
+    }
+
+    /**
+     * Responde 409 con la fila actual cuando un UPDATE condicionado por
+     * version no afecto filas y la conexion sigue existiendo.
+     *
+     * @param response response HTTP actual.
+     * @param con conexion abierta.
+     * @param id_conexion id de la conexion.
+     * @return true si se escribio el conflicto; false si la conexion no existe.
+     * @throws Exception si falla la lectura o la escritura.
+     */
+    private boolean writeConflicto(HttpServletResponse response, Connection con, int id_conexion) throws Exception {
+        try (PreparedStatement ps = con.prepareStatement(SQL_CONEXION)) {
+            ps.setInt(1, id_conexion);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                Metricas.error("conflicto_version");
+                try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_CONFLICT)) {
+                    gen.writeStartObject();
+                    gen.write("ok", false);
+                    gen.write("mensaje", "conflicto_version");
+                    gen.writeStartObject("actual");
+                    writeConexion(gen, rs);
+                    gen.writeEnd();
+                    gen.writeEnd();
+                }
+                return true;
+            }
+        }
     }
 
     /**
      * Verifica si el diagrama pertenece al usuario de la sesion.
      *
-     * Se consulta el propietario del diagrama y compara con sesion.
+     * Se obtiene el propietario desde OwnershipCache (BD solo en fallo) y compara con sesion.
      *
      *
      * @param id_diagrama id del diagrama.
@@ -349,25 +544,17 @@ public class ConexionesServlet extends HttpServlet {
         if (id_usuario_sesion == null) {
             return false;
         }
-        String sql = "SELECT id_usuario FROM diagramas_uml WHERE id_diagrama = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_diagrama);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id_usuario") == id_usuario_sesion.intValue();
-                }
-            }
+        try {
+            return OwnershipCache.isDiagramOwner(id_diagrama, id_usuario_sesion.intValue());
         } catch (Exception ex) {
             return false;
         }
-        return false;
     }
 
     /**
      * Verifica si una conexion pertenece a un diagrama del usuario autenticado.
      *
-     * Se join conexion->diagrama y compara propietario.
+     * Se resuelve conexion->diagrama->propietario desde OwnershipCache y compara.
      *
      *
      * @param id_conexion id de la conexion.
@@ -378,21 +565,11 @@ public class ConexionesServlet extends HttpServlet {
         if (id_usuario_sesion == null) {
             return false;
         }
-        String sql = "SELECT d.id_usuario FROM diagramas_uml d "
-                + "INNER JOIN conexiones_diagrama c ON c.id_diagrama = d.id_diagrama "
-                + "WHERE c.id_conexion = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_conexion);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id_usuario") == id_usuario_sesion.intValue();
-                }
-            }
+        try {
+            return OwnershipCache.isConexionOwner(id_conexion, id_usuario_sesion.intValue());
         } catch (Exception ex) {
             return false;
         }
-        return false;
     }
 
     /**
@@ -440,42 +617,6 @@ public class ConexionesServlet extends HttpServlet {
         }
     }
 
-    /**
-     * Obtiene id_usuario de la sesion si existe.
-     *
-     * Se lee el atributo "id_usuario" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_usuario o null si no hay sesion.
-     */
-    private Integer getSessionUserId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_usuario");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
-    /**
-     * Obtiene id_rol de la sesion si existe.
-     *
-     * Se lee el atributo "id_rol" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_rol o null si no hay sesion.
-     */
-    private Integer getSessionRoleId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_rol");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
     /**
      * Determina si el rol corresponde a administrador (id_rol = 1).
      *
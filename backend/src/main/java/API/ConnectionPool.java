@@ -0,0 +1,436 @@
+package API;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool acotado de conexiones JDBC usado por {@link DB#getConnection()}.
+ *
+ * Mantiene conexiones fisicas reutilizables para evitar el handshake TCP/auth
+ * de MySQL en cada request. El numero maximo de conexiones prestadas se limita
+ * con un semaforo; los hilos que exceden el limite esperan hasta el timeout
+ * configurado. Cada conexion se valida al prestarse si estuvo inactiva, y una
+ * tarea de mantenimiento reporta prestamos que exceden el umbral de fuga y
+ * cierra conexiones inactivas sobrantes.
+ *
+ */
+public final class ConnectionPool {
+    private static final Logger LOG = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final int max_size;
+    private final int min_idle;
+    private final long borrow_timeout_ms;
+    private final int validation_timeout_s;
+    private final long validation_idle_ms;
+    private final long idle_timeout_ms;
+    private final long leak_threshold_ms;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<>();
+    private final ConcurrentHashMap<Entry, Boolean> borrowed = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final AtomicInteger idle_count = new AtomicInteger();
+    private final AtomicInteger total_count = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong borrow_count = new AtomicLong();
+    private final AtomicLong wait_nanos_total = new AtomicLong();
+    private final AtomicLong wait_nanos_max = new AtomicLong();
+    private final AtomicLong timeout_count = new AtomicLong();
+    private final AtomicLong created_count = new AtomicLong();
+    private final AtomicLong destroyed_count = new AtomicLong();
+    private final AtomicLong leak_count = new AtomicLong();
+
+    /**
+     * Conexion fisica administrada por el pool junto con sus datos de prestamo.
+     */
+    private static final class Entry {
+        final Connection physical;
+        volatile long last_used_ms;
+        volatile long borrowed_at_ms;
+        volatile Throwable borrow_trace;
+        volatile String borrow_thread;
+        volatile boolean leak_reported;
+
+        Entry(Connection physical) {
+            this.physical = physical;
+            this.last_used_ms = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Foto inmutable de los contadores del pool para reportes de operacion.
+     */
+    public static final class Stats {
+        public final int max_size;
+        public final int active;
+        public final int idle;
+        public final int total;
+        public final int waiters;
+        public final long borrows;
+        public final long wait_millis_total;
+        public final long wait_millis_max;
+        public final long timeouts;
+        public final long created;
+        public final long destroyed;
+        public final long leaks;
+
+        Stats(int max_size, int active, int idle, int total, int waiters, long borrows, long wait_millis_total,
+                long wait_millis_max, long timeouts, long created, long destroyed, long leaks) {
+            this.max_size = max_size;
+            this.active = active;
+            this.idle = idle;
+            this.total = total;
+            this.waiters = waiters;
+            this.borrows = borrows;
+            this.wait_millis_total = wait_millis_total;
+            this.wait_millis_max = wait_millis_max;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.leaks = leaks;
+        }
+    }
+
+    /**
+     * @param url URL JDBC de la base de datos.
+     * @param user usuario de conexion.
+     * @param pass contrasena de conexion.
+     * @param max_size maximo de conexiones prestadas simultaneamente.
+     * @param min_idle conexiones inactivas que se conservan aunque expiren.
+     * @param borrow_timeout_ms espera maxima para obtener una conexion.
+     * @param validation_timeout_s timeout de Connection.isValid al prestar.
+     * @param validation_idle_ms inactividad a partir de la cual se valida al prestar.
+     * @param idle_timeout_ms inactividad tras la cual se cierra una conexion sobrante.
+     * @param leak_threshold_ms tiempo de prestamo a partir del cual se reporta fuga (0 = desactivado).
+     */
+    public ConnectionPool(String url, String user, String pass, int max_size, int min_idle, long borrow_timeout_ms,
+            int validation_timeout_s, long validation_idle_ms, long idle_timeout_ms, long leak_threshold_ms) {
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.max_size = Math.max(1, max_size);
+        this.min_idle = Math.max(0, Math.min(min_idle, this.max_size));
+        this.borrow_timeout_ms = Math.max(0L, borrow_timeout_ms);
+        this.validation_timeout_s = Math.max(1, validation_timeout_s);
+        this.validation_idle_ms = Math.max(0L, validation_idle_ms);
+        this.idle_timeout_ms = idle_timeout_ms;
+        this.leak_threshold_ms = leak_threshold_ms;
+        this.permits = new Semaphore(this.max_size, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "db-pool-housekeeper");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long period_ms = 30000L;
+        if (leak_threshold_ms > 0) {
+            period_ms = Math.max(1000L, Math.min(period_ms, leak_threshold_ms / 2));
+        }
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    detectLeaks();
+                    evictIdle();
+                } catch (RuntimeException ex) {
+                    LOG.log(Level.WARNING, "Fallo en mantenimiento del pool", ex);
+                }
+            }
+        }, period_ms, period_ms, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexion del pool; al cerrarla regresa al pool.
+     *
+     * Se espera un permiso del semaforo (hasta borrow_timeout_ms), se toma la
+     * conexion inactiva mas reciente (LIFO) validandola si estuvo inactiva
+     * demasiado tiempo, o se abre una nueva si no hay inactivas.
+     *
+     *
+     * @return conexion logica cuyo close() la devuelve al pool.
+     * @throws SQLException si el pool esta cerrado, se agota el timeout o falla la apertura.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("pool_cerrado");
+        }
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrow_timeout_ms, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("espera_conexion_interrumpida", ex);
+        } finally {
+            waiters.decrementAndGet();
+        }
+        long waited = System.nanoTime() - start;
+        wait_nanos_total.addAndGet(waited);
+        updateMax(wait_nanos_max, waited);
+        if (!acquired) {
+            timeout_count.incrementAndGet();
+            throw new SQLException("timeout_pool_conexiones (" + borrow_timeout_ms + " ms)");
+        }
+
+        try {
+            Entry entry = takeIdle();
+            if (entry == null) {
+                entry = new Entry(DriverManager.getConnection(url, user, pass));
+                total_count.incrementAndGet();
+                created_count.incrementAndGet();
+            }
+            entry.borrowed_at_ms = System.currentTimeMillis();
+            entry.borrow_thread = Thread.currentThread().getName();
+            entry.borrow_trace = leak_threshold_ms > 0 ? new Throwable("prestamo de conexion") : null;
+            entry.leak_reported = false;
+            borrowed.put(entry, Boolean.TRUE);
+            borrow_count.incrementAndGet();
+            return wrap(entry);
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Toma una conexion inactiva valida o null si no hay.
+     *
+     * Se descartan conexiones cerradas o que no pasan isValid tras estar
+     * inactivas mas de validation_idle_ms.
+     *
+     *
+     * @return entrada lista para prestar o null.
+     */
+    private Entry takeIdle() {
+        Entry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            idle_count.decrementAndGet();
+            long idle_ms = System.currentTimeMillis() - entry.last_used_ms;
+            boolean valid;
+            try {
+                valid = !entry.physical.isClosed()
+                        && (idle_ms < validation_idle_ms || entry.physical.isValid(validation_timeout_s));
+            } catch (SQLException ex) {
+                valid = false;
+            }
+            if (valid) {
+                return entry;
+            }
+            destroy(entry);
+        }
+        return null;
+    }
+
+    /**
+     * Regresa una conexion al pool restaurando su estado por defecto.
+     *
+     * Se revierte cualquier transaccion abierta y se restaura autocommit y
+     * read-only; si algo falla la conexion fisica se descarta.
+     *
+     *
+     * @param entry entrada prestada.
+     */
+    private void release(Entry entry) {
+        borrowed.remove(entry);
+        entry.borrow_trace = null;
+        boolean reusable = !closed;
+        try {
+            if (reusable && !entry.physical.getAutoCommit()) {
+                entry.physical.rollback();
+                entry.physical.setAutoCommit(true);
+            }
+            if (reusable && entry.physical.isReadOnly()) {
+                entry.physical.setReadOnly(false);
+            }
+        } catch (SQLException ex) {
+            reusable = false;
+        }
+        if (reusable) {
+            entry.last_used_ms = System.currentTimeMillis();
+            idle.offerFirst(entry);
+            idle_count.incrementAndGet();
+        } else {
+            destroy(entry);
+        }
+        permits.release();
+    }
+
+    /**
+     * Cierra la conexion fisica y ajusta contadores.
+     *
+     * @param entry entrada a descartar.
+     */
+    private void destroy(Entry entry) {
+        total_count.decrementAndGet();
+        destroyed_count.incrementAndGet();
+        try {
+            entry.physical.close();
+        } catch (SQLException ex) {
+            // La conexion ya no es usable; no hay nada mas que liberar.
+        }
+    }
+
+    /**
+     * Reporta en el log los prestamos que exceden el umbral de fuga.
+     *
+     * Cada prestamo se reporta una sola vez con el stack trace del punto
+     * donde se obtuvo la conexion.
+     *
+     */
+    private void detectLeaks() {
+        if (leak_threshold_ms <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Entry entry : borrowed.keySet()) {
+            long held = now - entry.borrowed_at_ms;
+            if (!entry.leak_reported && held > leak_threshold_ms) {
+                entry.leak_reported = true;
+                leak_count.incrementAndGet();
+                LOG.log(Level.WARNING, "Posible fuga de conexion: prestada hace " + held + " ms por el hilo "
+                        + entry.borrow_thread, entry.borrow_trace);
+            }
+        }
+    }
+
+    /**
+     * Cierra conexiones inactivas por encima de min_idle que superan idle_timeout_ms.
+     */
+    private void evictIdle() {
+        if (idle_timeout_ms <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = idle.descendingIterator();
+        while (it.hasNext() && idle_count.get() > min_idle) {
+            Entry entry = it.next();
+            if (now - entry.last_used_ms > idle_timeout_ms && idle.removeFirstOccurrence(entry)) {
+                idle_count.decrementAndGet();
+                destroy(entry);
+            }
+        }
+    }
+
+    /**
+     * Cierra el pool: detiene el mantenimiento y cierra las conexiones inactivas.
+     * Las conexiones prestadas se cierran al devolverse.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        Entry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            idle_count.decrementAndGet();
+            destroy(entry);
+        }
+    }
+
+    /**
+     * @return foto actual de los contadores del pool.
+     */
+    public Stats getStats() {
+        int idle_now = idle_count.get();
+        int active = borrowed.size();
+        return new Stats(
+                max_size,
+                active,
+                idle_now,
+                total_count.get(),
+                waiters.get(),
+                borrow_count.get(),
+                TimeUnit.NANOSECONDS.toMillis(wait_nanos_total.get()),
+                TimeUnit.NANOSECONDS.toMillis(wait_nanos_max.get()),
+                timeout_count.get(),
+                created_count.get(),
+                destroyed_count.get(),
+                leak_count.get()
+        );
+    }
+
+    /**
+     * Actualiza un maximo atomico sin bloqueo.
+     *
+     * @param target acumulador.
+     * @param value valor observado.
+     */
+    private static void updateMax(AtomicLong target, long value) {
+        long current;
+        while (value > (current = target.get())) {
+            if (target.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Envuelve la conexion fisica en un proxy cuyo close() la devuelve al pool.
+     *
+     * @param entry entrada prestada.
+     * @return conexion logica.
+     */
+    private Connection wrap(final Entry entry) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean logical_closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("close".equals(name)) {
+                    if (!logical_closed) {
+                        logical_closed = true;
+                        release(entry);
+                    }
+                    return null;
+                }
+                if ("isClosed".equals(name)) {
+                    return logical_closed || entry.physical.isClosed();
+                }
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                }
+                if ("toString".equals(name)) {
+                    return "PooledConnection[" + entry.physical + "]";
+                }
+                if (logical_closed) {
+                    throw new SQLException("conexion_cerrada");
+                }
+                try {
+                    return method.invoke(entry.physical, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+}
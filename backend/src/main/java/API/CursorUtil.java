@@ -0,0 +1,137 @@
+package API;
+
+import java.nio.charset.StandardCharsets;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Helpers de paginacion por cursor (keyset) para los listados.
+ *
+ * El cursor es opaco para el cliente: codifica en hexadecimal el ultimo id
+ * entregado (seguro en URL sin escapar), y la pagina siguiente se busca con "id > ultimo ORDER BY id
+ * LIMIT n" usando la llave primaria (o el indice secundario que la incluye)
+ * en lugar de OFFSET, por lo que el costo no crece con la profundidad.
+ *
+ */
+public final class CursorUtil {
+    public static final int DEFAULT_LIMIT = 200;
+    public static final int MAX_LIMIT = 1000;
+
+    private static final String PREFIJO = "v1:";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private CursorUtil() {
+    }
+
+    /**
+     * Lee el parametro limit.
+     *
+     * Se usa DEFAULT_LIMIT si no viene y se recorta a MAX_LIMIT.
+     *
+     *
+     * @param value texto recibido.
+     * @return limite a aplicar o null si el valor no es un entero positivo.
+     */
+    public static Integer parseLimit(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(value.trim());
+            if (limit <= 0) {
+                return null;
+            }
+            return Math.min(limit, MAX_LIMIT);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Codifica el ultimo id entregado como cursor opaco.
+     *
+     * @param ultimo_id id de la ultima fila de la pagina.
+     * @return cursor para pedir la pagina siguiente.
+     */
+    public static String encode(int ultimo_id) {
+        byte[] raw = (PREFIJO + ultimo_id).getBytes(StandardCharsets.UTF_8);
+        return toHex(raw);
+    }
+
+    /**
+     * Decodifica un cursor recibido.
+     *
+     * Se retorna 0 si no viene cursor (primera pagina) porque los ids son
+     * AUTO_INCREMENT positivos.
+     *
+     *
+     * @param cursor texto recibido.
+     * @return ultimo id entregado, 0 si no hay cursor o null si es invalido.
+     */
+    public static Integer decode(String cursor) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            String raw = new String(fromHex(cursor.trim()), StandardCharsets.UTF_8);
+            if (!raw.startsWith(PREFIJO)) {
+                return null;
+            }
+            int id = Integer.parseInt(raw.substring(PREFIJO.length()));
+            return id < 0 ? null : id;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Escribe next_cursor en el objeto abierto (null si no hay mas filas).
+     *
+     * @param gen generador posicionado dentro del objeto de respuesta.
+     * @param hay_mas true si existe al menos una fila despues de la pagina.
+     * @param ultimo_id id de la ultima fila escrita.
+     */
+    public static void writeNext(JsonGenerator gen, boolean hay_mas, int ultimo_id) {
+        if (hay_mas) {
+            gen.write("next_cursor", encode(ultimo_id));
+        } else {
+            gen.writeNull("next_cursor");
+        }
+    }
+
+    /**
+     * @param bytes bytes a codificar.
+     * @return representacion hexadecimal en minusculas.
+     */
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    /**
+     * @param hex texto hexadecimal.
+     * @return bytes decodificados.
+     * @throws IllegalArgumentException si el texto no es hexadecimal valido.
+     */
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("hex_invalido");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int alto = Character.digit(hex.charAt(2 * i), 16);
+            int bajo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (alto < 0 || bajo < 0) {
+                throw new IllegalArgumentException("hex_invalido");
+            }
+            bytes[i] = (byte) ((alto << 4) | bajo);
+        }
+        return bytes;
+    }
+}
@@ -3,20 +3,28 @@ package API;
 import java.io.IOException;
 import java.io.Serializable;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.logging.Logger;
 
 /**
  * Utilidad de conexion JDBC para el backend.
  *
  * Centraliza credenciales/URL, carga el driver y ofrece helpers simples para
- * ejecutar consultas. Se usa como wrapper ligero (no es pool), por lo que cada
- * servlet suele abrir/cerrar conexiones por request.
+ * ejecutar consultas. {@link #getConnection()} presta conexiones desde un
+ * {@link ConnectionPool} acotado; los servlets siguen usando try-with-resources
+ * y el close() devuelve la conexion al pool en lugar de cerrarla.
+ *
+ * Con una URL jdbc:h2: el backend corre sobre H2 embebido (sin servidor
+ * MySQL) y {@link #prepararEsquema()} crea las tablas al arrancar.
  *
  */
 public class DB implements Serializable {
+    private static final Logger LOG = Logger.getLogger(DB.class.getName());
+
     /**
      * Obtiene una configuracion priorizando variable de entorno, luego propiedad JVM
      * y finalmente un valor por defecto.
@@ -30,7 +38,7 @@ public class DB implements Serializable {
      * y solo si ambos estan vacios retorna el fallback.
      *
      */
-    private static String getValue(String env_key, String prop_key, String fallback) {
+    static String getValue(String env_key, String prop_key, String fallback) {
         String value = System.getenv(env_key);
         if (value == null || value.trim().isEmpty()) {
             value = System.getProperty(prop_key);
@@ -41,15 +49,51 @@ public class DB implements Serializable {
         return value.trim();
     }
 
-    public static final String DRIVER = "com.mysql.cj.jdbc.Driver";
+    /**
+     * Obtiene una configuracion numerica con la misma prioridad que
+     * {@link #getValue(String, String, String)}.
+     *
+     * @param env_key variable de entorno a consultar.
+     * @param prop_key propiedad del sistema (System.getProperty).
+     * @param fallback valor por defecto si no hay configuracion o no es numerica.
+     * @return valor entero configurado o el fallback.
+     */
+    static long getLongValue(String env_key, String prop_key, long fallback) {
+        String value = getValue(env_key, prop_key, null);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+
     public static final String URL = getValue(
             "DB_URL",
             "db.url",
-            "jdbc:mysql://localhost:3306/aplicacion?useSSL=false&serverTimezone=UTC&useUnicode=true&characterEncoding=UTF-8"
+            "jdbc:mysql://localhost:3306/aplicacion?useSSL=false&serverTimezone=UTC&useUnicode=true&characterEncoding=UTF-8&rewriteBatchedStatements=true"
     );
+    // Modo embebido: una URL jdbc:h2: (p. ej. jdbc:h2:./datos/aplicacion;MODE=MySQL;DATABASE_TO_LOWER=TRUE)
+    // usa H2 en lugar de un servidor MySQL y crea el esquema al arrancar.
+    public static final boolean EMBEBIDA = URL.startsWith("jdbc:h2:");
+    public static final String DRIVER = getValue("DB_DRIVER", "db.driver",
+            EMBEBIDA ? "org.h2.Driver" : "com.mysql.cj.jdbc.Driver");
     public static final String USER = getValue("DB_USER", "db.user", "root");
     public static final String PASS = getValue("DB_PASS", "db.pass", "2005");
 
+    // Parametros del pool; se leen igual que las credenciales.
+    public static final int POOL_MAX = (int) getLongValue("DB_POOL_MAX", "db.pool.max", 20);
+    public static final int POOL_MIN_IDLE = (int) getLongValue("DB_POOL_MIN_IDLE", "db.pool.min_idle", 2);
+    public static final long POOL_TIMEOUT_MS = getLongValue("DB_POOL_TIMEOUT_MS", "db.pool.timeout_ms", 5000);
+    public static final int POOL_VALIDATION_TIMEOUT_S = (int) getLongValue(
+            "DB_POOL_VALIDATION_TIMEOUT_S", "db.pool.validation_timeout_s", 2);
+    public static final long POOL_VALIDATION_IDLE_MS = getLongValue(
+            "DB_POOL_VALIDATION_IDLE_MS", "db.pool.validation_idle_ms", 5000);
+    public static final long POOL_IDLE_TIMEOUT_MS = getLongValue("DB_POOL_IDLE_TIMEOUT_MS", "db.pool.idle_timeout_ms", 600000);
+    public static final long POOL_LEAK_MS = getLongValue("DB_POOL_LEAK_MS", "db.pool.leak_ms", 60000);
+
     // Carga el driver JDBC al inicializar la clase para fallar temprano si falta
     // en el classpath; evita errores tardios en el primer request.
     static {
@@ -60,6 +104,9 @@ public class DB implements Serializable {
         }
     }
 
+    private static final ConnectionPool POOL = new ConnectionPool(URL, USER, PASS, POOL_MAX, POOL_MIN_IDLE,
+            POOL_TIMEOUT_MS, POOL_VALIDATION_TIMEOUT_S, POOL_VALIDATION_IDLE_MS, POOL_IDLE_TIMEOUT_MS, POOL_LEAK_MS);
+
     private String url;
     private String driver;
     private transient Connection conexion;
@@ -187,16 +234,84 @@ public class DB implements Serializable {
     }
 
     /**
-     * Abre una conexion nueva con las credenciales configuradas.
+     * Presta una conexion del pool compartido.
      *
-     * Se usa DriverManager con URL/USER/PASS estaticos.
+     * Dentro de un request con {@link RequestConnection} activo se entrega una
+     * vista de la conexion del request; fuera de el se delega en
+     * {@link ConnectionPool#borrow()}. En ambos casos el close() es seguro, por
+     * lo que los try-with-resources existentes no cambian. La conexion se
+     * entrega envuelta por {@link SqlMetricas} para medir cada sentencia.
      *
      *
      * @return conexion JDBC lista para usar.
-     * @throws SQLException si no se puede abrir la conexion.
+     * @throws SQLException si no se puede obtener una conexion a tiempo.
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASS);
+        if (RequestConnection.isActive()) {
+            return SqlMetricas.envolver(RequestConnection.acquire());
+        }
+        return SqlMetricas.envolver(POOL.borrow());
+    }
+
+    /**
+     * Pide al driver entregar filas en streaming en lugar de cargar el
+     * ResultSet completo en memoria.
+     *
+     * Con MySQL se usa fetchSize = Integer.MIN_VALUE (fila por fila); mientras
+     * el ResultSet siga abierto no se puede usar la misma conexion para otra
+     * consulta, por lo que solo aplica a lecturas que se recorren y cierran
+     * antes de la siguiente sentencia. Con otros drivers no hace nada.
+     *
+     *
+     * @param ps sentencia de solo lectura, forward-only.
+     * @throws SQLException si el driver rechaza el fetchSize.
+     */
+    public static void streamResults(PreparedStatement ps) throws SQLException {
+        if (URL.startsWith("jdbc:mysql:")) {
+            ps.setFetchSize(Integer.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Presta una conexion del pool sin pasar por el alcance del request.
+     *
+     * @return conexion cuyo close() la devuelve al pool.
+     * @throws SQLException si no se puede obtener una conexion a tiempo.
+     */
+    static Connection borrowPooled() throws SQLException {
+        return POOL.borrow();
+    }
+
+    /**
+     * En modo embebido crea el esquema de basededatos.sql si la base esta
+     * vacia; con MySQL no hace nada (el esquema se instala aparte).
+     *
+     * @throws SQLException si falla alguna sentencia del esquema.
+     * @throws IOException si el script no esta en el classpath.
+     */
+    public static void prepararEsquema() throws SQLException, IOException {
+        if (!EMBEBIDA) {
+            return;
+        }
+        try (Connection con = POOL.borrow()) {
+            if (EsquemaEmbebido.inicializar(con)) {
+                LOG.info("Esquema embebido creado en " + URL);
+            }
+        }
+    }
+
+    /**
+     * @return contadores actuales del pool (activas, inactivas, en espera, tiempos).
+     */
+    public static ConnectionPool.Stats getPoolStats() {
+        return POOL.getStats();
+    }
+
+    /**
+     * Cierra el pool compartido; se invoca al detener la aplicacion.
+     */
+    public static void shutdown() {
+        POOL.close();
     }
 
     /**
@@ -0,0 +1,279 @@
+package API;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import javax.json.stream.JsonGenerator;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de sincronizacion incremental de un diagrama.
+ *
+ * Recibe la version que conoce el cliente (campo "version" del snapshot o de
+ * una sincronizacion anterior) y devuelve solo los elementos y conexiones
+ * creados o modificados desde entonces, mas los ids borrados o movidos a otro
+ * diagrama como tombstones. Los cambios se obtienen del registro de
+ * operaciones ({@link OperacionesDiagrama}), por lo que el costo depende del
+ * tamano del cambio y no del diagrama.
+ *
+ * Contrato de borrado en cascada: al borrar un elemento, ElementosServlet
+ * registra en la misma transaccion el borrado de cada conexion suya y la
+ * actualizacion de cada hijo (id_elemento_padre = null), por lo que esas
+ * conexiones aparecen en conexiones_borradas y esos hijos en elementos; el
+ * cliente no necesita deducir los efectos del ON DELETE.
+ *
+ * Si la version ya se compacto (anterior al horizonte) o es mayor que la
+ * actual, responde el contenido completo con completo = true.
+ *
+ */
+@WebServlet(name = "DiagramaCambiosServlet", urlPatterns = {"/api/diagramas/cambios"})
+public class DiagramaCambiosServlet extends HttpServlet {
+
+    private static final String SQL_DIAGRAMA = "SELECT id_diagrama, id_usuario, nombre, descripcion, estado, "
+            + "ancho_lienzo, alto_lienzo, configuracion_json, ultima_secuencia, version, fecha_creacion, "
+            + "fecha_actualizacion FROM diagramas_uml WHERE id_diagrama = ?";
+    private static final String COLUMNAS_ELEMENTO = "SELECT e.id_elemento, e.id_diagrama, e.id_elemento_padre, "
+            + "e.tipo_elemento, e.etiqueta, e.pos_x, e.pos_y, e.ancho, e.alto, e.rotacion_grados, e.orden_z, "
+            + "e.estilo_json, e.metadatos_json, e.version, e.fecha_creacion, e.fecha_actualizacion "
+            + "FROM elementos_diagrama e ";
+    private static final String COLUMNAS_CONEXION = "SELECT c.id_conexion, c.id_diagrama, c.id_elemento_origen, "
+            + "c.id_elemento_destino, c.tipo_conexion, c.etiqueta, c.puntos_json, c.estilo_json, c.version, "
+            + "c.fecha_creacion, c.fecha_actualizacion FROM conexiones_diagrama c ";
+
+    // Filas actuales de las entidades tocadas desde la version (un solo IN con subconsulta, sin listas de ids).
+    private static final String SQL_ELEMENTOS_CAMBIADOS = COLUMNAS_ELEMENTO
+            + "WHERE e.id_diagrama = ? AND e.id_elemento IN (SELECT o.id_entidad FROM operaciones_diagrama o "
+            + "WHERE o.id_diagrama = ? AND o.secuencia > ? AND o.entidad = 'ELEMENTO') ORDER BY e.id_elemento";
+    private static final String SQL_CONEXIONES_CAMBIADAS = COLUMNAS_CONEXION
+            + "WHERE c.id_diagrama = ? AND c.id_conexion IN (SELECT o.id_entidad FROM operaciones_diagrama o "
+            + "WHERE o.id_diagrama = ? AND o.secuencia > ? AND o.entidad = 'CONEXION') ORDER BY c.id_conexion";
+
+    // Tocadas desde la version que ya no estan en el diagrama (borradas o movidas).
+    private static final String SQL_ELEMENTOS_BORRADOS = "SELECT DISTINCT o.id_entidad FROM operaciones_diagrama o "
+            + "WHERE o.id_diagrama = ? AND o.secuencia > ? AND o.entidad = 'ELEMENTO' AND NOT EXISTS ("
+            + "SELECT 1 FROM elementos_diagrama e WHERE e.id_elemento = o.id_entidad "
+            + "AND e.id_diagrama = o.id_diagrama) ORDER BY o.id_entidad";
+    private static final String SQL_CONEXIONES_BORRADAS = "SELECT DISTINCT o.id_entidad FROM operaciones_diagrama o "
+            + "WHERE o.id_diagrama = ? AND o.secuencia > ? AND o.entidad = 'CONEXION' AND NOT EXISTS ("
+            + "SELECT 1 FROM conexiones_diagrama c WHERE c.id_conexion = o.id_entidad "
+            + "AND c.id_diagrama = o.id_diagrama) ORDER BY o.id_entidad";
+
+    private static final String SQL_ELEMENTOS = COLUMNAS_ELEMENTO + "WHERE e.id_diagrama = ? ORDER BY e.id_elemento";
+    private static final String SQL_CONEXIONES = COLUMNAS_CONEXION + "WHERE c.id_diagrama = ? ORDER BY c.id_conexion";
+
+    /**
+     * Obtiene los cambios de un diagrama desde una version.
+     * No retorna valor; responde 400/403/404/500 segun validaciones.
+     *
+     * Flujo:
+     *
+     * - Valida id_diagrama y version (0 por defecto).
+     * - En una misma lectura consistente lee la cabecera (propietario y
+     *   version actual) y el horizonte del registro.
+     * - Si la version sigue en el registro escribe las filas tocadas y los
+     *   tombstones; si no, el contenido completo.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
+        boolean es_admin = isAdmin(id_rol_sesion);
+
+        Integer id_diagrama = parseInt(request.getParameter("id_diagrama"));
+        if (id_diagrama == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "id_diagrama_requerido");
+            return;
+        }
+        String version_param = request.getParameter("version");
+        Long version = version_param == null ? Long.valueOf(0) : parseLong(version_param);
+        if (version == null || version.longValue() < 0) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "version_invalida");
+            return;
+        }
+
+        try (Connection con = DB.getConnection()) {
+            // Una transaccion de solo lectura: version, filas y tombstones salen del mismo estado.
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(SQL_DIAGRAMA)) {
+                ps.setInt(1, id_diagrama.intValue());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "diagrama_no_encontrado");
+                        return;
+                    }
+                    int id_usuario_propietario = rs.getInt("id_usuario");
+                    OwnershipCache.putDiagram(id_diagrama.intValue(), id_usuario_propietario);
+                    if (!es_admin && (id_usuario_sesion == null || id_usuario_propietario != id_usuario_sesion.intValue())) {
+                        ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+                        return;
+                    }
+                    long actual = rs.getLong("ultima_secuencia");
+                    long horizonte = OperacionesDiagrama.horizonte(con, id_diagrama.intValue());
+                    boolean completo = version.longValue() < horizonte || version.longValue() > actual;
+
+                    try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                        gen.writeStartObject();
+                        gen.write("ok", true);
+                        gen.write("version", actual);
+                        gen.write("completo", completo);
+                        gen.writeStartObject("diagrama");
+                        DiagramasServlet.writeDiagrama(gen, rs);
+                        gen.writeEnd();
+                        if (completo) {
+                            writeFilas(gen, con, "elementos", SQL_ELEMENTOS, id_diagrama.intValue(), -1, true);
+                            writeFilas(gen, con, "conexiones", SQL_CONEXIONES, id_diagrama.intValue(), -1, false);
+                            gen.writeStartArray("elementos_borrados").writeEnd();
+                            gen.writeStartArray("conexiones_borradas").writeEnd();
+                        } else {
+                            writeFilas(gen, con, "elementos", SQL_ELEMENTOS_CAMBIADOS, id_diagrama.intValue(),
+                                    version.longValue(), true);
+                            writeFilas(gen, con, "conexiones", SQL_CONEXIONES_CAMBIADAS, id_diagrama.intValue(),
+                                    version.longValue(), false);
+                            writeIds(gen, con, "elementos_borrados", SQL_ELEMENTOS_BORRADOS, id_diagrama.intValue(),
+                                    version.longValue());
+                            writeIds(gen, con, "conexiones_borradas", SQL_CONEXIONES_BORRADAS,
+                                    id_diagrama.intValue(), version.longValue());
+                        }
+                        gen.writeEnd();
+                    }
+                }
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
+            }
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_cambios_diagrama");
+        }
+    }
+
+    /**
+     * Escribe un arreglo de elementos o conexiones en streaming.
+     *
+     * @param gen generador dentro del objeto de respuesta.
+     * @param con conexion en la transaccion de lectura.
+     * @param nombre nombre del arreglo.
+     * @param sql consulta de filas (completa o de cambios).
+     * @param id_diagrama diagrama consultado.
+     * @param version version del cliente; -1 para la consulta completa.
+     * @param elementos true para elementos, false para conexiones.
+     * @throws Exception si falla la lectura.
+     */
+    private void writeFilas(JsonGenerator gen, Connection con, String nombre, String sql, int id_diagrama,
+            long version, boolean elementos) throws Exception {
+        gen.writeStartArray(nombre);
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, id_diagrama);
+            if (version >= 0) {
+                ps.setInt(2, id_diagrama);
+                ps.setLong(3, version);
+            }
+            DB.streamResults(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gen.writeStartObject();
+                    if (elementos) {
+                        OwnershipCache.putElement(rs.getInt("id_elemento"), id_diagrama);
+                        ElementosServlet.writeElemento(gen, rs);
+                    } else {
+                        OwnershipCache.putConexion(rs.getInt("id_conexion"), id_diagrama);
+                        ConexionesServlet.writeConexion(gen, rs);
+                    }
+                    gen.writeEnd();
+                }
+            }
+        }
+        gen.writeEnd();
+    }
+
+    /**
+     * Escribe un arreglo de ids borrados (tombstones).
+     *
+     * @param gen generador dentro del objeto de respuesta.
+     * @param con conexion en la transaccion de lectura.
+     * @param nombre nombre del arreglo.
+     * @param sql consulta de ids tocados que ya no estan en el diagrama.
+     * @param id_diagrama diagrama consultado.
+     * @param version version del cliente.
+     * @throws Exception si falla la lectura.
+     */
+    private void writeIds(JsonGenerator gen, Connection con, String nombre, String sql, int id_diagrama,
+            long version) throws Exception {
+        gen.writeStartArray(nombre);
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, id_diagrama);
+            ps.setLong(2, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gen.write(rs.getInt(1));
+                }
+            }
+        }
+        gen.writeEnd();
+    }
+
+    /**
+     * Parsea un entero desde query string.
+     *
+     * Se recorta el texto y se parsea con manejo de NumberFormatException.
+     *
+     *
+     * @param value texto recibido.
+     * @return Integer o null si no es valido.
+     */
+    private Integer parseInt(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Parsea una version desde query string.
+     *
+     * @param value texto recibido.
+     * @return Long o null si no es valido.
+     */
+    private Long parseLong(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * Se usa como regla simple de autorizacion en todos los servlets.
+     *
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
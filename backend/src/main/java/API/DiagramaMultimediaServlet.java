@@ -14,7 +14,6 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 /**
  * Servlet para administrar la relacion entre diagramas y archivos multimedia.
@@ -42,8 +41,8 @@ public class DiagramaMultimediaServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_diagrama = parseInt(request.getParameter("id_diagrama"));
@@ -103,8 +102,8 @@ public class DiagramaMultimediaServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         JsonObject payload = JsonUtil.readJsonObject(request);
@@ -160,8 +159,8 @@ public class DiagramaMultimediaServlet extends HttpServlet {
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_diagrama = parseInt(request.getParameter("id_diagrama"));
@@ -195,7 +194,7 @@ public class DiagramaMultimediaServlet extends HttpServlet {
     /**
      * Verifica si el diagrama pertenece al usuario de la sesion.
      *
-     * Se consulta id_usuario propietario y compara con sesion.
+     * Se obtiene el propietario desde OwnershipCache (BD solo en fallo) y compara con sesion.
      *
      *
      * @param id_diagrama id del diagrama.
@@ -206,19 +205,11 @@ public class DiagramaMultimediaServlet extends HttpServlet {
         if (id_usuario_sesion == null) {
             return false;
         }
-        String sql = "SELECT id_usuario FROM diagramas_uml WHERE id_diagrama = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_diagrama);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id_usuario") == id_usuario_sesion.intValue();
-                }
-            }
+        try {
+            return OwnershipCache.isDiagramOwner(id_diagrama, id_usuario_sesion.intValue());
         } catch (Exception ex) {
             return false;
         }
-        return false;
     }
 
     /**
@@ -241,42 +232,6 @@ public class DiagramaMultimediaServlet extends HttpServlet {
         }
     }
 
-    /**
-     * Obtiene id_usuario de la sesion si existe.
-     *
-     * Se lee el atributo "id_usuario" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_usuario o null si no hay sesion.
-     */
-    private Integer getSessionUserId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_usuario");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
-    /**
-     * Obtiene id_rol de la sesion si existe.
-     *
-     * Se lee el atributo "id_rol" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_rol o null si no hay sesion.
-     */
-    private Integer getSessionRoleId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_rol");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
     /**
      * Determina si el rol corresponde a administrador (id_rol = 1).
      *
@@ -0,0 +1,214 @@
+package API;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import javax.json.stream.JsonGenerator;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de lectura del contenido completo de un diagrama en un solo request.
+ *
+ * Devuelve cabecera, elementos, conexiones y multimedia (del diagrama y de sus
+ * elementos) usando una sola conexion y una sola verificacion de propiedad.
+ * La respuesta se escribe en streaming fila por fila, por lo que abrir un
+ * diagrama grande no construye el arbol JSON completo en memoria.
+ *
+ * Incluye la version del diagrama (ultima secuencia de su registro de
+ * operaciones) para sincronizar despues con {@link DiagramaCambiosServlet}.
+ *
+ */
+@WebServlet(name = "DiagramaSnapshotServlet", urlPatterns = {"/api/diagramas/snapshot"})
+public class DiagramaSnapshotServlet extends HttpServlet {
+
+    /**
+     * Obtiene el snapshot de un diagrama.
+     * No retorna valor; responde 400/403/404/500 segun validaciones.
+     *
+     * Flujo:
+     *
+     * - Lee la cabecera del diagrama y valida propiedad/rol con su id_usuario.
+     * - Abre el stream JSON y escribe la cabecera.
+     * - Escribe elementos, conexiones, multimedia del diagrama y de elementos.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
+        boolean es_admin = isAdmin(id_rol_sesion);
+
+        Integer id_diagrama = parseInt(request.getParameter("id_diagrama"));
+        if (id_diagrama == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "id_diagrama_requerido");
+            return;
+        }
+
+        String sqlDiagrama = "SELECT id_diagrama, id_usuario, nombre, descripcion, estado, ancho_lienzo, alto_lienzo, "
+                + "configuracion_json, ultima_secuencia, version, fecha_creacion, fecha_actualizacion "
+                + "FROM diagramas_uml WHERE id_diagrama = ?";
+        String sqlElementos = "SELECT id_elemento, id_diagrama, id_elemento_padre, tipo_elemento, etiqueta, pos_x, pos_y, "
+                + "ancho, alto, rotacion_grados, orden_z, estilo_json, metadatos_json, version, fecha_creacion, "
+                + "fecha_actualizacion FROM elementos_diagrama WHERE id_diagrama = ? ORDER BY id_elemento";
+        String sqlConexiones = "SELECT id_conexion, id_diagrama, id_elemento_origen, id_elemento_destino, tipo_conexion, "
+                + "etiqueta, puntos_json, estilo_json, version, fecha_creacion, fecha_actualizacion "
+                + "FROM conexiones_diagrama WHERE id_diagrama = ? ORDER BY id_conexion";
+        String sqlDiagramaMultimedia = "SELECT dm.id_diagrama, dm.id_archivo, dm.descripcion, dm.orden, "
+                + "am.tipo_media, am.titulo, am.ruta_archivo "
+                + "FROM diagrama_multimedia dm "
+                + "INNER JOIN archivos_multimedia am ON am.id_archivo = dm.id_archivo "
+                + "WHERE dm.id_diagrama = ? ORDER BY dm.orden, dm.id_archivo";
+        String sqlElementoMultimedia = "SELECT em.id_elemento, em.id_archivo, em.tipo_uso, "
+                + "am.tipo_media, am.titulo, am.ruta_archivo "
+                + "FROM elemento_multimedia em "
+                + "INNER JOIN elementos_diagrama e ON e.id_elemento = em.id_elemento "
+                + "INNER JOIN archivos_multimedia am ON am.id_archivo = em.id_archivo "
+                + "WHERE e.id_diagrama = ? ORDER BY em.id_elemento, em.id_archivo";
+
+        try (Connection con = DB.getConnection()) {
+            try (PreparedStatement ps = con.prepareStatement(sqlDiagrama)) {
+                ps.setInt(1, id_diagrama.intValue());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "diagrama_no_encontrado");
+                        return;
+                    }
+                    // Unica verificacion de acceso: el propietario viene en la cabecera.
+                    int id_usuario_propietario = rs.getInt("id_usuario");
+                    OwnershipCache.putDiagram(id_diagrama.intValue(), id_usuario_propietario);
+                    if (!es_admin && (id_usuario_sesion == null || id_usuario_propietario != id_usuario_sesion.intValue())) {
+                        ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+                        return;
+                    }
+
+                    try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                        gen.writeStartObject();
+                        gen.write("ok", true);
+                        // Se lee antes que las filas: a lo sumo las filas son mas nuevas que la version.
+                        gen.write("version", rs.getLong("ultima_secuencia"));
+                        gen.writeStartObject("diagrama");
+                        DiagramasServlet.writeDiagrama(gen, rs);
+                        gen.writeEnd();
+
+                        gen.writeStartArray("elementos");
+                        try (PreparedStatement psElementos = con.prepareStatement(sqlElementos)) {
+                            psElementos.setInt(1, id_diagrama.intValue());
+                            DB.streamResults(psElementos);
+                            try (ResultSet rsElementos = psElementos.executeQuery()) {
+                                while (rsElementos.next()) {
+                                    OwnershipCache.putElement(rsElementos.getInt("id_elemento"), id_diagrama.intValue());
+                                    gen.writeStartObject();
+                                    ElementosServlet.writeElemento(gen, rsElementos);
+                                    gen.writeEnd();
+                                }
+                            }
+                        }
+                        gen.writeEnd();
+
+                        gen.writeStartArray("conexiones");
+                        try (PreparedStatement psConexiones = con.prepareStatement(sqlConexiones)) {
+                            psConexiones.setInt(1, id_diagrama.intValue());
+                            DB.streamResults(psConexiones);
+                            try (ResultSet rsConexiones = psConexiones.executeQuery()) {
+                                while (rsConexiones.next()) {
+                                    OwnershipCache.putConexion(rsConexiones.getInt("id_conexion"), id_diagrama.intValue());
+                                    gen.writeStartObject();
+                                    ConexionesServlet.writeConexion(gen, rsConexiones);
+                                    gen.writeEnd();
+                                }
+                            }
+                        }
+                        gen.writeEnd();
+
+                        gen.writeStartArray("diagrama_multimedia");
+                        try (PreparedStatement psMultimedia = con.prepareStatement(sqlDiagramaMultimedia)) {
+                            psMultimedia.setInt(1, id_diagrama.intValue());
+                            DB.streamResults(psMultimedia);
+                            try (ResultSet rsMultimedia = psMultimedia.executeQuery()) {
+                                while (rsMultimedia.next()) {
+                                    gen.writeStartObject();
+                                    gen.write("id_diagrama", rsMultimedia.getInt("id_diagrama"));
+                                    gen.write("id_archivo", rsMultimedia.getInt("id_archivo"));
+                                    JsonUtil.write(gen, "descripcion", rsMultimedia.getString("descripcion"));
+                                    gen.write("orden", rsMultimedia.getInt("orden"));
+                                    gen.write("tipo_media", rsMultimedia.getString("tipo_media"));
+                                    JsonUtil.write(gen, "titulo", rsMultimedia.getString("titulo"));
+                                    JsonUtil.write(gen, "ruta_archivo", rsMultimedia.getString("ruta_archivo"));
+                                    gen.writeEnd();
+                                }
+                            }
+                        }
+                        gen.writeEnd();
+
+                        gen.writeStartArray("elemento_multimedia");
+                        try (PreparedStatement psMultimedia = con.prepareStatement(sqlElementoMultimedia)) {
+                            psMultimedia.setInt(1, id_diagrama.intValue());
+                            DB.streamResults(psMultimedia);
+                            try (ResultSet rsMultimedia = psMultimedia.executeQuery()) {
+                                while (rsMultimedia.next()) {
+                                    gen.writeStartObject();
+                                    gen.write("id_elemento", rsMultimedia.getInt("id_elemento"));
+                                    gen.write("id_archivo", rsMultimedia.getInt("id_archivo"));
+                                    gen.write("tipo_uso", rsMultimedia.getString("tipo_uso"));
+                                    gen.write("tipo_media", rsMultimedia.getString("tipo_media"));
+                                    JsonUtil.write(gen, "titulo", rsMultimedia.getString("titulo"));
+                                    JsonUtil.write(gen, "ruta_archivo", rsMultimedia.getString("ruta_archivo"));
+                                    gen.writeEnd();
+                                }
+                            }
+                        }
+                        gen.writeEnd();
+
+                        gen.writeEnd();
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_snapshot_diagrama");
+        }
+    }
+
+    /**
+     * Parsea un entero desde query string.
+     *
+     * Se recorta el texto y se parsea con manejo de NumberFormatException.
+     *
+     *
+     * @param value texto recibido.
+     * @return Integer o null si no es valido.
+     */
+    private Integer parseInt(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * Se usa como regla simple de autorizacion en todos los servlets.
+     *
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
@@ -0,0 +1,243 @@
+package API;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpSession;
+import javax.websocket.CloseReason;
+import javax.websocket.EndpointConfig;
+import javax.websocket.HandshakeResponse;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnMessage;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.HandshakeRequest;
+import javax.websocket.server.PathParam;
+import javax.websocket.server.ServerEndpoint;
+import javax.websocket.server.ServerEndpointConfig;
+
+/**
+ * Canal WebSocket de edicion colaborativa de un diagrama.
+ *
+ * El cliente abre /ws/diagramas/{id_diagrama}?cliente=&lt;id de pestania&gt;
+ * y recibe los deltas que publica {@link ColaboracionHub} cuando otro editor
+ * crea, modifica o borra elementos y conexiones. Es solo de salida: los
+ * cambios se siguen enviando por la API REST y los mensajes entrantes se
+ * ignoran (sirven como keep-alive).
+ *
+ * La ruta esta fuera de /api/*, por lo que {@link AuthFilter} no aplica; la
+ * identidad se resuelve en el handshake con las mismas reglas (sesion HTTP o
+ * token de {@link TokenService}) y al abrir se exige admin o propietario del
+ * diagrama. Se rechazan handshakes de otro origen (Origin distinto del Host y
+ * fuera de COLABORACION_ORIGENES), porque la cookie viaja sola.
+ *
+ */
+@ServerEndpoint(value = "/ws/diagramas/{id_diagrama}", configurator = DiagramaSocket.Autenticacion.class)
+public class DiagramaSocket {
+    private static final Logger LOG = Logger.getLogger(DiagramaSocket.class.getName());
+
+    // Origenes extra permitidos, separados por coma (p. ej. http://localhost:8080 en desarrollo).
+    private static final Set<String> ORIGENES = new HashSet<>(Arrays.asList(
+            DB.getValue("COLABORACION_ORIGENES", "colaboracion.origenes", "").split("\\s*,\\s*")));
+
+    /**
+     * Valida acceso al diagrama y suscribe el socket.
+     *
+     * @param session socket abierto.
+     * @param config configuracion con la identidad del handshake.
+     * @param id_diagrama_param id del diagrama de la ruta.
+     */
+    @OnOpen
+    public void onOpen(Session session, EndpointConfig config, @PathParam("id_diagrama") String id_diagrama_param) {
+        Object id_usuario = session.getUserProperties().get("id_usuario");
+        Object id_rol = session.getUserProperties().get("id_rol");
+        Integer id_diagrama = parseInt(id_diagrama_param);
+        if (!(id_usuario instanceof Integer) || id_diagrama == null) {
+            cerrar(session, "sesion_no_iniciada");
+            return;
+        }
+        boolean permitido = Integer.valueOf(1).equals(id_rol);
+        if (!permitido) {
+            try {
+                permitido = OwnershipCache.isDiagramOwner(id_diagrama.intValue(), ((Integer) id_usuario).intValue());
+            } catch (Exception ex) {
+                LOG.log(Level.WARNING, "No se pudo validar el acceso al diagrama " + id_diagrama, ex);
+            }
+        }
+        if (!permitido) {
+            cerrar(session, "acceso_denegado");
+            return;
+        }
+        List<String> cliente = session.getRequestParameterMap().get("cliente");
+        ColaboracionHub.suscribir(id_diagrama.intValue(), session,
+                cliente == null || cliente.isEmpty() ? null : cliente.get(0));
+    }
+
+    /**
+     * Mensajes del cliente: se ignoran (keep-alive).
+     *
+     * @param session socket del cliente.
+     * @param mensaje texto recibido.
+     */
+    @OnMessage
+    public void onMessage(Session session, String mensaje) {
+    }
+
+    /**
+     * @param session socket cerrado.
+     * @param motivo razon del cierre.
+     */
+    @OnClose
+    public void onClose(Session session, CloseReason motivo) {
+        ColaboracionHub.desuscribir(session);
+    }
+
+    /**
+     * @param session socket con error.
+     * @param error causa (normalmente desconexion abrupta).
+     */
+    @OnError
+    public void onError(Session session, Throwable error) {
+        ColaboracionHub.desuscribir(session);
+    }
+
+    /**
+     * @param session socket a rechazar.
+     * @param motivo mensaje del cierre.
+     */
+    private void cerrar(Session session, String motivo) {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, motivo));
+        } catch (Exception ex) {
+            // El cliente ya se fue.
+        }
+    }
+
+    /**
+     * Convierte un string a Integer, retornando null si no es numerico.
+     *
+     * @param value valor recibido.
+     * @return entero o null si es invalido.
+     */
+    private Integer parseInt(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Resuelve la identidad del handshake y la deja en las propiedades del
+     * socket (id_usuario, id_rol). Si no hay identidad valida o el origen no
+     * esta permitido no deja nada y {@link #onOpen} cierra el socket.
+     */
+    public static class Autenticacion extends ServerEndpointConfig.Configurator {
+
+        /**
+         * @param sec configuracion del socket (propiedades por sesion).
+         * @param request handshake HTTP.
+         * @param response respuesta del handshake.
+         */
+        @Override
+        public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+            Map<String, Object> propiedades = sec.getUserProperties();
+            propiedades.remove("id_usuario");
+            propiedades.remove("id_rol");
+            if (!origenPermitido(request)) {
+                return;
+            }
+            if (TokenService.ACTIVO) {
+                TokenService.Identidad identidad = TokenService.verificar(leerToken(request));
+                if (identidad != null) {
+                    propiedades.put("id_usuario", identidad.id_usuario);
+                    propiedades.put("id_rol", identidad.id_rol);
+                }
+                return;
+            }
+            Object http_session = request.getHttpSession();
+            if (http_session instanceof HttpSession) {
+                try {
+                    Object id_usuario = ((HttpSession) http_session).getAttribute("id_usuario");
+                    Object id_rol = ((HttpSession) http_session).getAttribute("id_rol");
+                    if (id_usuario instanceof Integer) {
+                        propiedades.put("id_usuario", id_usuario);
+                        if (id_rol instanceof Integer) {
+                            propiedades.put("id_rol", id_rol);
+                        }
+                    }
+                } catch (IllegalStateException ex) {
+                    // Sesion invalidada durante el handshake.
+                }
+            }
+        }
+
+        /**
+         * @param request handshake HTTP.
+         * @return true si no hay Origin (cliente no navegador), coincide con
+         *         el Host o esta en COLABORACION_ORIGENES.
+         */
+        private static boolean origenPermitido(HandshakeRequest request) {
+            String origen = primero(request.getHeaders(), "Origin");
+            if (origen == null || ORIGENES.contains(origen)) {
+                return true;
+            }
+            String host = primero(request.getHeaders(), "Host");
+            try {
+                URI uri = new URI(origen);
+                String autoridad = uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+                return host != null && host.equalsIgnoreCase(autoridad);
+            } catch (URISyntaxException ex) {
+                return false;
+            }
+        }
+
+        /**
+         * @param request handshake HTTP.
+         * @return token de "Authorization: Bearer" o de la cookie de
+         *         {@link TokenService#COOKIE}; null si no viene.
+         */
+        private static String leerToken(HandshakeRequest request) {
+            String header = primero(request.getHeaders(), "Authorization");
+            if (header != null && header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+                String token = header.substring(7).trim();
+                return token.isEmpty() ? null : token;
+            }
+            String cookies = primero(request.getHeaders(), "Cookie");
+            if (cookies != null) {
+                for (String cookie : cookies.split(";")) {
+                    String par = cookie.trim();
+                    if (par.startsWith(TokenService.COOKIE + "=")) {
+                        String token = par.substring(TokenService.COOKIE.length() + 1);
+                        return token.isEmpty() ? null : token;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param headers headers del handshake.
+         * @param nombre nombre del header (sin distinguir mayusculas).
+         * @return primer valor o null.
+         */
+        private static String primero(Map<String, List<String>> headers, String nombre) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (nombre.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                    return entry.getValue().get(0);
+                }
+            }
+            return null;
+        }
+    }
+}
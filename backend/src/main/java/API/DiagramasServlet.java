@@ -7,16 +7,16 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Collections;
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 /**
  * Servlet CRUD de diagramas UML con control de acceso por usuario.
@@ -29,6 +29,10 @@ import javax.servlet.http.HttpSession;
 @WebServlet(name = "DiagramasServlet", urlPatterns = {"/api/diagramas"})
 public class DiagramasServlet extends HttpServlet {
 
+    private static final String SQL_DIAGRAMA = "SELECT id_diagrama, id_usuario, nombre, descripcion, estado, "
+            + "ancho_lienzo, alto_lienzo, configuracion_json, version, fecha_creacion, fecha_actualizacion "
+            + "FROM diagramas_uml WHERE id_diagrama = ?";
+
     /**
      * Obtiene un diagrama por id o lista diagramas del usuario.
      * No retorna valor; responde 400/403/404/500 segun validaciones.
@@ -36,7 +40,8 @@ public class DiagramasServlet extends HttpServlet {
      * Flujo:
      *
      * - Si viene id_diagrama, lee un registro y valida propiedad/rol.
-     * - Si no viene, lista diagramas del usuario o de todos si es admin.
+     * - Si no viene, lista diagramas del usuario o de todos si es admin,
+     *   paginados por cursor (limit, cursor; responde next_cursor).
      *
      *
      * @param request request HTTP actual.
@@ -47,31 +52,33 @@ public class DiagramasServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         // Rama 1: lectura puntual cuando se recibe id_diagrama.
         Integer id_diagrama = parseInt(request.getParameter("id_diagrama"));
         if (id_diagrama != null) {
             // Caso lectura puntual por id.
-            String sql = "SELECT id_diagrama, id_usuario, nombre, descripcion, estado, ancho_lienzo, alto_lienzo, "
-                    + "configuracion_json, fecha_creacion, fecha_actualizacion "
-                    + "FROM diagramas_uml WHERE id_diagrama = ?";
             try (Connection con = DB.getConnection();
-                 PreparedStatement ps = con.prepareStatement(sql)) {
+                 PreparedStatement ps = con.prepareStatement(SQL_DIAGRAMA)) {
                 ps.setInt(1, id_diagrama.intValue());
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.next()) {
                         int id_usuario_propietario = rs.getInt("id_usuario");
+                        OwnershipCache.putDiagram(id_diagrama.intValue(), id_usuario_propietario);
                         if (!es_admin && (id_usuario_sesion == null || id_usuario_propietario != id_usuario_sesion.intValue())) {
                             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
                             return;
                         }
-                        JsonObjectBuilder body = Json.createObjectBuilder()
-                                .add("ok", true)
-                                .add("diagrama", buildDiagrama(rs));
-                        ResponseUtil.writeOk(response, body.build());
+                        try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                            gen.writeStartObject();
+                            gen.write("ok", true);
+                            gen.writeStartObject("diagrama");
+                            writeDiagrama(gen, rs);
+                            gen.writeEnd();
+                            gen.writeEnd();
+                        }
                         return;
                     }
                 }
@@ -92,29 +99,55 @@ public class DiagramasServlet extends HttpServlet {
             return;
         }
 
+        Integer limit = CursorUtil.parseLimit(request.getParameter("limit"));
+        Integer ultimo_visto = CursorUtil.decode(request.getParameter("cursor"));
+        if (limit == null || ultimo_visto == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "paginacion_invalida");
+            return;
+        }
+
         // Construccion dinamica del SQL para filtrar por usuario si aplica.
+        // Keyset por id_diagrama (PK o idx_diagramas_usuario, que la incluye).
         String sql = "SELECT id_diagrama, id_usuario, nombre, descripcion, estado, ancho_lienzo, alto_lienzo, "
-                + "configuracion_json, fecha_creacion, fecha_actualizacion "
-                + "FROM diagramas_uml ";
+                + "configuracion_json, version, fecha_creacion, fecha_actualizacion "
+                + "FROM diagramas_uml WHERE id_diagrama > ? ";
         if (id_usuario != null) {
-            sql += "WHERE id_usuario = ? ";
+            sql += "AND id_usuario = ? ";
         }
-        sql += "ORDER BY id_diagrama";
+        sql += "ORDER BY id_diagrama LIMIT ?";
 
         try (Connection con = DB.getConnection();
              PreparedStatement ps = con.prepareStatement(sql)) {
+            int index = 1;
+            ps.setInt(index++, ultimo_visto.intValue());
             if (id_usuario != null) {
-                ps.setInt(1, id_usuario.intValue());
+                ps.setInt(index++, id_usuario.intValue());
             }
-            try (ResultSet rs = ps.executeQuery()) {
-                JsonArrayBuilder diagramas = Json.createArrayBuilder();
+            ps.setInt(index, limit.intValue() + 1);
+            DB.streamResults(ps);
+            try (ResultSet rs = ps.executeQuery();
+                 JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                gen.writeStartObject();
+                gen.write("ok", true);
+                gen.writeStartArray("diagramas");
+                int escritos = 0;
+                int ultimo_id = 0;
+                boolean hay_mas = false;
                 while (rs.next()) {
-                    diagramas.add(buildDiagrama(rs));
+                    // Se pidio limit + 1 filas: la extra solo indica que hay otra pagina.
+                    if (escritos == limit.intValue()) {
+                        hay_mas = true;
+                        break;
+                    }
+                    ultimo_id = rs.getInt("id_diagrama");
+                    gen.writeStartObject();
+                    writeDiagrama(gen, rs);
+                    gen.writeEnd();
+                    escritos++;
                 }
-                JsonObjectBuilder body = Json.createObjectBuilder()
-                        .add("ok", true)
-                        .add("diagramas", diagramas);
-                ResponseUtil.writeOk(response, body.build());
+                gen.writeEnd();
+                CursorUtil.writeNext(gen, hay_mas, ultimo_id);
+                gen.writeEnd();
             }
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_diagramas");
@@ -138,8 +171,8 @@ public class DiagramasServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         JsonObject payload = JsonUtil.readJsonObject(request);
@@ -196,7 +229,8 @@ public class DiagramasServlet extends HttpServlet {
             try (ResultSet keys = ps.getGeneratedKeys()) {
                 JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
                 if (keys.next()) {
-                    body.add("id_diagrama", keys.getInt(1));
+                    body.add("id_diagrama", keys.getInt(1)).add("version", 0);
+                    OwnershipCache.putDiagram(keys.getInt(1), id_usuario.intValue());
                 }
                 ResponseUtil.writeOk(response, body.build());
             }
@@ -207,10 +241,12 @@ public class DiagramasServlet extends HttpServlet {
 
     /**
      * Actualiza un diagrama existente si el usuario es propietario o admin.
-     * No retorna valor; responde 400/403/404/500 segun validaciones.
+     * No retorna valor; responde 400/403/404/409/500 segun validaciones.
      *
-     * Se validan campos, se verifica la propiedad, se ejecuta UPDATE y
-     * reporta si no se encontro el registro.
+     * Se validan campos, se verifica la propiedad, se ejecuta UPDATE junto
+     * con su operacion (sube la version de sincronizacion) y reporta si no se
+     * encontro el registro. Con "version" en el payload el UPDATE solo
+     * aplica sobre esa version de la fila; si cambio responde 409.
      *
      *
      * @param request request HTTP actual.
@@ -221,8 +257,8 @@ public class DiagramasServlet extends HttpServlet {
     @Override
     protected void doPut(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         JsonObject payload = JsonUtil.readJsonObject(request);
@@ -233,6 +269,8 @@ public class DiagramasServlet extends HttpServlet {
         Integer ancho_lienzo = JsonUtil.getInt(payload, "ancho_lienzo");
         Integer alto_lienzo = JsonUtil.getInt(payload, "alto_lienzo");
         String configuracion_json = JsonUtil.getString(payload, "configuracion_json");
+        Integer version = JsonUtil.getInt(payload, "version");
+        Integer version_nueva = version == null ? null : Integer.valueOf(version.intValue() + 1);
 
         if (id_diagrama == null || nombre == null) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "datos_incompletos");
@@ -252,32 +290,71 @@ public class DiagramasServlet extends HttpServlet {
             return;
         }
 
-        // Actualiza campos editables de diagrama.
+        // Actualiza campos editables de diagrama y registra la operacion (sube su version).
+        // Control optimista: con "version" en el payload solo aplica si coincide (NULL = sin verificar).
         String sql = "UPDATE diagramas_uml SET nombre = ?, descripcion = ?, estado = ?, ancho_lienzo = ?, alto_lienzo = ?, "
-                + "configuracion_json = ? WHERE id_diagrama = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setString(1, nombre);
-            if (descripcion == null || descripcion.trim().isEmpty()) {
-                ps.setNull(2, Types.LONGVARCHAR);
-            } else {
-                ps.setString(2, descripcion);
-            }
-            ps.setString(3, estado);
-            ps.setInt(4, ancho_lienzo.intValue());
-            ps.setInt(5, alto_lienzo.intValue());
-            if (configuracion_json == null || configuracion_json.trim().isEmpty()) {
-                ps.setNull(6, Types.LONGVARCHAR);
-            } else {
-                ps.setString(6, configuracion_json);
-            }
-            ps.setInt(7, id_diagrama.intValue());
-            int updated = ps.executeUpdate();
-            if (updated == 0) {
-                ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "diagrama_no_encontrado");
-                return;
+                + "configuracion_json = ?, version = version + 1 "
+                + "WHERE id_diagrama = ? AND version = COALESCE(?, version)";
+        try (Connection con = DB.getConnection()) {
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                long secuencia = OperacionesDiagrama.reservar(con, id_diagrama.intValue(), 1);
+                if (secuencia == 0) {
+                    con.rollback();
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "diagrama_no_encontrado");
+                    return;
+                }
+                ps.setString(1, nombre);
+                if (descripcion == null || descripcion.trim().isEmpty()) {
+                    ps.setNull(2, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(2, descripcion);
+                }
+                ps.setString(3, estado);
+                ps.setInt(4, ancho_lienzo.intValue());
+                ps.setInt(5, alto_lienzo.intValue());
+                if (configuracion_json == null || configuracion_json.trim().isEmpty()) {
+                    ps.setNull(6, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(6, configuracion_json);
+                }
+                ps.setInt(7, id_diagrama.intValue());
+                if (version == null) {
+                    ps.setNull(8, Types.INTEGER);
+                } else {
+                    ps.setInt(8, version.intValue());
+                }
+                if (ps.executeUpdate() == 0) {
+                    // reservar ya confirmo que existe: sin filas es conflicto de version.
+                    con.rollback();
+                    writeConflicto(response, con, id_diagrama.intValue());
+                    return;
+                }
+                JsonObjectBuilder datos = Json.createObjectBuilder()
+                        .add("id_diagrama", id_diagrama.intValue())
+                        .add("nombre", nombre)
+                        .add("estado", estado)
+                        .add("ancho_lienzo", ancho_lienzo.intValue())
+                        .add("alto_lienzo", alto_lienzo.intValue());
+                JsonUtil.add(datos, "descripcion",
+                        descripcion == null || descripcion.trim().isEmpty() ? null : descripcion);
+                JsonUtil.add(datos, "configuracion_json",
+                        configuracion_json == null || configuracion_json.trim().isEmpty() ? null : configuracion_json);
+                JsonUtil.add(datos, "version", version_nueva);
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, Collections.singletonList(
+                        new OperacionesDiagrama.Operacion(id_diagrama.intValue(), secuencia,
+                                OperacionesDiagrama.DIAGRAMA, OperacionesDiagrama.ACTUALIZAR, id_diagrama.intValue(),
+                                datos.build())));
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
             }
             JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
+            JsonUtil.add(body, "version", version_nueva);
             ResponseUtil.writeOk(response, body.build());
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_actualizar_diagrama");
@@ -299,8 +376,8 @@ public class DiagramasServlet extends HttpServlet {
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_diagrama = parseInt(request.getParameter("id_diagrama"));
@@ -319,6 +396,8 @@ public class DiagramasServlet extends HttpServlet {
              PreparedStatement ps = con.prepareStatement(sql)) {
             ps.setInt(1, id_diagrama.intValue());
             int deleted = ps.executeUpdate();
+            // El borrado arrastra elementos y conexiones en cascada.
+            OwnershipCache.removeDiagram(id_diagrama.intValue());
             if (deleted == 0) {
                 ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "diagrama_no_encontrado");
                 return;
@@ -331,36 +410,66 @@ public class DiagramasServlet extends HttpServlet {
     }
 
     /**
-     * Construye el JSON de un diagrama desde el ResultSet.
+     * Escribe los campos de un diagrama en el objeto abierto del generador.
      *
      * Se extrae columnas y normaliza nulls/fechas a string.
      *
      *
+     * @param gen generador posicionado dentro de un objeto.
      * @param rs ResultSet posicionado en el registro.
-     * @return builder con campos del diagrama.
      * @throws Exception si ocurre error al leer columnas.
      */
-    private JsonObjectBuilder buildDiagrama(ResultSet rs) throws Exception {
-        JsonObjectBuilder diagrama = Json.createObjectBuilder();
-        diagrama.add("id_diagrama", rs.getInt("id_diagrama"));
-        diagrama.add("id_usuario", rs.getInt("id_usuario"));
-        diagrama.add("nombre", rs.getString("nombre"));
-        JsonUtil.add(diagrama, "descripcion", rs.getString("descripcion"));
-        diagrama.add("estado", rs.getString("estado"));
-        diagrama.add("ancho_lienzo", rs.getInt("ancho_lienzo"));
-        diagrama.add("alto_lienzo", rs.getInt("alto_lienzo"));
-        JsonUtil.add(diagrama, "configuracion_json", rs.getString("configuracion_json"));
+    static void writeDiagrama(JsonGenerator gen, ResultSet rs) throws Exception {
+        gen.write("id_diagrama", rs.getInt("id_diagrama"));
+        gen.write("id_usuario", rs.getInt("id_usuario"));
+        gen.write("nombre", rs.getString("nombre"));
+        JsonUtil.write(gen, "descripcion", rs.getString("descripcion"));
+        gen.write("estado", rs.getString("estado"));
+        gen.write("ancho_lienzo", rs.getInt("ancho_lienzo"));
+        gen.write("alto_lienzo", rs.getInt("alto_lienzo"));
+        JsonUtil.write(gen, "configuracion_json", rs.getString("configuracion_json"));
+        gen.write("version", rs.getInt("version"));
         Timestamp creado = rs.getTimestamp("fecha_creacion");
         Timestamp actualizado = rs.getTimestamp("fecha_actualizacion");
-        JsonUtil.add(diagrama, "fecha_creacion", creado == null ? null : creado.toString());
-        JsonUtil.add(diagrama, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
-        return diagrama;
+        JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+        JsonUtil.write(gen, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+    }
+
+    /**
+     * Responde 409 con la fila actual cuando el UPDATE condicionado por
+     * version no afecto filas. Si el diagrama ya no existe responde 404.
+     *
+     * @param response response HTTP actual.
+     * @param con conexion abierta.
+     * @param id_diagrama id del diagrama.
+     * @throws Exception si falla la lectura o la escritura.
+     */
+    private void writeConflicto(HttpServletResponse response, Connection con, int id_diagrama) throws Exception {
+        try (PreparedStatement ps = con.prepareStatement(SQL_DIAGRAMA)) {
+            ps.setInt(1, id_diagrama);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "diagrama_no_encontrado");
+                    return;
+                }
+                Metricas.error("conflicto_version");
+                try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_CONFLICT)) {
+                    gen.writeStartObject();
+                    gen.write("ok", false);
+                    gen.write("mensaje", "conflicto_version");
+                    gen.writeStartObject("actual");
+                    writeDiagrama(gen, rs);
+                    gen.writeEnd();
+                    gen.writeEnd();
+                }
+            }
+        }
     }
 
     /**
      * Verifica si el diagrama pertenece al usuario de la sesion.
      *
-     * Se consulta el id_usuario propietario y compara con sesion.
+     * Se obtiene el propietario desde OwnershipCache (BD solo en fallo) y compara con sesion.
      *
      *
      * @param id_diagrama id del diagrama.
@@ -371,19 +480,11 @@ public class DiagramasServlet extends HttpServlet {
         if (id_usuario_sesion == null) {
             return false;
         }
-        String sql = "SELECT id_usuario FROM diagramas_uml WHERE id_diagrama = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_diagrama);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id_usuario") == id_usuario_sesion.intValue();
-                }
-            }
+        try {
+            return OwnershipCache.isDiagramOwner(id_diagrama, id_usuario_sesion.intValue());
         } catch (Exception ex) {
             return false;
         }
-        return false;
     }
 
     /**
@@ -426,42 +527,6 @@ public class DiagramasServlet extends HttpServlet {
         }
     }
 
-    /**
-     * Obtiene id_usuario de la sesion si existe.
-     *
-     * Se lee el atributo "id_usuario" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_usuario o null si no hay sesion.
-     */
-    private Integer getSessionUserId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_usuario");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
-    /**
-     * Obtiene id_rol de la sesion si existe.
-     *
-     * Se lee el atributo "id_rol" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_rol o null si no hay sesion.
-     */
-    private Integer getSessionRoleId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_rol");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
     /**
      * Determina si el rol corresponde a administrador (id_rol = 1).
      *
@@ -13,7 +13,6 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 /**
  * Servlet para administrar multimedia asociada a un elemento del diagrama.
@@ -41,8 +40,8 @@ public class ElementoMultimediaServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_elemento = parseInt(request.getParameter("id_elemento"));
@@ -102,8 +101,8 @@ public class ElementoMultimediaServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         JsonObject payload = JsonUtil.readJsonObject(request);
@@ -150,8 +149,8 @@ public class ElementoMultimediaServlet extends HttpServlet {
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_elemento = parseInt(request.getParameter("id_elemento"));
@@ -185,7 +184,7 @@ public class ElementoMultimediaServlet extends HttpServlet {
     /**
      * Verifica si un elemento pertenece a un diagrama del usuario autenticado.
      *
-     * Se join elemento->diagrama y compara propietario.
+     * Se resuelve elemento->diagrama->propietario desde OwnershipCache y compara.
      *
      *
      * @param id_elemento id del elemento.
@@ -196,21 +195,11 @@ public class ElementoMultimediaServlet extends HttpServlet {
         if (id_usuario_sesion == null) {
             return false;
         }
-        String sql = "SELECT d.id_usuario FROM diagramas_uml d "
-                + "INNER JOIN elementos_diagrama e ON e.id_diagrama = d.id_diagrama "
-                + "WHERE e.id_elemento = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_elemento);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id_usuario") == id_usuario_sesion.intValue();
-                }
-            }
+        try {
+            return OwnershipCache.isElementOwner(id_elemento, id_usuario_sesion.intValue());
         } catch (Exception ex) {
             return false;
         }
-        return false;
     }
 
     /**
@@ -253,42 +242,6 @@ public class ElementoMultimediaServlet extends HttpServlet {
         }
     }
 
-    /**
-     * Obtiene id_usuario de la sesion si existe.
-     *
-     * Se lee el atributo "id_usuario" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_usuario o null si no hay sesion.
-     */
-    private Integer getSessionUserId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_usuario");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
-    /**
-     * Obtiene id_rol de la sesion si existe.
-     *
-     * Se lee el atributo "id_rol" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_rol o null si no hay sesion.
-     */
-    private Integer getSessionRoleId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_rol");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
     /**
      * Determina si el rol corresponde a administrador (id_rol = 1).
      *
@@ -1,33 +1,68 @@
 package API;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import javax.json.Json;
+import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
+import javax.json.JsonValue;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 /**
  * Servlet CRUD de elementos UML (actores, casos, notas, etc.) por diagrama.
  *
  * Controla acceso por sesion y valida propiedad del diagrama al que pertenece
  * el elemento. Expone operaciones de lectura puntual/listado y alta/baja/cambio.
+ * En /api/elementos/lote acepta cambios de varios elementos en un solo PUT y
+ * en /api/elementos/geometria solo cambios de posicion/tamanio (arrastre).
  *
  */
-@WebServlet(name = "ElementosServlet", urlPatterns = {"/api/elementos"})
+@WebServlet(name = "ElementosServlet", urlPatterns = {"/api/elementos", "/api/elementos/lote", "/api/elementos/geometria"})
 public class ElementosServlet extends HttpServlet {
+    // Maximo de elementos por PUT en /api/elementos/lote.
+    private static final int LOTE_MAX = 500;
+
+    private static final String COLUMNAS_ELEMENTO = "SELECT id_elemento, id_diagrama, id_elemento_padre, tipo_elemento, "
+            + "etiqueta, pos_x, pos_y, ancho, alto, rotacion_grados, orden_z, estilo_json, metadatos_json, version, "
+            + "fecha_creacion, fecha_actualizacion FROM elementos_diagrama ";
+    private static final String SQL_ELEMENTO = COLUMNAS_ELEMENTO + "WHERE id_elemento = ?";
+
+    // Efectos en cascada del borrado (ON DELETE CASCADE / SET NULL), hechos explicitos para registrarlos.
+    private static final String SQL_CONEXIONES_DEL_ELEMENTO = "SELECT id_conexion FROM conexiones_diagrama "
+            + "WHERE id_diagrama = ? AND (id_elemento_origen = ? OR id_elemento_destino = ?) ORDER BY id_conexion";
+    private static final String SQL_HIJOS = "SELECT id_elemento, version FROM elementos_diagrama "
+            + "WHERE id_diagrama = ? AND id_elemento_padre = ? ORDER BY id_elemento";
+    private static final String SQL_SOLTAR_HIJOS = "UPDATE elementos_diagrama SET id_elemento_padre = NULL, "
+            + "version = version + 1 WHERE id_diagrama = ? AND id_elemento_padre = ?";
+
+    // Control optimista: con "version" en el payload solo aplica si coincide (NULL = sin verificar).
+    private static final String SQL_ACTUALIZAR = "UPDATE elementos_diagrama SET id_diagrama = ?, id_elemento_padre = ?, "
+            + "tipo_elemento = ?, etiqueta = ?, pos_x = ?, pos_y = ?, ancho = ?, alto = ?, rotacion_grados = ?, orden_z = ?, "
+            + "estilo_json = ?, metadatos_json = ?, version = version + 1 "
+            + "WHERE id_elemento = ? AND version = COALESCE(?, version)";
 
     /**
      * Obtiene un elemento por id o lista los elementos de un diagrama.
@@ -36,7 +71,8 @@ public class ElementosServlet extends HttpServlet {
      * Flujo:
      *
      * - Si viene id_elemento, consulta el registro y valida acceso.
-     * - Si no viene, requiere id_diagrama y lista todos sus elementos.
+     * - Si no viene, requiere id_diagrama y lista sus elementos paginados
+     *   por cursor (limit, cursor; responde next_cursor).
      *
      *
      * @param request request HTTP actual.
@@ -47,31 +83,33 @@ public class ElementosServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         // Rama 1: lectura puntual por id_elemento.
         Integer id_elemento = parseInt(request.getParameter("id_elemento"));
         if (id_elemento != null) {
             // Lectura puntual por id_elemento.
-            String sql = "SELECT id_elemento, id_diagrama, id_elemento_padre, tipo_elemento, etiqueta, pos_x, pos_y, "
-                    + "ancho, alto, rotacion_grados, orden_z, estilo_json, metadatos_json, fecha_creacion, fecha_actualizacion "
-                    + "FROM elementos_diagrama WHERE id_elemento = ?";
             try (Connection con = DB.getConnection();
-                 PreparedStatement ps = con.prepareStatement(sql)) {
+                 PreparedStatement ps = con.prepareStatement(SQL_ELEMENTO)) {
                 ps.setInt(1, id_elemento.intValue());
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.next()) {
                         int id_diagrama = rs.getInt("id_diagrama");
+                        OwnershipCache.putElement(id_elemento.intValue(), id_diagrama);
                         if (!es_admin && !isOwnerDiagram(id_diagrama, id_usuario_sesion)) {
                             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
                             return;
                         }
-                        JsonObjectBuilder body = Json.createObjectBuilder()
-                                .add("ok", true)
-                                .add("elemento", buildElemento(rs));
-                        ResponseUtil.writeOk(response, body.build());
+                        try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                            gen.writeStartObject();
+                            gen.write("ok", true);
+                            gen.writeStartObject("elemento");
+                            writeElemento(gen, rs);
+                            gen.writeEnd();
+                            gen.writeEnd();
+                        }
                         return;
                     }
                 }
@@ -93,21 +131,47 @@ public class ElementosServlet extends HttpServlet {
             return;
         }
 
+        Integer limit = CursorUtil.parseLimit(request.getParameter("limit"));
+        Integer ultimo_visto = CursorUtil.decode(request.getParameter("cursor"));
+        if (limit == null || ultimo_visto == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "paginacion_invalida");
+            return;
+        }
+
+        // Keyset sobre idx_elementos_diagrama (id_diagrama, id_elemento implicito).
         String sql = "SELECT id_elemento, id_diagrama, id_elemento_padre, tipo_elemento, etiqueta, pos_x, pos_y, "
-                + "ancho, alto, rotacion_grados, orden_z, estilo_json, metadatos_json, fecha_creacion, fecha_actualizacion "
-                + "FROM elementos_diagrama WHERE id_diagrama = ? ORDER BY id_elemento";
+                + "ancho, alto, rotacion_grados, orden_z, estilo_json, metadatos_json, version, fecha_creacion, "
+                + "fecha_actualizacion FROM elementos_diagrama WHERE id_diagrama = ? AND id_elemento > ? "
+                + "ORDER BY id_elemento LIMIT ?";
         try (Connection con = DB.getConnection();
              PreparedStatement ps = con.prepareStatement(sql)) {
             ps.setInt(1, id_diagrama.intValue());
-            try (ResultSet rs = ps.executeQuery()) {
-                JsonArrayBuilder elementos = Json.createArrayBuilder();
+            ps.setInt(2, ultimo_visto.intValue());
+            ps.setInt(3, limit.intValue() + 1);
+            DB.streamResults(ps);
+            try (ResultSet rs = ps.executeQuery();
+                 JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                gen.writeStartObject();
+                gen.write("ok", true);
+                gen.writeStartArray("elementos");
+                int escritos = 0;
+                int ultimo_id = 0;
+                boolean hay_mas = false;
                 while (rs.next()) {
-                    elementos.add(buildElemento(rs));
+                    // Se pidio limit + 1 filas: la extra solo indica que hay otra pagina.
+                    if (escritos == limit.intValue()) {
+                        hay_mas = true;
+                        break;
+                    }
+                    ultimo_id = rs.getInt("id_elemento");
+                    gen.writeStartObject();
+                    writeElemento(gen, rs);
+                    gen.writeEnd();
+                    escritos++;
                 }
-                JsonObjectBuilder body = Json.createObjectBuilder()
-                        .add("ok", true)
-                        .add("elementos", elementos);
-                ResponseUtil.writeOk(response, body.build());
+                gen.writeEnd();
+                CursorUtil.writeNext(gen, hay_mas, ultimo_id);
+                gen.writeEnd();
             }
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_elementos");
@@ -130,8 +194,8 @@ public class ElementosServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         JsonObject payload = JsonUtil.readJsonObject(request);
@@ -177,46 +241,67 @@ public class ElementosServlet extends HttpServlet {
             orden_z = 0;
         }
 
-        // Inserta elemento y devuelve id generado.
+        // Inserta elemento y su operacion en una transaccion; devuelve id generado.
         String sql = "INSERT INTO elementos_diagrama (id_diagrama, id_elemento_padre, tipo_elemento, etiqueta, pos_x, pos_y, "
                 + "ancho, alto, rotacion_grados, orden_z, estilo_json, metadatos_json) VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setInt(1, id_diagrama.intValue());
-            if (id_elemento_padre == null) {
-                ps.setNull(2, Types.INTEGER);
-            } else {
-                ps.setInt(2, id_elemento_padre.intValue());
-            }
-            ps.setString(3, tipo_elemento);
-            if (etiqueta == null || etiqueta.trim().isEmpty()) {
-                ps.setNull(4, Types.VARCHAR);
-            } else {
-                ps.setString(4, etiqueta);
-            }
-            ps.setInt(5, pos_x.intValue());
-            ps.setInt(6, pos_y.intValue());
-            ps.setInt(7, ancho.intValue());
-            ps.setInt(8, alto.intValue());
-            ps.setBigDecimal(9, rotacion_grados);
-            ps.setInt(10, orden_z.intValue());
-            if (estilo_json == null || estilo_json.trim().isEmpty()) {
-                ps.setNull(11, Types.LONGVARCHAR);
-            } else {
-                ps.setString(11, estilo_json);
-            }
-            if (metadatos_json == null || metadatos_json.trim().isEmpty()) {
-                ps.setNull(12, Types.LONGVARCHAR);
-            } else {
-                ps.setString(12, metadatos_json);
-            }
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
+        try (Connection con = DB.getConnection()) {
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                long secuencia = OperacionesDiagrama.reservar(con, id_diagrama.intValue(), 1);
+                ps.setInt(1, id_diagrama.intValue());
+                if (id_elemento_padre == null) {
+                    ps.setNull(2, Types.INTEGER);
+                } else {
+                    ps.setInt(2, id_elemento_padre.intValue());
+                }
+                ps.setString(3, tipo_elemento);
+                if (etiqueta == null || etiqueta.trim().isEmpty()) {
+                    ps.setNull(4, Types.VARCHAR);
+                } else {
+                    ps.setString(4, etiqueta);
+                }
+                ps.setInt(5, pos_x.intValue());
+                ps.setInt(6, pos_y.intValue());
+                ps.setInt(7, ancho.intValue());
+                ps.setInt(8, alto.intValue());
+                ps.setBigDecimal(9, rotacion_grados);
+                ps.setInt(10, orden_z.intValue());
+                if (estilo_json == null || estilo_json.trim().isEmpty()) {
+                    ps.setNull(11, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(11, estilo_json);
+                }
+                if (metadatos_json == null || metadatos_json.trim().isEmpty()) {
+                    ps.setNull(12, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(12, metadatos_json);
+                }
+                ps.executeUpdate();
                 JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
-                if (keys.next()) {
-                    body.add("id_elemento", keys.getInt(1));
+                List<OperacionesDiagrama.Operacion> operaciones = new ArrayList<>();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        int id_elemento = keys.getInt(1);
+                        body.add("id_elemento", id_elemento).add("version", 0);
+                        operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama.intValue(), secuencia,
+                                OperacionesDiagrama.ELEMENTO, OperacionesDiagrama.CREAR, id_elemento,
+                                itemElemento(payload, id_elemento, id_diagrama.intValue(), tipo_elemento,
+                                        Integer.valueOf(0))));
+                    }
                 }
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, operaciones);
+                con.commit();
+                for (OperacionesDiagrama.Operacion operacion : operaciones) {
+                    OwnershipCache.putElement(operacion.id_entidad, id_diagrama.intValue());
+                }
+                ColaboracionHub.publicar(request, id_usuario_sesion, operaciones);
                 ResponseUtil.writeOk(response, body.build());
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
             }
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_crear_elemento");
@@ -225,10 +310,14 @@ public class ElementosServlet extends HttpServlet {
 
     /**
      * Actualiza un elemento existente del diagrama.
-     * No retorna valor; responde 400/403/404/500 segun validaciones.
+     * No retorna valor; responde 400/403/404/409/500 segun validaciones.
      *
      * Se validan campos obligatorios, se verifica la propiedad del
-     * diagrama y ejecuta UPDATE sobre los campos editables.
+     * diagrama y ejecuta UPDATE sobre los campos editables. Si el payload
+     * trae "version", el UPDATE solo aplica sobre esa version y un conflicto
+     * responde 409 con la fila actual.
+     * Las rutas /api/elementos/lote y /api/elementos/geometria se delegan
+     * a la actualizacion por lote y a la de geometria respectivamente.
      *
      *
      * @param request request HTTP actual.
@@ -239,107 +328,648 @@ public class ElementosServlet extends HttpServlet {
     @Override
     protected void doPut(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
+        if ("/api/elementos/lote".equals(request.getServletPath())) {
+            actualizarLote(request, response, id_usuario_sesion, es_admin);
+            return;
+        }
+        if ("/api/elementos/geometria".equals(request.getServletPath())) {
+            actualizarGeometria(request, response, id_usuario_sesion, es_admin);
+            return;
+        }
+
         JsonObject payload = JsonUtil.readJsonObject(request);
         Integer id_elemento = JsonUtil.getInt(payload, "id_elemento");
         Integer id_diagrama = JsonUtil.getInt(payload, "id_diagrama");
-        Integer id_elemento_padre = JsonUtil.getInt(payload, "id_elemento_padre");
         String tipo_elemento = normalizeTipoElemento(JsonUtil.getString(payload, "tipo_elemento"));
-        String etiqueta = JsonUtil.getString(payload, "etiqueta");
-        Integer pos_x = JsonUtil.getInt(payload, "pos_x");
-        Integer pos_y = JsonUtil.getInt(payload, "pos_y");
-        Integer ancho = JsonUtil.getInt(payload, "ancho");
-        Integer alto = JsonUtil.getInt(payload, "alto");
-        BigDecimal rotacion_grados = JsonUtil.getDecimal(payload, "rotacion_grados");
-        Integer orden_z = JsonUtil.getInt(payload, "orden_z");
-        String estilo_json = JsonUtil.getString(payload, "estilo_json");
-        String metadatos_json = JsonUtil.getString(payload, "metadatos_json");
 
         if (id_elemento == null || id_diagrama == null || tipo_elemento == null) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "datos_incompletos");
             return;
         }
-        if (!es_admin && !isOwnerDiagram(id_diagrama.intValue(), id_usuario_sesion)) {
+        // El diagrama actual tambien debe ser propio: el UPDATE puede sacar el elemento de el.
+        if (!es_admin && (!isOwnerDiagram(id_diagrama.intValue(), id_usuario_sesion)
+                || !isOwnerElement(id_elemento.intValue(), id_usuario_sesion))) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
             return;
         }
 
-        // Asegura valores numericos validos para mantener consistencia en UI.
-        if (pos_x == null) {
-            pos_x = 0;
-        }
-        if (pos_y == null) {
-            pos_y = 0;
-        }
-        if (ancho == null) {
-            ancho = 120;
+        // Actualiza campos editables del elemento y registra la operacion.
+        Integer version = JsonUtil.getInt(payload, "version");
+        Integer version_nueva = version == null ? null : Integer.valueOf(version.intValue() + 1);
+        try (Connection con = DB.getConnection()) {
+            // El UPDATE puede mover el elemento a otro diagrama: el de origen registra un borrado.
+            Integer id_diagrama_actual = OwnershipCache.elementDiagram(id_elemento.intValue());
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(SQL_ACTUALIZAR)) {
+                Map<Integer, Integer> cantidades = new TreeMap<>();
+                cantidades.put(id_diagrama, 1);
+                if (id_diagrama_actual != null && !id_diagrama_actual.equals(id_diagrama)) {
+                    cantidades.put(id_diagrama_actual, 1);
+                }
+                Map<Integer, Long> secuencias = reservar(con, cantidades);
+                bindActualizacion(ps, payload, id_elemento.intValue(), id_diagrama.intValue(), tipo_elemento);
+                int updated = ps.executeUpdate();
+                if (updated == 0) {
+                    con.rollback();
+                    // Sin filas: otra edicion cambio la version (409 con la fila actual) o no existe.
+                    if (version == null || !writeConflicto(response, con, id_elemento.intValue())) {
+                        ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "elemento_no_encontrado");
+                    }
+                    return;
+                }
+                List<OperacionesDiagrama.Operacion> operaciones = new ArrayList<>();
+                if (cantidades.size() > 1) {
+                    operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama_actual.intValue(),
+                            siguiente(secuencias, id_diagrama_actual), OperacionesDiagrama.ELEMENTO,
+                            OperacionesDiagrama.BORRAR, id_elemento.intValue(), null));
+                }
+                operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama.intValue(),
+                        siguiente(secuencias, id_diagrama), OperacionesDiagrama.ELEMENTO,
+                        OperacionesDiagrama.ACTUALIZAR, id_elemento.intValue(),
+                        itemElemento(payload, id_elemento.intValue(), id_diagrama.intValue(), tipo_elemento,
+                                version_nueva)));
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, operaciones);
+                con.commit();
+                OwnershipCache.putElement(id_elemento.intValue(), id_diagrama.intValue());
+                ColaboracionHub.publicar(request, id_usuario_sesion, operaciones);
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
+            }
+            JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
+            JsonUtil.add(body, "version", version_nueva);
+            ResponseUtil.writeOk(response, body.build());
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_actualizar_elemento");
         }
-        if (alto == null) {
-            alto = 60;
+    }
+
+    /**
+     * Actualiza varios elementos en una sola transaccion.
+     * No retorna valor; responde 400/500 o un resultado por elemento.
+     *
+     * Flujo:
+     *
+     * - Lee {"elementos": [...]} con el mismo formato de cada PUT individual.
+     * - Resuelve en una consulta el diagrama actual de todos los elementos.
+     * - Valida propiedad una sola vez por id_diagrama distinto (actual y destino).
+     * - Ejecuta los UPDATE validos como un batch JDBC y confirma al final.
+     * - Relee en un solo IN las filas del batch: version nueva de los
+     *   aplicados y fila actual ("actual") de los que chocaron por version.
+     *
+     * Los elementos invalidos o sin acceso no se actualizan y se reportan en
+     * "resultados" con su mensaje; el resto se aplica de forma atomica. Los
+     * aplicados siempre incluyen su "version" nueva, aunque no la enviaran.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @param id_usuario_sesion id del usuario autenticado.
+     * @param es_admin true si el usuario es administrador.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    private void actualizarLote(HttpServletRequest request, HttpServletResponse response,
+            Integer id_usuario_sesion, boolean es_admin) throws IOException {
+        JsonObject payload = JsonUtil.readJsonObject(request);
+        JsonArray items = JsonUtil.getArray(payload, "elementos");
+        if (items == null || items.isEmpty()) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "elementos_requeridos");
+            return;
         }
-        if (rotacion_grados == null) {
-            rotacion_grados = new BigDecimal("0.00");
+        if (items.size() > LOTE_MAX) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "lote_demasiado_grande");
+            return;
         }
-        if (orden_z == null) {
-            orden_z = 0;
+
+        int total = items.size();
+        JsonObject[] elementos = new JsonObject[total];
+        Integer[] ids = new Integer[total];
+        Integer[] diagramas = new Integer[total];
+        String[] tipos = new String[total];
+        Integer[] versiones = new Integer[total];
+        String[] errores = new String[total];
+        JsonObject[] filas = new JsonObject[total];
+        for (int i = 0; i < total; i++) {
+            JsonValue value = items.get(i);
+            if (value.getValueType() != JsonValue.ValueType.OBJECT) {
+                errores[i] = "datos_incompletos";
+                continue;
+            }
+            elementos[i] = (JsonObject) value;
+            ids[i] = JsonUtil.getInt(elementos[i], "id_elemento");
+            diagramas[i] = JsonUtil.getInt(elementos[i], "id_diagrama");
+            tipos[i] = normalizeTipoElemento(JsonUtil.getString(elementos[i], "tipo_elemento"));
+            versiones[i] = JsonUtil.getInt(elementos[i], "version");
+            if (ids[i] == null || diagramas[i] == null || tipos[i] == null) {
+                errores[i] = "datos_incompletos";
+            }
         }
 
-        // Actualiza campos editables del elemento.
-        String sql = "UPDATE elementos_diagrama SET id_diagrama = ?, id_elemento_padre = ?, tipo_elemento = ?, etiqueta = ?, "
-                + "pos_x = ?, pos_y = ?, ancho = ?, alto = ?, rotacion_grados = ?, orden_z = ?, estilo_json = ?, metadatos_json = ? "
-                + "WHERE id_elemento = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_diagrama.intValue());
-            if (id_elemento_padre == null) {
-                ps.setNull(2, Types.INTEGER);
-            } else {
-                ps.setInt(2, id_elemento_padre.intValue());
+        try (Connection con = DB.getConnection()) {
+            // Diagrama actual de cada elemento: impide mover elementos ajenos y
+            // permite registrar el borrado en el diagrama de origen al moverlos.
+            Map<Integer, Integer> actuales = loadDiagramas(con, ids, errores);
+            Map<Integer, Boolean> permitidos = new HashMap<>();
+            for (int i = 0; i < total; i++) {
+                if (errores[i] != null) {
+                    continue;
+                }
+                Integer actual = actuales.get(ids[i]);
+                if (actual == null) {
+                    errores[i] = "elemento_no_encontrado";
+                } else if (!es_admin && (!isOwnerDiagramCached(permitidos, actual.intValue(), id_usuario_sesion)
+                        || !isOwnerDiagramCached(permitidos, diagramas[i].intValue(), id_usuario_sesion))) {
+                    errores[i] = "acceso_denegado";
+                }
             }
-            ps.setString(3, tipo_elemento);
-            if (etiqueta == null || etiqueta.trim().isEmpty()) {
-                ps.setNull(4, Types.VARCHAR);
-            } else {
-                ps.setString(4, etiqueta);
+
+            int[] posiciones = new int[total];
+            int pendientes = 0;
+            List<OperacionesDiagrama.Operacion> operaciones = new ArrayList<>();
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(SQL_ACTUALIZAR)) {
+                // Secuencias por diagrama (destino y, si se mueve, origen) en orden de id.
+                Map<Integer, Integer> cantidades = new TreeMap<>();
+                for (int i = 0; i < total; i++) {
+                    if (errores[i] == null) {
+                        contar(cantidades, diagramas[i]);
+                        if (!diagramas[i].equals(actuales.get(ids[i]))) {
+                            contar(cantidades, actuales.get(ids[i]));
+                        }
+                    }
+                }
+                Map<Integer, Long> secuencias = reservar(con, cantidades);
+                for (int i = 0; i < total; i++) {
+                    if (errores[i] != null) {
+                        continue;
+                    }
+                    bindActualizacion(ps, elementos[i], ids[i].intValue(), diagramas[i].intValue(), tipos[i]);
+                    ps.addBatch();
+                    posiciones[pendientes++] = i;
+                }
+                if (pendientes > 0) {
+                    int[] counts = ps.executeBatch();
+                    Map<Integer, JsonObject> actuales_lote = loadFilas(con, ids, posiciones, pendientes);
+                    for (int k = 0; k < pendientes; k++) {
+                        int i = posiciones[k];
+                        filas[i] = actuales_lote.get(ids[i]);
+                        if (k < counts.length && counts[k] == 0) {
+                            // Existia al validar: con version enviada, la cambio otra edicion.
+                            errores[i] = versiones[i] == null || filas[i] == null
+                                    ? "elemento_no_encontrado" : "conflicto_version";
+                        } else if (filas[i] == null) {
+                            errores[i] = "elemento_no_encontrado";
+                        }
+                    }
+                }
+                // Operaciones en el orden del lote; un borrado concurrente deja hueco en la secuencia.
+                for (int i = 0; i < total; i++) {
+                    if (errores[i] != null) {
+                        continue;
+                    }
+                    Integer actual = actuales.get(ids[i]);
+                    if (!diagramas[i].equals(actual)) {
+                        operaciones.add(new OperacionesDiagrama.Operacion(actual.intValue(),
+                                siguiente(secuencias, actual), OperacionesDiagrama.ELEMENTO,
+                                OperacionesDiagrama.BORRAR, ids[i].intValue(), null));
+                    }
+                    operaciones.add(new OperacionesDiagrama.Operacion(diagramas[i].intValue(),
+                            siguiente(secuencias, diagramas[i]), OperacionesDiagrama.ELEMENTO,
+                            OperacionesDiagrama.ACTUALIZAR, ids[i].intValue(),
+                            itemElemento(elementos[i], ids[i].intValue(), diagramas[i].intValue(), tipos[i],
+                                    Integer.valueOf(filas[i].getInt("version")))));
+                }
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, operaciones);
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
             }
-            ps.setInt(5, pos_x.intValue());
-            ps.setInt(6, pos_y.intValue());
-            ps.setInt(7, ancho.intValue());
-            ps.setInt(8, alto.intValue());
-            ps.setBigDecimal(9, rotacion_grados);
-            ps.setInt(10, orden_z.intValue());
-            if (estilo_json == null || estilo_json.trim().isEmpty()) {
-                ps.setNull(11, Types.LONGVARCHAR);
-            } else {
-                ps.setString(11, estilo_json);
+
+            JsonArrayBuilder resultados = Json.createArrayBuilder();
+            int actualizados = 0;
+            for (int i = 0; i < total; i++) {
+                JsonObjectBuilder item = Json.createObjectBuilder();
+                JsonUtil.add(item, "id_elemento", ids[i]);
+                if (errores[i] == null) {
+                    // El UPDATE puede mover el elemento a otro diagrama.
+                    OwnershipCache.putElement(ids[i].intValue(), diagramas[i].intValue());
+                    item.add("ok", true).add("version", filas[i].getInt("version"));
+                    actualizados++;
+                } else {
+                    item.add("ok", false).add("mensaje", errores[i]);
+                    if (filas[i] != null) {
+                        item.add("actual", filas[i]);
+                    }
+                }
+                resultados.add(item);
             }
-            if (metadatos_json == null || metadatos_json.trim().isEmpty()) {
-                ps.setNull(12, Types.LONGVARCHAR);
-            } else {
-                ps.setString(12, metadatos_json);
+            ColaboracionHub.publicar(request, id_usuario_sesion, operaciones);
+            JsonObjectBuilder body = Json.createObjectBuilder()
+                    .add("ok", true)
+                    .add("actualizados", actualizados)
+                    .add("resultados", resultados);
+            ResponseUtil.writeOk(response, body.build());
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_actualizar_elementos");
+        }
+    }
+
+    /**
+     * Actualiza solo la geometria de un elemento (arrastre, redimension).
+     * No retorna valor; responde 400/403/404/409/500 segun validaciones.
+     *
+     * Flujo:
+     *
+     * - Requiere id_elemento y al menos un campo de geometria
+     *   (pos_x, pos_y, ancho, alto, rotacion_grados, orden_z).
+     * - Valida propiedad del elemento via OwnershipCache.
+     * - Ejecuta un UPDATE que solo toca las columnas recibidas; no reescribe
+     *   estilo_json ni metadatos_json.
+     * - Con "version" en el payload el UPDATE queda condicionado; 409 si cambio.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @param id_usuario_sesion id del usuario autenticado.
+     * @param es_admin true si el usuario es administrador.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    private void actualizarGeometria(HttpServletRequest request, HttpServletResponse response,
+            Integer id_usuario_sesion, boolean es_admin) throws IOException {
+        JsonObject payload = JsonUtil.readJsonObject(request);
+        Integer id_elemento = JsonUtil.getInt(payload, "id_elemento");
+        if (id_elemento == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "id_elemento_requerido");
+            return;
+        }
+
+        // Solo columnas de geometria; el nombre de columna nunca viene del cliente.
+        String[] columnas = {"pos_x", "pos_y", "ancho", "alto", "orden_z"};
+        StringBuilder sql = new StringBuilder("UPDATE elementos_diagrama SET ");
+        Integer[] valores = new Integer[columnas.length];
+        int campos = 0;
+        for (int i = 0; i < columnas.length; i++) {
+            valores[i] = JsonUtil.getInt(payload, columnas[i]);
+            if (valores[i] != null) {
+                sql.append(campos == 0 ? "" : ", ").append(columnas[i]).append(" = ?");
+                campos++;
             }
-            ps.setInt(13, id_elemento.intValue());
-            int updated = ps.executeUpdate();
-            if (updated == 0) {
+        }
+        BigDecimal rotacion_grados = JsonUtil.getDecimal(payload, "rotacion_grados");
+        if (rotacion_grados != null) {
+            sql.append(campos == 0 ? "" : ", ").append("rotacion_grados = ?");
+            campos++;
+        }
+        if (campos == 0) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "datos_incompletos");
+            return;
+        }
+        Integer version = JsonUtil.getInt(payload, "version");
+        Integer version_nueva = version == null ? null : Integer.valueOf(version.intValue() + 1);
+        sql.append(", version = version + 1 WHERE id_elemento = ? AND version = COALESCE(?, version)");
+
+        if (!es_admin && !isOwnerElement(id_elemento.intValue(), id_usuario_sesion)) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+
+        try (Connection con = DB.getConnection()) {
+            Integer id_diagrama = OwnershipCache.elementDiagram(id_elemento.intValue());
+            if (id_diagrama == null) {
                 ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "elemento_no_encontrado");
                 return;
             }
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                long secuencia = OperacionesDiagrama.reservar(con, id_diagrama.intValue(), 1);
+                int index = 1;
+                for (int i = 0; i < columnas.length; i++) {
+                    if (valores[i] != null) {
+                        ps.setInt(index++, valores[i].intValue());
+                    }
+                }
+                if (rotacion_grados != null) {
+                    ps.setBigDecimal(index++, rotacion_grados);
+                }
+                ps.setInt(index++, id_elemento.intValue());
+                if (version == null) {
+                    ps.setNull(index, Types.INTEGER);
+                } else {
+                    ps.setInt(index, version.intValue());
+                }
+                int updated = ps.executeUpdate();
+                if (updated == 0) {
+                    con.rollback();
+                    if (version == null || !writeConflicto(response, con, id_elemento.intValue())) {
+                        ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "elemento_no_encontrado");
+                    }
+                    return;
+                }
+                // Operacion compacta: solo las columnas recibidas (sin nulls, el cliente las mezcla).
+                JsonObjectBuilder item = Json.createObjectBuilder().add("id_elemento", id_elemento.intValue());
+                for (int i = 0; i < columnas.length; i++) {
+                    if (valores[i] != null) {
+                        item.add(columnas[i], valores[i].intValue());
+                    }
+                }
+                if (rotacion_grados != null) {
+                    item.add("rotacion_grados", rotacion_grados);
+                }
+                JsonUtil.add(item, "version", version_nueva);
+                List<OperacionesDiagrama.Operacion> operaciones = Collections.singletonList(
+                        new OperacionesDiagrama.Operacion(id_diagrama.intValue(), secuencia,
+                                OperacionesDiagrama.ELEMENTO, OperacionesDiagrama.GEOMETRIA, id_elemento.intValue(),
+                                item.build()));
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, operaciones);
+                con.commit();
+                ColaboracionHub.publicar(request, id_usuario_sesion, operaciones);
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
+            }
             JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
+            JsonUtil.add(body, "version", version_nueva);
             ResponseUtil.writeOk(response, body.build());
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_actualizar_elemento");
         }
     }
 
+    /**
+     * Asigna los parametros de {@link #SQL_ACTUALIZAR} a partir del payload.
+     *
+     * Se aplican los mismos valores por defecto que en el alta para mantener
+     * consistencia en UI (posicion, tamanio, rotacion y orden).
+     *
+     *
+     * @param ps sentencia preparada con SQL_ACTUALIZAR.
+     * @param payload JSON del elemento.
+     * @param id_elemento id del elemento a actualizar.
+     * @param id_diagrama diagrama destino.
+     * @param tipo_elemento tipo ya normalizado.
+     * @throws Exception si falla la asignacion de parametros.
+     */
+    private void bindActualizacion(PreparedStatement ps, JsonObject payload, int id_elemento, int id_diagrama,
+            String tipo_elemento) throws Exception {
+        Integer id_elemento_padre = JsonUtil.getInt(payload, "id_elemento_padre");
+        String etiqueta = JsonUtil.getString(payload, "etiqueta");
+        Integer pos_x = JsonUtil.getInt(payload, "pos_x");
+        Integer pos_y = JsonUtil.getInt(payload, "pos_y");
+        Integer ancho = JsonUtil.getInt(payload, "ancho");
+        Integer alto = JsonUtil.getInt(payload, "alto");
+        BigDecimal rotacion_grados = JsonUtil.getDecimal(payload, "rotacion_grados");
+        Integer orden_z = JsonUtil.getInt(payload, "orden_z");
+        String estilo_json = JsonUtil.getString(payload, "estilo_json");
+        String metadatos_json = JsonUtil.getString(payload, "metadatos_json");
+        Integer version = JsonUtil.getInt(payload, "version");
+
+        ps.setInt(1, id_diagrama);
+        if (id_elemento_padre == null) {
+            ps.setNull(2, Types.INTEGER);
+        } else {
+            ps.setInt(2, id_elemento_padre.intValue());
+        }
+        ps.setString(3, tipo_elemento);
+        if (etiqueta == null || etiqueta.trim().isEmpty()) {
+            ps.setNull(4, Types.VARCHAR);
+        } else {
+            ps.setString(4, etiqueta);
+        }
+        ps.setInt(5, pos_x == null ? 0 : pos_x.intValue());
+        ps.setInt(6, pos_y == null ? 0 : pos_y.intValue());
+        ps.setInt(7, ancho == null ? 120 : ancho.intValue());
+        ps.setInt(8, alto == null ? 60 : alto.intValue());
+        ps.setBigDecimal(9, rotacion_grados == null ? new BigDecimal("0.00") : rotacion_grados);
+        ps.setInt(10, orden_z == null ? 0 : orden_z.intValue());
+        if (estilo_json == null || estilo_json.trim().isEmpty()) {
+            ps.setNull(11, Types.LONGVARCHAR);
+        } else {
+            ps.setString(11, estilo_json);
+        }
+        if (metadatos_json == null || metadatos_json.trim().isEmpty()) {
+            ps.setNull(12, Types.LONGVARCHAR);
+        } else {
+            ps.setString(12, metadatos_json);
+        }
+        ps.setInt(13, id_elemento);
+        if (version == null) {
+            ps.setNull(14, Types.INTEGER);
+        } else {
+            ps.setInt(14, version.intValue());
+        }
+    }
+
+    /**
+     * Arma el item de un delta de colaboracion con los valores que quedaron
+     * en BD (mismos valores por defecto que {@link #bindActualizacion}).
+     *
+     * @param payload JSON del elemento.
+     * @param id_elemento id del elemento.
+     * @param id_diagrama diagrama del elemento.
+     * @param tipo_elemento tipo ya normalizado.
+     * @param version version resultante de la fila, o null si no se conoce.
+     * @return item para {@link ColaboracionHub#publicar}.
+     */
+    private JsonObject itemElemento(JsonObject payload, int id_elemento, int id_diagrama, String tipo_elemento,
+            Integer version) {
+        Integer pos_x = JsonUtil.getInt(payload, "pos_x");
+        Integer pos_y = JsonUtil.getInt(payload, "pos_y");
+        Integer ancho = JsonUtil.getInt(payload, "ancho");
+        Integer alto = JsonUtil.getInt(payload, "alto");
+        BigDecimal rotacion_grados = JsonUtil.getDecimal(payload, "rotacion_grados");
+        Integer orden_z = JsonUtil.getInt(payload, "orden_z");
+        String etiqueta = JsonUtil.getString(payload, "etiqueta");
+        String estilo_json = JsonUtil.getString(payload, "estilo_json");
+        String metadatos_json = JsonUtil.getString(payload, "metadatos_json");
+
+        JsonObjectBuilder item = Json.createObjectBuilder()
+                .add("id_elemento", id_elemento)
+                .add("id_diagrama", id_diagrama)
+                .add("tipo_elemento", tipo_elemento);
+        JsonUtil.add(item, "id_elemento_padre", JsonUtil.getInt(payload, "id_elemento_padre"));
+        JsonUtil.add(item, "etiqueta", etiqueta == null || etiqueta.trim().isEmpty() ? null : etiqueta);
+        item.add("pos_x", pos_x == null ? 0 : pos_x.intValue());
+        item.add("pos_y", pos_y == null ? 0 : pos_y.intValue());
+        item.add("ancho", ancho == null ? 120 : ancho.intValue());
+        item.add("alto", alto == null ? 60 : alto.intValue());
+        item.add("rotacion_grados", rotacion_grados == null ? new BigDecimal("0.00") : rotacion_grados);
+        item.add("orden_z", orden_z == null ? 0 : orden_z.intValue());
+        JsonUtil.add(item, "estilo_json", estilo_json == null || estilo_json.trim().isEmpty() ? null : estilo_json);
+        JsonUtil.add(item, "metadatos_json",
+                metadatos_json == null || metadatos_json.trim().isEmpty() ? null : metadatos_json);
+        JsonUtil.add(item, "version", version);
+        return item.build();
+    }
+
+    /**
+     * Obtiene en una sola consulta el diagrama actual de los elementos del lote.
+     *
+     * Se arma un IN con los ids validos y se registran los resultados en
+     * OwnershipCache para las verificaciones siguientes.
+     *
+     *
+     * @param con conexion abierta.
+     * @param ids ids de elementos (null si el item es invalido).
+     * @param errores errores por item; se omiten los que ya tienen error.
+     * @return mapa id_elemento -> id_diagrama de los elementos existentes.
+     * @throws Exception si falla la consulta.
+     */
+    private Map<Integer, Integer> loadDiagramas(Connection con, Integer[] ids, String[] errores) throws Exception {
+        Map<Integer, Integer> diagramas = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT id_elemento, id_diagrama FROM elementos_diagrama WHERE id_elemento IN (");
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (errores[i] == null) {
+                sql.append(count == 0 ? "?" : ",?");
+                count++;
+            }
+        }
+        if (count == 0) {
+            return diagramas;
+        }
+        sql.append(")");
+        try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (int i = 0; i < ids.length; i++) {
+                if (errores[i] == null) {
+                    ps.setInt(index++, ids[i].intValue());
+                }
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int id_elemento = rs.getInt("id_elemento");
+                    int id_diagrama = rs.getInt("id_diagrama");
+                    OwnershipCache.putElement(id_elemento, id_diagrama);
+                    diagramas.put(id_elemento, id_diagrama);
+                }
+            }
+        }
+        return diagramas;
+    }
+
+    /**
+     * Relee en una sola consulta las filas de los elementos enviados en el batch.
+     *
+     * Corre dentro de la transaccion del lote: los aplicados devuelven la
+     * version que escribio este UPDATE y los que chocaron, la fila vigente.
+     *
+     *
+     * @param con conexion en transaccion.
+     * @param ids ids de elementos del lote.
+     * @param posiciones indices del lote incluidos en el batch.
+     * @param pendientes cantidad de posiciones validas.
+     * @return mapa id_elemento -> fila (mismo formato que writeElemento).
+     * @throws Exception si falla la consulta.
+     */
+    private Map<Integer, JsonObject> loadFilas(Connection con, Integer[] ids, int[] posiciones, int pendientes)
+            throws Exception {
+        StringBuilder sql = new StringBuilder(COLUMNAS_ELEMENTO).append("WHERE id_elemento IN (");
+        for (int k = 0; k < pendientes; k++) {
+            sql.append(k == 0 ? "?" : ",?");
+        }
+        sql.append(")");
+        Map<Integer, JsonObject> filas = new HashMap<>();
+        try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+            for (int k = 0; k < pendientes; k++) {
+                ps.setInt(k + 1, ids[posiciones[k]].intValue());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    StringWriter out = new StringWriter();
+                    try (JsonGenerator gen = Json.createGenerator(out)) {
+                        gen.writeStartObject();
+                        writeElemento(gen, rs);
+                        gen.writeEnd();
+                    }
+                    try (JsonReader reader = Json.createReader(new StringReader(out.toString()))) {
+                        filas.put(rs.getInt("id_elemento"), reader.readObject());
+                    }
+                }
+            }
+        }
+        return filas;
+    }
+
+    /**
+     * Verifica propiedad de un diagrama memorizando el resultado por request.
+     *
+     * @param permitidos resultados ya calculados por id_diagrama.
+     * @param id_diagrama id del diagrama.
+     * @param id_usuario_sesion id del usuario autenticado.
+     * @return true si es propietario.
+     */
+    private boolean isOwnerDiagramCached(Map<Integer, Boolean> permitidos, int id_diagrama, Integer id_usuario_sesion) {
+        Boolean permitido = permitidos.get(id_diagrama);
+        if (permitido == null) {
+            permitido = isOwnerDiagram(id_diagrama, id_usuario_sesion);
+            permitidos.put(id_diagrama, permitido);
+        }
+        return permitido.booleanValue();
+    }
+
+    /**
+     * @param cantidades operaciones por diagrama.
+     * @param id_diagrama diagrama al que se suma una operacion.
+     */
+    private void contar(Map<Integer, Integer> cantidades, Integer id_diagrama) {
+        Integer cantidad = cantidades.get(id_diagrama);
+        cantidades.put(id_diagrama, cantidad == null ? 1 : cantidad.intValue() + 1);
+    }
+
+    /**
+     * Reserva las secuencias de cada diagrama en orden ascendente de id
+     * (mismo orden de locks en todas las transacciones).
+     *
+     * @param con conexion en transaccion.
+     * @param cantidades operaciones por diagrama, ordenado por id.
+     * @return primera secuencia libre por diagrama; se avanza con {@link #siguiente}.
+     * @throws SQLException si falla la BD.
+     */
+    private Map<Integer, Long> reservar(Connection con, Map<Integer, Integer> cantidades) throws SQLException {
+        Map<Integer, Long> secuencias = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : cantidades.entrySet()) {
+            secuencias.put(entry.getKey(), OperacionesDiagrama.reservar(con, entry.getKey().intValue(),
+                    entry.getValue().intValue()));
+        }
+        return secuencias;
+    }
+
+    /**
+     * @param secuencias secuencias reservadas por diagrama.
+     * @param id_diagrama diagrama de la operacion.
+     * @return secuencia para la operacion (0 si el diagrama no existia).
+     */
+    private long siguiente(Map<Integer, Long> secuencias, Integer id_diagrama) {
+        long secuencia = secuencias.get(id_diagrama).longValue();
+        if (secuencia > 0) {
+            secuencias.put(id_diagrama, secuencia + 1);
+        }
+        return secuencia;
+    }
+
     /**
      * Elimina un elemento si el usuario es propietario del diagrama.
      * No retorna valor; responde 400/403/404/500 segun validaciones.
      *
      * Se valida el id_elemento, se verifica la propiedad via join y
-     * ejecuta DELETE.
+     * ejecuta DELETE. En la misma transaccion se registran los efectos en
+     * cascada: un borrado por cada conexion del elemento y una actualizacion
+     * (id_elemento_padre = null) por cada hijo, para que el registro de
+     * operaciones, /api/diagramas/cambios y el canal colaborativo los reflejen.
      *
      *
      * @param request request HTTP actual.
@@ -350,8 +980,8 @@ public class ElementosServlet extends HttpServlet {
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
 
         Integer id_elemento = parseInt(request.getParameter("id_elemento"));
@@ -365,14 +995,47 @@ public class ElementosServlet extends HttpServlet {
         }
 
         String sql = "DELETE FROM elementos_diagrama WHERE id_elemento = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_elemento.intValue());
-            int deleted = ps.executeUpdate();
-            if (deleted == 0) {
+        try (Connection con = DB.getConnection()) {
+            // Se resuelve antes del DELETE para saber en que diagrama registrar la operacion.
+            Integer id_diagrama = OwnershipCache.elementDiagram(id_elemento.intValue());
+            if (id_diagrama == null) {
+                OwnershipCache.removeElement(id_elemento.intValue());
                 ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "elemento_no_encontrado");
                 return;
             }
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                // Reservar primero bloquea el diagrama: nadie agrega conexiones o hijos mientras se leen.
+                long secuencia = OperacionesDiagrama.reservar(con, id_diagrama.intValue(), 1);
+                List<OperacionesDiagrama.Operacion> operaciones = dependientes(con, id_diagrama.intValue(),
+                        id_elemento.intValue(), secuencia);
+                ps.setInt(1, id_elemento.intValue());
+                int deleted = ps.executeUpdate();
+                OwnershipCache.removeElement(id_elemento.intValue());
+                if (deleted == 0) {
+                    con.rollback();
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "elemento_no_encontrado");
+                    return;
+                }
+                // El borrado del elemento queda ultimo, despues de sus efectos.
+                operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama.intValue(),
+                        secuencia == 0 ? 0 : secuencia + operaciones.size(), OperacionesDiagrama.ELEMENTO,
+                        OperacionesDiagrama.BORRAR, id_elemento.intValue(), null));
+                OperacionesDiagrama.registrar(con, id_usuario_sesion, operaciones);
+                con.commit();
+                for (OperacionesDiagrama.Operacion operacion : operaciones) {
+                    if (OperacionesDiagrama.CONEXION.equals(operacion.entidad)) {
+                        OwnershipCache.removeConexion(operacion.id_entidad);
+                    }
+                }
+                ColaboracionHub.publicar(request, id_usuario_sesion, operaciones);
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
+            }
             JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
             ResponseUtil.writeOk(response, body.build());
         } catch (Exception ex) {
@@ -381,47 +1044,151 @@ public class ElementosServlet extends HttpServlet {
     }
 
     /**
-     * Construye el JSON de respuesta para un elemento.
+     * Prepara las operaciones de los efectos en cascada del borrado de un
+     * elemento, antes del DELETE.
+     *
+     * Las conexiones del elemento se borraran por ON DELETE CASCADE: solo se
+     * registra su borrado. Los hijos se sueltan aqui mismo (en lugar de ON
+     * DELETE SET NULL) para subir su version. Con el diagrama bloqueado las
+     * reservas son consecutivas: los efectos toman las secuencias desde la
+     * ya reservada y el borrado del elemento la siguiente a ellos.
+     *
+     *
+     * @param con conexion en transaccion, con el diagrama ya reservado.
+     * @param id_diagrama diagrama del elemento.
+     * @param id_elemento elemento a borrar.
+     * @param secuencia secuencia ya reservada (0 si el diagrama no existe).
+     * @return operaciones de conexiones borradas y de hijos actualizados.
+     * @throws SQLException si falla alguna sentencia.
+     */
+    private List<OperacionesDiagrama.Operacion> dependientes(Connection con, int id_diagrama, int id_elemento,
+            long secuencia) throws SQLException {
+        List<OperacionesDiagrama.Operacion> operaciones = new ArrayList<>();
+        if (secuencia == 0) {
+            return operaciones;
+        }
+        List<Integer> conexiones = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(SQL_CONEXIONES_DEL_ELEMENTO)) {
+            ps.setInt(1, id_diagrama);
+            ps.setInt(2, id_elemento);
+            ps.setInt(3, id_elemento);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    conexiones.add(rs.getInt("id_conexion"));
+                }
+            }
+        }
+        List<int[]> hijos = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(SQL_HIJOS)) {
+            ps.setInt(1, id_diagrama);
+            ps.setInt(2, id_elemento);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    hijos.add(new int[] {rs.getInt("id_elemento"), rs.getInt("version")});
+                }
+            }
+        }
+        int total = conexiones.size() + hijos.size();
+        if (total == 0) {
+            return operaciones;
+        }
+        if (!hijos.isEmpty()) {
+            try (PreparedStatement ps = con.prepareStatement(SQL_SOLTAR_HIJOS)) {
+                ps.setInt(1, id_diagrama);
+                ps.setInt(2, id_elemento);
+                ps.executeUpdate();
+            }
+        }
+        OperacionesDiagrama.reservar(con, id_diagrama, total);
+        for (Integer id_conexion : conexiones) {
+            operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama, secuencia++,
+                    OperacionesDiagrama.CONEXION, OperacionesDiagrama.BORRAR, id_conexion.intValue(), null));
+        }
+        for (int[] hijo : hijos) {
+            JsonObjectBuilder item = Json.createObjectBuilder()
+                    .add("id_elemento", hijo[0])
+                    .add("id_diagrama", id_diagrama)
+                    .addNull("id_elemento_padre")
+                    .add("version", hijo[1] + 1);
+            operaciones.add(new OperacionesDiagrama.Operacion(id_diagrama, secuencia++,
+                    OperacionesDiagrama.ELEMENTO, OperacionesDiagrama.ACTUALIZAR, hijo[0], item.build()));
+        }
+        return operaciones;
+    }
+
+    /**
+     * Escribe los campos de un elemento en el objeto abierto del generador.
      *
      * Se extrae columnas, maneja nulls con JsonUtil y formatea
-     * timestamps como string ISO.
+     * timestamps como string ISO. Se reusa en listados y en el snapshot.
      *
      *
+     * @param gen generador posicionado dentro de un objeto.
      * @param rs ResultSet posicionado en un registro valido.
-     * @return builder con campos del elemento.
      * @throws Exception si falla la lectura desde el ResultSet.
      */
-    private JsonObjectBuilder buildElemento(ResultSet rs) throws Exception {
-        JsonObjectBuilder elemento = Json.createObjectBuilder();
-        elemento.add("id_elemento", rs.getInt("id_elemento"));
-        elemento.add("id_diagrama", rs.getInt("id_diagrama"));
+    static void writeElemento(JsonGenerator gen, ResultSet rs) throws Exception {
+        gen.write("id_elemento", rs.getInt("id_elemento"));
+        gen.write("id_diagrama", rs.getInt("id_diagrama"));
         int padre = rs.getInt("id_elemento_padre");
         if (rs.wasNull()) {
-            JsonUtil.add(elemento, "id_elemento_padre", (Integer) null);
+            JsonUtil.write(gen, "id_elemento_padre", (Integer) null);
         } else {
-            elemento.add("id_elemento_padre", padre);
-        }
-        elemento.add("tipo_elemento", rs.getString("tipo_elemento"));
-        JsonUtil.add(elemento, "etiqueta", rs.getString("etiqueta"));
-        elemento.add("pos_x", rs.getInt("pos_x"));
-        elemento.add("pos_y", rs.getInt("pos_y"));
-        elemento.add("ancho", rs.getInt("ancho"));
-        elemento.add("alto", rs.getInt("alto"));
-        elemento.add("rotacion_grados", rs.getBigDecimal("rotacion_grados"));
-        elemento.add("orden_z", rs.getInt("orden_z"));
-        JsonUtil.add(elemento, "estilo_json", rs.getString("estilo_json"));
-        JsonUtil.add(elemento, "metadatos_json", rs.getString("metadatos_json"));
+            gen.write("id_elemento_padre", padre);
+        }
+        gen.write("tipo_elemento", rs.getString("tipo_elemento"));
+        JsonUtil.write(gen, "etiqueta", rs.getString("etiqueta"));
+        gen.write("pos_x", rs.getInt("pos_x"));
+        gen.write("pos_y", rs.getInt("pos_y"));
+        gen.write("ancho", rs.getInt("ancho"));
+        gen.write("alto", rs.getInt("alto"));
+        gen.write("rotacion_grados", rs.getBigDecimal("rotacion_grados"));
+        gen.write("orden_z", rs.getInt("orden_z"));
+        JsonUtil.write(gen, "estilo_json", rs.getString("estilo_json"));
+        JsonUtil.write(gen, "metadatos_json", rs.getString("metadatos_json"));
+        gen.write("version", rs.getInt("version"));
         Timestamp creado = rs.getTimestamp("fecha_creacion");
         Timestamp actualizado = rs.getTimestamp("fecha_actualizacion");
-        JsonUtil.add(elemento, "fecha_creacion", creado == null ? null : creado.toString());
-        JsonUtil.add(elemento, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
-        return elemento;
+        JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+        JsonUtil.write(gen, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+    }
+
+    /**
+     * Responde 409 con la fila actual cuando un UPDATE condicionado por
+     * version no afecto filas y el elemento sigue existiendo.
+     *
+     * @param response response HTTP actual.
+     * @param con conexion abierta.
+     * @param id_elemento id del elemento.
+     * @return true si se escribio el conflicto; false si el elemento no existe.
+     * @throws Exception si falla la lectura o la escritura.
+     */
+    private boolean writeConflicto(HttpServletResponse response, Connection con, int id_elemento) throws Exception {
+        try (PreparedStatement ps = con.prepareStatement(SQL_ELEMENTO)) {
+            ps.setInt(1, id_elemento);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                Metricas.error("conflicto_version");
+                try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_CONFLICT)) {
+                    gen.writeStartObject();
+                    gen.write("ok", false);
+                    gen.write("mensaje", "conflicto_version");
+                    gen.writeStartObject("actual");
+                    writeElemento(gen, rs);
+                    gen.writeEnd();
+                    gen.writeEnd();
+                }
+                return true;
+            }
+        }
     }
 
     /**
      * Verifica si el diagrama pertenece al usuario de la sesion.
      *
-     * Se consulta id_usuario propietario y compara con sesion.
+     * Se obtiene el propietario desde OwnershipCache (BD solo en fallo) y compara con sesion.
      *
      *
      * @param id_diagrama id del diagrama.
@@ -432,25 +1199,17 @@ public class ElementosServlet extends HttpServlet {
         if (id_usuario_sesion == null) {
             return false;
         }
-        String sql = "SELECT id_usuario FROM diagramas_uml WHERE id_diagrama = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_diagrama);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id_usuario") == id_usuario_sesion.intValue();
-                }
-            }
+        try {
+            return OwnershipCache.isDiagramOwner(id_diagrama, id_usuario_sesion.intValue());
         } catch (Exception ex) {
             return false;
         }
-        return false;
     }
 
     /**
      * Verifica si un elemento pertenece a un diagrama del usuario autenticado.
      *
-     * Se hace join elemento->diagrama y compara propietario.
+     * Se resuelve elemento->diagrama->propietario desde OwnershipCache y compara.
      *
      *
      * @param id_elemento id del elemento.
@@ -461,21 +1220,11 @@ public class ElementosServlet extends HttpServlet {
         if (id_usuario_sesion == null) {
             return false;
         }
-        String sql = "SELECT d.id_usuario FROM diagramas_uml d "
-                + "INNER JOIN elementos_diagrama e ON e.id_diagrama = d.id_diagrama "
-                + "WHERE e.id_elemento = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_elemento);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id_usuario") == id_usuario_sesion.intValue();
-                }
-            }
+        try {
+            return OwnershipCache.isElementOwner(id_elemento, id_usuario_sesion.intValue());
         } catch (Exception ex) {
             return false;
         }
-        return false;
     }
 
     /**
@@ -524,42 +1273,6 @@ public class ElementosServlet extends HttpServlet {
         }
     }
 
-    /**
-     * Obtiene id_usuario de la sesion si existe.
-     *
-     * Se lee el atributo "id_usuario" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_usuario o null si no hay sesion.
-     */
-    private Integer getSessionUserId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_usuario");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
-    /**
-     * Obtiene id_rol de la sesion si existe.
-     *
-     * Se lee el atributo "id_rol" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_rol o null si no hay sesion.
-     */
-    private Integer getSessionRoleId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_rol");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
     /**
      * Determina si el rol corresponde a administrador (id_rol = 1).
      *
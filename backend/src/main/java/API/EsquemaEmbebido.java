@@ -0,0 +1,215 @@
+package API;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Crea el esquema de basededatos.sql en una base H2 embebida (modo MySQL).
+ *
+ * El script es DDL de MySQL; antes de ejecutarlo se quitan las partes que H2
+ * no entiende o que no aplican a una base embebida (CREATE/USE DATABASE, SET,
+ * opciones ENGINE/CHARSET, COLLATE de columna, UNSIGNED) y los KEY del CREATE
+ * TABLE se pasan a CREATE INDEX. Las columnas JSON se crean como CLOB: el
+ * backend las trata como texto y el tipo JSON de H2 guardaria el string entre
+ * comillas. El script viaja en el WAR como recurso (WEB-INF/classes).
+ *
+ */
+public final class EsquemaEmbebido {
+    public static final String RECURSO = "/basededatos.sql";
+
+    private static final Pattern CREATE_TABLE = Pattern.compile("^CREATE TABLE (\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern KEY = Pattern.compile("^\\s*KEY (\\w+) (\\(.*\\)),?\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern UNIQUE_KEY = Pattern.compile("^(\\s*)UNIQUE KEY (\\w+) (\\(.*\\))(,?)\\s*$",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern OPCIONES_TABLA = Pattern.compile("\\)\\s*ENGINE\\s*=.*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern COLLATE = Pattern.compile("\\s+COLLATE\\s+\\w+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern UNSIGNED = Pattern.compile("\\s+UNSIGNED\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern JSON = Pattern.compile("\\bJSON\\b");
+    private static final Pattern NULL_DEFAULT = Pattern.compile("\\bNULL DEFAULT NULL\\b");
+    private static final Pattern COMA_FINAL = Pattern.compile(",(\\s*\\))\\s*$");
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private EsquemaEmbebido() {
+    }
+
+    /**
+     * Crea las tablas y los datos iniciales si la base aun no los tiene.
+     *
+     * Flujo:
+     * 1) Si ya existe la tabla usuarios no hace nada (base en archivo ya creada).
+     * 2) Traduce el script a sentencias H2 y las ejecuta en orden.
+     * 3) Reinicia los AUTO_INCREMENT despues del mayor id insertado.
+     *
+     *
+     * @param con conexion a H2.
+     * @return true si se creo el esquema.
+     * @throws IOException si no se puede leer el script.
+     * @throws SQLException si una sentencia falla (se incluye en el mensaje).
+     */
+    public static boolean inicializar(Connection con) throws IOException, SQLException {
+        if (existeEsquema(con)) {
+            return false;
+        }
+        try (Statement st = con.createStatement()) {
+            for (String sql : traducir(leerScript())) {
+                try {
+                    st.execute(sql);
+                } catch (SQLException ex) {
+                    throw new SQLException("sentencia_invalida: " + sql, ex);
+                }
+            }
+        }
+        reiniciarAutoIncrement(con);
+        return true;
+    }
+
+    /**
+     * @param con conexion a H2.
+     * @return true si la tabla usuarios ya existe en el esquema actual.
+     * @throws SQLException si falla la consulta de metadatos.
+     */
+    private static boolean existeEsquema(Connection con) throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM information_schema.tables "
+                     + "WHERE table_schema = SCHEMA() AND LOWER(table_name) = 'usuarios'")) {
+            return rs.next() && rs.getInt(1) > 0;
+        }
+    }
+
+    /**
+     * @return contenido de basededatos.sql desde el classpath.
+     * @throws IOException si el recurso no esta en el WAR.
+     */
+    private static String leerScript() throws IOException {
+        try (InputStream in = EsquemaEmbebido.class.getResourceAsStream(RECURSO)) {
+            if (in == null) {
+                throw new IOException("esquema_no_encontrado: " + RECURSO);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @param script contenido de basededatos.sql.
+     * @return sentencias listas para H2.
+     */
+    public static List<String> traducir(String script) {
+        List<String> sentencias = new ArrayList<>();
+        List<String> indices = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        String tabla = null;
+        for (String linea : script.replace("\r", "").split("\n")) {
+            String limpia = linea.replace("`", "");
+            if (limpia.trim().startsWith("--") || limpia.trim().isEmpty()) {
+                continue;
+            }
+            Matcher create = CREATE_TABLE.matcher(limpia.trim());
+            if (create.find()) {
+                tabla = create.group(1);
+            }
+            if (tabla != null) {
+                Matcher key = KEY.matcher(limpia);
+                if (key.matches()) {
+                    indices.add("CREATE INDEX " + key.group(1) + " ON " + tabla + " " + key.group(2));
+                    continue;
+                }
+                Matcher unique = UNIQUE_KEY.matcher(limpia);
+                if (unique.matches()) {
+                    limpia = unique.group(1) + "CONSTRAINT " + unique.group(2) + " UNIQUE " + unique.group(3)
+                            + unique.group(4);
+                }
+            }
+            actual.append(limpia).append('\n');
+            if (limpia.trim().endsWith(";")) {
+                String sql = actual.toString().trim();
+                sql = sql.substring(0, sql.length() - 1).trim();
+                actual.setLength(0);
+                if (tabla != null) {
+                    sql = OPCIONES_TABLA.matcher(sql).replaceFirst(")");
+                    sql = COMA_FINAL.matcher(sql).replaceFirst("$1");
+                    tabla = null;
+                }
+                if (aplica(sql)) {
+                    sentencias.add(adaptar(sql));
+                    sentencias.addAll(indices);
+                }
+                indices.clear();
+            }
+        }
+        return sentencias;
+    }
+
+    /**
+     * @param sql sentencia sin punto y coma.
+     * @return false para las que solo aplican a un servidor MySQL.
+     */
+    private static boolean aplica(String sql) {
+        String inicio = sql.toUpperCase();
+        return !(inicio.startsWith("DROP DATABASE") || inicio.startsWith("CREATE DATABASE")
+                || inicio.startsWith("USE ") || inicio.startsWith("SET "));
+    }
+
+    /**
+     * @param sql sentencia.
+     * @return sentencia sin COLLATE/UNSIGNED y con JSON como CLOB (solo DDL).
+     */
+    private static String adaptar(String sql) {
+        if (!sql.toUpperCase().startsWith("CREATE TABLE")) {
+            return sql;
+        }
+        sql = COLLATE.matcher(sql).replaceAll("");
+        sql = UNSIGNED.matcher(sql).replaceAll("");
+        sql = NULL_DEFAULT.matcher(sql).replaceAll("DEFAULT NULL");
+        return JSON.matcher(sql).replaceAll("CLOB");
+    }
+
+    /**
+     * H2 no siempre avanza la identidad al insertar ids explicitos (MySQL si):
+     * se reinicia cada AUTO_INCREMENT despues del mayor id existente.
+     *
+     * @param con conexion a H2.
+     * @throws SQLException si falla la consulta de metadatos o el ALTER.
+     */
+    public static void reiniciarAutoIncrement(Connection con) throws SQLException {
+        List<String[]> identidades = new ArrayList<>();
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT table_name, column_name FROM information_schema.columns "
+                     + "WHERE table_schema = SCHEMA() AND is_identity = 'YES'")) {
+            while (rs.next()) {
+                identidades.add(new String[] {rs.getString(1), rs.getString(2)});
+            }
+        }
+        try (Statement st = con.createStatement()) {
+            for (String[] identidad : identidades) {
+                long siguiente = 1;
+                try (ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(" + identidad[1] + "), 0) + 1 FROM "
+                        + identidad[0])) {
+                    if (rs.next()) {
+                        siguiente = rs.getLong(1);
+                    }
+                }
+                st.execute("ALTER TABLE " + identidad[0] + " ALTER COLUMN " + identidad[1] + " RESTART WITH "
+                        + siguiente);
+            }
+        }
+    }
+}
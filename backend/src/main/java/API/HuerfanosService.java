@@ -0,0 +1,499 @@
+package API;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reconciliador periodico entre el almacenamiento multimedia y la BD.
+ *
+ * Recorre en paralelo y en orden de clave el listado de uploads/ del
+ * {@link MediaStorage} y las rutas de archivos_multimedia / blobs_multimedia
+ * (lotes por keyset sobre indices de ruta_archivo, columna con collation
+ * binaria para que el orden coincida con el del almacen). Es un merge-join:
+ * solo se mantiene en memoria un lote de rutas y el nivel actual del listado.
+ *
+ * - Objeto sin fila (ni variante de una fila), con mas antiguedad que
+ *   GRACIA_MS: huerfano; se borra revalidando la fila con bloqueo (una
+ *   subida con el mismo hash no puede reutilizarlo mientras tanto).
+ * - Fila sin objeto: se reporta (no se borra: puede ser un fallo temporal
+ *   del almacen).
+ * - Temporales .tmp abandonados en la carpeta de temporales: se borran.
+ * - Sesiones de subida vencidas y sus .part: se borran (tambien con
+ *   HUERFANOS_BORRAR=false; es la expiracion normal de subidas).
+ *
+ * Los borrados se limitan a BORRADOS_POR_SEGUNDO para no competir con el
+ * trafico normal. Con HUERFANOS_BORRAR=false solo se reporta.
+ *
+ */
+public final class HuerfanosService {
+    public static final long INTERVALO_MS = DB.getLongValue("HUERFANOS_INTERVALO_MS", "huerfanos.intervalo_ms",
+            21600000L);
+    public static final long GRACIA_MS = DB.getLongValue("HUERFANOS_GRACIA_MS", "huerfanos.gracia_ms", 86400000L);
+    public static final int LOTE = (int) DB.getLongValue("HUERFANOS_LOTE", "huerfanos.lote", 500);
+    public static final int BORRADOS_POR_SEGUNDO = (int) DB.getLongValue("HUERFANOS_BORRADOS_POR_SEGUNDO",
+            "huerfanos.borrados_por_segundo", 10);
+    public static final boolean BORRAR = !"false".equalsIgnoreCase(DB.getValue("HUERFANOS_BORRAR",
+            "huerfanos.borrar", "true"));
+
+    private static final String PREFIJO = "uploads/";
+    private static final int MAX_MUESTRA = 100;
+    private static final Logger LOG = Logger.getLogger(HuerfanosService.class.getName());
+    private static final Object LOCK = new Object();
+    private static final Object EJECUCION = new Object();
+    private static ScheduledThreadPoolExecutor programador;
+    private static boolean programado;
+    private static volatile boolean en_curso;
+    private static volatile Reporte ultimo;
+
+    /**
+     * Resultado de una pasada del reconciliador.
+     */
+    public static final class Reporte {
+        public long inicio;
+        public long fin;
+        public boolean solo_reporte;
+        public long objetos_revisados;
+        public long rutas_revisadas;
+        public long recientes;
+        public long huerfanos;
+        public long borrados;
+        public long bytes_liberados;
+        public long temporales_borrados;
+        public long subidas_vencidas;
+        public long faltantes;
+        public final List<String> muestra_huerfanos = new ArrayList<>();
+        public final List<String> muestra_faltantes = new ArrayList<>();
+        public String error;
+    }
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private HuerfanosService() {
+    }
+
+    /**
+     * Programa pasadas periodicas cada INTERVALO_MS (la primera tras un
+     * intervalo, no al arrancar). Con INTERVALO_MS &lt;= 0 no se programa.
+     *
+     * @param storage almacenamiento multimedia.
+     */
+    public static void iniciar(MediaStorage storage) {
+        if (INTERVALO_MS <= 0) {
+            return;
+        }
+        synchronized (LOCK) {
+            if (programado) {
+                return;
+            }
+            getProgramador().scheduleWithFixedDelay(tarea(storage), INTERVALO_MS, INTERVALO_MS,
+                    TimeUnit.MILLISECONDS);
+            programado = true;
+        }
+    }
+
+    /**
+     * Encola una pasada inmediata. No bloquea.
+     *
+     * @param storage almacenamiento multimedia.
+     * @return false si la aplicacion se esta deteniendo.
+     */
+    public static boolean programarAhora(MediaStorage storage) {
+        try {
+            getProgramador().execute(tarea(storage));
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Detiene el programador al bajar la aplicacion.
+     */
+    public static void shutdown() {
+        synchronized (LOCK) {
+            if (programador != null) {
+                programador.shutdownNow();
+                programador = null;
+                programado = false;
+            }
+        }
+    }
+
+    /**
+     * @return true si hay una pasada en curso.
+     */
+    public static boolean enCurso() {
+        return en_curso;
+    }
+
+    /**
+     * @return reporte de la ultima pasada terminada o null si aun no hubo.
+     */
+    public static Reporte ultimoReporte() {
+        return ultimo;
+    }
+
+    /**
+     * Ejecuta una pasada completa. Si ya hay una en curso espera a que termine.
+     *
+     * Flujo:
+     *
+     * - Borra sesiones de subida vencidas y temporales .tmp con mas
+     *   antiguedad que GRACIA_MS.
+     * - Avanza el listado del almacen y el cursor de rutas de BD en orden,
+     *   comparando la menor clave de cada lado.
+     * - Clave solo en el almacen: huerfano salvo que sea variante de una
+     *   ruta existente o sea reciente.
+     * - Clave solo en BD: faltante.
+     *
+     *
+     * @param storage almacenamiento multimedia.
+     * @return reporte de la pasada.
+     */
+    public static Reporte ejecutar(MediaStorage storage) {
+        synchronized (EJECUCION) {
+            en_curso = true;
+            Reporte reporte = new Reporte();
+            reporte.inicio = System.currentTimeMillis();
+            reporte.solo_reporte = !BORRAR;
+            try {
+                limpiarSubidas(storage, reporte);
+                limpiarTemporales(storage, reporte);
+                reconciliar(storage, reporte);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                reporte.error = "interrumpido";
+            } catch (Exception ex) {
+                reporte.error = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+                LOG.log(Level.WARNING, "Fallo en el reconciliador de huerfanos", ex);
+            }
+            reporte.fin = System.currentTimeMillis();
+            ultimo = reporte;
+            en_curso = false;
+            LOG.info("Huerfanos: " + reporte.objetos_revisados + " objetos, " + reporte.rutas_revisadas
+                    + " rutas, " + reporte.huerfanos + " huerfanos (" + reporte.borrados + " borrados, "
+                    + reporte.bytes_liberados + " bytes), " + reporte.faltantes + " faltantes, "
+                    + reporte.temporales_borrados + " temporales, " + reporte.subidas_vencidas
+                    + " subidas vencidas en " + (reporte.fin - reporte.inicio) + " ms");
+            return reporte;
+        }
+    }
+
+    /**
+     * Merge-join entre el listado ordenado del almacen y las rutas de BD.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param reporte reporte en curso.
+     * @throws Exception si falla el almacen o la BD.
+     */
+    private static void reconciliar(MediaStorage storage, Reporte reporte) throws Exception {
+        long limite = System.currentTimeMillis() - GRACIA_MS;
+        long pausa_ms = BORRADOS_POR_SEGUNDO > 0 ? 1000L / BORRADOS_POR_SEGUNDO : 0;
+        CursorRutas archivos = new CursorRutas("archivos_multimedia");
+        CursorRutas blobs = new CursorRutas("blobs_multimedia");
+        // Base (sin extension) de la ultima ruta de BD consumida: sus variantes
+        // (base.wN.jpg) ordenan justo despues del original.
+        String base_referenciada = null;
+        try (MediaStorage.Listado listado = storage.listar(PREFIJO)) {
+            MediaStorage.Entrada objeto = listado.siguiente();
+            String ruta = menor(archivos, blobs);
+            while (objeto != null || ruta != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                int cmp = objeto == null ? 1 : ruta == null ? -1 : objeto.clave.compareTo(ruta);
+                if (cmp == 0) {
+                    reporte.objetos_revisados++;
+                    reporte.rutas_revisadas++;
+                    base_referenciada = MiniaturasService.base(ruta);
+                    objeto = listado.siguiente();
+                    ruta = avanzar(archivos, blobs, ruta);
+                } else if (cmp > 0) {
+                    reporte.rutas_revisadas++;
+                    reporte.faltantes++;
+                    agregarMuestra(reporte.muestra_faltantes, ruta);
+                    base_referenciada = MiniaturasService.base(ruta);
+                    ruta = avanzar(archivos, blobs, ruta);
+                } else {
+                    reporte.objetos_revisados++;
+                    String base_variante = MiniaturasService.baseDeVariante(objeto.clave);
+                    boolean es_variante_referenciada = base_variante != null
+                            && base_variante.equals(base_referenciada);
+                    if (!es_variante_referenciada) {
+                        if (objeto.info.modificado > limite) {
+                            reporte.recientes++;
+                        } else {
+                            reporte.huerfanos++;
+                            agregarMuestra(reporte.muestra_huerfanos, objeto.clave);
+                            if (BORRAR && borrarHuerfano(storage, objeto.clave, base_variante)) {
+                                reporte.borrados++;
+                                reporte.bytes_liberados += objeto.info.tamano_bytes;
+                                if (pausa_ms > 0) {
+                                    Thread.sleep(pausa_ms);
+                                }
+                            }
+                        }
+                    }
+                    objeto = listado.siguiente();
+                }
+            }
+        }
+    }
+
+    /**
+     * Borra un huerfano revalidando en BD con bloqueo que sigue sin fila.
+     *
+     * El SELECT ... FOR UPDATE sobre el indice unico de blobs_multimedia
+     * bloquea tambien el hueco de la clave, de modo que una subida con el
+     * mismo contenido espera a que se borre el objeto y luego lo vuelve a
+     * escribir (registrarBlob ve que no existe).
+     *
+     * @param storage almacenamiento multimedia.
+     * @param clave clave del objeto.
+     * @param base_variante base del original si es variante, o null.
+     * @return true si se borro.
+     * @throws Exception si falla la BD o el almacen.
+     */
+    private static boolean borrarHuerfano(MediaStorage storage, String clave, String base_variante)
+            throws Exception {
+        try (Connection con = DB.getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                boolean referenciado;
+                if (base_variante != null) {
+                    referenciado = existe(con, "SELECT 1 FROM archivos_multimedia WHERE ruta_archivo LIKE ? LIMIT 1",
+                            escaparLike(base_variante) + ".%");
+                } else {
+                    referenciado = existe(con, "SELECT 1 FROM blobs_multimedia WHERE ruta_archivo = ? FOR UPDATE", clave)
+                            || existe(con, "SELECT 1 FROM archivos_multimedia WHERE ruta_archivo = ? LIMIT 1 FOR UPDATE",
+                                    clave);
+                }
+                // Las variantes de un original huerfano aparecen despues en el listado.
+                boolean borrado = !referenciado && storage.borrar(clave);
+                con.commit();
+                return borrado;
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Borra las sesiones de subida vencidas (ver SubidasServlet.TTL_MS) y sus
+     * archivos parciales, que pueden ocupar hasta UPLOAD_MAX_BYTES cada uno.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param reporte reporte en curso.
+     * @throws Exception si falla la BD.
+     */
+    private static void limpiarSubidas(MediaStorage storage, Reporte reporte) throws Exception {
+        try (Connection con = DB.getConnection()) {
+            reporte.subidas_vencidas = SubidasServlet.limpiarVencidas(con, storage.temporales());
+        }
+    }
+
+    /**
+     * Borra temporales .tmp (subidas cortadas, miniaturas a medias) mas
+     * antiguos que GRACIA_MS. Los .part los limpia la expiracion de subidas.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param reporte reporte en curso.
+     */
+    private static void limpiarTemporales(MediaStorage storage, Reporte reporte) {
+        File dir = storage.temporales();
+        File[] archivos = dir.listFiles();
+        if (archivos == null) {
+            return;
+        }
+        long limite = System.currentTimeMillis() - GRACIA_MS;
+        for (File file : archivos) {
+            if (file.isFile() && file.getName().endsWith(".tmp") && file.lastModified() < limite
+                    && (!BORRAR || file.delete())) {
+                reporte.temporales_borrados++;
+            }
+        }
+    }
+
+    /**
+     * @param storage almacenamiento multimedia.
+     * @return tarea que ejecuta una pasada sin propagar errores.
+     */
+    private static Runnable tarea(final MediaStorage storage) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ejecutar(storage);
+                } catch (Exception ex) {
+                    // Se reintenta en el siguiente intervalo.
+                }
+            }
+        };
+    }
+
+    /**
+     * @return programador de un hilo (creado en el primer uso).
+     */
+    private static ScheduledThreadPoolExecutor getProgramador() {
+        synchronized (LOCK) {
+            if (programador == null) {
+                programador = TrabajosUtil.nuevoProgramador("huerfanos");
+            }
+            return programador;
+        }
+    }
+
+    /**
+     * @param archivos cursor de archivos_multimedia.
+     * @param blobs cursor de blobs_multimedia.
+     * @return menor ruta pendiente de ambos cursores o null si terminaron.
+     * @throws SQLException si falla la consulta de un lote.
+     */
+    private static String menor(CursorRutas archivos, CursorRutas blobs) throws SQLException {
+        String a = archivos.actual();
+        String b = blobs.actual();
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /**
+     * Consume la ruta dada en ambos cursores (puede estar en los dos).
+     *
+     * @param archivos cursor de archivos_multimedia.
+     * @param blobs cursor de blobs_multimedia.
+     * @param ruta ruta consumida.
+     * @return siguiente menor ruta o null.
+     * @throws SQLException si falla la consulta de un lote.
+     */
+    private static String avanzar(CursorRutas archivos, CursorRutas blobs, String ruta) throws SQLException {
+        if (ruta.equals(archivos.actual())) {
+            archivos.avanzar();
+        }
+        if (ruta.equals(blobs.actual())) {
+            blobs.avanzar();
+        }
+        return menor(archivos, blobs);
+    }
+
+    /**
+     * @param con conexion abierta.
+     * @param sql consulta con un parametro.
+     * @param valor valor del parametro.
+     * @return true si devuelve al menos una fila.
+     * @throws SQLException si falla la consulta.
+     */
+    static boolean existe(Connection con, String sql, String valor) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, valor);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * @param valor texto literal.
+     * @return texto con los comodines de LIKE escapados.
+     */
+    private static String escaparLike(String valor) {
+        return valor.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * @param muestra lista acotada.
+     * @param clave clave a agregar si hay lugar.
+     */
+    private static void agregarMuestra(List<String> muestra, String clave) {
+        if (muestra.size() < MAX_MUESTRA) {
+            muestra.add(clave);
+        }
+    }
+
+    /**
+     * Cursor por keyset sobre las rutas distintas de una tabla, en orden.
+     * Cada lote usa su propia conexion del pool y la devuelve enseguida.
+     */
+    private static final class CursorRutas {
+        private final String sql;
+        private List<String> lote = Collections.emptyList();
+        private int pos;
+        private String ultima = PREFIJO;
+        private boolean fin;
+
+        CursorRutas(String tabla) {
+            this.sql = "SELECT DISTINCT ruta_archivo FROM " + tabla
+                    + " WHERE ruta_archivo > ? ORDER BY ruta_archivo LIMIT ?";
+        }
+
+        /**
+         * @return ruta actual o null si no quedan.
+         * @throws SQLException si falla la consulta del lote.
+         */
+        String actual() throws SQLException {
+            if (pos >= lote.size() && !fin) {
+                cargar();
+            }
+            return pos < lote.size() ? lote.get(pos) : null;
+        }
+
+        /**
+         * Pasa a la siguiente ruta.
+         */
+        void avanzar() {
+            pos++;
+        }
+
+        /**
+         * Lee el siguiente lote a partir de la ultima ruta vista.
+         *
+         * @throws SQLException si falla la consulta.
+         */
+        private void cargar() throws SQLException {
+            List<String> rutas = new ArrayList<>(LOTE);
+            try (Connection con = DB.getConnection();
+                 PreparedStatement ps = con.prepareStatement(sql)) {
+                ps.setString(1, ultima);
+                ps.setInt(2, LOTE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String ruta = rs.getString("ruta_archivo");
+                        // Rutas fuera de uploads/ ordenan despues de todas las de uploads/.
+                        if (!ruta.startsWith(PREFIJO)) {
+                            fin = true;
+                            break;
+                        }
+                        rutas.add(ruta);
+                    }
+                }
+            }
+            if (rutas.size() < LOTE) {
+                fin = true;
+            }
+            if (!rutas.isEmpty()) {
+                ultima = rutas.get(rutas.size() - 1);
+            }
+            lote = rutas;
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package API;
+
+import java.io.IOException;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de administracion del reconciliador de archivos huerfanos.
+ *
+ * GET devuelve el reporte de la ultima pasada de {@link HuerfanosService}
+ * (huerfanos borrados, filas sin archivo, etc.) y POST encola una pasada
+ * inmediata. Solo administradores.
+ *
+ */
+@WebServlet(name = "HuerfanosServlet", urlPatterns = {"/api/archivos/huerfanos"})
+public class HuerfanosServlet extends HttpServlet {
+
+    /**
+     * Devuelve el reporte de la ultima pasada.
+     * No retorna valor; responde 403 si el usuario no es admin.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAdmin(AuthService.getRoleId(request))) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+        JsonObjectBuilder body = Json.createObjectBuilder()
+                .add("ok", true)
+                .add("en_curso", HuerfanosService.enCurso())
+                .add("intervalo_ms", HuerfanosService.INTERVALO_MS)
+                .add("gracia_ms", HuerfanosService.GRACIA_MS);
+        HuerfanosService.Reporte reporte = HuerfanosService.ultimoReporte();
+        if (reporte == null) {
+            body.addNull("reporte");
+        } else {
+            JsonArrayBuilder huerfanos = Json.createArrayBuilder();
+            for (String clave : reporte.muestra_huerfanos) {
+                huerfanos.add(clave);
+            }
+            JsonArrayBuilder faltantes = Json.createArrayBuilder();
+            for (String ruta : reporte.muestra_faltantes) {
+                faltantes.add(ruta);
+            }
+            JsonObjectBuilder datos = Json.createObjectBuilder()
+                    .add("inicio", reporte.inicio)
+                    .add("fin", reporte.fin)
+                    .add("solo_reporte", reporte.solo_reporte)
+                    .add("objetos_revisados", reporte.objetos_revisados)
+                    .add("rutas_revisadas", reporte.rutas_revisadas)
+                    .add("recientes", reporte.recientes)
+                    .add("huerfanos", reporte.huerfanos)
+                    .add("borrados", reporte.borrados)
+                    .add("bytes_liberados", reporte.bytes_liberados)
+                    .add("temporales_borrados", reporte.temporales_borrados)
+                    .add("subidas_vencidas", reporte.subidas_vencidas)
+                    .add("faltantes", reporte.faltantes)
+                    .add("muestra_huerfanos", huerfanos)
+                    .add("muestra_faltantes", faltantes);
+            if (reporte.error == null) {
+                datos.addNull("error");
+            } else {
+                datos.add("error", reporte.error);
+            }
+            body.add("reporte", datos);
+        }
+        ResponseUtil.writeOk(response, body.build());
+    }
+
+    /**
+     * Encola una pasada inmediata del reconciliador.
+     * No retorna valor; responde 202, 403 o 503.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAdmin(AuthService.getRoleId(request))) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+        if (!HuerfanosService.programarAhora(ArchivosService.storage(getServletContext()))) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "reconciliador_detenido");
+            return;
+        }
+        ResponseUtil.writeJson(response, Json.createObjectBuilder().add("ok", true).build(),
+                HttpServletResponse.SC_ACCEPTED);
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
@@ -3,12 +3,14 @@ package API;
 import java.io.IOException;
 import java.math.BigDecimal;
 import javax.json.Json;
+import javax.json.JsonArray;
 import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonStructure;
 import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -139,6 +141,27 @@ public final class JsonUtil {
         }
     }
 
+    /**
+     * Obtiene un arreglo desde un JsonObject.
+     *
+     * Se valida el tipo del valor; cualquier otro tipo se trata como ausente.
+     *
+     *
+     * @param obj objeto origen.
+     * @param key clave a leer.
+     * @return JsonArray o null si no existe o no es arreglo.
+     */
+    public static JsonArray getArray(JsonObject obj, String key) {
+        if (obj == null || !obj.containsKey(key)) {
+            return null;
+        }
+        JsonValue value = obj.get(key);
+        if (value == null || value.getValueType() != JsonValue.ValueType.ARRAY) {
+            return null;
+        }
+        return (JsonArray) value;
+    }
+
     /**
      * Agrega un String al JsonObjectBuilder, escribiendo null si aplica.
      *
@@ -211,4 +234,67 @@ public final class JsonUtil {
         }
         return builder.add(key, value);
     }
+
+    /**
+     * Escribe un String en un JsonGenerator, escribiendo null si aplica.
+     *
+     * Equivalente en streaming de {@link #add(JsonObjectBuilder, String, String)}.
+     *
+     *
+     * @param gen generador destino (dentro de un objeto).
+     * @param key clave a escribir.
+     * @param value valor string o null.
+     * @return generador actualizado.
+     */
+    public static JsonGenerator write(JsonGenerator gen, String key, String value) {
+        if (value == null) {
+            return gen.writeNull(key);
+        }
+        return gen.write(key, value);
+    }
+
+    /**
+     * Escribe un Integer en un JsonGenerator, escribiendo null si aplica.
+     *
+     * @param gen generador destino (dentro de un objeto).
+     * @param key clave a escribir.
+     * @param value valor integer o null.
+     * @return generador actualizado.
+     */
+    public static JsonGenerator write(JsonGenerator gen, String key, Integer value) {
+        if (value == null) {
+            return gen.writeNull(key);
+        }
+        return gen.write(key, value.intValue());
+    }
+
+    /**
+     * Escribe un Long en un JsonGenerator, escribiendo null si aplica.
+     *
+     * @param gen generador destino (dentro de un objeto).
+     * @param key clave a escribir.
+     * @param value valor long o null.
+     * @return generador actualizado.
+     */
+    public static JsonGenerator write(JsonGenerator gen, String key, Long value) {
+        if (value == null) {
+            return gen.writeNull(key);
+        }
+        return gen.write(key, value.longValue());
+    }
+
+    /**
+     * Escribe un BigDecimal en un JsonGenerator, escribiendo null si aplica.
+     *
+     * @param gen generador destino (dentro de un objeto).
+     * @param key clave a escribir.
+     * @param value valor decimal o null.
+     * @return generador actualizado.
+     */
+    public static JsonGenerator write(JsonGenerator gen, String key, BigDecimal value) {
+        if (value == null) {
+            return gen.writeNull(key);
+        }
+        return gen.write(key, value);
+    }
 }
@@ -0,0 +1,220 @@
+package API;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.UUID;
+
+/**
+ * Almacenamiento multimedia en una carpeta local.
+ *
+ * La raiz se configura con STORAGE_DIR (fuera del WAR, para que los archivos
+ * sobrevivan a un redespliegue o se compartan por NFS entre nodos). Las
+ * claves nuevas vienen repartidas por prefijo del hash (uploads/ab/cd/...),
+ * por lo que ningun directorio crece sin limite.
+ *
+ * Guardar usa un enlace duro desde el temporal (mismo volumen) y un rename
+ * atomico, de modo que no se copian datos y nunca se ve un archivo a medias.
+ *
+ */
+public class LocalMediaStorage implements MediaStorage {
+    private final File raiz;
+    private final File temporales;
+
+    /**
+     * @param raiz carpeta raiz; las claves se resuelven bajo ella.
+     * @param temporales carpeta de temporales (idealmente en el mismo volumen).
+     */
+    public LocalMediaStorage(File raiz, File temporales) {
+        this.raiz = raiz;
+        this.temporales = temporales;
+    }
+
+    @Override
+    public Info info(String clave) throws IOException {
+        File file = resolver(clave);
+        if (!file.isFile()) {
+            return null;
+        }
+        return new Info(file.length(), file.lastModified());
+    }
+
+    @Override
+    public void guardar(String clave, File origen) throws IOException {
+        File destino = resolver(clave);
+        File dir = destino.getParentFile();
+        if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            throw new IOException("no_se_pudo_crear " + dir);
+        }
+        File intermedio = new File(dir, "." + UUID.randomUUID().toString().replace("-", "") + ".tmp");
+        try {
+            try {
+                Files.createLink(intermedio.toPath(), origen.toPath());
+            } catch (IOException | UnsupportedOperationException ex) {
+                // Otro volumen o sin soporte de enlaces: se copia.
+                Files.copy(origen.toPath(), intermedio.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            ArchivosService.moveFile(intermedio, destino);
+        } finally {
+            intermedio.delete();
+        }
+    }
+
+    @Override
+    public InputStream abrir(String clave, long inicio, long fin) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(resolver(clave), "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            channel.position(inicio);
+            long restante = (fin < 0 ? raf.length() - 1 : fin) - inicio + 1;
+            return new RangoInputStream(Channels.newInputStream(channel), Math.max(restante, 0));
+        } catch (IOException ex) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public boolean borrar(String clave) throws IOException {
+        File file = resolver(clave);
+        return file.exists() && file.delete();
+    }
+
+    @Override
+    public Listado listar(String prefijo) throws IOException {
+        final Deque<Nivel> pila = new ArrayDeque<>();
+        File dir = resolver(prefijo.endsWith("/") ? prefijo.substring(0, prefijo.length() - 1) : prefijo);
+        if (dir.isDirectory()) {
+            pila.push(new Nivel(dir, prefijo));
+        }
+        return new Listado() {
+            @Override
+            public Entrada siguiente() {
+                while (!pila.isEmpty()) {
+                    Nivel nivel = pila.peek();
+                    if (nivel.pos >= nivel.nombres.length) {
+                        pila.pop();
+                        continue;
+                    }
+                    String nombre = nivel.nombres[nivel.pos++];
+                    if (nombre.endsWith("/")) {
+                        File hijo = new File(nivel.dir, nombre.substring(0, nombre.length() - 1));
+                        pila.push(new Nivel(hijo, nivel.prefijo + nombre));
+                        continue;
+                    }
+                    File file = new File(nivel.dir, nombre);
+                    if (file.isFile()) {
+                        return new Entrada(nivel.prefijo + nombre, new Info(file.length(), file.lastModified()));
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() {
+                pila.clear();
+            }
+        };
+    }
+
+    @Override
+    public File archivoLocal(String clave) {
+        return resolver(clave);
+    }
+
+    @Override
+    public File temporales() {
+        return temporales;
+    }
+
+    /**
+     * @return carpeta raiz del almacen.
+     */
+    public File getRaiz() {
+        return raiz;
+    }
+
+    /**
+     * Resuelve una clave bajo la raiz, rechazando rutas que escapen de ella.
+     *
+     * @param clave clave relativa.
+     * @return archivo dentro de la raiz.
+     */
+    private File resolver(String clave) {
+        if (clave == null || clave.startsWith("/") || clave.contains("..") || clave.contains("\\")) {
+            throw new IllegalArgumentException("clave_invalida");
+        }
+        return new File(raiz, clave);
+    }
+
+    /**
+     * Una carpeta en recorrido: sus nombres ordenados y la posicion actual.
+     * Las subcarpetas se ordenan como "nombre/" para que el recorrido en
+     * profundidad coincida con el orden binario de la clave completa
+     * (uploads/ab.jpg va antes que uploads/ab/...).
+     */
+    private static final class Nivel {
+        final File dir;
+        final String prefijo;
+        final String[] nombres;
+        int pos;
+
+        Nivel(File dir, String prefijo) {
+            this.dir = dir;
+            this.prefijo = prefijo;
+            String[] lista = dir.list();
+            nombres = lista == null ? new String[0] : lista;
+            for (int i = 0; i < nombres.length; i++) {
+                if (new File(dir, nombres[i]).isDirectory()) {
+                    nombres[i] = nombres[i] + "/";
+                }
+            }
+            Arrays.sort(nombres);
+        }
+    }
+
+    /**
+     * Stream limitado a un numero de bytes (el resto del archivo se ignora).
+     */
+    private static final class RangoInputStream extends FilterInputStream {
+        private long restante;
+
+        RangoInputStream(InputStream in, long restante) {
+            super(in);
+            this.restante = restante;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (restante <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                restante--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (restante <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, restante));
+            if (n > 0) {
+                restante -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -90,8 +90,8 @@ public class Login extends HttpServlet {
             AuthService.AuthResult result = AuthService.authenticate(nombre_usuario, contrasena);
             JsonObjectBuilder body = Json.createObjectBuilder();
             if (result != null) {
-                // En login legacy tambien se crea sesion para /api/*.
-                AuthService.applySession(request, result);
+                // En login legacy tambien se crea sesion (o token) para /api/*.
+                AuthService.applyLogin(request, response, result, body);
                 body.add("status", "yes")
                         .add("tipo", result.nombre_rol)
                         .add("nombre_rol", result.nombre_rol)
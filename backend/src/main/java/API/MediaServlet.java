@@ -0,0 +1,397 @@
+package API;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de entrega de archivos multimedia por id_archivo.
+ *
+ * Aplica las mismas reglas de acceso que /api/archivos (propietario o admin)
+ * y soporta peticiones parciales (Range / 206, If-Range), validacion de
+ * cache (ETag / Last-Modified / 304) y transferencia sin copiar el archivo
+ * al heap: sendfile del contenedor si esta disponible o FileChannel.transferTo.
+ * Con un {@link MediaStorage} no local (S3) el rango se pide al almacen y se
+ * copia en bloques.
+ * Para imagenes, el parametro opcional ancho selecciona una miniatura
+ * generada por {@link MiniaturasService}.
+ *
+ */
+@WebServlet(name = "MediaServlet", urlPatterns = {"/api/media"})
+public class MediaServlet extends HttpServlet {
+    // Atributos de Tomcat para delegar la escritura al sendfile del conector.
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Entrega el archivo completo o el rango pedido.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        serve(request, response, true);
+    }
+
+    /**
+     * Igual que GET pero sin cuerpo (solo cabeceras).
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doHead(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        serve(request, response, false);
+    }
+
+    /**
+     * Resuelve el archivo, valida acceso y escribe la respuesta.
+     * No retorna valor; responde 200/206/304/400/403/404/416/500.
+     *
+     * Flujo:
+     *
+     * - Lee propietario y ruta del archivo y valida propiedad/rol.
+     * - Si se pide ancho, usa la miniatura existente mas chica que lo cubra.
+     * - Devuelve la conexion al pool antes de transferir el contenido.
+     * - Evalua If-None-Match / If-Modified-Since (304).
+     * - Evalua Range e If-Range; un solo rango se responde con 206.
+     * - Transfiere los bytes con sendfile o FileChannel.transferTo, o copia
+     *   el rango leido del almacen si no es local.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @param cuerpo false para HEAD.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    private void serve(HttpServletRequest request, HttpServletResponse response, boolean cuerpo)
+            throws IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
+        boolean es_admin = isAdmin(id_rol_sesion);
+
+        Integer id_archivo = parseInt(request.getParameter("id_archivo"));
+        if (id_archivo == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "id_archivo_requerido");
+            return;
+        }
+
+        String ruta;
+        String sql = "SELECT id_usuario, ruta_archivo FROM archivos_multimedia WHERE id_archivo = ?";
+        try (Connection con = DB.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, id_archivo.intValue());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "archivo_no_encontrado");
+                    return;
+                }
+                int id_usuario_propietario = rs.getInt("id_usuario");
+                if (!es_admin && (id_usuario_sesion == null || id_usuario_propietario != id_usuario_sesion.intValue())) {
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+                    return;
+                }
+                ruta = rs.getString("ruta_archivo");
+            }
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_archivos");
+            return;
+        }
+        // La transferencia puede durar minutos: no retener la conexion del request.
+        RequestConnection.release();
+
+        if (ruta == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "archivo_no_encontrado");
+            return;
+        }
+        MediaStorage storage = ArchivosService.storage(getServletContext());
+        String clave;
+        MediaStorage.Info info;
+        try {
+            // Con ?ancho= se sirve la miniatura mas chica que lo cubra (si ya se genero).
+            clave = MiniaturasService.elegir(storage, ruta, parseInt(request.getParameter("ancho")));
+            info = storage.info(clave);
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_archivos");
+            return;
+        }
+        if (info == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "archivo_no_encontrado");
+            return;
+        }
+        String variante = clave.equals(ruta) ? "" : "-" + clave.substring(clave.lastIndexOf(".w") + 1,
+                clave.length() - 4);
+
+        long length = info.tamano_bytes;
+        long last_modified = info.modificado / 1000 * 1000;
+        String etag = "\"" + id_archivo + variante + "-" + Long.toHexString(length) + "-"
+                + Long.toHexString(last_modified) + "\"";
+
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", last_modified);
+        response.setHeader("Cache-Control", "private, max-age=3600");
+
+        // Validacion condicional: If-None-Match tiene prioridad sobre If-Modified-Since.
+        String if_none_match = request.getHeader("If-None-Match");
+        if (if_none_match != null) {
+            if (matchesEtag(if_none_match, etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        } else {
+            long if_modified_since = getDateHeader(request, "If-Modified-Since");
+            if (if_modified_since >= 0 && last_modified <= if_modified_since) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        String mime = getServletContext().getMimeType(clave.substring(clave.lastIndexOf('/') + 1));
+        response.setContentType(mime != null ? mime : "application/octet-stream");
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        if (range != null && ifRangeMatches(request, etag, last_modified)) {
+            long[] rango = parseRange(range, length);
+            if (rango == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (rango.length == 2) {
+                start = rango[0];
+                end = rango[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(Math.max(count, 0));
+        if (!cuerpo || count <= 0) {
+            return;
+        }
+
+        File file = storage.archivoLocal(clave);
+        if (file == null) {
+            copiarRango(storage, clave, start, end, response);
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // El conector escribe el archivo desde el kernel tras terminar el servlet.
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, Long.valueOf(start));
+            request.setAttribute(SENDFILE_END, Long.valueOf(end + 1));
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            out.flush();
+        } catch (IOException ex) {
+            // Cliente cerro la conexion (seek en el reproductor): no hay nada que responder.
+        }
+    }
+
+    /**
+     * Copia un rango leido del almacen a la respuesta en bloques de 64 KB.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param clave clave del objeto.
+     * @param start primer byte.
+     * @param end ultimo byte inclusive.
+     * @param response response HTTP actual.
+     */
+    private void copiarRango(MediaStorage storage, String clave, long start, long end, HttpServletResponse response) {
+        try (InputStream in = storage.abrir(clave, start, end)) {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[65536];
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+            out.flush();
+        } catch (IOException ex) {
+            // Cliente cerro la conexion o el almacen fallo a mitad: ya se enviaron cabeceras.
+        }
+    }
+
+    /**
+     * Parsea un header Range de un solo rango de bytes.
+     *
+     * Se aceptan las formas "bytes=a-b", "bytes=a-" y "bytes=-n". Con varios
+     * rangos (multipart/byteranges) o sintaxis desconocida se ignora el header
+     * y se entrega el archivo completo, lo cual es valido segun RFC 7233.
+     *
+     *
+     * @param header valor del header Range.
+     * @param length tamanio del archivo.
+     * @return {inicio, fin} inclusivo; arreglo vacio si se ignora; null si no es satisfacible.
+     */
+    private long[] parseRange(String header, long length) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String inicio = spec.substring(0, dash).trim();
+            String fin = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (inicio.isEmpty()) {
+                // Sufijo: ultimos n bytes.
+                long suffix = Long.parseLong(fin);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(inicio);
+                end = fin.isEmpty() ? length - 1 : Math.min(Long.parseLong(fin), length - 1);
+            }
+            if (start < 0 || start >= length || end < start) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException ex) {
+            return new long[0];
+        }
+    }
+
+    /**
+     * Evalua If-Range: el rango solo aplica si el validador sigue vigente.
+     *
+     * @param request request HTTP actual.
+     * @param etag ETag actual del archivo.
+     * @param last_modified fecha de modificacion en milisegundos (segundos exactos).
+     * @return true si no hay If-Range o si coincide con el estado actual.
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long last_modified) {
+        String if_range = request.getHeader("If-Range");
+        if (if_range == null) {
+            return true;
+        }
+        if_range = if_range.trim();
+        if (if_range.startsWith("\"") || if_range.startsWith("W/")) {
+            // If-Range exige comparacion fuerte.
+            return if_range.equals(etag);
+        }
+        long fecha = getDateHeader(request, "If-Range");
+        return fecha >= 0 && fecha == last_modified;
+    }
+
+    /**
+     * Compara If-None-Match contra el ETag actual (comparacion debil).
+     *
+     * @param header valor de If-None-Match.
+     * @param etag ETag actual.
+     * @return true si algun valor coincide o es "*".
+     */
+    private boolean matchesEtag(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lee un header de fecha tolerando formatos invalidos.
+     *
+     * @param request request HTTP actual.
+     * @param name nombre del header.
+     * @return milisegundos o -1 si no existe o no es fecha.
+     */
+    private long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parsea un entero desde query string.
+     *
+     * Se recorta el texto y se parsea con manejo de NumberFormatException.
+     *
+     *
+     * @param value texto recibido.
+     * @return Integer o null si no es valido.
+     */
+    private Integer parseInt(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * Se usa como regla simple de autorizacion en todos los servlets.
+     *
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
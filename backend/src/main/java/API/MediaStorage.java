@@ -0,0 +1,123 @@
+package API;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Almacenamiento del contenido multimedia.
+ *
+ * Los objetos se identifican por una clave relativa (la misma que se guarda
+ * en archivos_multimedia.ruta_archivo, p. ej. uploads/ab/cd/&lt;sha256&gt;.jpg).
+ * Implementaciones:
+ *
+ * - {@link LocalMediaStorage}: carpeta local configurable (o compartida por
+ *   NFS entre nodos).
+ * - {@link S3MediaStorage}: almacen de objetos compatible con S3 (MinIO
+ *   como sustituto local).
+ *
+ * La instancia activa se obtiene con {@link ArchivosService#storage}.
+ *
+ */
+public interface MediaStorage {
+
+    /**
+     * Tamanio y fecha de modificacion de un objeto.
+     */
+    final class Info {
+        public final long tamano_bytes;
+        public final long modificado;
+
+        public Info(long tamano_bytes, long modificado) {
+            this.tamano_bytes = tamano_bytes;
+            this.modificado = modificado;
+        }
+    }
+
+    /**
+     * Objeto devuelto por {@link #listar}.
+     */
+    final class Entrada {
+        public final String clave;
+        public final Info info;
+
+        public Entrada(String clave, Info info) {
+            this.clave = clave;
+            this.info = info;
+        }
+    }
+
+    /**
+     * Recorrido en streaming de las claves de un prefijo.
+     */
+    interface Listado extends Closeable {
+        /**
+         * @return siguiente objeto (en orden binario de clave) o null al terminar.
+         * @throws IOException si falla el acceso al almacen.
+         */
+        Entrada siguiente() throws IOException;
+    }
+
+    /**
+     * @param clave clave del objeto.
+     * @return informacion del objeto o null si no existe.
+     * @throws IOException si falla el acceso al almacen.
+     */
+    Info info(String clave) throws IOException;
+
+    /**
+     * Guarda el contenido de un archivo local bajo la clave. El archivo de
+     * origen no se consume (el llamador lo borra cuando ya no lo necesita);
+     * el objeto aparece completo o no aparece.
+     *
+     * @param clave clave destino.
+     * @param origen archivo local con el contenido.
+     * @throws IOException si falla la escritura.
+     */
+    void guardar(String clave, File origen) throws IOException;
+
+    /**
+     * Abre un rango de bytes del objeto.
+     *
+     * @param clave clave del objeto.
+     * @param inicio primer byte (0 para el inicio).
+     * @param fin ultimo byte inclusive, o -1 para leer hasta el final.
+     * @return stream del rango (el llamador lo cierra).
+     * @throws IOException si el objeto no existe o falla la lectura.
+     */
+    InputStream abrir(String clave, long inicio, long fin) throws IOException;
+
+    /**
+     * @param clave clave del objeto.
+     * @return true si el objeto existia y se borro.
+     * @throws IOException si falla el acceso al almacen.
+     */
+    boolean borrar(String clave) throws IOException;
+
+    /**
+     * Lista los objetos bajo un prefijo de carpeta en orden binario de clave
+     * (el mismo que ORDER BY sobre una columna utf8mb4_bin), sin cargar el
+     * listado completo en memoria.
+     *
+     * @param prefijo prefijo terminado en '/' (p. ej. uploads/).
+     * @return recorrido (el llamador lo cierra).
+     * @throws IOException si falla el acceso al almacen.
+     */
+    Listado listar(String prefijo) throws IOException;
+
+    /**
+     * Devuelve el archivo local de la clave cuando el almacen es un sistema
+     * de archivos, para usar sendfile / RandomAccessFile directamente.
+     *
+     * @param clave clave del objeto.
+     * @return archivo local (exista o no) o null si el almacen no es local.
+     */
+    File archivoLocal(String clave);
+
+    /**
+     * @return carpeta local para temporales (subidas en curso); en el almacen
+     *         local esta en el mismo volumen, para guardar sin copiar.
+     */
+    File temporales();
+}
@@ -0,0 +1,717 @@
+package API;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Extraccion de metadatos multimedia leyendo solo cabeceras.
+ *
+ * Obtiene ancho/alto y duracion sin decodificar el contenido:
+ *
+ * - JPEG: marcadores hasta el primer SOFn (antes de los datos de imagen).
+ * - MP3: etiqueta ID3v2 (se salta), primera trama y cabecera Xing/Info/VBRI;
+ *   sin ella se estima por bitrate constante.
+ * - MP4: recorre las cajas por su tamanio (sin leer mdat) hasta moov/mvhd
+ *   y tkhd.
+ *
+ * Las imagenes se validan al subir (rechazo barato de bombas de
+ * descompresion por ancho x alto). Audio y video se procesan en segundo
+ * plano tras confirmar la subida, y al iniciar la aplicacion se completan
+ * los registros existentes que no tienen metadatos.
+ *
+ */
+public final class MetadatosService {
+    public static final long MAX_PIXELES = DB.getLongValue("IMAGEN_MAX_PIXELES", "imagen.max_pixeles", 50000000L);
+    public static final int COLA = (int) DB.getLongValue("METADATOS_COLA", "metadatos.cola", 1024);
+
+    private static final int LOTE = 200;
+    private static final int MP3_BUSQUEDA_BYTES = 65536;
+
+    private static final int[][] MP3_BITRATES = {
+        // MPEG1 capa I, II, III
+        {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+        {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+        // MPEG2/2.5 capa I, II/III
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+    };
+    private static final int[][] MP3_SAMPLE_RATES = {
+        {11025, 12000, 8000},   // MPEG2.5
+        {0, 0, 0},              // reservado
+        {22050, 24000, 16000},  // MPEG2
+        {44100, 48000, 32000}   // MPEG1
+    };
+
+    private static final Object LOCK = new Object();
+    private static ThreadPoolExecutor executor;
+
+    /**
+     * Metadatos extraidos (los campos no disponibles quedan en null).
+     */
+    public static final class Metadatos {
+        public Integer ancho;
+        public Integer alto;
+        public BigDecimal duracion_segundos;
+    }
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private MetadatosService() {
+    }
+
+    /**
+     * Extrae metadatos de un archivo local segun el tipo de media.
+     *
+     * @param file archivo a leer.
+     * @param tipo_media IMAGEN, AUDIO o VIDEO.
+     * @return metadatos (campos en null si no se pudieron leer).
+     */
+    public static Metadatos extraer(File file, String tipo_media) {
+        Metadatos meta = new Metadatos();
+        try {
+            if ("IMAGEN".equals(tipo_media)) {
+                try (InputStream in = new FileInputStream(file)) {
+                    leerJpeg(in, meta);
+                }
+            } else {
+                try (Lector lector = new LectorArchivo(file)) {
+                    leer(lector, tipo_media, meta);
+                }
+            }
+        } catch (IOException ex) {
+            // Cabecera truncada o invalida: se devuelve lo que se haya leido.
+        }
+        return meta;
+    }
+
+    /**
+     * Extrae metadatos de un objeto del almacenamiento; si no es local, lee
+     * solo los rangos de bytes necesarios.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param clave clave del objeto.
+     * @param tipo_media IMAGEN, AUDIO o VIDEO.
+     * @return metadatos (campos en null si no se pudieron leer).
+     */
+    public static Metadatos extraer(MediaStorage storage, String clave, String tipo_media) {
+        File local = storage.archivoLocal(clave);
+        if (local != null) {
+            return extraer(local, tipo_media);
+        }
+        Metadatos meta = new Metadatos();
+        try {
+            if ("IMAGEN".equals(tipo_media)) {
+                try (InputStream in = storage.abrir(clave, 0, -1)) {
+                    leerJpeg(in, meta);
+                }
+            } else {
+                MediaStorage.Info info = storage.info(clave);
+                if (info != null) {
+                    try (Lector lector = new LectorStorage(storage, clave, info.tamano_bytes)) {
+                        leer(lector, tipo_media, meta);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            // Cabecera truncada, invalida o almacenamiento no disponible.
+        }
+        return meta;
+    }
+
+    /**
+     * @param lector acceso aleatorio al contenido.
+     * @param tipo_media AUDIO o VIDEO.
+     * @param meta destino.
+     * @throws IOException si falla la lectura.
+     */
+    private static void leer(Lector lector, String tipo_media, Metadatos meta) throws IOException {
+        if ("AUDIO".equals(tipo_media)) {
+            leerMp3(lector, meta);
+        } else if ("VIDEO".equals(tipo_media)) {
+            leerMp4(lector, meta);
+        }
+    }
+
+    /**
+     * Valida una imagen por su cabecera antes de aceptarla.
+     *
+     * @param meta metadatos extraidos de la imagen.
+     * @return codigo de error o null si es valida.
+     */
+    public static String validarImagen(Metadatos meta) {
+        if (meta.ancho == null || meta.alto == null || meta.ancho.intValue() <= 0 || meta.alto.intValue() <= 0) {
+            return "imagen_invalida";
+        }
+        if ((long) meta.ancho.intValue() * meta.alto.intValue() > MAX_PIXELES) {
+            return "imagen_demasiado_grande";
+        }
+        return null;
+    }
+
+    /**
+     * Programa la extraccion de metadatos de un blob y actualiza todos los
+     * registros que lo usan. No bloquea; si la cola esta llena se omite
+     * (la completa el proceso de inicio).
+     *
+     * @param storage almacenamiento multimedia.
+     * @param ruta_archivo clave guardada en archivos_multimedia.
+     * @param tipo_media tipo de media.
+     */
+    public static void programar(final MediaStorage storage, final String ruta_archivo, final String tipo_media) {
+        if (ruta_archivo == null) {
+            return;
+        }
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Metadatos meta = extraer(storage, ruta_archivo, tipo_media);
+                        try (Connection con = DB.getConnection()) {
+                            actualizar(con, "ruta_archivo", ruta_archivo, meta);
+                        }
+                    } catch (Exception ex) {
+                        // Se reintenta en el siguiente inicio de la aplicacion.
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Cola llena o aplicacion deteniendose.
+        }
+    }
+
+    /**
+     * Programa el completado de metadatos de los registros existentes que no
+     * los tienen. Recorre archivos_multimedia por lotes con cursor por id.
+     *
+     * @param storage almacenamiento multimedia.
+     */
+    public static void programarBackfill(final MediaStorage storage) {
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        backfill(storage);
+                    } catch (Exception ex) {
+                        // BD no disponible al iniciar: se intentara en el siguiente inicio.
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Aplicacion deteniendose.
+        }
+    }
+
+    /**
+     * Detiene el pool al bajar la aplicacion.
+     */
+    public static void shutdown() {
+        synchronized (LOCK) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Completa metadatos faltantes en lotes de LOTE registros.
+     *
+     * @param storage almacenamiento multimedia.
+     * @throws Exception si falla la BD.
+     */
+    static void backfill(MediaStorage storage) throws Exception {
+        String sql = "SELECT id_archivo, tipo_media, ruta_archivo FROM archivos_multimedia "
+                + "WHERE id_archivo > ? AND ("
+                + "(tipo_media = 'IMAGEN' AND (ancho IS NULL OR alto IS NULL)) OR "
+                + "(tipo_media = 'AUDIO' AND duracion_segundos IS NULL) OR "
+                + "(tipo_media = 'VIDEO' AND (duracion_segundos IS NULL OR ancho IS NULL))) "
+                + "ORDER BY id_archivo LIMIT " + LOTE;
+        int ultimo = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Object[]> lote = new ArrayList<>();
+            try (Connection con = DB.getConnection();
+                 PreparedStatement ps = con.prepareStatement(sql)) {
+                ps.setInt(1, ultimo);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        lote.add(new Object[]{rs.getInt("id_archivo"), rs.getString("tipo_media"),
+                            rs.getString("ruta_archivo")});
+                    }
+                }
+            }
+            if (lote.isEmpty()) {
+                return;
+            }
+            // Lee cabeceras sin retener la conexion y luego actualiza el lote.
+            List<Metadatos> leidos = new ArrayList<>();
+            for (Object[] fila : lote) {
+                leidos.add(extraer(storage, (String) fila[2], (String) fila[1]));
+            }
+            try (Connection con = DB.getConnection()) {
+                for (int i = 0; i < lote.size(); i++) {
+                    actualizar(con, "id_archivo", lote.get(i)[0], leidos.get(i));
+                }
+            }
+            ultimo = ((Integer) lote.get(lote.size() - 1)[0]).intValue();
+        }
+    }
+
+    /**
+     * Guarda los metadatos extraidos; los valores del servidor reemplazan a
+     * los declarados por el cliente y los no extraidos se conservan.
+     *
+     * @param con conexion abierta.
+     * @param columna "id_archivo" o "ruta_archivo".
+     * @param valor valor de la columna.
+     * @param meta metadatos extraidos.
+     * @throws Exception si falla el UPDATE.
+     */
+    private static void actualizar(Connection con, String columna, Object valor, Metadatos meta) throws Exception {
+        if (meta.ancho == null && meta.alto == null && meta.duracion_segundos == null) {
+            return;
+        }
+        String sql = "UPDATE archivos_multimedia SET ancho = COALESCE(?, ancho), alto = COALESCE(?, alto), "
+                + "duracion_segundos = COALESCE(?, duracion_segundos) WHERE " + columna + " = ?";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            if (meta.ancho == null) {
+                ps.setNull(1, Types.INTEGER);
+            } else {
+                ps.setInt(1, meta.ancho.intValue());
+            }
+            if (meta.alto == null) {
+                ps.setNull(2, Types.INTEGER);
+            } else {
+                ps.setInt(2, meta.alto.intValue());
+            }
+            if (meta.duracion_segundos == null) {
+                ps.setNull(3, Types.DECIMAL);
+            } else {
+                ps.setBigDecimal(3, meta.duracion_segundos);
+            }
+            ps.setObject(4, valor);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Lee ancho/alto del primer marcador SOFn de un JPEG.
+     *
+     * @param origen contenido JPEG (no se cierra).
+     * @param meta destino.
+     * @throws IOException si el archivo esta truncado.
+     */
+    static void leerJpeg(InputStream origen, Metadatos meta) throws IOException {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(origen, 8192));
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != 0xD8) {
+                return;
+            }
+            while (true) {
+                int b = in.readUnsignedByte();
+                if (b != 0xFF) {
+                    continue;
+                }
+                int marker;
+                do {
+                    marker = in.readUnsignedByte();
+                } while (marker == 0xFF);
+                // Marcadores sin longitud.
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                    continue;
+                }
+                // Fin de imagen o inicio de datos: no hubo SOF.
+                if (marker == 0xD9 || marker == 0xDA) {
+                    return;
+                }
+                int length = in.readUnsignedShort();
+                if (length < 2) {
+                    return;
+                }
+                boolean sof = marker >= 0xC0 && marker <= 0xCF
+                        && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+                if (sof) {
+                    in.readUnsignedByte();
+                    meta.alto = in.readUnsignedShort();
+                    meta.ancho = in.readUnsignedShort();
+                    return;
+                }
+                skipFully(in, length - 2);
+            }
+        } catch (EOFException ex) {
+            // Sin SOF antes del fin del archivo.
+        }
+    }
+
+    /**
+     * Calcula la duracion de un MP3 con la primera trama y su cabecera VBR.
+     *
+     * @param lector contenido MP3.
+     * @param meta destino.
+     * @throws IOException si falla la lectura.
+     */
+    static void leerMp3(Lector lector, Metadatos meta) throws IOException {
+        long length = lector.longitud();
+        long inicio = 0;
+        byte[] id3 = new byte[10];
+        if (length >= 10) {
+            lector.leer(0, id3);
+            if (id3[0] == 'I' && id3[1] == 'D' && id3[2] == '3') {
+                // Tamanio "syncsafe" (7 bits por byte) + cabecera + pie opcional.
+                inicio = 10 + (((id3[6] & 0x7F) << 21) | ((id3[7] & 0x7F) << 14)
+                        | ((id3[8] & 0x7F) << 7) | (id3[9] & 0x7F));
+                if ((id3[5] & 0x10) != 0) {
+                    inicio += 10;
+                }
+            }
+        }
+        if (inicio >= length) {
+            return;
+        }
+        byte[] buffer = new byte[(int) Math.min(MP3_BUSQUEDA_BYTES, length - inicio)];
+        lector.leer(inicio, buffer);
+
+        for (int i = 0; i + 4 <= buffer.length; i++) {
+            if ((buffer[i] & 0xFF) != 0xFF || (buffer[i + 1] & 0xE0) != 0xE0) {
+                continue;
+            }
+            int version = (buffer[i + 1] >> 3) & 0x3;
+            int layer = (buffer[i + 1] >> 1) & 0x3;
+            int bitrateIdx = (buffer[i + 2] >> 4) & 0xF;
+            int rateIdx = (buffer[i + 2] >> 2) & 0x3;
+            int modo = (buffer[i + 3] >> 6) & 0x3;
+            if (version == 1 || layer == 0 || bitrateIdx == 0 || bitrateIdx == 15 || rateIdx == 3) {
+                continue;
+            }
+            boolean mpeg1 = version == 3;
+            int tabla = mpeg1 ? 3 - layer : (layer == 3 ? 3 : 4);
+            int bitrate = MP3_BITRATES[tabla][bitrateIdx] * 1000;
+            int sampleRate = MP3_SAMPLE_RATES[version][rateIdx];
+            int muestras = layer == 3 ? 384 : (layer == 2 || mpeg1 ? 1152 : 576);
+
+            // Xing/Info va tras la informacion lateral; VBRI a 32 bytes fijos.
+            int lateral = mpeg1 ? (modo == 3 ? 17 : 32) : (modo == 3 ? 9 : 17);
+            long tramas = leerTramasXing(buffer, i + 4 + lateral);
+            if (tramas < 0) {
+                tramas = leerTramasVbri(buffer, i + 4 + 32);
+            }
+            double segundos;
+            if (tramas > 0) {
+                segundos = (double) tramas * muestras / sampleRate;
+            } else {
+                segundos = (double) (length - inicio - i) * 8 / bitrate;
+            }
+            meta.duracion_segundos = BigDecimal.valueOf(segundos).setScale(2, RoundingMode.HALF_UP);
+            return;
+        }
+    }
+
+    /**
+     * @param buffer bytes leidos.
+     * @param pos posicion esperada de "Xing"/"Info".
+     * @return numero de tramas o -1 si no hay cabecera con ese dato.
+     */
+    private static long leerTramasXing(byte[] buffer, int pos) {
+        if (pos + 12 > buffer.length) {
+            return -1;
+        }
+        boolean xing = buffer[pos] == 'X' && buffer[pos + 1] == 'i' && buffer[pos + 2] == 'n' && buffer[pos + 3] == 'g';
+        boolean info = buffer[pos] == 'I' && buffer[pos + 1] == 'n' && buffer[pos + 2] == 'f' && buffer[pos + 3] == 'o';
+        if (!xing && !info) {
+            return -1;
+        }
+        if ((buffer[pos + 7] & 0x1) == 0) {
+            return -1;
+        }
+        return readUInt32(buffer, pos + 8);
+    }
+
+    /**
+     * @param buffer bytes leidos.
+     * @param pos posicion esperada de "VBRI".
+     * @return numero de tramas o -1 si no hay cabecera VBRI.
+     */
+    private static long leerTramasVbri(byte[] buffer, int pos) {
+        if (pos + 18 > buffer.length) {
+            return -1;
+        }
+        if (buffer[pos] != 'V' || buffer[pos + 1] != 'B' || buffer[pos + 2] != 'R' || buffer[pos + 3] != 'I') {
+            return -1;
+        }
+        return readUInt32(buffer, pos + 14);
+    }
+
+    /**
+     * Lee duracion (mvhd) y tamanio de video (primer tkhd con ancho) de un MP4.
+     *
+     * @param lector contenido MP4.
+     * @param meta destino.
+     * @throws IOException si falla la lectura.
+     */
+    static void leerMp4(Lector lector, Metadatos meta) throws IOException {
+        long[] moov = buscarCaja(lector, 0, lector.longitud(), "moov");
+        if (moov == null) {
+            return;
+        }
+        long[] mvhd = buscarCaja(lector, moov[0], moov[1], "mvhd");
+        if (mvhd != null) {
+            byte[] data = leerCaja(lector, mvhd, 32);
+            int version = data[0] & 0xFF;
+            long escala;
+            long duracion;
+            if (version == 1) {
+                escala = readUInt32(data, 20);
+                duracion = (readUInt32(data, 24) << 32) | readUInt32(data, 28);
+            } else {
+                escala = readUInt32(data, 12);
+                duracion = readUInt32(data, 16);
+            }
+            if (escala > 0) {
+                meta.duracion_segundos = BigDecimal.valueOf(duracion)
+                        .divide(BigDecimal.valueOf(escala), 2, RoundingMode.HALF_UP);
+            }
+        }
+        long pos = moov[0];
+        while (pos < moov[1]) {
+            long[] trak = buscarCaja(lector, pos, moov[1], "trak");
+            if (trak == null) {
+                break;
+            }
+            long[] tkhd = buscarCaja(lector, trak[0], trak[1], "tkhd");
+            if (tkhd != null && tkhd[1] - tkhd[0] >= 84) {
+                byte[] data = leerCaja(lector, tkhd, 96);
+                int fin = (data[0] & 0xFF) == 1 ? 96 : 84;
+                if (data.length >= fin) {
+                    int ancho = (int) (readUInt32(data, fin - 8) >> 16);
+                    int alto = (int) (readUInt32(data, fin - 4) >> 16);
+                    if (ancho > 0 && alto > 0) {
+                        meta.ancho = ancho;
+                        meta.alto = alto;
+                        return;
+                    }
+                }
+            }
+            pos = trak[1];
+        }
+    }
+
+    /**
+     * Busca una caja hija directa entre [inicio, fin), saltando por tamanios.
+     *
+     * @param lector contenido.
+     * @param inicio offset donde empiezan las cajas.
+     * @param fin offset limite.
+     * @param tipo tipo de 4 letras buscado.
+     * @return {inicio del contenido, fin de la caja} o null.
+     * @throws IOException si falla la lectura.
+     */
+    private static long[] buscarCaja(Lector lector, long inicio, long fin, String tipo) throws IOException {
+        long pos = inicio;
+        byte[] header = new byte[16];
+        while (pos + 8 <= fin) {
+            // Lee 16 bytes de una vez por si la caja usa tamanio de 64 bits.
+            lector.leer(pos, header, (int) Math.min(16, fin - pos));
+            long size = readUInt32(header, 0);
+            String nombre = new String(header, 4, 4, "ISO-8859-1");
+            long contenido = pos + 8;
+            if (size == 1) {
+                size = (readUInt32(header, 8) << 32) | readUInt32(header, 12);
+                contenido = pos + 16;
+            } else if (size == 0) {
+                size = fin - pos;
+            }
+            if (size < contenido - pos || pos + size > fin) {
+                return null;
+            }
+            if (tipo.equals(nombre)) {
+                return new long[]{contenido, pos + size};
+            }
+            pos += size;
+        }
+        return null;
+    }
+
+    /**
+     * @param lector contenido.
+     * @param caja {inicio del contenido, fin}.
+     * @param max bytes maximos a leer.
+     * @return contenido (recortado a max).
+     * @throws IOException si falla la lectura.
+     */
+    private static byte[] leerCaja(Lector lector, long[] caja, int max) throws IOException {
+        byte[] data = new byte[(int) Math.min(max, caja[1] - caja[0])];
+        lector.leer(caja[0], data);
+        if (data.length < max) {
+            byte[] completo = new byte[max];
+            System.arraycopy(data, 0, completo, 0, data.length);
+            return completo;
+        }
+        return data;
+    }
+
+    /**
+     * @param data bytes.
+     * @param pos posicion.
+     * @return entero sin signo de 32 bits big-endian.
+     */
+    private static long readUInt32(byte[] data, int pos) {
+        return ((long) (data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+    }
+
+    /**
+     * @param in stream.
+     * @param n bytes a saltar.
+     * @throws IOException si el stream termina antes.
+     */
+    private static void skipFully(DataInputStream in, int n) throws IOException {
+        int restante = n;
+        while (restante > 0) {
+            int saltados = in.skipBytes(restante);
+            if (saltados <= 0) {
+                throw new EOFException();
+            }
+            restante -= saltados;
+        }
+    }
+
+    /**
+     * Acceso aleatorio de solo lectura al contenido de un archivo.
+     */
+    private interface Lector extends Closeable {
+        /**
+         * @return tamanio total en bytes.
+         * @throws IOException si falla el acceso.
+         */
+        long longitud() throws IOException;
+
+        /**
+         * Lee exactamente buffer.length bytes desde pos.
+         *
+         * @param pos posicion.
+         * @param buffer destino.
+         * @throws IOException si falla la lectura o el contenido es mas corto.
+         */
+        void leer(long pos, byte[] buffer) throws IOException;
+
+        /**
+         * Lee exactamente len bytes desde pos al inicio del buffer.
+         *
+         * @param pos posicion.
+         * @param buffer destino.
+         * @param len bytes a leer.
+         * @throws IOException si falla la lectura o el contenido es mas corto.
+         */
+        void leer(long pos, byte[] buffer, int len) throws IOException;
+    }
+
+    /**
+     * Lector sobre un archivo local (RandomAccessFile).
+     */
+    private static final class LectorArchivo implements Lector {
+        private final RandomAccessFile raf;
+
+        LectorArchivo(File file) throws IOException {
+            this.raf = new RandomAccessFile(file, "r");
+        }
+
+        @Override
+        public long longitud() throws IOException {
+            return raf.length();
+        }
+
+        @Override
+        public void leer(long pos, byte[] buffer) throws IOException {
+            leer(pos, buffer, buffer.length);
+        }
+
+        @Override
+        public void leer(long pos, byte[] buffer, int len) throws IOException {
+            raf.seek(pos);
+            raf.readFully(buffer, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    /**
+     * Lector sobre un objeto remoto: cada lectura es un GET con Range.
+     */
+    private static final class LectorStorage implements Lector {
+        private final MediaStorage storage;
+        private final String clave;
+        private final long longitud;
+
+        LectorStorage(MediaStorage storage, String clave, long longitud) {
+            this.storage = storage;
+            this.clave = clave;
+            this.longitud = longitud;
+        }
+
+        @Override
+        public long longitud() {
+            return longitud;
+        }
+
+        @Override
+        public void leer(long pos, byte[] buffer) throws IOException {
+            leer(pos, buffer, buffer.length);
+        }
+
+        @Override
+        public void leer(long pos, byte[] buffer, int len) throws IOException {
+            if (len <= 0) {
+                return;
+            }
+            try (InputStream in = storage.abrir(clave, pos, pos + len - 1)) {
+                int total = 0;
+                while (total < len) {
+                    int read = in.read(buffer, total, len - total);
+                    if (read < 0) {
+                        throw new EOFException();
+                    }
+                    total += read;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * @return pool de un hilo (creado en el primer uso).
+     */
+    private static ThreadPoolExecutor getExecutor() {
+        synchronized (LOCK) {
+            if (executor == null) {
+                executor = TrabajosUtil.nuevoPool("metadatos", 1, COLA);
+            }
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package API;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registro en memoria de metricas HTTP por servlet y metodo.
+ *
+ * Lo alimenta {@link MetricasFilter} (conteos, en curso, latencia) y
+ * {@link ResponseUtil#writeError} (mensaje de error del request en curso).
+ * El registro es sin locks: contadores AtomicLong y histogramas de buckets
+ * fijos repartidos en franjas por hilo (como LongAdder, disponible recien en
+ * Java 8) que solo se suman al exportar. Se exporta en formato de texto de
+ * Prometheus desde /api/metrics.
+ *
+ */
+public final class Metricas {
+    /**
+     * Limites superiores de los buckets de latencia en segundos.
+     */
+    static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    // Tope de series para que una etiqueta inesperada no haga crecer el mapa sin limite.
+    private static final int MAX_SERIES = 2000;
+    private static final String OTROS = "otros";
+
+    private static final ConcurrentMap<String, Serie> SERIES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicLong> CODIGOS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicLong> ERRORES = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Solicitud> ACTUAL = new ThreadLocal<>();
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private Metricas() {
+    }
+
+    /**
+     * Contadores de un par servlet + metodo.
+     */
+    static final class Serie {
+        final String servlet;
+        final String metodo;
+        final AtomicLong en_curso = new AtomicLong();
+        final Histograma latencia = new Histograma();
+
+        Serie(String servlet, String metodo) {
+            this.servlet = servlet;
+            this.metodo = metodo;
+        }
+    }
+
+    /**
+     * Estado del request en curso en el hilo actual.
+     */
+    static final class Solicitud {
+        final Serie serie;
+        final long inicio_nanos;
+        String mensaje_error;
+
+        Solicitud(Serie serie, long inicio_nanos) {
+            this.serie = serie;
+            this.inicio_nanos = inicio_nanos;
+        }
+    }
+
+    /**
+     * Marca el inicio de un request en el hilo actual.
+     *
+     * @param servlet nombre del servlet destino.
+     * @param metodo metodo HTTP.
+     * @return solicitud a cerrar con {@link #fin}.
+     */
+    static Solicitud inicio(String servlet, String metodo) {
+        Serie serie = serie(servlet, metodo);
+        serie.en_curso.incrementAndGet();
+        Solicitud solicitud = new Solicitud(serie, System.nanoTime());
+        ACTUAL.set(solicitud);
+        return solicitud;
+    }
+
+    /**
+     * Registra el fin de un request: latencia, codigo HTTP y mensaje de error.
+     *
+     * @param solicitud solicitud devuelta por {@link #inicio}.
+     * @param codigo status HTTP final.
+     */
+    static void fin(Solicitud solicitud, int codigo) {
+        ACTUAL.remove();
+        Serie serie = solicitud.serie;
+        serie.latencia.registrar(System.nanoTime() - solicitud.inicio_nanos);
+        serie.en_curso.decrementAndGet();
+        contar(CODIGOS, serie.servlet + '\u0000' + serie.metodo + '\u0000' + codigo);
+        if (solicitud.mensaje_error != null) {
+            contar(ERRORES, serie.servlet + '\u0000' + serie.metodo + '\u0000' + codigo + '\u0000'
+                    + solicitud.mensaje_error);
+        }
+    }
+
+    /**
+     * Asocia el mensaje de error al request en curso (si lo hay).
+     *
+     * @param mensaje mensaje enviado al cliente (p. ej. error_elementos).
+     */
+    static void error(String mensaje) {
+        Solicitud solicitud = ACTUAL.get();
+        if (solicitud != null && mensaje != null) {
+            solicitud.mensaje_error = mensaje;
+        }
+    }
+
+    /**
+     * @return nombre del servlet del request en curso en este hilo, o null.
+     */
+    static String servletActual() {
+        Solicitud solicitud = ACTUAL.get();
+        return solicitud == null ? null : solicitud.serie.servlet;
+    }
+
+    /**
+     * Escribe todas las metricas en formato de texto de Prometheus 0.0.4.
+     *
+     * @param out destino.
+     */
+    static void exportar(StringBuilder out) {
+        out.append("# HELP casos_http_solicitudes_total Requests terminados por servlet, metodo y codigo HTTP.\n");
+        out.append("# TYPE casos_http_solicitudes_total counter\n");
+        for (Map.Entry<String, AtomicLong> entry : CODIGOS.entrySet()) {
+            String[] partes = entry.getKey().split("\u0000", -1);
+            out.append("casos_http_solicitudes_total{servlet=\"").append(escapar(partes[0]))
+                    .append("\",metodo=\"").append(escapar(partes[1]))
+                    .append("\",codigo=\"").append(partes[2]).append("\"} ")
+                    .append(entry.getValue().get()).append('\n');
+        }
+
+        out.append("# HELP casos_http_errores_total Respuestas de error por mensaje.\n");
+        out.append("# TYPE casos_http_errores_total counter\n");
+        for (Map.Entry<String, AtomicLong> entry : ERRORES.entrySet()) {
+            String[] partes = entry.getKey().split("\u0000", -1);
+            out.append("casos_http_errores_total{servlet=\"").append(escapar(partes[0]))
+                    .append("\",metodo=\"").append(escapar(partes[1]))
+                    .append("\",codigo=\"").append(partes[2])
+                    .append("\",mensaje=\"").append(escapar(partes[3])).append("\"} ")
+                    .append(entry.getValue().get()).append('\n');
+        }
+
+        out.append("# HELP casos_http_en_curso Requests en curso.\n");
+        out.append("# TYPE casos_http_en_curso gauge\n");
+        for (Serie serie : SERIES.values()) {
+            out.append("casos_http_en_curso{").append(etiquetas(serie)).append("} ")
+                    .append(serie.en_curso.get()).append('\n');
+        }
+
+        out.append("# HELP casos_http_duracion_segundos Latencia de requests.\n");
+        out.append("# TYPE casos_http_duracion_segundos histogram\n");
+        for (Serie serie : SERIES.values()) {
+            long[] foto = serie.latencia.foto();
+            String etiquetas = etiquetas(serie);
+            long acumulado = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                acumulado += foto[i];
+                out.append("casos_http_duracion_segundos_bucket{").append(etiquetas)
+                        .append(",le=\"").append(BUCKETS[i]).append("\"} ").append(acumulado).append('\n');
+            }
+            acumulado += foto[BUCKETS.length];
+            out.append("casos_http_duracion_segundos_bucket{").append(etiquetas)
+                    .append(",le=\"+Inf\"} ").append(acumulado).append('\n');
+            out.append("casos_http_duracion_segundos_sum{").append(etiquetas).append("} ")
+                    .append(foto[BUCKETS.length + 1] / 1e9).append('\n');
+            out.append("casos_http_duracion_segundos_count{").append(etiquetas).append("} ")
+                    .append(acumulado).append('\n');
+        }
+    }
+
+    /**
+     * @param servlet nombre del servlet.
+     * @param metodo metodo HTTP.
+     * @return serie existente o nueva (u "otros" si se supero el tope).
+     */
+    private static Serie serie(String servlet, String metodo) {
+        String clave = servlet + '\u0000' + metodo;
+        Serie serie = SERIES.get(clave);
+        if (serie != null) {
+            return serie;
+        }
+        if (SERIES.size() >= MAX_SERIES) {
+            servlet = OTROS;
+            metodo = OTROS;
+            clave = OTROS + '\u0000' + OTROS;
+        }
+        Serie nueva = new Serie(servlet, metodo);
+        serie = SERIES.putIfAbsent(clave, nueva);
+        return serie != null ? serie : nueva;
+    }
+
+    /**
+     * Incrementa un contador del mapa, creandolo si falta.
+     *
+     * @param mapa mapa de contadores.
+     * @param clave clave del contador.
+     */
+    private static void contar(ConcurrentMap<String, AtomicLong> mapa, String clave) {
+        AtomicLong contador = mapa.get(clave);
+        if (contador == null) {
+            if (mapa.size() >= MAX_SERIES) {
+                return;
+            }
+            AtomicLong nuevo = new AtomicLong();
+            contador = mapa.putIfAbsent(clave, nuevo);
+            if (contador == null) {
+                contador = nuevo;
+            }
+        }
+        contador.incrementAndGet();
+    }
+
+    /**
+     * @param serie serie.
+     * @return etiquetas servlet y metodo sin llaves.
+     */
+    private static String etiquetas(Serie serie) {
+        return "servlet=\"" + escapar(serie.servlet) + "\",metodo=\"" + escapar(serie.metodo) + "\"";
+    }
+
+    /**
+     * Escapa un valor de etiqueta segun el formato de texto de Prometheus.
+     *
+     * @param valor texto.
+     * @return texto escapado.
+     */
+    private static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Histograma de buckets fijos sin locks.
+     *
+     * Cada franja tiene un contador por bucket, uno de desborde (+Inf) y la
+     * suma en nanosegundos; el hilo elige franja por su id, de modo que hilos
+     * distintos rara vez compiten por el mismo contador. Las franjas se
+     * separan con relleno para no compartir linea de cache.
+     */
+    static final class Histograma {
+        private static final int FRANJAS = franjas();
+        // Buckets + desborde + suma, redondeado a 16 longs (dos lineas de cache).
+        private static final int ANCHO = 16;
+        private static final long[] LIMITES_NANOS = limitesNanos();
+
+        private final AtomicLongArray celdas = new AtomicLongArray(FRANJAS * ANCHO);
+
+        /**
+         * @param nanos duracion medida.
+         */
+        void registrar(long nanos) {
+            int bucket = 0;
+            while (bucket < LIMITES_NANOS.length && nanos > LIMITES_NANOS[bucket]) {
+                bucket++;
+            }
+            int base = ((int) Thread.currentThread().getId() & (FRANJAS - 1)) * ANCHO;
+            celdas.incrementAndGet(base + bucket);
+            celdas.addAndGet(base + BUCKETS.length + 1, nanos);
+        }
+
+        /**
+         * @return conteo por bucket (el ultimo es +Inf) seguido de la suma en nanos.
+         */
+        long[] foto() {
+            long[] total = new long[BUCKETS.length + 2];
+            for (int franja = 0; franja < FRANJAS; franja++) {
+                int base = franja * ANCHO;
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += celdas.get(base + i);
+                }
+            }
+            return total;
+        }
+
+        /**
+         * @return potencia de 2 &gt;= procesadores, acotada a 16.
+         */
+        private static int franjas() {
+            int cpus = Math.min(16, Runtime.getRuntime().availableProcessors());
+            int n = 1;
+            while (n < cpus) {
+                n <<= 1;
+            }
+            return n;
+        }
+
+        /**
+         * @return limites de BUCKETS en nanosegundos.
+         */
+        private static long[] limitesNanos() {
+            long[] limites = new long[BUCKETS.length];
+            for (int i = 0; i < BUCKETS.length; i++) {
+                limites[i] = (long) (BUCKETS[i] * 1e9);
+            }
+            return limites;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package API;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRegistration;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Filtro que mide cada request de /api/* en {@link Metricas}.
+ *
+ * Se registra en web.xml (no por anotacion) para que corra antes que
+ * {@link AuthFilter} y {@link ConexionRequestFilter}: asi tambien cuenta los
+ * 401 y el tiempo de espera por una conexion del pool. La etiqueta servlet
+ * es el nombre del servlet mapeado a la ruta, de modo que la cantidad de
+ * series queda acotada por los servlets registrados. El metodo lo elige el
+ * cliente: fuera de los estandar se cuenta como OTRO.
+ *
+ */
+public class MetricasFilter implements Filter {
+    private static final Set<String> METODOS = new HashSet<>(Arrays.asList(
+            "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH"));
+
+    private final Map<String, String> servlets = new HashMap<>();
+
+    /**
+     * Arma el mapa ruta -&gt; nombre de servlet a partir de los mapeos registrados.
+     *
+     * @param filterConfig configuracion del contenedor.
+     */
+    @Override
+    public void init(FilterConfig filterConfig) {
+        for (ServletRegistration registro : filterConfig.getServletContext().getServletRegistrations().values()) {
+            for (String patron : registro.getMappings()) {
+                // "/api/x" y "/api/x/*" dejan ambos servletPath = "/api/x".
+                String ruta = patron.endsWith("/*") ? patron.substring(0, patron.length() - 2) : patron;
+                if (ruta.startsWith("/")) {
+                    servlets.put(ruta, registro.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Mide el request: en curso, latencia, codigo final y mensaje de error.
+     *
+     * @param request request generico.
+     * @param response response generico.
+     * @param chain cadena de filtros/servlet destino.
+     * @throws IOException si ocurre error de escritura en respuesta.
+     * @throws ServletException si falla el flujo del contenedor.
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse res = (HttpServletResponse) response;
+        String servlet = servlets.get(req.getServletPath());
+        String metodo = METODOS.contains(req.getMethod()) ? req.getMethod() : "OTRO";
+        Metricas.Solicitud solicitud = Metricas.inicio(servlet == null ? "desconocido" : servlet, metodo);
+        int codigo = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        try {
+            chain.doFilter(request, response);
+            codigo = res.getStatus();
+        } finally {
+            Metricas.fin(solicitud, codigo);
+        }
+    }
+
+    /**
+     * Liberacion del filtro (sin recursos a liberar).
+     */
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,104 @@
+package API;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de metricas en formato de texto de Prometheus.
+ *
+ * Expone las metricas HTTP de {@link Metricas}, los totales de SQL por
+ * servlet de {@link SqlMetricas}, los contadores del pool de conexiones y los
+ * del canal de colaboracion ({@link ColaboracionHub}).
+ * Solo administradores (el scraper usa una sesion de admin).
+ *
+ */
+@WebServlet(name = "MetricasServlet", urlPatterns = {"/api/metrics"})
+public class MetricasServlet extends HttpServlet {
+
+    /**
+     * Escribe todas las metricas.
+     * No retorna valor; responde 403 si el usuario no es admin.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAdmin(AuthService.getRoleId(request))) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+        StringBuilder out = new StringBuilder(16384);
+        Metricas.exportar(out);
+        SqlMetricas.exportar(out);
+        exportarPool(out);
+        ColaboracionHub.exportar(out);
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        try (OutputStream os = response.getOutputStream()) {
+            os.write(out.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Agrega los contadores de {@link DB#getPoolStats()}.
+     *
+     * @param out destino.
+     */
+    private void exportarPool(StringBuilder out) {
+        ConnectionPool.Stats stats = DB.getPoolStats();
+        metrica(out, "casos_pool_conexiones_maximo", "gauge", "Conexiones maximas del pool.", stats.max_size);
+        metrica(out, "casos_pool_conexiones_activas", "gauge", "Conexiones prestadas.", stats.active);
+        metrica(out, "casos_pool_conexiones_inactivas", "gauge", "Conexiones libres.", stats.idle);
+        metrica(out, "casos_pool_en_espera", "gauge", "Hilos esperando una conexion.", stats.waiters);
+        metrica(out, "casos_pool_prestamos_total", "counter", "Prestamos de conexion.", stats.borrows);
+        metrica(out, "casos_pool_espera_segundos_total", "counter", "Tiempo total esperando conexion.",
+                stats.wait_millis_total / 1000.0);
+        metrica(out, "casos_pool_timeouts_total", "counter", "Esperas que agotaron el timeout.", stats.timeouts);
+        metrica(out, "casos_pool_fugas_total", "counter", "Prestamos que superaron el umbral de fuga.",
+                stats.leaks);
+    }
+
+    /**
+     * Escribe una metrica sin etiquetas con su HELP y TYPE.
+     *
+     * @param out destino.
+     * @param nombre nombre de la metrica.
+     * @param tipo gauge o counter.
+     * @param ayuda descripcion.
+     * @param valor valor actual.
+     */
+    private void metrica(StringBuilder out, String nombre, String tipo, String ayuda, double valor) {
+        out.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        out.append("# TYPE ").append(nombre).append(' ').append(tipo).append('\n');
+        out.append(nombre).append(' ');
+        if (valor == Math.rint(valor)) {
+            out.append((long) valor);
+        } else {
+            out.append(valor);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
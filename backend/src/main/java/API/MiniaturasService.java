@@ -0,0 +1,346 @@
+package API;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Generacion en segundo plano de miniaturas de imagenes.
+ *
+ * Tras confirmar una subida de tipo IMAGEN se programa la generacion de
+ * versiones reducidas (anchos de {@link #ANCHOS}) junto al original en el
+ * {@link MediaStorage}, con clave &lt;original&gt;.w&lt;ancho&gt;.jpg. La peticion de subida no espera:
+ * las tareas van a un pool acotado y, si la cola esta llena, se descartan
+ * (el original se sigue sirviendo hasta que exista la variante).
+ *
+ * La imagen se decodifica una sola vez con submuestreo (ImageReadParam), de
+ * modo que la memoria usada depende del tamanio de la variante mayor y no
+ * del original.
+ *
+ */
+public final class MiniaturasService {
+    /**
+     * Anchos de variante generados, de menor a mayor.
+     */
+    public static final int[] ANCHOS = {48, 160, 640};
+    public static final int HILOS = (int) DB.getLongValue("MINIATURAS_HILOS", "miniaturas.hilos", 1);
+    public static final int COLA = (int) DB.getLongValue("MINIATURAS_COLA", "miniaturas.cola", 256);
+
+    private static final float CALIDAD_JPEG = 0.82f;
+    private static final Object LOCK = new Object();
+    private static ThreadPoolExecutor executor;
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private MiniaturasService() {
+    }
+
+    /**
+     * Programa la generacion de variantes de una imagen. No bloquea.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param original clave del original.
+     */
+    public static void programar(final MediaStorage storage, final String original) {
+        if (original == null) {
+            return;
+        }
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        generar(storage, original);
+                    } catch (Exception ex) {
+                        // Imagen ilegible o disco lleno: se sigue sirviendo el original.
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Cola llena o aplicacion deteniendose: la subida no se ve afectada.
+        }
+    }
+
+    /**
+     * Elige el archivo a servir para un ancho pedido: la variante existente
+     * mas pequenia que cubra el ancho, o el original.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param original clave del original.
+     * @param ancho ancho pedido (null = original).
+     * @return clave de la variante existente o del original.
+     * @throws IOException si falla el acceso al almacenamiento.
+     */
+    public static String elegir(MediaStorage storage, String original, Integer ancho) throws IOException {
+        if (ancho == null || ancho.intValue() <= 0) {
+            return original;
+        }
+        for (int candidato : ANCHOS) {
+            if (candidato >= ancho.intValue()) {
+                String variante = variante(original, candidato);
+                if (storage.info(variante) != null) {
+                    return variante;
+                }
+            }
+        }
+        return original;
+    }
+
+    /**
+     * @param original clave del original (uploads/ab/cd/abc.jpg).
+     * @param ancho ancho de la variante.
+     * @return clave de la variante (uploads/ab/cd/abc.w48.jpg), exista o no.
+     */
+    public static String variante(String original, int ancho) {
+        return base(original) + ".w" + ancho + ".jpg";
+    }
+
+    /**
+     * @param clave clave de un objeto.
+     * @return clave sin extension (uploads/ab/cd/abc).
+     */
+    public static String base(String clave) {
+        int barra = clave.lastIndexOf('/');
+        int idx = clave.lastIndexOf('.');
+        return idx > barra ? clave.substring(0, idx) : clave;
+    }
+
+    /**
+     * @param clave clave de un objeto.
+     * @return base del original si la clave es una variante (abc.w48.jpg -&gt; abc), o null.
+     */
+    public static String baseDeVariante(String clave) {
+        if (!clave.endsWith(".jpg")) {
+            return null;
+        }
+        String sinJpg = clave.substring(0, clave.length() - 4);
+        for (int ancho : ANCHOS) {
+            String sufijo = ".w" + ancho;
+            if (sinJpg.endsWith(sufijo)) {
+                return sinJpg.substring(0, sinJpg.length() - sufijo.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Borra las variantes de un original (si existen).
+     *
+     * @param storage almacenamiento multimedia.
+     * @param original clave del original.
+     * @throws IOException si falla el borrado.
+     */
+    public static void borrarVariantes(MediaStorage storage, String original) throws IOException {
+        for (int ancho : ANCHOS) {
+            storage.borrar(variante(original, ancho));
+        }
+    }
+
+    /**
+     * Detiene el pool al bajar la aplicacion.
+     */
+    public static void shutdown() {
+        synchronized (LOCK) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Genera las variantes que falten (y que sean menores que el original).
+     *
+     * Flujo:
+     *
+     * - Lee solo la cabecera para conocer el tamanio.
+     * - Decodifica con submuestreo entero hacia el ancho mayor necesario.
+     * - Reduce por mitades sucesivas (bilineal) hasta cada ancho, de mayor a
+     *   menor, reutilizando la reduccion anterior.
+     * - Escribe cada variante a un temporal y la guarda en el almacenamiento.
+     *
+     *
+     * @param storage almacenamiento multimedia.
+     * @param original clave del original.
+     * @throws IOException si falla la lectura o escritura.
+     */
+    static void generar(MediaStorage storage, String original) throws IOException {
+        if (faltantes(storage, original) == 0) {
+            return;
+        }
+        BufferedImage imagen;
+        int anchoOriginal;
+        File local = storage.archivoLocal(original);
+        if (local != null && !local.isFile()) {
+            return;
+        }
+        try (InputStream origen = local != null ? null : storage.abrir(original, 0, -1);
+             ImageInputStream in = ImageIO.createImageInputStream(local != null ? local : origen)) {
+            if (in == null) {
+                return;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                anchoOriginal = reader.getWidth(0);
+                // No decodifica imagenes que excedan el limite (posible bomba de descompresion).
+                if ((long) anchoOriginal * reader.getHeight(0) > MetadatosService.MAX_PIXELES) {
+                    return;
+                }
+                int mayor = 0;
+                for (int ancho : ANCHOS) {
+                    if (ancho < anchoOriginal) {
+                        mayor = ancho;
+                    }
+                }
+                if (mayor == 0) {
+                    return;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int paso = anchoOriginal / mayor;
+                if (paso > 1) {
+                    param.setSourceSubsampling(paso, paso, 0, 0);
+                }
+                imagen = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        BufferedImage actual = imagen;
+        for (int i = ANCHOS.length - 1; i >= 0; i--) {
+            int ancho = ANCHOS[i];
+            if (ancho >= anchoOriginal) {
+                continue;
+            }
+            actual = reducir(actual, ancho);
+            String destino = variante(original, ancho);
+            if (storage.info(destino) == null) {
+                escribirJpeg(storage, actual, destino);
+            }
+        }
+    }
+
+    /**
+     * Reduce una imagen al ancho dado conservando la proporcion.
+     * Para factores mayores a 2 reduce por mitades, que con interpolacion
+     * bilineal da un resultado cercano a un filtro de area.
+     *
+     * @param src imagen de origen.
+     * @param ancho ancho destino.
+     * @return imagen RGB reducida.
+     */
+    private static BufferedImage reducir(BufferedImage src, int ancho) {
+        BufferedImage actual = src;
+        int alto = Math.max(1, (int) Math.round((double) src.getHeight() * ancho / src.getWidth()));
+        int w = actual.getWidth();
+        int h = actual.getHeight();
+        do {
+            w = Math.max(ancho, w / 2);
+            h = Math.max(alto, h / 2);
+            if (actual.getWidth() <= ancho * 2) {
+                w = ancho;
+                h = alto;
+            }
+            BufferedImage siguiente = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = siguiente.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(actual, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            actual = siguiente;
+        } while (w > ancho);
+        return actual;
+    }
+
+    /**
+     * Escribe un JPEG a un temporal y lo guarda en el almacenamiento.
+     *
+     * @param storage almacenamiento multimedia.
+     * @param imagen imagen RGB.
+     * @param destino clave final.
+     * @throws IOException si falla la escritura.
+     */
+    private static void escribirJpeg(MediaStorage storage, BufferedImage imagen, String destino) throws IOException {
+        File dir = storage.temporales();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("no_se_pudo_crear " + dir);
+        }
+        File temporal = new File(dir, UUID.randomUUID().toString().replace("-", "") + ".jpg.tmp");
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            return;
+        }
+        ImageWriter writer = writers.next();
+        boolean ok = false;
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(temporal)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(CALIDAD_JPEG);
+            writer.write(null, new IIOImage(imagen, null, null), param);
+            ok = true;
+        } finally {
+            writer.dispose();
+            if (!ok) {
+                temporal.delete();
+            }
+        }
+        try {
+            storage.guardar(destino, temporal);
+        } finally {
+            temporal.delete();
+        }
+    }
+
+    /**
+     * @param storage almacenamiento multimedia.
+     * @param original clave del original.
+     * @return cantidad de variantes que aun no existen.
+     * @throws IOException si falla el acceso al almacenamiento.
+     */
+    private static int faltantes(MediaStorage storage, String original) throws IOException {
+        int faltan = 0;
+        for (int ancho : ANCHOS) {
+            if (storage.info(variante(original, ancho)) == null) {
+                faltan++;
+            }
+        }
+        return faltan;
+    }
+
+    /**
+     * @return pool acotado (creado en el primer uso).
+     */
+    private static ThreadPoolExecutor getExecutor() {
+        synchronized (LOCK) {
+            if (executor == null) {
+                executor = TrabajosUtil.nuevoPool("miniaturas", HILOS, COLA);
+            }
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package API;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Registro de solo agregado de los cambios de diagramas, elementos y
+ * conexiones, con una secuencia creciente por diagrama (su version), y su
+ * compactador en segundo plano.
+ *
+ * Los servlets llaman a {@link #reservar} al inicio de su transaccion (toma
+ * el lock de la fila del diagrama, por lo que las secuencias quedan en orden
+ * de commit) y a {@link #registrar} antes del commit: el cambio y su
+ * operacion se confirman o se descartan juntos.
+ *
+ * El compactador guarda cada OPERACIONES_UMBRAL operaciones un snapshot del
+ * diagrama en snapshots_diagrama y borra las operaciones ya cubiertas por el
+ * snapshot anterior. Asi el registro queda acotado (a lo sumo unas dos veces
+ * el umbral por diagrama) y cualquier estado desde el snapshot anterior se
+ * reconstruye con un snapshot mas pocas operaciones.
+ *
+ */
+public final class OperacionesDiagrama {
+    public static final long UMBRAL = DB.getLongValue("OPERACIONES_UMBRAL", "operaciones.umbral", 1000);
+    public static final long INTERVALO_MS = DB.getLongValue("OPERACIONES_INTERVALO_MS", "operaciones.intervalo_ms",
+            300000L);
+    public static final int LOTE = (int) DB.getLongValue("OPERACIONES_LOTE", "operaciones.lote", 100);
+
+    public static final String DIAGRAMA = "diagrama";
+    public static final String ELEMENTO = "elemento";
+    public static final String CONEXION = "conexion";
+    public static final String CREAR = "crear";
+    public static final String ACTUALIZAR = "actualizar";
+    public static final String GEOMETRIA = "geometria";
+    public static final String BORRAR = "borrar";
+
+    private static final Logger LOG = Logger.getLogger(OperacionesDiagrama.class.getName());
+    private static final Object LOCK = new Object();
+    private static ScheduledThreadPoolExecutor programador;
+    private static boolean programado;
+
+    /**
+     * Una operacion a registrar (mismos valores que el delta de
+     * {@link ColaboracionHub}).
+     */
+    public static final class Operacion {
+        public final int id_diagrama;
+        public final long secuencia;
+        public final String entidad;
+        public final String accion;
+        public final int id_entidad;
+        public final JsonObject datos;
+
+        /**
+         * @param id_diagrama diagrama afectado.
+         * @param secuencia secuencia reservada con {@link #reservar}.
+         * @param entidad {@link #ELEMENTO} o {@link #CONEXION}.
+         * @param accion {@link #CREAR}, {@link #ACTUALIZAR}, {@link #GEOMETRIA} o {@link #BORRAR}.
+         * @param id_entidad id del elemento o conexion.
+         * @param datos campos escritos (null al borrar).
+         */
+        public Operacion(int id_diagrama, long secuencia, String entidad, String accion, int id_entidad,
+                JsonObject datos) {
+            this.id_diagrama = id_diagrama;
+            this.secuencia = secuencia;
+            this.entidad = entidad;
+            this.accion = accion;
+            this.id_entidad = id_entidad;
+            this.datos = datos;
+        }
+    }
+
+    /**
+     * Contenido de un snapshot compactado.
+     */
+    public static final class Snapshot {
+        public final long secuencia;
+        public final long desde_secuencia;
+        public final String contenido_json;
+
+        /**
+         * @param secuencia ultima operacion incluida.
+         * @param desde_secuencia el registro esta completo desde aqui.
+         * @param contenido_json {"elementos":[...],"conexiones":[...]}.
+         */
+        public Snapshot(long secuencia, long desde_secuencia, String contenido_json) {
+            this.secuencia = secuencia;
+            this.desde_secuencia = desde_secuencia;
+            this.contenido_json = contenido_json;
+        }
+    }
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private OperacionesDiagrama() {
+    }
+
+    /**
+     * Reserva secuencias consecutivas para un diagrama.
+     *
+     * Debe llamarse con autocommit desactivado: el UPDATE bloquea la fila del
+     * diagrama hasta el commit. Con varios diagramas en la misma transaccion
+     * se reservan en orden ascendente de id para no provocar deadlocks.
+     *
+     *
+     * @param con conexion en transaccion.
+     * @param id_diagrama diagrama afectado.
+     * @param cantidad operaciones a registrar.
+     * @return primera secuencia reservada, o 0 si el diagrama no existe.
+     * @throws SQLException si falla la BD.
+     */
+    public static long reservar(Connection con, int id_diagrama, int cantidad) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(
+                "UPDATE diagramas_uml SET ultima_secuencia = ultima_secuencia + ? WHERE id_diagrama = ?")) {
+            ps.setInt(1, cantidad);
+            ps.setInt(2, id_diagrama);
+            if (ps.executeUpdate() == 0) {
+                return 0;
+            }
+        }
+        return ultimaSecuencia(con, id_diagrama) - cantidad + 1;
+    }
+
+    /**
+     * Inserta las operaciones en un solo batch, dentro de la transaccion del
+     * cambio. Las que tienen secuencia 0 (diagrama inexistente) se omiten.
+     *
+     * @param con conexion en transaccion.
+     * @param id_usuario autor del cambio.
+     * @param operaciones operaciones a registrar.
+     * @throws SQLException si falla la BD.
+     */
+    public static void registrar(Connection con, Integer id_usuario, List<Operacion> operaciones)
+            throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO operaciones_diagrama (id_diagrama, secuencia, "
+                + "entidad, accion, id_entidad, id_usuario, datos_json) VALUES (?,?,?,?,?,?,?)")) {
+            int pendientes = 0;
+            for (Operacion operacion : operaciones) {
+                if (operacion.secuencia <= 0) {
+                    continue;
+                }
+                ps.setInt(1, operacion.id_diagrama);
+                ps.setLong(2, operacion.secuencia);
+                ps.setString(3, operacion.entidad.toUpperCase(Locale.ROOT));
+                ps.setString(4, operacion.accion.toUpperCase(Locale.ROOT));
+                ps.setInt(5, operacion.id_entidad);
+                if (id_usuario == null) {
+                    ps.setNull(6, Types.INTEGER);
+                } else {
+                    ps.setInt(6, id_usuario.intValue());
+                }
+                if (operacion.datos == null) {
+                    ps.setNull(7, Types.LONGVARCHAR);
+                } else {
+                    ps.setString(7, operacion.datos.toString());
+                }
+                ps.addBatch();
+                pendientes++;
+            }
+            if (pendientes > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * @param con conexion abierta.
+     * @param id_diagrama diagrama a consultar.
+     * @return ultima secuencia registrada (0 si no hay operaciones o no existe).
+     * @throws SQLException si falla la BD.
+     */
+    public static long ultimaSecuencia(Connection con, int id_diagrama) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT ultima_secuencia FROM diagramas_uml WHERE id_diagrama = ?")) {
+            ps.setInt(1, id_diagrama);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * @param con conexion abierta.
+     * @param id_diagrama diagrama a consultar.
+     * @return horizonte del registro: las operaciones con secuencia menor o
+     *         igual ya se compactaron (0 si aun no hay snapshot).
+     * @throws SQLException si falla la BD.
+     */
+    public static long horizonte(Connection con, int id_diagrama) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT desde_secuencia FROM snapshots_diagrama WHERE id_diagrama = ?")) {
+            ps.setInt(1, id_diagrama);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * @param con conexion abierta.
+     * @param id_diagrama diagrama a consultar.
+     * @return ultimo snapshot compactado o null si aun no hay.
+     * @throws SQLException si falla la BD.
+     */
+    public static Snapshot snapshot(Connection con, int id_diagrama) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT secuencia, desde_secuencia, contenido_json "
+                + "FROM snapshots_diagrama WHERE id_diagrama = ?")) {
+            ps.setInt(1, id_diagrama);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Snapshot(rs.getLong("secuencia"), rs.getLong("desde_secuencia"),
+                        rs.getString("contenido_json"));
+            }
+        }
+    }
+
+    /**
+     * Programa pasadas periodicas del compactador cada INTERVALO_MS. Con
+     * INTERVALO_MS &lt;= 0 no se programa.
+     */
+    public static void iniciar() {
+        if (INTERVALO_MS <= 0) {
+            return;
+        }
+        synchronized (LOCK) {
+            if (programado) {
+                return;
+            }
+            getProgramador().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    compactar();
+                }
+            }, INTERVALO_MS, INTERVALO_MS, TimeUnit.MILLISECONDS);
+            programado = true;
+        }
+    }
+
+    /**
+     * Detiene el compactador al bajar la aplicacion.
+     */
+    public static void shutdown() {
+        synchronized (LOCK) {
+            if (programador != null) {
+                programador.shutdownNow();
+                programador = null;
+                programado = false;
+            }
+        }
+    }
+
+    /**
+     * Una pasada: compacta hasta LOTE diagramas con UMBRAL o mas operaciones
+     * desde su ultimo snapshot.
+     *
+     * @return diagramas compactados.
+     */
+    public static int compactar() {
+        List<Integer> pendientes = new ArrayList<>();
+        String sql = "SELECT d.id_diagrama FROM diagramas_uml d "
+                + "LEFT JOIN snapshots_diagrama s ON s.id_diagrama = d.id_diagrama "
+                + "WHERE d.ultima_secuencia >= COALESCE(s.secuencia, 0) + ? ORDER BY d.id_diagrama LIMIT ?";
+        try (Connection con = DB.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setLong(1, Math.max(1, UMBRAL));
+            ps.setInt(2, LOTE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    pendientes.add(rs.getInt(1));
+                }
+            }
+        } catch (SQLException ex) {
+            LOG.log(Level.WARNING, "No se pudieron buscar diagramas para compactar", ex);
+            return 0;
+        }
+        int compactados = 0;
+        for (Integer id_diagrama : pendientes) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            try {
+                compactarDiagrama(id_diagrama.intValue());
+                compactados++;
+            } catch (Exception ex) {
+                LOG.log(Level.WARNING, "No se pudo compactar el diagrama " + id_diagrama, ex);
+            }
+        }
+        if (compactados > 0) {
+            LOG.info("Operaciones: " + compactados + " diagramas compactados");
+        }
+        return compactados;
+    }
+
+    /**
+     * Compacta un diagrama.
+     *
+     * Flujo:
+     * 1) En una transaccion REPEATABLE READ de solo lectura lee
+     *    ultima_secuencia, el snapshot anterior y elementos y conexiones con
+     *    lecturas consistentes, sin bloquear: cada cambio sube
+     *    ultima_secuencia en su misma transaccion, asi que lo leido
+     *    corresponde exactamente a esa secuencia.
+     * 2) En una transaccion corta bloquea la fila del diagrama y comprueba
+     *    que snapshots_diagrama no cambio mientras tanto (otra pasada); si
+     *    cambio, no hace nada.
+     * 3) Reemplaza el snapshot y borra las operaciones cubiertas por el
+     *    snapshot anterior, que pasa a ser desde_secuencia.
+     *
+     *
+     * @param id_diagrama diagrama a compactar.
+     * @throws Exception si falla la BD (la transaccion se revierte).
+     */
+    static void compactarDiagrama(int id_diagrama) throws Exception {
+        try (Connection con = DB.getConnection()) {
+            boolean auto_commit = con.getAutoCommit();
+            int aislamiento = con.getTransactionIsolation();
+            long secuencia;
+            Snapshot anterior;
+            String contenido;
+            con.setAutoCommit(false);
+            con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try {
+                try (PreparedStatement ps = con.prepareStatement(
+                        "SELECT ultima_secuencia FROM diagramas_uml WHERE id_diagrama = ?")) {
+                    ps.setInt(1, id_diagrama);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            con.rollback();
+                            return;
+                        }
+                        secuencia = rs.getLong(1);
+                    }
+                }
+                anterior = snapshot(con, id_diagrama);
+                contenido = serializar(con, id_diagrama);
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setTransactionIsolation(aislamiento);
+                con.setAutoCommit(auto_commit);
+            }
+            if (anterior != null && anterior.secuencia >= secuencia) {
+                return;
+            }
+            long desde_secuencia = anterior == null ? 0 : anterior.secuencia;
+
+            con.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = con.prepareStatement(
+                        "SELECT id_diagrama FROM diagramas_uml WHERE id_diagrama = ? FOR UPDATE")) {
+                    ps.setInt(1, id_diagrama);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            con.rollback();
+                            return;
+                        }
+                    }
+                }
+                Snapshot actual = snapshot(con, id_diagrama);
+                if (actual == null ? anterior != null : anterior == null || actual.secuencia != anterior.secuencia) {
+                    // Otra pasada ya reemplazo el snapshot.
+                    con.rollback();
+                    return;
+                }
+                try (PreparedStatement ps = con.prepareStatement(
+                        "DELETE FROM snapshots_diagrama WHERE id_diagrama = ?")) {
+                    ps.setInt(1, id_diagrama);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = con.prepareStatement("INSERT INTO snapshots_diagrama (id_diagrama, "
+                        + "secuencia, desde_secuencia, contenido_json) VALUES (?,?,?,?)")) {
+                    ps.setInt(1, id_diagrama);
+                    ps.setLong(2, secuencia);
+                    ps.setLong(3, desde_secuencia);
+                    ps.setString(4, contenido);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = con.prepareStatement(
+                        "DELETE FROM operaciones_diagrama WHERE id_diagrama = ? AND secuencia <= ?")) {
+                    ps.setInt(1, id_diagrama);
+                    ps.setLong(2, desde_secuencia);
+                    ps.executeUpdate();
+                }
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
+            }
+        }
+    }
+
+    /**
+     * @param con conexion en una transaccion REPEATABLE READ.
+     * @param id_diagrama diagrama a serializar.
+     * @return {"elementos":[...],"conexiones":[...]} en el formato del snapshot HTTP.
+     * @throws Exception si falla la lectura.
+     */
+    private static String serializar(Connection con, int id_diagrama) throws Exception {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = Json.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStartArray("elementos");
+            try (PreparedStatement ps = con.prepareStatement("SELECT id_elemento, id_diagrama, id_elemento_padre, "
+                    + "tipo_elemento, etiqueta, pos_x, pos_y, ancho, alto, rotacion_grados, orden_z, estilo_json, "
+                    + "metadatos_json, version, fecha_creacion, fecha_actualizacion "
+                    + "FROM elementos_diagrama WHERE id_diagrama = ? ORDER BY id_elemento")) {
+                ps.setInt(1, id_diagrama);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        gen.writeStartObject();
+                        ElementosServlet.writeElemento(gen, rs);
+                        gen.writeEnd();
+                    }
+                }
+            }
+            gen.writeEnd();
+            gen.writeStartArray("conexiones");
+            try (PreparedStatement ps = con.prepareStatement("SELECT id_conexion, id_diagrama, id_elemento_origen, "
+                    + "id_elemento_destino, tipo_conexion, etiqueta, puntos_json, estilo_json, version, fecha_creacion, "
+                    + "fecha_actualizacion FROM conexiones_diagrama WHERE id_diagrama = ? ORDER BY id_conexion")) {
+                ps.setInt(1, id_diagrama);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        gen.writeStartObject();
+                        ConexionesServlet.writeConexion(gen, rs);
+                        gen.writeEnd();
+                    }
+                }
+            }
+            gen.writeEnd();
+            gen.writeEnd();
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return programador del compactador (se crea al primer uso).
+     */
+    private static ScheduledThreadPoolExecutor getProgramador() {
+        synchronized (LOCK) {
+            if (programador == null) {
+                programador = TrabajosUtil.nuevoProgramador("operaciones-compactador");
+            }
+            return programador;
+        }
+    }
+}
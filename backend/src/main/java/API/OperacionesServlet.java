@@ -0,0 +1,224 @@
+package API;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de lectura del registro de operaciones de un diagrama.
+ *
+ * Devuelve las operaciones con secuencia mayor a "desde" en orden de
+ * secuencia, para reproducir el historial o ponerse al dia tras una
+ * desconexion. Si "desde" quedo antes del horizonte (operaciones ya
+ * compactadas por {@link OperacionesDiagrama}), se incluye el snapshot y las
+ * operaciones siguen desde su secuencia.
+ *
+ */
+@WebServlet(name = "OperacionesServlet", urlPatterns = {"/api/diagramas/operaciones"})
+public class OperacionesServlet extends HttpServlet {
+
+    /**
+     * Lista operaciones de un diagrama posteriores a una secuencia.
+     * No retorna valor; responde 400/403/500 segun validaciones.
+     *
+     * Flujo:
+     *
+     * - Valida id_diagrama, desde (0 por defecto) y limit.
+     * - Verifica propiedad del diagrama o rol admin.
+     * - Lee ultima secuencia, snapshot y operaciones en una misma lectura
+     *   consistente, para que el compactador no borre operaciones a medias.
+     * - Escribe la pagina en streaming; hay_mas indica que falta otra.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
+        boolean es_admin = isAdmin(id_rol_sesion);
+
+        Integer id_diagrama = parseInt(request.getParameter("id_diagrama"));
+        if (id_diagrama == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "id_diagrama_requerido");
+            return;
+        }
+        String desde_param = request.getParameter("desde");
+        Long desde = desde_param == null ? Long.valueOf(0) : parseLong(desde_param);
+        Integer limit = CursorUtil.parseLimit(request.getParameter("limit"));
+        if (desde == null || desde.longValue() < 0 || limit == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "parametros_invalidos");
+            return;
+        }
+        if (!es_admin && !isOwnerDiagram(id_diagrama.intValue(), id_usuario_sesion)) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+
+        String sql = "SELECT secuencia, entidad, accion, id_entidad, id_usuario, datos_json, fecha_creacion "
+                + "FROM operaciones_diagrama WHERE id_diagrama = ? AND secuencia > ? ORDER BY secuencia LIMIT ?";
+        try (Connection con = DB.getConnection()) {
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                long ultima_secuencia = OperacionesDiagrama.ultimaSecuencia(con, id_diagrama.intValue());
+                OperacionesDiagrama.Snapshot snapshot = OperacionesDiagrama.snapshot(con, id_diagrama.intValue());
+                long horizonte = snapshot == null ? 0 : snapshot.desde_secuencia;
+                long inicio = desde.longValue();
+                boolean con_snapshot = snapshot != null && inicio < horizonte;
+                if (con_snapshot) {
+                    inicio = snapshot.secuencia;
+                }
+
+                try (PreparedStatement ps = con.prepareStatement(sql);
+                     JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                    gen.writeStartObject();
+                    gen.write("ok", true);
+                    gen.write("id_diagrama", id_diagrama.intValue());
+                    gen.write("ultima_secuencia", ultima_secuencia);
+                    gen.write("desde_secuencia", horizonte);
+                    if (con_snapshot) {
+                        gen.writeStartObject("snapshot");
+                        gen.write("secuencia", snapshot.secuencia);
+                        try (JsonReader reader = Json.createReader(new StringReader(snapshot.contenido_json))) {
+                            gen.write("contenido", reader.readObject());
+                        }
+                        gen.writeEnd();
+                    }
+
+                    ps.setInt(1, id_diagrama.intValue());
+                    ps.setLong(2, inicio);
+                    ps.setInt(3, limit.intValue() + 1);
+                    gen.writeStartArray("operaciones");
+                    int escritos = 0;
+                    boolean hay_mas = false;
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            // Se pidio limit + 1 filas: la extra solo indica que hay otra pagina.
+                            if (escritos == limit.intValue()) {
+                                hay_mas = true;
+                                break;
+                            }
+                            gen.writeStartObject();
+                            gen.write("secuencia", rs.getLong("secuencia"));
+                            gen.write("entidad", rs.getString("entidad").toLowerCase());
+                            gen.write("accion", rs.getString("accion").toLowerCase());
+                            gen.write("id_entidad", rs.getInt("id_entidad"));
+                            int id_usuario = rs.getInt("id_usuario");
+                            JsonUtil.write(gen, "id_usuario", rs.wasNull() ? null : Integer.valueOf(id_usuario));
+                            String datos_json = rs.getString("datos_json");
+                            if (datos_json == null) {
+                                gen.writeNull("datos");
+                            } else {
+                                try (JsonReader reader = Json.createReader(new StringReader(datos_json))) {
+                                    gen.write("datos", reader.readObject());
+                                }
+                            }
+                            Timestamp creado = rs.getTimestamp("fecha_creacion");
+                            JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+                            gen.writeEnd();
+                            escritos++;
+                        }
+                    }
+                    gen.writeEnd();
+                    gen.write("hay_mas", hay_mas);
+                    gen.writeEnd();
+                }
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
+            }
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_listar_operaciones");
+        }
+    }
+
+    /**
+     * Verifica si el diagrama pertenece al usuario de la sesion.
+     *
+     * Se obtiene el propietario desde OwnershipCache (BD solo en fallo) y compara con sesion.
+     *
+     *
+     * @param id_diagrama id del diagrama.
+     * @param id_usuario_sesion id del usuario autenticado.
+     * @return true si es propietario; false si no coincide o hay error.
+     */
+    private boolean isOwnerDiagram(int id_diagrama, Integer id_usuario_sesion) {
+        if (id_usuario_sesion == null) {
+            return false;
+        }
+        try {
+            return OwnershipCache.isDiagramOwner(id_diagrama, id_usuario_sesion.intValue());
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Parsea un entero desde query string.
+     *
+     * Se recorta el texto y se parsea con manejo de NumberFormatException.
+     *
+     *
+     * @param value texto recibido.
+     * @return Integer o null si no es valido.
+     */
+    private Integer parseInt(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Parsea una secuencia desde query string.
+     *
+     * @param value texto recibido.
+     * @return Long o null si no es valido.
+     */
+    private Long parseLong(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * Se usa como regla simple de autorizacion en todos los servlets.
+     *
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
@@ -0,0 +1,281 @@
+package API;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache en memoria de la propiedad de diagramas, elementos y conexiones.
+ *
+ * Guarda tres mapas LRU acotados: id_diagrama -> id_usuario propietario,
+ * id_elemento -> id_diagrama e id_conexion -> id_diagrama. Las verificaciones
+ * de acceso de los servlets consultan aqui primero y solo van a la base de
+ * datos en un fallo de cache. Las entradas expiran tras un TTL para acotar la
+ * obsolescencia entre nodos, y los caminos que borran o mueven registros
+ * invalidan o actualizan las entradas afectadas.
+ *
+ */
+public final class OwnershipCache {
+    public static final int MAX_ENTRIES = (int) DB.getLongValue("OWNERSHIP_CACHE_MAX", "ownership.cache.max", 10000);
+    public static final long TTL_MS = DB.getLongValue("OWNERSHIP_CACHE_TTL_MS", "ownership.cache.ttl_ms", 300000);
+
+    private static final Lru DIAGRAM_OWNER = new Lru(MAX_ENTRIES);
+    private static final Lru ELEMENT_DIAGRAM = new Lru(MAX_ENTRIES);
+    private static final Lru CONEXION_DIAGRAM = new Lru(MAX_ENTRIES);
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private OwnershipCache() {
+    }
+
+    /**
+     * Valor cacheado junto con el instante en que se cargo.
+     */
+    private static final class Value {
+        final int id;
+        final long loaded_at_ms;
+
+        Value(int id) {
+            this.id = id;
+            this.loaded_at_ms = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Mapa LRU sincronizado con capacidad maxima y expiracion por TTL.
+     */
+    private static final class Lru {
+        private final LinkedHashMap<Integer, Value> map;
+
+        Lru(final int max_entries) {
+            this.map = new LinkedHashMap<Integer, Value>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Value> eldest) {
+                    return size() > max_entries;
+                }
+            };
+        }
+
+        synchronized Integer get(int key) {
+            Value value = map.get(key);
+            if (value == null) {
+                return null;
+            }
+            if (TTL_MS > 0 && System.currentTimeMillis() - value.loaded_at_ms > TTL_MS) {
+                map.remove(key);
+                return null;
+            }
+            return value.id;
+        }
+
+        synchronized void put(int key, int id) {
+            map.put(key, new Value(id));
+        }
+
+        synchronized void remove(int key) {
+            map.remove(key);
+        }
+
+        synchronized void removeByValue(int id) {
+            Iterator<Value> it = map.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().id == id) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtiene el propietario de un diagrama, consultando BD en fallo de cache.
+     *
+     * @param id_diagrama id del diagrama.
+     * @return id_usuario propietario o null si el diagrama no existe.
+     * @throws SQLException si falla la consulta.
+     */
+    public static Integer diagramOwner(int id_diagrama) throws SQLException {
+        Integer owner = DIAGRAM_OWNER.get(id_diagrama);
+        if (owner != null) {
+            return owner;
+        }
+        owner = queryInt("SELECT id_usuario FROM diagramas_uml WHERE id_diagrama = ?", id_diagrama);
+        if (owner != null) {
+            DIAGRAM_OWNER.put(id_diagrama, owner.intValue());
+        }
+        return owner;
+    }
+
+    /**
+     * Obtiene el diagrama de un elemento, consultando BD en fallo de cache.
+     *
+     * @param id_elemento id del elemento.
+     * @return id_diagrama o null si el elemento no existe.
+     * @throws SQLException si falla la consulta.
+     */
+    public static Integer elementDiagram(int id_elemento) throws SQLException {
+        Integer id_diagrama = ELEMENT_DIAGRAM.get(id_elemento);
+        if (id_diagrama != null) {
+            return id_diagrama;
+        }
+        id_diagrama = queryInt("SELECT id_diagrama FROM elementos_diagrama WHERE id_elemento = ?", id_elemento);
+        if (id_diagrama != null) {
+            ELEMENT_DIAGRAM.put(id_elemento, id_diagrama.intValue());
+        }
+        return id_diagrama;
+    }
+
+    /**
+     * Obtiene el diagrama de una conexion, consultando BD en fallo de cache.
+     *
+     * @param id_conexion id de la conexion.
+     * @return id_diagrama o null si la conexion no existe.
+     * @throws SQLException si falla la consulta.
+     */
+    public static Integer conexionDiagram(int id_conexion) throws SQLException {
+        Integer id_diagrama = CONEXION_DIAGRAM.get(id_conexion);
+        if (id_diagrama != null) {
+            return id_diagrama;
+        }
+        id_diagrama = queryInt("SELECT id_diagrama FROM conexiones_diagrama WHERE id_conexion = ?", id_conexion);
+        if (id_diagrama != null) {
+            CONEXION_DIAGRAM.put(id_conexion, id_diagrama.intValue());
+        }
+        return id_diagrama;
+    }
+
+    /**
+     * Verifica si el usuario es propietario del diagrama.
+     *
+     * @param id_diagrama id del diagrama.
+     * @param id_usuario id del usuario a comparar.
+     * @return true si es propietario; false si no coincide o el diagrama no existe.
+     * @throws SQLException si falla la consulta en fallo de cache.
+     */
+    public static boolean isDiagramOwner(int id_diagrama, int id_usuario) throws SQLException {
+        Integer owner = diagramOwner(id_diagrama);
+        return owner != null && owner.intValue() == id_usuario;
+    }
+
+    /**
+     * Verifica si el usuario es propietario del diagrama de un elemento.
+     *
+     * @param id_elemento id del elemento.
+     * @param id_usuario id del usuario a comparar.
+     * @return true si es propietario; false en caso contrario.
+     * @throws SQLException si falla la consulta en fallo de cache.
+     */
+    public static boolean isElementOwner(int id_elemento, int id_usuario) throws SQLException {
+        Integer id_diagrama = elementDiagram(id_elemento);
+        return id_diagrama != null && isDiagramOwner(id_diagrama.intValue(), id_usuario);
+    }
+
+    /**
+     * Verifica si el usuario es propietario del diagrama de una conexion.
+     *
+     * @param id_conexion id de la conexion.
+     * @param id_usuario id del usuario a comparar.
+     * @return true si es propietario; false en caso contrario.
+     * @throws SQLException si falla la consulta en fallo de cache.
+     */
+    public static boolean isConexionOwner(int id_conexion, int id_usuario) throws SQLException {
+        Integer id_diagrama = conexionDiagram(id_conexion);
+        return id_diagrama != null && isDiagramOwner(id_diagrama.intValue(), id_usuario);
+    }
+
+    /**
+     * Registra el propietario de un diagrama recien creado o leido.
+     *
+     * @param id_diagrama id del diagrama.
+     * @param id_usuario propietario.
+     */
+    public static void putDiagram(int id_diagrama, int id_usuario) {
+        DIAGRAM_OWNER.put(id_diagrama, id_usuario);
+    }
+
+    /**
+     * Registra (o actualiza si se movio) el diagrama de un elemento.
+     *
+     * @param id_elemento id del elemento.
+     * @param id_diagrama diagrama actual del elemento.
+     */
+    public static void putElement(int id_elemento, int id_diagrama) {
+        ELEMENT_DIAGRAM.put(id_elemento, id_diagrama);
+    }
+
+    /**
+     * Registra (o actualiza si se movio) el diagrama de una conexion.
+     *
+     * @param id_conexion id de la conexion.
+     * @param id_diagrama diagrama actual de la conexion.
+     */
+    public static void putConexion(int id_conexion, int id_diagrama) {
+        CONEXION_DIAGRAM.put(id_conexion, id_diagrama);
+    }
+
+    /**
+     * Invalida un diagrama borrado junto con los elementos y conexiones que
+     * apuntaban a el (se borran en cascada).
+     *
+     * @param id_diagrama id del diagrama.
+     */
+    public static void removeDiagram(int id_diagrama) {
+        DIAGRAM_OWNER.remove(id_diagrama);
+        ELEMENT_DIAGRAM.removeByValue(id_diagrama);
+        CONEXION_DIAGRAM.removeByValue(id_diagrama);
+    }
+
+    /**
+     * Invalida un elemento borrado.
+     *
+     * @param id_elemento id del elemento.
+     */
+    public static void removeElement(int id_elemento) {
+        ELEMENT_DIAGRAM.remove(id_elemento);
+    }
+
+    /**
+     * Invalida una conexion borrada.
+     *
+     * @param id_conexion id de la conexion.
+     */
+    public static void removeConexion(int id_conexion) {
+        CONEXION_DIAGRAM.remove(id_conexion);
+    }
+
+    /**
+     * Invalida los diagramas de un usuario borrado (se eliminan en cascada).
+     * Los elementos y conexiones de esos diagramas dejan de autorizar porque
+     * su propietario ya no se encuentra.
+     *
+     * @param id_usuario id del usuario borrado.
+     */
+    public static void removeOwner(int id_usuario) {
+        DIAGRAM_OWNER.removeByValue(id_usuario);
+    }
+
+    /**
+     * Ejecuta una consulta de un solo entero con un parametro.
+     *
+     * @param sql consulta con un placeholder.
+     * @param id valor del parametro.
+     * @return entero de la primera columna o null si no hay filas.
+     * @throws SQLException si falla la consulta.
+     */
+    private static Integer queryInt(String sql, int id) throws SQLException {
+        try (Connection con = DB.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package API;
+
+import java.io.IOException;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de solo lectura con los contadores del pool de conexiones.
+ *
+ * Permite a operadores (administradores) revisar conexiones activas,
+ * inactivas, hilos en espera y tiempos de espera acumulados sin acceso a JMX.
+ *
+ */
+@WebServlet(name = "PoolConexionesServlet", urlPatterns = {"/api/pool-conexiones"})
+public class PoolConexionesServlet extends HttpServlet {
+
+    /**
+     * Devuelve la foto actual de {@link DB#getPoolStats()}.
+     * No retorna valor; responde 403 si el usuario no es admin.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAdmin(AuthService.getRoleId(request))) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+        ConnectionPool.Stats stats = DB.getPoolStats();
+        JsonObjectBuilder pool = Json.createObjectBuilder()
+                .add("maximo", stats.max_size)
+                .add("activas", stats.active)
+                .add("inactivas", stats.idle)
+                .add("total", stats.total)
+                .add("en_espera", stats.waiters)
+                .add("prestamos", stats.borrows)
+                .add("espera_total_ms", stats.wait_millis_total)
+                .add("espera_maxima_ms", stats.wait_millis_max)
+                .add("timeouts", stats.timeouts)
+                .add("creadas", stats.created)
+                .add("descartadas", stats.destroyed)
+                .add("fugas_detectadas", stats.leaks);
+        JsonObjectBuilder body = Json.createObjectBuilder()
+                .add("ok", true)
+                .add("pool", pool);
+        ResponseUtil.writeOk(response, body.build());
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
@@ -0,0 +1,171 @@
+package API;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Conexion compartida por todo un request HTTP.
+ *
+ * {@link ConexionRequestFilter} abre el alcance al entrar a /api/* y lo cierra
+ * al terminar. Mientras el alcance esta activo, {@link DB#getConnection()}
+ * entrega vistas de una unica conexion del pool (prestada de forma perezosa),
+ * de modo que las verificaciones de propiedad y la consulta principal usan la
+ * misma conexion y el mismo round trip de prestamo.
+ *
+ * Cerrar una vista no devuelve la conexion al pool; cuando se cierra la ultima
+ * vista abierta se revierte cualquier transaccion pendiente y se restaura
+ * autocommit, igual que haria el pool. La conexion se devuelve en {@link #end()}.
+ *
+ */
+public final class RequestConnection {
+    private static final ThreadLocal<RequestConnection> CURRENT = new ThreadLocal<>();
+
+    private Connection pooled;
+    private int open_views;
+
+    /**
+     * Constructor privado; las instancias se crean con {@link #begin()}.
+     */
+    private RequestConnection() {
+    }
+
+    /**
+     * Abre el alcance del request en el hilo actual.
+     * Si ya existe uno (p. ej. forward interno) se reutiliza.
+     *
+     * @return true si este llamado abrio el alcance y debe cerrarlo.
+     */
+    public static boolean begin() {
+        if (CURRENT.get() != null) {
+            return false;
+        }
+        CURRENT.set(new RequestConnection());
+        return true;
+    }
+
+    /**
+     * Cierra el alcance del hilo actual y devuelve la conexion al pool.
+     */
+    public static void end() {
+        RequestConnection scope = CURRENT.get();
+        CURRENT.remove();
+        if (scope != null && scope.pooled != null) {
+            try {
+                scope.pooled.close();
+            } catch (SQLException ex) {
+                // El pool descarta la conexion si no pudo restaurarse.
+            }
+            scope.pooled = null;
+        }
+    }
+
+    /**
+     * Devuelve la conexion al pool antes de terminar el request, si no hay
+     * vistas abiertas. El alcance sigue activo: un uso posterior presta otra.
+     *
+     * Se usa antes de respuestas largas (p. ej. streaming de archivos) que ya
+     * no necesitan la base de datos, para no retener una conexion del pool.
+     *
+     */
+    public static void release() {
+        RequestConnection scope = CURRENT.get();
+        if (scope == null || scope.pooled == null || scope.open_views > 0) {
+            return;
+        }
+        try {
+            scope.pooled.close();
+        } catch (SQLException ex) {
+            // El pool descarta la conexion si no pudo restaurarse.
+        }
+        scope.pooled = null;
+    }
+
+    /**
+     * @return true si el hilo actual tiene un alcance de request abierto.
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Obtiene una vista de la conexion del request, prestandola si aun no existe.
+     *
+     * @return vista cuyo close() no devuelve la conexion al pool.
+     * @throws SQLException si no hay alcance activo o el pool no entrega conexion.
+     */
+    static Connection acquire() throws SQLException {
+        RequestConnection scope = CURRENT.get();
+        if (scope == null) {
+            throw new SQLException("sin_conexion_de_request");
+        }
+        if (scope.pooled == null || scope.pooled.isClosed()) {
+            scope.pooled = DB.borrowPooled();
+        }
+        scope.open_views++;
+        return scope.view(scope.pooled);
+    }
+
+    /**
+     * Marca el cierre de una vista y restaura el estado al cerrar la ultima.
+     *
+     * @param con conexion compartida.
+     * @throws SQLException si falla el rollback o el cambio de autocommit.
+     */
+    private void closeView(Connection con) throws SQLException {
+        open_views--;
+        if (open_views <= 0) {
+            open_views = 0;
+            if (!con.isClosed() && !con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Crea la vista (proxy) sobre la conexion compartida.
+     *
+     * @param con conexion compartida del request.
+     * @return vista con close() propio.
+     */
+    private Connection view(final Connection con) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean view_closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("close".equals(name)) {
+                    if (!view_closed) {
+                        view_closed = true;
+                        closeView(con);
+                    }
+                    return null;
+                }
+                if ("isClosed".equals(name)) {
+                    return view_closed || con.isClosed();
+                }
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                }
+                if (view_closed) {
+                    throw new SQLException("conexion_cerrada");
+                }
+                try {
+                    return method.invoke(con, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                RequestConnection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+}
@@ -1,10 +1,12 @@
 package API;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonStructure;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -26,7 +28,9 @@ public final class ResponseUtil {
      * No retorna valor; escribe directamente en la respuesta.
      *
      * Se setea status/headers y serializa el JsonStructure
-     * usando su representacion toString().
+     * usando su representacion toString(). Se escribe por el OutputStream
+     * (igual que {@link #openJson(HttpServletResponse, int)}) para que un error
+     * pueda responderse aunque ya se haya abierto un stream JSON.
      *
      *
      * @param response response HTTP destino.
@@ -38,11 +42,31 @@ public final class ResponseUtil {
         response.setStatus(status);
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        try (PrintWriter out = response.getWriter()) {
-            out.print(json.toString());
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(json.toString().getBytes(StandardCharsets.UTF_8));
         }
     }
 
+    /**
+     * Abre un generador JSON que escribe directo en el body de la respuesta.
+     *
+     * Se setea status/headers y se crea un JsonGenerator sobre el
+     * OutputStream; el llamador escribe la estructura y cierra el generador.
+     * Permite emitir respuestas grandes sin construir el arbol completo en memoria.
+     *
+     *
+     * @param response response HTTP destino.
+     * @param status codigo HTTP a retornar.
+     * @return generador listo para escribir (UTF-8).
+     * @throws IOException si no se puede abrir el stream de salida.
+     */
+    public static JsonGenerator openJson(HttpServletResponse response, int status) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        return Json.createGenerator(response.getOutputStream());
+    }
+
     /**
      * Escribe un JSON con status 200 OK.
      * No retorna valor; escribe directamente en la respuesta.
@@ -63,7 +87,11 @@ public final class ResponseUtil {
      * No retorna valor; escribe directamente en la respuesta.
      *
      * Se construye un JsonObject con ok=false y el mensaje y
-     * lo envia con el status recibido.
+     * lo envia con el status recibido. Si una respuesta en streaming ya envio
+     * bytes al cliente no se puede cambiar el status; en ese caso no se escribe
+     * nada y el JSON truncado indica el fallo. Si solo hay bytes en buffer se
+     * descartan antes de escribir el error. El mensaje se registra en
+     * {@link Metricas} para el request en curso.
      *
      *
      * @param response response HTTP destino.
@@ -72,6 +100,11 @@ public final class ResponseUtil {
      * @throws IOException si falla la escritura del body.
      */
     public static void writeError(HttpServletResponse response, int status, String mensaje) throws IOException {
+        Metricas.error(mensaje);
+        if (response.isCommitted()) {
+            return;
+        }
+        response.resetBuffer();
         JsonObject body = Json.createObjectBuilder()
                 .add("ok", false)
                 .add("mensaje", mensaje == null ? "" : mensaje)
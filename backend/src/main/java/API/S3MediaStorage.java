@@ -0,0 +1,407 @@
+package API;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Almacenamiento multimedia en un almacen de objetos compatible con S3.
+ *
+ * Usa la API REST con firma AWS Signature V4 (sin SDK) y direccionamiento por
+ * ruta (endpoint/bucket/clave), compatible con AWS S3 y con MinIO como
+ * sustituto local. Todos los nodos web ven los mismos objetos, por lo que no
+ * hace falta fijar sesiones a un nodo para servir archivos.
+ *
+ * El cuerpo de PUT se envia en streaming con UNSIGNED-PAYLOAD (no se lee el
+ * archivo dos veces para firmarlo); las lecturas usan Range y los listados
+ * ListObjectsV2 paginado (S3 devuelve las claves en orden binario UTF-8).
+ *
+ */
+public class S3MediaStorage implements MediaStorage {
+    private static final String ALGORITMO = "AWS4-HMAC-SHA256";
+    private static final String SIN_FIRMA = "UNSIGNED-PAYLOAD";
+    private static final int TIMEOUT_CONEXION_MS = 5000;
+    private static final int TIMEOUT_LECTURA_MS = 60000;
+    private static final int LISTADO_MAX_CLAVES = 1000;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String endpoint;
+    private final String bucket;
+    private final String region;
+    private final String access_key;
+    private final String secret_key;
+    private final File temporales;
+
+    /**
+     * @param endpoint URL base (p. ej. https://s3.us-east-1.amazonaws.com o http://localhost:9000).
+     * @param bucket nombre del bucket.
+     * @param region region de firma (us-east-1 para MinIO).
+     * @param access_key access key id.
+     * @param secret_key secret access key.
+     * @param temporales carpeta local para temporales.
+     */
+    public S3MediaStorage(String endpoint, String bucket, String region, String access_key, String secret_key,
+            File temporales) {
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.bucket = bucket;
+        this.region = region;
+        this.access_key = access_key;
+        this.secret_key = secret_key;
+        this.temporales = temporales;
+    }
+
+    @Override
+    public Info info(String clave) throws IOException {
+        HttpURLConnection con = abrirConexion("HEAD", clave, null, null);
+        try {
+            int status = con.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("s3_head_" + status);
+            }
+            return new Info(con.getContentLengthLong(), con.getLastModified());
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    @Override
+    public void guardar(String clave, File origen) throws IOException {
+        HttpURLConnection con = abrirConexion("PUT", clave, null, null);
+        con.setDoOutput(true);
+        con.setFixedLengthStreamingMode(origen.length());
+        try (InputStream in = new FileInputStream(origen);
+             OutputStream out = con.getOutputStream()) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        int status = con.getResponseCode();
+        drenar(con);
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("s3_put_" + status);
+        }
+    }
+
+    @Override
+    public InputStream abrir(String clave, long inicio, long fin) throws IOException {
+        String rango = inicio == 0 && fin < 0 ? null : "bytes=" + inicio + "-" + (fin < 0 ? "" : String.valueOf(fin));
+        HttpURLConnection con = abrirConexion("GET", clave, null, rango);
+        int status = con.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) {
+            drenar(con);
+            throw new IOException("s3_get_" + status);
+        }
+        // Cerrar el stream devuelve la conexion al pool keep-alive de HttpURLConnection.
+        return con.getInputStream();
+    }
+
+    @Override
+    public boolean borrar(String clave) throws IOException {
+        HttpURLConnection con = abrirConexion("DELETE", clave, null, null);
+        int status = con.getResponseCode();
+        drenar(con);
+        if (status != HttpURLConnection.HTTP_NO_CONTENT && status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("s3_delete_" + status);
+        }
+        return true;
+    }
+
+    @Override
+    public Listado listar(final String prefijo) {
+        return new Listado() {
+            private final Deque<Entrada> pagina = new ArrayDeque<>();
+            private String continuacion;
+            private boolean fin;
+
+            @Override
+            public Entrada siguiente() throws IOException {
+                while (pagina.isEmpty() && !fin) {
+                    continuacion = leerPagina(prefijo, continuacion, pagina);
+                    fin = continuacion == null;
+                }
+                return pagina.poll();
+            }
+
+            @Override
+            public void close() {
+                pagina.clear();
+                fin = true;
+            }
+        };
+    }
+
+    @Override
+    public File archivoLocal(String clave) {
+        return null;
+    }
+
+    @Override
+    public File temporales() {
+        return temporales;
+    }
+
+    /**
+     * Crea una conexion firmada para una operacion sobre la clave.
+     *
+     * @param metodo metodo HTTP.
+     * @param clave clave del objeto (null para operar sobre el bucket).
+     * @param query parametros de query (pueden ser null).
+     * @param rango cabecera Range (puede ser null).
+     * @return conexion lista para enviar.
+     * @throws IOException si falla la apertura o la firma.
+     */
+    HttpURLConnection abrirConexion(String metodo, String clave, Map<String, String> query, String rango)
+            throws IOException {
+        String ruta = "/" + codificar(bucket, false) + (clave == null ? "/" : "/" + codificar(clave, true));
+        StringBuilder canonicalQuery = new StringBuilder();
+        if (query != null) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(query).entrySet()) {
+                if (canonicalQuery.length() > 0) {
+                    canonicalQuery.append('&');
+                }
+                canonicalQuery.append(codificar(entry.getKey(), false)).append('=')
+                        .append(codificar(entry.getValue(), false));
+            }
+        }
+        URL url = new URL(endpoint + ruta + (canonicalQuery.length() > 0 ? "?" + canonicalQuery : ""));
+        String host = url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + url.getPort();
+
+        Date ahora = new Date();
+        String fecha_amz = formato("yyyyMMdd'T'HHmmss'Z'", ahora);
+        String dia = formato("yyyyMMdd", ahora);
+        String alcance = dia + "/" + region + "/s3/aws4_request";
+
+        String cabeceras = "host:" + host + "\n" + "x-amz-content-sha256:" + SIN_FIRMA + "\n"
+                + "x-amz-date:" + fecha_amz + "\n";
+        String firmadas = "host;x-amz-content-sha256;x-amz-date";
+        String canonica = metodo + "\n" + ruta + "\n" + canonicalQuery + "\n" + cabeceras + "\n" + firmadas + "\n"
+                + SIN_FIRMA;
+        String aFirmar = ALGORITMO + "\n" + fecha_amz + "\n" + alcance + "\n" + hex(sha256(canonica));
+
+        String firma;
+        try {
+            byte[] clave_firma = hmac(("AWS4" + secret_key).getBytes(StandardCharsets.UTF_8), dia);
+            clave_firma = hmac(clave_firma, region);
+            clave_firma = hmac(clave_firma, "s3");
+            clave_firma = hmac(clave_firma, "aws4_request");
+            firma = hex(hmac(clave_firma, aFirmar));
+        } catch (GeneralSecurityException ex) {
+            throw new IOException(ex);
+        }
+
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod(metodo);
+        con.setConnectTimeout(TIMEOUT_CONEXION_MS);
+        con.setReadTimeout(TIMEOUT_LECTURA_MS);
+        con.setRequestProperty("x-amz-date", fecha_amz);
+        con.setRequestProperty("x-amz-content-sha256", SIN_FIRMA);
+        con.setRequestProperty("Authorization", ALGORITMO + " Credential=" + access_key + "/" + alcance
+                + ", SignedHeaders=" + firmadas + ", Signature=" + firma);
+        if (rango != null) {
+            con.setRequestProperty("Range", rango);
+        }
+        return con;
+    }
+
+    /**
+     * Pide una pagina de ListObjectsV2 y agrega sus objetos a la cola.
+     *
+     * @param prefijo prefijo de clave.
+     * @param continuacion token de la pagina anterior (null para la primera).
+     * @param destino cola donde se agregan los objetos.
+     * @return token de la siguiente pagina o null si era la ultima.
+     * @throws IOException si falla la peticion o el XML.
+     */
+    private String leerPagina(String prefijo, String continuacion, Deque<Entrada> destino) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        query.put("list-type", "2");
+        query.put("prefix", prefijo);
+        query.put("max-keys", String.valueOf(LISTADO_MAX_CLAVES));
+        if (continuacion != null) {
+            query.put("continuation-token", continuacion);
+        }
+        HttpURLConnection con = abrirConexion("GET", null, query, null);
+        int status = con.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            drenar(con);
+            throw new IOException("s3_list_" + status);
+        }
+        String siguiente = null;
+        boolean truncado = false;
+        try (InputStream in = con.getInputStream()) {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in, "UTF-8");
+            String clave = null;
+            long tamano = 0;
+            long modificado = 0;
+            while (xml.hasNext()) {
+                int evento = xml.next();
+                if (evento == XMLStreamConstants.END_ELEMENT && "Contents".equals(xml.getLocalName())) {
+                    if (clave != null) {
+                        destino.add(new Entrada(clave, new Info(tamano, modificado)));
+                    }
+                    continue;
+                }
+                if (evento != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String nombre = xml.getLocalName();
+                if ("Contents".equals(nombre)) {
+                    clave = null;
+                    tamano = 0;
+                    modificado = 0;
+                } else if ("Key".equals(nombre)) {
+                    clave = xml.getElementText();
+                } else if ("Size".equals(nombre)) {
+                    tamano = Long.parseLong(xml.getElementText().trim());
+                } else if ("LastModified".equals(nombre)) {
+                    modificado = parseFecha(xml.getElementText().trim());
+                } else if ("IsTruncated".equals(nombre)) {
+                    truncado = "true".equals(xml.getElementText().trim());
+                } else if ("NextContinuationToken".equals(nombre)) {
+                    siguiente = xml.getElementText();
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException | NumberFormatException ex) {
+            throw new IOException("s3_list_xml", ex);
+        }
+        return truncado ? siguiente : null;
+    }
+
+    /**
+     * @param fecha fecha ISO-8601 de S3 (2024-01-31T12:00:00.000Z).
+     * @return milisegundos.
+     * @throws IOException si el formato no es valido.
+     */
+    private static long parseFecha(String fecha) throws IOException {
+        SimpleDateFormat formato = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        formato.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            // Las fracciones de segundo no hacen falta para el periodo de gracia.
+            return formato.parse(fecha.length() > 19 ? fecha.substring(0, 19) : fecha).getTime();
+        } catch (ParseException ex) {
+            throw new IOException("s3_fecha_invalida", ex);
+        }
+    }
+
+    /**
+     * Lee y descarta el cuerpo de respuesta para reutilizar la conexion.
+     *
+     * @param con conexion con respuesta recibida.
+     */
+    static void drenar(HttpURLConnection con) {
+        try {
+            InputStream in = con.getResponseCode() >= 400 ? con.getErrorStream() : con.getInputStream();
+            if (in != null) {
+                try {
+                    byte[] buffer = new byte[4096];
+                    while (in.read(buffer) != -1) {
+                        // descartar
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (IOException ex) {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * Codifica segun RFC 3986 como exige SigV4.
+     *
+     * @param valor texto.
+     * @param conservarBarras true para no codificar '/' (rutas).
+     * @return texto codificado.
+     */
+    private static String codificar(String valor, boolean conservarBarras) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : valor.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && conservarBarras)) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(Character.toUpperCase(HEX[(b >> 4) & 0xF]))
+                        .append(Character.toUpperCase(HEX[b & 0xF]));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param patron patron de SimpleDateFormat.
+     * @param fecha fecha a formatear.
+     * @return fecha en UTC.
+     */
+    private static String formato(String patron, Date fecha) {
+        SimpleDateFormat formato = new SimpleDateFormat(patron);
+        formato.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return formato.format(fecha);
+    }
+
+    /**
+     * @param clave clave HMAC.
+     * @param datos texto a firmar.
+     * @return HMAC-SHA256.
+     * @throws GeneralSecurityException si el algoritmo no esta disponible.
+     */
+    private static byte[] hmac(byte[] clave, String datos) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(clave, "HmacSHA256"));
+        return mac.doFinal(datos.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param datos texto.
+     * @return SHA-256 del texto en UTF-8.
+     * @throws IOException si el algoritmo no esta disponible.
+     */
+    private static byte[] sha256(String datos) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(datos.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * @param bytes bytes.
+     * @return hexadecimal en minusculas.
+     */
+    private static String hex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,135 @@
+package API;
+
+import java.io.IOException;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de solo lectura con las estadisticas de SQL de {@link SqlMetricas}.
+ *
+ * Permite a administradores ver que formas de consulta (y desde que servlet)
+ * consumen mas tiempo, y las ultimas consultas lentas, sin acceso al log.
+ *
+ */
+@WebServlet(name = "SqlEstadisticasServlet", urlPatterns = {"/api/sql-estadisticas"})
+public class SqlEstadisticasServlet extends HttpServlet {
+    private static final int MAX_LIMIT = 200;
+
+    /**
+     * Devuelve el top de formas de SQL y las ultimas lentas.
+     * No retorna valor; responde 403 si el usuario no es admin.
+     *
+     * Parametros opcionales: orden (total, max, conteo, filas; por defecto
+     * total) y limit (por defecto SQL_TOP_N, maximo 200).
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAdmin(AuthService.getRoleId(request))) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+        String orden = request.getParameter("orden");
+        if (orden == null || !orden.matches("total|max|conteo|filas")) {
+            orden = "total";
+        }
+        Integer limit = parseInt(request.getParameter("limit"));
+        int limite = limit == null || limit.intValue() <= 0 ? SqlMetricas.TOP_N : Math.min(limit.intValue(), MAX_LIMIT);
+
+        JsonArrayBuilder top = Json.createArrayBuilder();
+        for (SqlMetricas.Agregado agregado : SqlMetricas.top(orden, limite)) {
+            long conteo = agregado.getConteo();
+            top.add(Json.createObjectBuilder()
+                    .add("servlet", agregado.servlet)
+                    .add("sql", agregado.forma)
+                    .add("conteo", conteo)
+                    .add("errores", agregado.getErrores())
+                    .add("lentas", agregado.getLentas())
+                    .add("filas", agregado.getFilas())
+                    .add("total_ms", agregado.getTotalNanos() / 1000000L)
+                    .add("promedio_ms", conteo == 0 ? 0 : agregado.getTotalNanos() / 1e6 / conteo)
+                    .add("max_ms", agregado.getMaxNanos() / 1e6)
+                    .add("prepare_ms", agregado.getPrepareNanos() / 1000000L)
+                    .add("ejecucion_ms", agregado.getEjecucionNanos() / 1000000L)
+                    .add("lectura_ms", agregado.getLecturaNanos() / 1000000L));
+        }
+        JsonArrayBuilder lentas = Json.createArrayBuilder();
+        for (SqlMetricas.Lenta lenta : SqlMetricas.lentas()) {
+            lentas.add(Json.createObjectBuilder()
+                    .add("fecha", lenta.fecha)
+                    .add("servlet", lenta.servlet)
+                    .add("sql", lenta.forma)
+                    .add("total_ms", lenta.total_ms)
+                    .add("prepare_ms", lenta.prepare_ms)
+                    .add("ejecucion_ms", lenta.ejecucion_ms)
+                    .add("lectura_ms", lenta.lectura_ms)
+                    .add("filas", lenta.filas));
+        }
+        ResponseUtil.writeOk(response, Json.createObjectBuilder()
+                .add("ok", true)
+                .add("activo", SqlMetricas.ACTIVO)
+                .add("umbral_lenta_ms", SqlMetricas.LENTA_MS)
+                .add("orden", orden)
+                .add("top", top)
+                .add("lentas", lentas)
+                .build());
+    }
+
+    /**
+     * Reinicia los contadores (p. ej. antes de una prueba de carga).
+     * No retorna valor; responde 403 si el usuario no es admin.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAdmin(AuthService.getRoleId(request))) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+        SqlMetricas.reiniciar();
+        ResponseUtil.writeOk(response, Json.createObjectBuilder().add("ok", true).build());
+    }
+
+    /**
+     * Parsea un entero desde query string.
+     *
+     * @param value texto recibido.
+     * @return Integer o null si no es valido.
+     */
+    private Integer parseInt(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
@@ -0,0 +1,647 @@
+package API;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.regex.Pattern;
+
+/**
+ * Instrumentacion de JDBC: tiempos por sentencia y log de consultas lentas.
+ *
+ * {@link DB#getConnection()} entrega la conexion envuelta en un proxy cuyas
+ * sentencias miden por separado prepare, ejecucion y lectura de filas
+ * (tiempo dentro de ResultSet.next(), que con streaming incluye la red), y
+ * cuentan filas leidas o afectadas. Cada ejecucion se agrega por forma del
+ * SQL (literales y listas IN normalizadas) y servlet que la origino (el del
+ * request en curso segun {@link Metricas}, o el nombre del hilo de fondo), con
+ * contadores sin locks.
+ *
+ * Las ejecuciones que superan SQL_LENTA_MS se escriben en el logger
+ * API.SqlMetricas.lentas (y en SQL_LENTA_ARCHIVO si se configura) y quedan
+ * las ultimas en memoria para /api/sql-estadisticas. Los parametros no se
+ * registran. Con SQL_METRICAS=false las conexiones se entregan sin envolver.
+ *
+ */
+public final class SqlMetricas {
+    public static final boolean ACTIVO = !"false".equalsIgnoreCase(DB.getValue("SQL_METRICAS", "sql.metricas",
+            "true"));
+    public static final long LENTA_MS = DB.getLongValue("SQL_LENTA_MS", "sql.lenta_ms", 500);
+    public static final int TOP_N = (int) DB.getLongValue("SQL_TOP_N", "sql.top_n", 20);
+
+    private static final int MAX_AGREGADOS = 2000;
+    private static final int MAX_CACHE_FORMAS = 2000;
+    private static final int MAX_LENTAS = 50;
+    private static final int MAX_LARGO_FORMA = 1000;
+    private static final String OTRAS = "(otras)";
+    private static final Pattern LISTA_IN = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern SUFIJO_HILO = Pattern.compile("-\\d+$");
+    private static final Logger LOG_LENTAS = Logger.getLogger("API.SqlMetricas.lentas");
+
+    private static final ConcurrentMap<String, Agregado> AGREGADOS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> FORMAS = new ConcurrentHashMap<>();
+    private static final ConcurrentLinkedDeque<Lenta> LENTAS = new ConcurrentLinkedDeque<>();
+    private static final AtomicInteger LENTAS_SIZE = new AtomicInteger();
+
+    static {
+        String archivo = DB.getValue("SQL_LENTA_ARCHIVO", "sql.lenta_archivo", null);
+        if (archivo != null) {
+            try {
+                FileHandler handler = new FileHandler(archivo, 10 * 1024 * 1024, 5, true);
+                handler.setFormatter(new SimpleFormatter());
+                LOG_LENTAS.addHandler(handler);
+            } catch (IOException ex) {
+                LOG_LENTAS.log(Level.WARNING, "No se pudo abrir el log de consultas lentas " + archivo, ex);
+            }
+        }
+    }
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private SqlMetricas() {
+    }
+
+    /**
+     * Totales de una forma de SQL para un servlet.
+     */
+    public static final class Agregado {
+        public final String forma;
+        public final String servlet;
+        final AtomicLong conteo = new AtomicLong();
+        final AtomicLong errores = new AtomicLong();
+        final AtomicLong lentas = new AtomicLong();
+        final AtomicLong filas = new AtomicLong();
+        final AtomicLong total_nanos = new AtomicLong();
+        final AtomicLong max_nanos = new AtomicLong();
+        final AtomicLong prepare_nanos = new AtomicLong();
+        final AtomicLong ejecucion_nanos = new AtomicLong();
+        final AtomicLong lectura_nanos = new AtomicLong();
+
+        Agregado(String forma, String servlet) {
+            this.forma = forma;
+            this.servlet = servlet;
+        }
+
+        public long getConteo() {
+            return conteo.get();
+        }
+
+        public long getErrores() {
+            return errores.get();
+        }
+
+        public long getLentas() {
+            return lentas.get();
+        }
+
+        public long getFilas() {
+            return filas.get();
+        }
+
+        public long getTotalNanos() {
+            return total_nanos.get();
+        }
+
+        public long getMaxNanos() {
+            return max_nanos.get();
+        }
+
+        public long getPrepareNanos() {
+            return prepare_nanos.get();
+        }
+
+        public long getEjecucionNanos() {
+            return ejecucion_nanos.get();
+        }
+
+        public long getLecturaNanos() {
+            return lectura_nanos.get();
+        }
+    }
+
+    /**
+     * Ejecucion que supero el umbral de lentitud.
+     */
+    public static final class Lenta {
+        public final long fecha;
+        public final String servlet;
+        public final String forma;
+        public final long total_ms;
+        public final long prepare_ms;
+        public final long ejecucion_ms;
+        public final long lectura_ms;
+        public final long filas;
+
+        Lenta(long fecha, String servlet, String forma, long total_ms, long prepare_ms, long ejecucion_ms,
+                long lectura_ms, long filas) {
+            this.fecha = fecha;
+            this.servlet = servlet;
+            this.forma = forma;
+            this.total_ms = total_ms;
+            this.prepare_ms = prepare_ms;
+            this.ejecucion_ms = ejecucion_ms;
+            this.lectura_ms = lectura_ms;
+            this.filas = filas;
+        }
+    }
+
+    /**
+     * Medicion de una ejecucion; se registra una sola vez al terminar de
+     * leer (ResultSet agotado o cerrado, nueva ejecucion o cierre de la sentencia).
+     */
+    private static final class Ejecucion {
+        final String sql;
+        final long prepare_nanos;
+        long ejecucion_nanos;
+        long lectura_nanos;
+        long filas;
+        boolean error;
+        boolean registrada;
+
+        Ejecucion(String sql, long prepare_nanos) {
+            this.sql = sql;
+            this.prepare_nanos = prepare_nanos;
+        }
+
+        void registrar() {
+            if (!registrada) {
+                registrada = true;
+                SqlMetricas.registrar(this);
+            }
+        }
+    }
+
+    /**
+     * Envuelve una conexion para instrumentar sus sentencias.
+     *
+     * @param con conexion (del pool o vista del request).
+     * @return conexion instrumentada, o la misma si la instrumentacion esta apagada.
+     */
+    static Connection envolver(final Connection con) {
+        if (!ACTIVO) {
+            return con;
+        }
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                }
+                boolean preparada = "prepareStatement".equals(name) || "prepareCall".equals(name);
+                if (!preparada && !"createStatement".equals(name)) {
+                    return delegar(con, method, args);
+                }
+                long inicio = System.nanoTime();
+                Statement statement = (Statement) delegar(con, method, args);
+                long prepare_nanos = System.nanoTime() - inicio;
+                return sentencia(statement, method.getReturnType(), preparada ? (String) args[0] : null,
+                        prepare_nanos);
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                SqlMetricas.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    /**
+     * Envuelve una sentencia para medir sus ejecuciones.
+     *
+     * @param statement sentencia real.
+     * @param tipo interfaz a exponer (Statement, PreparedStatement o CallableStatement).
+     * @param sql SQL preparado (null para Statement simple).
+     * @param prepare_nanos tiempo de prepare, se suma a la primera ejecucion.
+     * @return proxy de la sentencia.
+     */
+    private static Object sentencia(final Statement statement, Class<?> tipo, final String sql,
+            final long prepare_nanos) {
+        InvocationHandler handler = new InvocationHandler() {
+            private long prepare_pendiente = prepare_nanos;
+            private String sql_lote;
+            private Ejecucion actual;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                switch (name) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "close":
+                        cerrarActual();
+                        return delegar(statement, method, args);
+                    case "addBatch":
+                        if (args != null && args.length == 1 && sql_lote == null) {
+                            sql_lote = (String) args[0];
+                        }
+                        return delegar(statement, method, args);
+                    case "getResultSet":
+                        ResultSet rs = (ResultSet) delegar(statement, method, args);
+                        return rs == null || actual == null || actual.registrada ? rs : resultado(rs, actual);
+                    case "executeQuery":
+                    case "executeUpdate":
+                    case "executeLargeUpdate":
+                    case "execute":
+                    case "executeBatch":
+                    case "executeLargeBatch":
+                        return ejecutar(name, method, args);
+                    default:
+                        return delegar(statement, method, args);
+                }
+            }
+
+            private Object ejecutar(String name, Method method, Object[] args) throws Throwable {
+                cerrarActual();
+                String texto = sql;
+                if (texto == null) {
+                    texto = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql_lote;
+                }
+                Ejecucion ejecucion = new Ejecucion(texto == null ? "(lote)" : texto, prepare_pendiente);
+                prepare_pendiente = 0;
+                long inicio = System.nanoTime();
+                Object resultado;
+                try {
+                    resultado = delegar(statement, method, args);
+                } catch (Throwable ex) {
+                    ejecucion.ejecucion_nanos = System.nanoTime() - inicio;
+                    ejecucion.error = true;
+                    ejecucion.registrar();
+                    throw ex;
+                }
+                ejecucion.ejecucion_nanos = System.nanoTime() - inicio;
+                if (name.endsWith("Batch")) {
+                    sql_lote = null;
+                    ejecucion.filas = sumarLote(resultado);
+                    ejecucion.registrar();
+                    return resultado;
+                }
+                if (resultado instanceof ResultSet) {
+                    actual = ejecucion;
+                    return resultado(((ResultSet) resultado), ejecucion);
+                }
+                if (resultado instanceof Number) {
+                    ejecucion.filas = ((Number) resultado).longValue();
+                    ejecucion.registrar();
+                    return resultado;
+                }
+                // execute(): si hay ResultSet se lee con getResultSet.
+                if (Boolean.TRUE.equals(resultado)) {
+                    actual = ejecucion;
+                } else {
+                    ejecucion.filas = Math.max(0, statement.getUpdateCount());
+                    ejecucion.registrar();
+                }
+                return resultado;
+            }
+
+            private void cerrarActual() {
+                if (actual != null) {
+                    actual.registrar();
+                    actual = null;
+                }
+            }
+        };
+        return Proxy.newProxyInstance(SqlMetricas.class.getClassLoader(), new Class<?>[]{tipo}, handler);
+    }
+
+    /**
+     * Envuelve un ResultSet para contar filas y medir el tiempo de next().
+     *
+     * @param rs ResultSet real.
+     * @param ejecucion ejecucion a la que se atribuye la lectura.
+     * @return proxy del ResultSet.
+     */
+    private static ResultSet resultado(final ResultSet rs, final Ejecucion ejecucion) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("next".equals(name)) {
+                    long inicio = System.nanoTime();
+                    boolean hay;
+                    try {
+                        hay = rs.next();
+                    } finally {
+                        ejecucion.lectura_nanos += System.nanoTime() - inicio;
+                    }
+                    if (hay) {
+                        ejecucion.filas++;
+                    } else {
+                        ejecucion.registrar();
+                    }
+                    return hay;
+                }
+                if ("close".equals(name)) {
+                    ejecucion.registrar();
+                    return delegar(rs, method, args);
+                }
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                }
+                return delegar(rs, method, args);
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(
+                SqlMetricas.class.getClassLoader(), new Class<?>[]{ResultSet.class}, handler);
+    }
+
+    /**
+     * Agrega una ejecucion terminada y la escribe en el log si fue lenta.
+     *
+     * @param ejecucion ejecucion terminada.
+     */
+    private static void registrar(Ejecucion ejecucion) {
+        long total = ejecucion.prepare_nanos + ejecucion.ejecucion_nanos + ejecucion.lectura_nanos;
+        String servlet = origen();
+        String forma = forma(ejecucion.sql);
+        Agregado agregado = agregado(forma, servlet);
+        agregado.conteo.incrementAndGet();
+        agregado.filas.addAndGet(ejecucion.filas);
+        agregado.total_nanos.addAndGet(total);
+        agregado.prepare_nanos.addAndGet(ejecucion.prepare_nanos);
+        agregado.ejecucion_nanos.addAndGet(ejecucion.ejecucion_nanos);
+        agregado.lectura_nanos.addAndGet(ejecucion.lectura_nanos);
+        long max;
+        while (total > (max = agregado.max_nanos.get())) {
+            if (agregado.max_nanos.compareAndSet(max, total)) {
+                break;
+            }
+        }
+        if (ejecucion.error) {
+            agregado.errores.incrementAndGet();
+        }
+        if (LENTA_MS > 0 && total >= LENTA_MS * 1000000L) {
+            agregado.lentas.incrementAndGet();
+            Lenta lenta = new Lenta(System.currentTimeMillis(), servlet, forma, total / 1000000L,
+                    ejecucion.prepare_nanos / 1000000L, ejecucion.ejecucion_nanos / 1000000L,
+                    ejecucion.lectura_nanos / 1000000L, ejecucion.filas);
+            LENTAS.addFirst(lenta);
+            if (LENTAS_SIZE.incrementAndGet() > MAX_LENTAS && LENTAS.pollLast() != null) {
+                LENTAS_SIZE.decrementAndGet();
+            }
+            LOG_LENTAS.warning("SQL lenta " + lenta.total_ms + " ms (prepare " + lenta.prepare_ms + ", ejecucion "
+                    + lenta.ejecucion_ms + ", lectura " + lenta.lectura_ms + ") filas=" + lenta.filas
+                    + (ejecucion.error ? " error" : "") + " servlet=" + servlet + " sql=" + forma);
+        }
+    }
+
+    /**
+     * @param forma forma normalizada.
+     * @param servlet origen.
+     * @return agregado existente o nuevo (o el de "otras" si se supero el tope).
+     */
+    private static Agregado agregado(String forma, String servlet) {
+        String clave = servlet + '\u0000' + forma;
+        Agregado agregado = AGREGADOS.get(clave);
+        if (agregado != null) {
+            return agregado;
+        }
+        if (AGREGADOS.size() >= MAX_AGREGADOS) {
+            forma = OTRAS;
+            clave = servlet + '\u0000' + OTRAS;
+        }
+        Agregado nuevo = new Agregado(forma, servlet);
+        agregado = AGREGADOS.putIfAbsent(clave, nuevo);
+        return agregado != null ? agregado : nuevo;
+    }
+
+    /**
+     * @return servlet del request en curso o "hilo:&lt;nombre&gt;" fuera de un request (trabajos de fondo).
+     */
+    private static String origen() {
+        String servlet = Metricas.servletActual();
+        if (servlet != null) {
+            return servlet;
+        }
+        return "hilo:" + SUFIJO_HILO.matcher(Thread.currentThread().getName()).replaceFirst("");
+    }
+
+    /**
+     * Normaliza un SQL: literales a ?, listas IN a (?...) y espacios simples.
+     * El resultado se cachea porque casi todo el SQL son constantes.
+     *
+     * @param sql texto original.
+     * @return forma normalizada.
+     */
+    static String forma(String sql) {
+        String forma = FORMAS.get(sql);
+        if (forma != null) {
+            return forma;
+        }
+        StringBuilder sb = new StringBuilder(sql.length());
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                // Literal de texto (con escapes '' o \).
+                i++;
+                while (i < n) {
+                    char d = sql.charAt(i);
+                    if (d == '\\') {
+                        i += 2;
+                        continue;
+                    }
+                    if (d == c) {
+                        if (i + 1 < n && sql.charAt(i + 1) == c) {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                sb.append('?');
+            } else if (Character.isDigit(c) && !parteDeIdentificador(sb)) {
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        forma = LISTA_IN.matcher(sb.toString().trim()).replaceAll("(?...)");
+        if (forma.length() > MAX_LARGO_FORMA) {
+            forma = forma.substring(0, MAX_LARGO_FORMA) + "...";
+        }
+        if (FORMAS.size() < MAX_CACHE_FORMAS) {
+            FORMAS.putIfAbsent(sql, forma);
+        }
+        return forma;
+    }
+
+    /**
+     * @param sb forma en construccion.
+     * @return true si el ultimo caracter continua un identificador (t1, w48).
+     */
+    private static boolean parteDeIdentificador(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char c = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '`';
+    }
+
+    /**
+     * Devuelve los agregados ordenados de mayor a menor por el criterio.
+     *
+     * @param orden total, max, conteo o filas.
+     * @param limite cantidad maxima.
+     * @return lista ordenada (copia).
+     */
+    public static List<Agregado> top(final String orden, int limite) {
+        List<Agregado> lista = new ArrayList<>(AGREGADOS.values());
+        Collections.sort(lista, new Comparator<Agregado>() {
+            @Override
+            public int compare(Agregado a, Agregado b) {
+                return Long.compare(valor(b), valor(a));
+            }
+
+            private long valor(Agregado agregado) {
+                if ("max".equals(orden)) {
+                    return agregado.getMaxNanos();
+                }
+                if ("conteo".equals(orden)) {
+                    return agregado.getConteo();
+                }
+                if ("filas".equals(orden)) {
+                    return agregado.getFilas();
+                }
+                return agregado.getTotalNanos();
+            }
+        });
+        return lista.size() > limite ? new ArrayList<>(lista.subList(0, limite)) : lista;
+    }
+
+    /**
+     * @return ultimas ejecuciones lentas, la mas reciente primero.
+     */
+    public static List<Lenta> lentas() {
+        List<Lenta> lista = new ArrayList<>();
+        Iterator<Lenta> it = LENTAS.iterator();
+        while (it.hasNext() && lista.size() < MAX_LENTAS) {
+            lista.add(it.next());
+        }
+        return lista;
+    }
+
+    /**
+     * Borra agregados y lentas (p. ej. antes de una prueba de carga).
+     */
+    public static void reiniciar() {
+        AGREGADOS.clear();
+        LENTAS.clear();
+        LENTAS_SIZE.set(0);
+    }
+
+    /**
+     * Escribe totales por servlet en formato de texto de Prometheus.
+     *
+     * @param out destino.
+     */
+    static void exportar(StringBuilder out) {
+        Map<String, long[]> porServlet = new TreeMap<>();
+        for (Agregado agregado : AGREGADOS.values()) {
+            long[] totales = porServlet.get(agregado.servlet);
+            if (totales == null) {
+                totales = new long[4];
+                porServlet.put(agregado.servlet, totales);
+            }
+            totales[0] += agregado.getConteo();
+            totales[1] += agregado.getTotalNanos();
+            totales[2] += agregado.getFilas();
+            totales[3] += agregado.getLentas();
+        }
+        String[] nombres = {"casos_sql_sentencias_total", "casos_sql_duracion_segundos_total",
+                "casos_sql_filas_total", "casos_sql_lentas_total"};
+        String[] ayudas = {"Sentencias ejecutadas por servlet de origen.",
+                "Tiempo en prepare, ejecucion y lectura de filas.", "Filas leidas o afectadas.",
+                "Sentencias por encima de SQL_LENTA_MS."};
+        for (int i = 0; i < nombres.length; i++) {
+            out.append("# HELP ").append(nombres[i]).append(' ').append(ayudas[i]).append('\n');
+            out.append("# TYPE ").append(nombres[i]).append(" counter\n");
+            for (Map.Entry<String, long[]> entry : porServlet.entrySet()) {
+                out.append(nombres[i]).append("{servlet=\"")
+                        .append(entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\"} ");
+                if (i == 1) {
+                    out.append(entry.getValue()[i] / 1e9);
+                } else {
+                    out.append(entry.getValue()[i]);
+                }
+                out.append('\n');
+            }
+        }
+    }
+
+    /**
+     * @param resultado int[] o long[] de executeBatch.
+     * @return suma de filas afectadas conocidas.
+     */
+    private static long sumarLote(Object resultado) {
+        long filas = 0;
+        if (resultado instanceof int[]) {
+            for (int v : (int[]) resultado) {
+                filas += Math.max(0, v);
+            }
+        } else if (resultado instanceof long[]) {
+            for (long v : (long[]) resultado) {
+                filas += Math.max(0, v);
+            }
+        }
+        return filas;
+    }
+
+    /**
+     * Invoca el metodo en el objeto real propagando la excepcion original.
+     *
+     * @param destino objeto real.
+     * @param method metodo.
+     * @param args argumentos.
+     * @return resultado.
+     * @throws Throwable excepcion del metodo.
+     */
+    private static Object delegar(Object destino, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(destino, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
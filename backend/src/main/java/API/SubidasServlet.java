@@ -0,0 +1,816 @@
+package API;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet de subidas reanudables por fragmentos para archivos grandes.
+ *
+ * Protocolo:
+ *
+ * - POST /api/archivos/subidas crea la sesion (tipo, nombre y tamanio declarado).
+ * - PUT /api/archivos/subidas?id_subida=&offset= escribe un fragmento (body binario)
+ *   en su posicion; los fragmentos pueden enviarse en paralelo y reintentarse.
+ * - GET /api/archivos/subidas?id_subida= devuelve los rangos recibidos para reanudar.
+ * - POST /api/archivos/subidas/finalizar verifica que el archivo este completo,
+ *   lo mueve a /uploads y crea el registro en archivos_multimedia.
+ * - DELETE /api/archivos/subidas?id_subida= cancela y borra lo recibido.
+ *
+ * El archivo parcial vive en WEB-INF/subidas (no se sirve como estatico) y se
+ * ensambla en su lugar: cada fragmento se escribe en su offset. Al finalizar
+ * se copia a un temporal propio calculando el SHA-256 en la misma pasada y
+ * se guarda esa copia deduplicada (ver {@link ArchivosService}): un PUT que
+ * siga escribiendo en el parcial no puede alterar el contenido guardado.
+ *
+ */
+@WebServlet(name = "SubidasServlet", urlPatterns = {"/api/archivos/subidas", "/api/archivos/subidas/finalizar"})
+public class SubidasServlet extends HttpServlet {
+    public static final long MAX_BYTES = DB.getLongValue("UPLOAD_MAX_BYTES", "upload.max_bytes", 2147483648L);
+    public static final long FRAGMENTO_MAX_BYTES = DB.getLongValue(
+            "UPLOAD_CHUNK_MAX_BYTES", "upload.chunk_max_bytes", 67108864L);
+    public static final long TTL_MS = DB.getLongValue("UPLOAD_TTL_MS", "upload.ttl_ms", 86400000L);
+    // Cada sesion reserva en disco su tamano declarado: se acotan las abiertas por usuario y en total.
+    public static final int MAX_SESIONES_USUARIO = (int) DB.getLongValue(
+            "UPLOAD_MAX_SESIONES", "upload.max_sesiones", 10);
+    public static final long MAX_BYTES_USUARIO = DB.getLongValue(
+            "UPLOAD_MAX_BYTES_USUARIO", "upload.max_bytes_usuario", 4294967296L);
+    public static final long MAX_BYTES_TOTAL = DB.getLongValue(
+            "UPLOAD_MAX_BYTES_TOTAL", "upload.max_bytes_total", 21474836480L);
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final int BUFFER_BYTES = 65536;
+
+    /**
+     * Datos de una sesion de subida.
+     */
+    private static final class Subida {
+        String id_subida;
+        int id_usuario;
+        String tipo_media;
+        String extension;
+        String titulo;
+        String descripcion;
+        long tamano_bytes;
+        BigDecimal duracion_segundos;
+        Integer ancho;
+        Integer alto;
+    }
+
+    /**
+     * Devuelve el estado de una subida (rangos recibidos).
+     * No retorna valor; responde 400/403/404/500 segun validaciones.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        boolean es_admin = isAdmin(AuthService.getRoleId(request));
+
+        String id_subida = parseIdSubida(request.getParameter("id_subida"));
+        if (id_subida == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "id_subida_requerido");
+            return;
+        }
+        try (Connection con = DB.getConnection()) {
+            Subida subida = loadSubida(con, id_subida, false);
+            if (subida == null) {
+                ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "subida_no_encontrada");
+                return;
+            }
+            if (!canAccess(subida, id_usuario_sesion, es_admin)) {
+                ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+                return;
+            }
+            List<long[]> rangos = loadRangos(con, id_subida);
+            JsonArrayBuilder items = Json.createArrayBuilder();
+            long recibidos = 0;
+            for (long[] rango : rangos) {
+                items.add(Json.createObjectBuilder().add("inicio", rango[0]).add("fin", rango[1]));
+                recibidos += rango[1] - rango[0];
+            }
+            JsonObjectBuilder body = Json.createObjectBuilder()
+                    .add("ok", true)
+                    .add("id_subida", id_subida)
+                    .add("tamano_bytes", subida.tamano_bytes)
+                    .add("bytes_recibidos", recibidos)
+                    .add("completo", isCompleta(rangos, subida.tamano_bytes))
+                    .add("fragmento_max_bytes", FRAGMENTO_MAX_BYTES)
+                    .add("rangos", items);
+            ResponseUtil.writeOk(response, body.build());
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_subida");
+        }
+    }
+
+    /**
+     * Crea una sesion de subida o la finaliza segun la ruta.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if ("/api/archivos/subidas/finalizar".equals(request.getServletPath())) {
+            finalizar(request, response);
+        } else {
+            crear(request, response);
+        }
+    }
+
+    /**
+     * Crea una sesion de subida.
+     * No retorna valor; responde 400/403/429/500/503 segun validaciones.
+     *
+     * Flujo:
+     *
+     * - Valida tipo_media, extension de nombre_archivo y tamano_bytes declarado.
+     * - Limpia sesiones vencidas (sin actividad en TTL_MS); tambien lo hace
+     *   el reconciliador periodico ({@link HuerfanosService}).
+     * - En una transaccion que bloquea la fila del usuario: rechaza con 429
+     *   si supera MAX_SESIONES_USUARIO o MAX_BYTES_USUARIO abiertos, o con
+     *   503 si el total abierto supera MAX_BYTES_TOTAL.
+     * - Reserva el archivo parcial con el tamanio declarado.
+     * - Inserta la sesion y devuelve id_subida.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    private void crear(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        boolean es_admin = isAdmin(AuthService.getRoleId(request));
+
+        JsonObject payload = JsonUtil.readJsonObject(request);
+        Integer id_usuario = JsonUtil.getInt(payload, "id_usuario");
+        if (!es_admin || id_usuario == null) {
+            id_usuario = id_usuario_sesion;
+        }
+        String tipo_media = ArchivosService.normalizeTipoMedia(JsonUtil.getString(payload, "tipo_media"));
+        String extension = ArchivosService.getExtension(JsonUtil.getString(payload, "nombre_archivo"));
+        Long tamano_bytes = JsonUtil.getLong(payload, "tamano_bytes");
+        if (id_usuario == null || tipo_media == null || tamano_bytes == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "datos_incompletos");
+            return;
+        }
+        if (!ArchivosService.extensionValida(tipo_media, extension)) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "extension_invalida");
+            return;
+        }
+        if (tamano_bytes.longValue() <= 0 || tamano_bytes.longValue() > MAX_BYTES) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "tamano_invalido");
+            return;
+        }
+
+        File dir = ArchivosService.temporalesDir(getServletContext());
+        if (dir == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_directorio");
+            return;
+        }
+
+        String id_subida = UUID.randomUUID().toString().replace("-", "");
+        String sql = "INSERT INTO subidas_multimedia (id_subida, id_usuario, tipo_media, extension, titulo, descripcion, "
+                + "tamano_bytes, duracion_segundos, ancho, alto) VALUES (?,?,?,?,?,?,?,?,?,?)";
+        try (Connection con = DB.getConnection()) {
+            limpiarVencidas(con, dir);
+
+            boolean auto_commit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                String limite = excedeLimites(con, id_usuario.intValue(), tamano_bytes.longValue());
+                if (limite != null) {
+                    con.rollback();
+                    ResponseUtil.writeError(response, "limite_bytes_total".equals(limite)
+                            ? HttpServletResponse.SC_SERVICE_UNAVAILABLE : SC_TOO_MANY_REQUESTS, limite);
+                    return;
+                }
+
+                // Reserva el tamanio completo: cada fragmento se escribe en su offset.
+                try (RandomAccessFile raf = new RandomAccessFile(new File(dir, id_subida + ".part"), "rw")) {
+                    raf.setLength(tamano_bytes.longValue());
+                }
+
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    String titulo = JsonUtil.getString(payload, "titulo");
+                    String descripcion = JsonUtil.getString(payload, "descripcion");
+                    BigDecimal duracion_segundos = JsonUtil.getDecimal(payload, "duracion_segundos");
+                    Integer ancho = JsonUtil.getInt(payload, "ancho");
+                    Integer alto = JsonUtil.getInt(payload, "alto");
+                    ps.setString(1, id_subida);
+                    ps.setInt(2, id_usuario.intValue());
+                    ps.setString(3, tipo_media);
+                    ps.setString(4, extension);
+                    if (titulo == null || titulo.trim().isEmpty()) {
+                        ps.setNull(5, Types.VARCHAR);
+                    } else {
+                        ps.setString(5, titulo);
+                    }
+                    if (descripcion == null || descripcion.trim().isEmpty()) {
+                        ps.setNull(6, Types.LONGVARCHAR);
+                    } else {
+                        ps.setString(6, descripcion);
+                    }
+                    ps.setLong(7, tamano_bytes.longValue());
+                    if (duracion_segundos == null) {
+                        ps.setNull(8, Types.DECIMAL);
+                    } else {
+                        ps.setBigDecimal(8, duracion_segundos);
+                    }
+                    if (ancho == null) {
+                        ps.setNull(9, Types.INTEGER);
+                    } else {
+                        ps.setInt(9, ancho.intValue());
+                    }
+                    if (alto == null) {
+                        ps.setNull(10, Types.INTEGER);
+                    } else {
+                        ps.setInt(10, alto.intValue());
+                    }
+                    ps.executeUpdate();
+                }
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(auto_commit);
+            }
+            JsonObjectBuilder body = Json.createObjectBuilder()
+                    .add("ok", true)
+                    .add("id_subida", id_subida)
+                    .add("tamano_bytes", tamano_bytes.longValue())
+                    .add("fragmento_max_bytes", FRAGMENTO_MAX_BYTES);
+            ResponseUtil.writeOk(response, body.build());
+        } catch (Exception ex) {
+            new File(dir, id_subida + ".part").delete();
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_subida");
+        }
+    }
+
+    /**
+     * Escribe un fragmento en su offset.
+     * No retorna valor; responde 400/403/404/500 segun validaciones.
+     *
+     * Flujo:
+     *
+     * - Valida la sesion y el acceso; libera la conexion mientras se lee el body.
+     * - Copia el body al archivo parcial en bloques de BUFFER_BYTES con
+     *   escrituras posicionales (seguras entre fragmentos en paralelo).
+     * - Sincroniza a disco y registra el rango recibido.
+     *
+     *
+     * @param request request HTTP actual (body binario).
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doPut(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        boolean es_admin = isAdmin(AuthService.getRoleId(request));
+
+        String id_subida = parseIdSubida(request.getParameter("id_subida"));
+        Long offset = parseLong(request.getParameter("offset"));
+        if (id_subida == null || offset == null || offset.longValue() < 0) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "datos_incompletos");
+            return;
+        }
+
+        Subida subida;
+        try (Connection con = DB.getConnection()) {
+            subida = loadSubida(con, id_subida, false);
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_subida");
+            return;
+        }
+        if (subida == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "subida_no_encontrada");
+            return;
+        }
+        if (!canAccess(subida, id_usuario_sesion, es_admin)) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+            return;
+        }
+        if (offset.longValue() >= subida.tamano_bytes) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "offset_invalido");
+            return;
+        }
+        // Leer el body puede tardar: no retener la conexion del request.
+        RequestConnection.release();
+
+        File dir = ArchivosService.temporalesDir(getServletContext());
+        File part = dir == null ? null : new File(dir, id_subida + ".part");
+        if (part == null || !part.isFile()) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "subida_no_encontrada");
+            return;
+        }
+
+        long limite = Math.min(FRAGMENTO_MAX_BYTES, subida.tamano_bytes - offset.longValue());
+        long escritos = 0;
+        try (InputStream in = request.getInputStream();
+             FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (escritos + read > limite) {
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "fragmento_excede_tamano");
+                    return;
+                }
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                long position = offset.longValue() + escritos;
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
+                escritos += read;
+            }
+            // Solo se registra como recibido lo que ya esta en disco.
+            channel.force(false);
+        } catch (IOException ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "fragmento_incompleto");
+            return;
+        }
+        if (escritos == 0) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "fragmento_vacio");
+            return;
+        }
+
+        long fin = offset.longValue() + escritos;
+        String sqlRango = "INSERT INTO subidas_fragmentos (id_subida, inicio, fin) VALUES (?,?,?) "
+                + "ON DUPLICATE KEY UPDATE fin = GREATEST(fin, VALUES(fin))";
+        String sqlActividad = "UPDATE subidas_multimedia SET fecha_actualizacion = CURRENT_TIMESTAMP WHERE id_subida = ?";
+        try (Connection con = DB.getConnection()) {
+            try (PreparedStatement ps = con.prepareStatement(sqlRango)) {
+                ps.setString(1, id_subida);
+                ps.setLong(2, offset.longValue());
+                ps.setLong(3, fin);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = con.prepareStatement(sqlActividad)) {
+                ps.setString(1, id_subida);
+                ps.executeUpdate();
+            }
+            JsonObjectBuilder body = Json.createObjectBuilder()
+                    .add("ok", true)
+                    .add("inicio", offset.longValue())
+                    .add("fin", fin);
+            ResponseUtil.writeOk(response, body.build());
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_subida");
+        }
+    }
+
+    /**
+     * Cancela una subida y borra lo recibido.
+     * No retorna valor; responde 400/403/404/500 segun validaciones.
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws ServletException si el contenedor falla.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        boolean es_admin = isAdmin(AuthService.getRoleId(request));
+
+        String id_subida = parseIdSubida(request.getParameter("id_subida"));
+        if (id_subida == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "id_subida_requerido");
+            return;
+        }
+        try (Connection con = DB.getConnection()) {
+            Subida subida = loadSubida(con, id_subida, false);
+            if (subida == null) {
+                ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "subida_no_encontrada");
+                return;
+            }
+            if (!canAccess(subida, id_usuario_sesion, es_admin)) {
+                ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+                return;
+            }
+            deleteSubida(con, id_subida);
+            File dir = ArchivosService.temporalesDir(getServletContext());
+            if (dir != null) {
+                new File(dir, id_subida + ".part").delete();
+                new File(dir, id_subida + ".finalizando").delete();
+            }
+            JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
+            ResponseUtil.writeOk(response, body.build());
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_subida");
+        }
+    }
+
+    /**
+     * Finaliza una subida completa.
+     * No retorna valor; responde 400/403/404/409/500 segun validaciones.
+     *
+     * Flujo:
+     *
+     * - Valida sesion, propiedad y que los rangos cubran [0, tamano_bytes)
+     *   con un archivo parcial de exactamente ese tamanio, sin bloqueos.
+     * - Aparta el parcial (.finalizando): fragmentos tardios o una segunda
+     *   finalizacion ya no lo encuentran, y se devuelve si algo falla.
+     * - Libera la conexion del request y, sin transaccion: copia el parcial a
+     *   un temporal que solo ve esta llamada calculando el SHA-256 al vuelo
+     *   (un PUT con el canal ya abierto puede seguir escribiendo en el
+     *   parcial), lee ancho/alto de imagenes de la copia (rechaza bombas de
+     *   descompresion) y guarda la copia en el almacenamiento si es nueva.
+     * - Transaccion corta: bloquea la sesion (SELECT ... FOR UPDATE) para
+     *   revalidar que sigue abierta, registra el blob, inserta
+     *   archivos_multimedia con el tamanio verificado y borra la sesion.
+     *
+     *
+     * @param request request HTTP actual.
+     * @param response response HTTP actual.
+     * @throws IOException si falla la escritura de respuesta.
+     */
+    private void finalizar(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        boolean es_admin = isAdmin(AuthService.getRoleId(request));
+
+        JsonObject payload = JsonUtil.readJsonObject(request);
+        String id_subida = parseIdSubida(JsonUtil.getString(payload, "id_subida"));
+        if (id_subida == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "id_subida_requerido");
+            return;
+        }
+        File dir = ArchivosService.temporalesDir(getServletContext());
+        if (dir == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_directorio");
+            return;
+        }
+
+        MediaStorage storage = ArchivosService.storage(getServletContext());
+        File part = new File(dir, id_subida + ".part");
+        File en_curso = new File(dir, id_subida + ".finalizando");
+        boolean apartado = false;
+        ArchivosService.Blob blob = null;
+        try {
+            Subida subida;
+            try (Connection con = DB.getConnection()) {
+                subida = loadSubida(con, id_subida, false);
+                if (subida == null) {
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "subida_no_encontrada");
+                    return;
+                }
+                if (!canAccess(subida, id_usuario_sesion, es_admin)) {
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
+                    return;
+                }
+                List<long[]> rangos = loadRangos(con, id_subida);
+                if (!isCompleta(rangos, subida.tamano_bytes) || !part.isFile() || part.length() != subida.tamano_bytes) {
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_CONFLICT, "subida_incompleta");
+                    return;
+                }
+            }
+            try {
+                ArchivosService.moveFile(part, en_curso);
+                apartado = true;
+            } catch (IOException ex) {
+                // Otra llamada ya lo aparto.
+                ResponseUtil.writeError(response, HttpServletResponse.SC_CONFLICT, "subida_incompleta");
+                return;
+            }
+            // Copia, hash y escritura pueden tardar minutos: no se retiene una conexion del pool.
+            RequestConnection.release();
+
+            // Se hashea y guarda la copia, no el parcial: lo que se escriba despues en el parcial no la altera.
+            try (InputStream in = new FileInputStream(en_curso)) {
+                blob = ArchivosService.recibirBlob(in, dir);
+            }
+            if (blob.tamano_bytes != subida.tamano_bytes) {
+                ResponseUtil.writeError(response, HttpServletResponse.SC_CONFLICT, "subida_incompleta");
+                return;
+            }
+
+            Integer ancho = subida.ancho;
+            Integer alto = subida.alto;
+            if ("IMAGEN".equals(subida.tipo_media)) {
+                MetadatosService.Metadatos meta = MetadatosService.extraer(blob.temporal, subida.tipo_media);
+                String invalida = MetadatosService.validarImagen(meta);
+                if (invalida != null) {
+                    ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, invalida);
+                    return;
+                }
+                ancho = meta.ancho;
+                alto = meta.alto;
+            }
+
+            ArchivosService.precargarBlob(storage, blob, subida.extension);
+
+            String ruta_archivo;
+            Integer id_archivo;
+            try (Connection con = DB.getConnection()) {
+                boolean auto_commit = con.getAutoCommit();
+                con.setAutoCommit(false);
+                try {
+                    if (loadSubida(con, id_subida, true) == null) {
+                        // Se cancelo mientras se calculaba el hash.
+                        con.rollback();
+                        apartado = false;
+                        ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "subida_no_encontrada");
+                        return;
+                    }
+                    ruta_archivo = ArchivosService.registrarBlob(con, storage, blob, subida.extension);
+                    id_archivo = ArchivosService.insertArchivo(con, subida.id_usuario, subida.tipo_media,
+                            subida.titulo, subida.descripcion, blob.tamano_bytes,
+                            subida.duracion_segundos == null ? null : subida.duracion_segundos.doubleValue(),
+                            ancho, alto, ruta_archivo);
+                    deleteSubida(con, id_subida);
+                    con.commit();
+                } catch (Exception ex) {
+                    con.rollback();
+                    // El parcial vuelve a su lugar (finally) para poder reintentar finalizar.
+                    ArchivosService.descartarBlob(storage, blob, false);
+                    throw ex;
+                } finally {
+                    con.setAutoCommit(auto_commit);
+                }
+            }
+            // El contenido ya esta en el almacenamiento: el parcial sobra.
+            en_curso.delete();
+            apartado = false;
+            if ("IMAGEN".equals(subida.tipo_media)) {
+                MiniaturasService.programar(storage, ruta_archivo);
+            } else {
+                MetadatosService.programar(storage, ruta_archivo, subida.tipo_media);
+            }
+
+            JsonObjectBuilder body = Json.createObjectBuilder()
+                    .add("ok", true)
+                    .add("ruta_archivo", ruta_archivo)
+                    .add("tamano_bytes", subida.tamano_bytes);
+            if (id_archivo != null) {
+                body.add("id_archivo", id_archivo.intValue());
+            }
+            ResponseUtil.writeOk(response, body.build());
+        } catch (Exception ex) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_finalizar_subida");
+        } finally {
+            if (blob != null) {
+                // La copia solo la usa esta llamada (el almacenamiento ya tiene la suya).
+                blob.temporal.delete();
+            }
+            if (apartado && !part.exists()) {
+                // Fallo o rechazo: el parcial vuelve a su lugar para reintentar.
+                en_curso.renameTo(part);
+            }
+        }
+    }
+
+    /**
+     * Lee una sesion de subida.
+     *
+     * @param con conexion abierta.
+     * @param id_subida id de la sesion.
+     * @param bloquear true para SELECT ... FOR UPDATE (requiere transaccion).
+     * @return sesion o null si no existe.
+     * @throws Exception si falla la consulta.
+     */
+    private Subida loadSubida(Connection con, String id_subida, boolean bloquear) throws Exception {
+        String sql = "SELECT id_subida, id_usuario, tipo_media, extension, titulo, descripcion, tamano_bytes, "
+                + "duracion_segundos, ancho, alto FROM subidas_multimedia WHERE id_subida = ?"
+                + (bloquear ? " FOR UPDATE" : "");
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, id_subida);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Subida subida = new Subida();
+                subida.id_subida = rs.getString("id_subida");
+                subida.id_usuario = rs.getInt("id_usuario");
+                subida.tipo_media = rs.getString("tipo_media");
+                subida.extension = rs.getString("extension");
+                subida.titulo = rs.getString("titulo");
+                subida.descripcion = rs.getString("descripcion");
+                subida.tamano_bytes = rs.getLong("tamano_bytes");
+                subida.duracion_segundos = rs.getBigDecimal("duracion_segundos");
+                int ancho = rs.getInt("ancho");
+                subida.ancho = rs.wasNull() ? null : Integer.valueOf(ancho);
+                int alto = rs.getInt("alto");
+                subida.alto = rs.wasNull() ? null : Integer.valueOf(alto);
+                return subida;
+            }
+        }
+    }
+
+    /**
+     * Lee los rangos recibidos y los combina (ordenados, sin solapes).
+     *
+     * @param con conexion abierta.
+     * @param id_subida id de la sesion.
+     * @return lista de {inicio, fin} con fin exclusivo.
+     * @throws Exception si falla la consulta.
+     */
+    private List<long[]> loadRangos(Connection con, String id_subida) throws Exception {
+        List<long[]> rangos = new ArrayList<>();
+        String sql = "SELECT inicio, fin FROM subidas_fragmentos WHERE id_subida = ? ORDER BY inicio";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, id_subida);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long inicio = rs.getLong("inicio");
+                    long fin = rs.getLong("fin");
+                    long[] ultimo = rangos.isEmpty() ? null : rangos.get(rangos.size() - 1);
+                    if (ultimo != null && inicio <= ultimo[1]) {
+                        ultimo[1] = Math.max(ultimo[1], fin);
+                    } else {
+                        rangos.add(new long[]{inicio, fin});
+                    }
+                }
+            }
+        }
+        return rangos;
+    }
+
+    /**
+     * @param rangos rangos combinados.
+     * @param tamano_bytes tamanio declarado.
+     * @return true si un unico rango cubre [0, tamano_bytes).
+     */
+    private boolean isCompleta(List<long[]> rangos, long tamano_bytes) {
+        return rangos.size() == 1 && rangos.get(0)[0] == 0 && rangos.get(0)[1] >= tamano_bytes;
+    }
+
+    /**
+     * Borra la sesion (los fragmentos se eliminan en cascada).
+     *
+     * @param con conexion abierta.
+     * @param id_subida id de la sesion.
+     * @throws Exception si falla el DELETE.
+     */
+    private static void deleteSubida(Connection con, String id_subida) throws Exception {
+        try (PreparedStatement ps = con.prepareStatement("DELETE FROM subidas_multimedia WHERE id_subida = ?")) {
+            ps.setString(1, id_subida);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Comprueba los limites de sesiones abiertas antes de crear una nueva.
+     * Debe llamarse en la transaccion del alta: bloquea la fila del usuario
+     * para que dos altas concurrentes suyas no superen juntas el limite.
+     *
+     * @param con conexion en transaccion.
+     * @param id_usuario propietario de la nueva sesion.
+     * @param tamano_bytes tamanio declarado de la nueva sesion.
+     * @return mensaje de error del limite superado o null si cabe.
+     * @throws Exception si falla la consulta.
+     */
+    private String excedeLimites(Connection con, int id_usuario, long tamano_bytes) throws Exception {
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT id_usuario FROM usuarios WHERE id_usuario = ? FOR UPDATE")) {
+            ps.setInt(1, id_usuario);
+            try (ResultSet rs = ps.executeQuery()) {
+                // Solo bloquea la fila; el recuento siguiente queda serializado por usuario.
+            }
+        }
+        try (PreparedStatement ps = con.prepareStatement("SELECT COUNT(*), COALESCE(SUM(tamano_bytes), 0) "
+                + "FROM subidas_multimedia WHERE id_usuario = ?")) {
+            ps.setInt(1, id_usuario);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                if (rs.getInt(1) >= MAX_SESIONES_USUARIO) {
+                    return "limite_subidas";
+                }
+                if (rs.getLong(2) + tamano_bytes > MAX_BYTES_USUARIO) {
+                    return "limite_bytes_usuario";
+                }
+            }
+        }
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT COALESCE(SUM(tamano_bytes), 0) FROM subidas_multimedia")) {
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                if (rs.getLong(1) + tamano_bytes > MAX_BYTES_TOTAL) {
+                    return "limite_bytes_total";
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Elimina sesiones sin actividad por mas de TTL_MS y sus archivos parciales.
+     * Se llama al crear una sesion y desde el reconciliador periodico
+     * ({@link HuerfanosService}).
+     *
+     * @param con conexion abierta.
+     * @param dir carpeta de archivos parciales.
+     * @return sesiones eliminadas.
+     * @throws Exception si falla la consulta.
+     */
+    static int limpiarVencidas(Connection con, File dir) throws Exception {
+        List<String> vencidas = new ArrayList<>();
+        String sql = "SELECT id_subida FROM subidas_multimedia "
+                + "WHERE COALESCE(fecha_actualizacion, fecha_creacion) < ?";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis() - TTL_MS));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    vencidas.add(rs.getString("id_subida"));
+                }
+            }
+        }
+        for (String id_subida : vencidas) {
+            deleteSubida(con, id_subida);
+            new File(dir, id_subida + ".part").delete();
+            new File(dir, id_subida + ".finalizando").delete();
+        }
+        return vencidas.size();
+    }
+
+    /**
+     * @param subida sesion de subida.
+     * @param id_usuario_sesion id del usuario autenticado.
+     * @param es_admin true si el usuario es administrador.
+     * @return true si el usuario puede operar sobre la subida.
+     */
+    private boolean canAccess(Subida subida, Integer id_usuario_sesion, boolean es_admin) {
+        return es_admin || (id_usuario_sesion != null && subida.id_usuario == id_usuario_sesion.intValue());
+    }
+
+    /**
+     * Valida el formato de id_subida (32 hex) para usarlo en rutas de archivo.
+     *
+     * @param value texto recibido.
+     * @return id normalizado o null si no es valido.
+     */
+    private String parseIdSubida(String value) {
+        if (value == null) {
+            return null;
+        }
+        String id = value.trim().toLowerCase();
+        return id.matches("[0-9a-f]{32}") ? id : null;
+    }
+
+    /**
+     * Parsea un entero largo desde query string.
+     *
+     * Se recorta el texto y se parsea con manejo de NumberFormatException.
+     *
+     *
+     * @param value texto recibido.
+     * @return Long o null si no es valido.
+     */
+    private Long parseLong(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determina si el rol corresponde a administrador (id_rol = 1).
+     *
+     * Se usa como regla simple de autorizacion en todos los servlets.
+     *
+     *
+     * @param id_rol id del rol.
+     * @return true si es admin, false en caso contrario.
+     */
+    private boolean isAdmin(Integer id_rol) {
+        return id_rol != null && id_rol.intValue() == 1;
+    }
+}
@@ -0,0 +1,280 @@
+package API;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Tokens de autenticacion firmados con HMAC-SHA256 (modo AUTH_MODO=token).
+ *
+ * El token lleva id_usuario, id_rol y la expiracion; {@link AuthFilter} lo
+ * verifica en memoria sin HttpSession ni acceso a BD, por lo que cualquier
+ * nodo detras de un balanceador sin afinidad puede atender el request.
+ *
+ * Formato: v1.&lt;kid&gt;.&lt;payload&gt;.&lt;firma&gt;, con payload =
+ * hexadecimal de "id_usuario:id_rol:expira" (epoch en segundos) y firma =
+ * hexadecimal del HMAC de "v1.&lt;kid&gt;.&lt;payload&gt;" con la clave kid.
+ *
+ * El token se acepta en "Authorization: Bearer" o en la cookie HttpOnly
+ * {@link #COOKIE} que fija el login, para que &lt;img&gt;/&lt;video&gt; contra
+ * /api/media (que no pueden enviar headers) sigan funcionando.
+ *
+ * Rotacion: AUTH_TOKEN_CLAVES es una lista "kid:secreto,kid:secreto"; la
+ * primera firma y todas verifican. Para rotar se agrega la nueva al inicio
+ * y la anterior se quita cuando vencen sus tokens (AUTH_TOKEN_TTL_S), sin
+ * cerrar la sesion de nadie.
+ *
+ */
+public final class TokenService {
+    private static final Logger LOG = Logger.getLogger(TokenService.class.getName());
+
+    public static final String MODO = DB.getValue("AUTH_MODO", "auth.modo", "sesion").toLowerCase(Locale.ROOT);
+    public static final boolean ACTIVO = "token".equals(MODO);
+    public static final long TTL_S = DB.getLongValue("AUTH_TOKEN_TTL_S", "auth.token.ttl_s", 8 * 3600);
+
+    public static final String COOKIE = "auth_token";
+
+    private static final String VERSION = "v1";
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final String BEARER = "Bearer ";
+    // Secretos mas cortos no aportan seguridad frente a fuerza bruta del HMAC.
+    private static final int MIN_SECRETO = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // kid -> clave; la primera entrada es la que firma.
+    private static final Map<String, SecretKeySpec> CLAVES = cargarClaves(
+            DB.getValue("AUTH_TOKEN_CLAVES", "auth.token.claves", null));
+    private static final String KID_ACTUAL = CLAVES.keySet().iterator().next();
+
+    // Mac no es thread-safe y getInstance es costoso: una instancia por hilo.
+    private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(ALGORITMO);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private TokenService() {
+    }
+
+    /**
+     * Datos verificados de un token.
+     */
+    public static final class Identidad {
+        public final int id_usuario;
+        public final int id_rol;
+        public final long expira;
+
+        /**
+         * @param id_usuario usuario autenticado.
+         * @param id_rol rol del usuario.
+         * @param expira epoch en segundos.
+         */
+        public Identidad(int id_usuario, int id_rol, long expira) {
+            this.id_usuario = id_usuario;
+            this.id_rol = id_rol;
+            this.expira = expira;
+        }
+    }
+
+    /**
+     * Emite un token firmado con la clave actual.
+     *
+     * @param id_usuario usuario autenticado.
+     * @param id_rol rol del usuario.
+     * @return token compacto.
+     */
+    public static String emitir(int id_usuario, int id_rol) {
+        long expira = System.currentTimeMillis() / 1000 + TTL_S;
+        String payload = toHex((id_usuario + ":" + id_rol + ":" + expira).getBytes(StandardCharsets.UTF_8));
+        String firmado = VERSION + "." + KID_ACTUAL + "." + payload;
+        return firmado + "." + toHex(firmar(CLAVES.get(KID_ACTUAL), firmado));
+    }
+
+    /**
+     * Verifica firma y expiracion.
+     *
+     * Flujo:
+     * 1) Separa version, kid, payload y firma.
+     * 2) Busca la clave del kid (rechaza kids retirados).
+     * 3) Compara la firma en tiempo constante.
+     * 4) Decodifica el payload y rechaza tokens vencidos.
+     *
+     *
+     * @param token token recibido.
+     * @return identidad o null si el token es invalido o vencio.
+     */
+    public static Identidad verificar(String token) {
+        if (token == null) {
+            return null;
+        }
+        String[] partes = token.split("\\.", -1);
+        if (partes.length != 4 || !VERSION.equals(partes[0])) {
+            return null;
+        }
+        SecretKeySpec clave = CLAVES.get(partes[1]);
+        if (clave == null) {
+            return null;
+        }
+        try {
+            byte[] esperada = firmar(clave, partes[0] + "." + partes[1] + "." + partes[2]);
+            if (!MessageDigest.isEqual(esperada, fromHex(partes[3]))) {
+                return null;
+            }
+            String[] campos = new String(fromHex(partes[2]), StandardCharsets.UTF_8).split(":");
+            if (campos.length != 3) {
+                return null;
+            }
+            long expira = Long.parseLong(campos[2]);
+            if (expira <= System.currentTimeMillis() / 1000) {
+                return null;
+            }
+            return new Identidad(Integer.parseInt(campos[0]), Integer.parseInt(campos[1]), expira);
+        } catch (IllegalArgumentException ex) {
+            // Hexadecimal o numeros invalidos (NumberFormatException incluida).
+            return null;
+        }
+    }
+
+    /**
+     * @param request request HTTP actual.
+     * @return token del header "Authorization: Bearer ..." o de la cookie
+     *         {@link #COOKIE}; null si no viene.
+     */
+    public static String leerToken(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (header != null && header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            String token = header.substring(BEARER.length()).trim();
+            return token.isEmpty() ? null : token;
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param request request HTTP actual (define path y Secure).
+     * @param token token a guardar, o "" para borrar la cookie.
+     * @return cookie HttpOnly con vigencia TTL_S (0 al borrar).
+     */
+    public static Cookie cookie(HttpServletRequest request, String token) {
+        Cookie cookie = new Cookie(COOKIE, token);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        String path = request.getContextPath();
+        cookie.setPath(path == null || path.isEmpty() ? "/" : path);
+        cookie.setMaxAge(token.isEmpty() ? 0 : (int) Math.min(TTL_S, Integer.MAX_VALUE));
+        return cookie;
+    }
+
+    /**
+     * @param clave clave HMAC.
+     * @param datos texto a firmar.
+     * @return HMAC-SHA256.
+     */
+    private static byte[] firmar(SecretKeySpec clave, String datos) {
+        Mac mac = MAC.get();
+        try {
+            mac.init(clave);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return mac.doFinal(datos.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param bytes bytes a codificar.
+     * @return representacion hexadecimal en minusculas.
+     */
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    /**
+     * @param hex texto hexadecimal.
+     * @return bytes decodificados.
+     * @throws IllegalArgumentException si el texto no es hexadecimal valido.
+     */
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("hex_invalido");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int alto = Character.digit(hex.charAt(2 * i), 16);
+            int bajo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (alto < 0 || bajo < 0) {
+                throw new IllegalArgumentException("hex_invalido");
+            }
+            bytes[i] = (byte) ((alto << 4) | bajo);
+        }
+        return bytes;
+    }
+
+    /**
+     * Lee la lista de claves "kid:secreto,kid:secreto".
+     *
+     * Las entradas mal formadas o con secreto corto se ignoran con un aviso.
+     * Sin claves validas se usa una aleatoria: sirve para un solo nodo y los
+     * tokens dejan de valer al reiniciar.
+     *
+     *
+     * @param valor configuracion o null.
+     * @return claves en orden (nunca vacio).
+     */
+    private static Map<String, SecretKeySpec> cargarClaves(String valor) {
+        Map<String, SecretKeySpec> claves = new LinkedHashMap<>();
+        if (valor != null) {
+            for (String entrada : valor.split(",")) {
+                int separador = entrada.indexOf(':');
+                String kid = separador > 0 ? entrada.substring(0, separador).trim() : "";
+                String secreto = separador > 0 ? entrada.substring(separador + 1).trim() : "";
+                if (!kid.matches("[A-Za-z0-9_-]+") || secreto.length() < MIN_SECRETO) {
+                    LOG.log(Level.WARNING, "Clave de token ignorada (kid invalido o secreto de menos de {0} "
+                            + "caracteres): {1}", new Object[] {MIN_SECRETO, kid});
+                    continue;
+                }
+                claves.put(kid, new SecretKeySpec(secreto.getBytes(StandardCharsets.UTF_8), ALGORITMO));
+            }
+        }
+        if (claves.isEmpty()) {
+            byte[] aleatoria = new byte[32];
+            new SecureRandom().nextBytes(aleatoria);
+            claves.put("local", new SecretKeySpec(aleatoria, ALGORITMO));
+            if (ACTIVO) {
+                LOG.warning("AUTH_TOKEN_CLAVES sin claves validas; se usa una clave aleatoria "
+                        + "(solo un nodo, los tokens se invalidan al reiniciar)");
+            }
+        }
+        return Collections.unmodifiableMap(claves);
+    }
+}
@@ -0,0 +1,70 @@
+package API;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utilidades para trabajos en segundo plano (miniaturas, metadatos, ...).
+ *
+ * Todos los pools son acotados (hilos y cola fijos), con hilos daemon de baja
+ * prioridad que terminan tras un minuto sin trabajo; si la cola esta llena,
+ * execute lanza RejectedExecutionException y el llamador decide descartar.
+ * Las tareas periodicas (reconciliador de huerfanos) usan un programador de
+ * un solo hilo con la misma fabrica de hilos.
+ *
+ */
+public final class TrabajosUtil {
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private TrabajosUtil() {
+    }
+
+    /**
+     * Crea un pool acotado para trabajos en segundo plano.
+     *
+     * @param nombre prefijo del nombre de los hilos.
+     * @param hilos cantidad maxima de hilos.
+     * @param cola capacidad de la cola de tareas pendientes.
+     * @return pool listo para usar.
+     */
+    public static ThreadPoolExecutor nuevoPool(String nombre, int hilos, int cola) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(hilos, hilos, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(cola), hilos(nombre), new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Crea un programador de un solo hilo para tareas periodicas.
+     *
+     * @param nombre prefijo del nombre del hilo.
+     * @return programador listo para usar.
+     */
+    public static ScheduledThreadPoolExecutor nuevoProgramador(String nombre) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, hilos(nombre));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    /**
+     * @param nombre prefijo del nombre de los hilos.
+     * @return fabrica de hilos daemon de baja prioridad.
+     */
+    private static ThreadFactory hilos(final String nombre) {
+        final AtomicInteger contador = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, nombre + "-" + contador.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        };
+    }
+}
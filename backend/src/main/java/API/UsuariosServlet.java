@@ -7,15 +7,14 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 /**
  * Servlet CRUD de usuarios con validacion de permisos (admin vs usuario propio).
@@ -34,7 +33,8 @@ public class UsuariosServlet extends HttpServlet {
      * Flujo:
      *
      * - Si viene id_usuario, valida que sea admin o el propio usuario.
-     * - Si no viene, solo admin puede listar todos.
+     * - Si no viene, solo admin puede listar todos, paginados por cursor
+     *   (limit, cursor; responde next_cursor).
      *
      *
      * @param request request HTTP actual.
@@ -45,8 +45,8 @@ public class UsuariosServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         Integer id_usuario = parseInt(request.getParameter("id_usuario"));
 
         boolean es_admin = isAdmin(id_rol_sesion);
@@ -65,11 +65,14 @@ public class UsuariosServlet extends HttpServlet {
                 ps.setInt(1, id_usuario.intValue());
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.next()) {
-                        JsonObjectBuilder usuario = buildUsuario(rs);
-                        JsonObjectBuilder body = Json.createObjectBuilder()
-                                .add("ok", true)
-                                .add("usuario", usuario);
-                        ResponseUtil.writeOk(response, body.build());
+                        try (JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                            gen.writeStartObject();
+                            gen.write("ok", true);
+                            gen.writeStartObject("usuario");
+                            writeUsuario(gen, rs);
+                            gen.writeEnd();
+                            gen.writeEnd();
+                        }
                         return;
                     }
                 }
@@ -85,22 +88,47 @@ public class UsuariosServlet extends HttpServlet {
             return;
         }
 
-        // Listado completo de usuarios (solo admin).
+        Integer limit = CursorUtil.parseLimit(request.getParameter("limit"));
+        Integer ultimo_visto = CursorUtil.decode(request.getParameter("cursor"));
+        if (limit == null || ultimo_visto == null) {
+            ResponseUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "paginacion_invalida");
+            return;
+        }
+
+        // Listado de usuarios (solo admin), paginado por PK.
         String sql = "SELECT u.id_usuario, u.nombre_usuario, u.correo, u.id_rol, r.nombre_rol, "
                 + "u.fecha_creacion, u.fecha_actualizacion "
                 + "FROM usuarios u INNER JOIN roles r ON r.id_rol = u.id_rol "
-                + "ORDER BY u.id_usuario";
+                + "WHERE u.id_usuario > ? ORDER BY u.id_usuario LIMIT ?";
         try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            JsonArrayBuilder usuarios = Json.createArrayBuilder();
-            while (rs.next()) {
-                usuarios.add(buildUsuario(rs));
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, ultimo_visto.intValue());
+            ps.setInt(2, limit.intValue() + 1);
+            DB.streamResults(ps);
+            try (ResultSet rs = ps.executeQuery();
+                 JsonGenerator gen = ResponseUtil.openJson(response, HttpServletResponse.SC_OK)) {
+                gen.writeStartObject();
+                gen.write("ok", true);
+                gen.writeStartArray("usuarios");
+                int escritos = 0;
+                int ultimo_id = 0;
+                boolean hay_mas = false;
+                while (rs.next()) {
+                    // Se pidio limit + 1 filas: la extra solo indica que hay otra pagina.
+                    if (escritos == limit.intValue()) {
+                        hay_mas = true;
+                        break;
+                    }
+                    ultimo_id = rs.getInt("id_usuario");
+                    gen.writeStartObject();
+                    writeUsuario(gen, rs);
+                    gen.writeEnd();
+                    escritos++;
+                }
+                gen.writeEnd();
+                CursorUtil.writeNext(gen, hay_mas, ultimo_id);
+                gen.writeEnd();
             }
-            JsonObjectBuilder body = Json.createObjectBuilder()
-                    .add("ok", true)
-                    .add("usuarios", usuarios);
-            ResponseUtil.writeOk(response, body.build());
         } catch (Exception ex) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "error_usuarios");
         }
@@ -122,7 +150,7 @@ public class UsuariosServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         if (!isAdmin(id_rol_sesion)) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
             return;
@@ -188,8 +216,8 @@ public class UsuariosServlet extends HttpServlet {
             return;
         }
 
-        Integer id_usuario_sesion = getSessionUserId(request);
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_usuario_sesion = AuthService.getUserId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         boolean es_admin = isAdmin(id_rol_sesion);
         if (!es_admin && !id_usuario.equals(id_usuario_sesion)) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
@@ -243,7 +271,8 @@ public class UsuariosServlet extends HttpServlet {
      * Elimina un usuario por id (solo admin).
      * No retorna valor; responde 400/403/404/500 segun validaciones.
      *
-     * Se valida el rol admin, se obtiene el id desde query y se ejecuta DELETE.
+     * Se valida el rol admin, se obtiene el id desde query y se ejecuta DELETE;
+     * antes se liberan las referencias de sus archivos a blobs multimedia.
      *
      *
      * @param request request HTTP actual.
@@ -254,7 +283,7 @@ public class UsuariosServlet extends HttpServlet {
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        Integer id_rol_sesion = getSessionRoleId(request);
+        Integer id_rol_sesion = AuthService.getRoleId(request);
         if (!isAdmin(id_rol_sesion)) {
             ResponseUtil.writeError(response, HttpServletResponse.SC_FORBIDDEN, "acceso_denegado");
             return;
@@ -267,14 +296,32 @@ public class UsuariosServlet extends HttpServlet {
         }
 
         String sql = "DELETE FROM usuarios WHERE id_usuario = ?";
-        try (Connection con = DB.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, id_usuario.intValue());
-            int deleted = ps.executeUpdate();
+        try (Connection con = DB.getConnection()) {
+            MediaStorage storage = ArchivosService.storage(getServletContext());
+            int deleted;
+            ArchivosService.Liberacion liberacion;
+            con.setAutoCommit(false);
+            try {
+                // Sus archivos se borran en cascada: descuenta antes sus referencias a blobs.
+                liberacion = ArchivosService.liberarBlobs(con, "id_usuario", id_usuario.intValue());
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    ps.setInt(1, id_usuario.intValue());
+                    deleted = ps.executeUpdate();
+                }
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(true);
+            }
+            // Sus diagramas se borran en cascada.
+            OwnershipCache.removeOwner(id_usuario.intValue());
             if (deleted == 0) {
                 ResponseUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "usuario_no_encontrado");
                 return;
             }
+            ArchivosService.borrarLiberados(storage, liberacion);
             JsonObjectBuilder body = Json.createObjectBuilder().add("ok", true);
             ResponseUtil.writeOk(response, body.build());
         } catch (Exception ex) {
@@ -283,27 +330,25 @@ public class UsuariosServlet extends HttpServlet {
     }
 
     /**
-     * Construye el JSON de respuesta para un usuario.
+     * Escribe los campos de un usuario en el objeto abierto del generador.
      *
      * Se extrae columnas, maneja nulls con JsonUtil y formatea fechas.
      *
      *
+     * @param gen generador posicionado dentro de un objeto.
      * @param rs ResultSet ya posicionado en un registro valido.
-     * @return builder con los campos del usuario.
      * @throws Exception si falla la lectura desde el ResultSet.
      */
-    private JsonObjectBuilder buildUsuario(ResultSet rs) throws Exception {
-        JsonObjectBuilder usuario = Json.createObjectBuilder();
-        usuario.add("id_usuario", rs.getInt("id_usuario"));
-        usuario.add("nombre_usuario", rs.getString("nombre_usuario"));
-        JsonUtil.add(usuario, "correo", rs.getString("correo"));
-        usuario.add("id_rol", rs.getInt("id_rol"));
-        usuario.add("nombre_rol", rs.getString("nombre_rol"));
+    static void writeUsuario(JsonGenerator gen, ResultSet rs) throws Exception {
+        gen.write("id_usuario", rs.getInt("id_usuario"));
+        gen.write("nombre_usuario", rs.getString("nombre_usuario"));
+        JsonUtil.write(gen, "correo", rs.getString("correo"));
+        gen.write("id_rol", rs.getInt("id_rol"));
+        gen.write("nombre_rol", rs.getString("nombre_rol"));
         Timestamp creado = rs.getTimestamp("fecha_creacion");
         Timestamp actualizado = rs.getTimestamp("fecha_actualizacion");
-        JsonUtil.add(usuario, "fecha_creacion", creado == null ? null : creado.toString());
-        JsonUtil.add(usuario, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
-        return usuario;
+        JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+        JsonUtil.write(gen, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
     }
 
     /**
@@ -326,42 +371,6 @@ public class UsuariosServlet extends HttpServlet {
         }
     }
 
-    /**
-     * Obtiene id_usuario de la sesion si existe.
-     *
-     * Se lee el atributo "id_usuario" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_usuario o null si no hay sesion.
-     */
-    private Integer getSessionUserId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_usuario");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
-    /**
-     * Obtiene id_rol de la sesion si existe.
-     *
-     * Se lee el atributo "id_rol" y valida tipo Integer.
-     *
-     *
-     * @param request request HTTP actual.
-     * @return id_rol o null si no hay sesion.
-     */
-    private Integer getSessionRoleId(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
-        }
-        Object value = session.getAttribute("id_rol");
-        return value instanceof Integer ? (Integer) value : null;
-    }
-
     /**
      * Determina si el rol corresponde a administrador (id_rol = 1).
      *
@@ -0,0 +1,142 @@
+package API;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Conteo de referencias de blobs contra H2 (perfil embebida): alta con
+ * INSERT ... ON DUPLICATE KEY UPDATE, descuento con UPDATE ... CASE de
+ * subconsultas correlacionadas y borrado del objeto solo despues del commit.
+ *
+ */
+public class ArchivosServiceTest {
+    private static final byte[] PISTA = "pista".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTRA = "otra pista".getBytes(StandardCharsets.UTF_8);
+
+    @Before
+    public void reiniciar() throws Exception {
+        PruebasEmbebida.reiniciar();
+    }
+
+    @Test
+    public void registrarElMismoContenidoSumaReferencias() throws Exception {
+        Object[] primero = PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA);
+        Object[] segundo = PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA);
+        assertEquals(primero[1], segundo[1]);
+        assertEquals(1, PruebasEmbebida.valor("SELECT COUNT(*) FROM blobs_multimedia"));
+        assertEquals(2, referencias((String) primero[1]));
+        assertEquals(PISTA.length, PruebasEmbebida.valor(
+                "SELECT tamano_bytes FROM blobs_multimedia WHERE ruta_archivo = ?", primero[1]));
+    }
+
+    @Test
+    public void liberarPorArchivoBorraElObjetoSoloTrasElUltimoUso() throws Exception {
+        Object[] primero = PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA);
+        Object[] segundo = PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA);
+        String ruta_archivo = (String) primero[1];
+
+        ArchivosService.Liberacion liberacion = liberar("id_archivo", (Integer) primero[0]);
+        assertEquals(Collections.emptyList(), liberacion.sin_uso);
+        assertEquals(1, referencias(ruta_archivo));
+
+        liberacion = liberar("id_archivo", (Integer) segundo[0]);
+        assertEquals(Arrays.asList(ruta_archivo), liberacion.sin_uso);
+        assertEquals(0, PruebasEmbebida.valor("SELECT COUNT(*) FROM blobs_multimedia"));
+        // liberarBlobs no toca el almacenamiento: el objeto sigue hasta borrarLiberados.
+        assertNotNull(PruebasEmbebida.storage().info(ruta_archivo));
+        ArchivosService.borrarLiberados(PruebasEmbebida.storage(), liberacion);
+        assertNull(PruebasEmbebida.storage().info(ruta_archivo));
+    }
+
+    @Test
+    public void liberarPorUsuarioDescuentaTodosSusUsos() throws Exception {
+        String pista = (String) PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA)[1];
+        PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA);
+        String otra = (String) PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", OTRA)[1];
+        // Fila anterior a la deduplicacion: sin blob, el archivo es solo suyo.
+        String legado = "uploads/legado.mp3";
+        PruebasEmbebida.guardarObjeto(legado, PISTA, System.currentTimeMillis());
+        PruebasEmbebida.ejecutar("INSERT INTO archivos_multimedia (id_usuario, tipo_media, tamano_bytes, ruta_archivo) "
+                + "VALUES (?, 'AUDIO', ?, ?)", PruebasEmbebida.ADMIN, PISTA.length, legado);
+
+        ArchivosService.Liberacion liberacion = liberar("id_usuario", PruebasEmbebida.ADMIN);
+        List<String> esperadas = Arrays.asList(pista, otra);
+        Collections.sort(esperadas);
+        Collections.sort(liberacion.sin_uso);
+        assertEquals(esperadas, liberacion.sin_uso);
+        assertEquals(Arrays.asList(legado), liberacion.legado);
+        assertEquals(0, PruebasEmbebida.valor("SELECT COUNT(*) FROM blobs_multimedia"));
+
+        ArchivosService.borrarLiberados(PruebasEmbebida.storage(), liberacion);
+        assertNull(PruebasEmbebida.storage().info(pista));
+        assertNull(PruebasEmbebida.storage().info(otra));
+        assertNull(PruebasEmbebida.storage().info(legado));
+    }
+
+    @Test
+    public void rollbackConservaReferenciasYObjeto() throws Exception {
+        Object[] archivo = PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA);
+        try (Connection con = DB.getConnection()) {
+            con.setAutoCommit(false);
+            ArchivosService.Liberacion liberacion = ArchivosService.liberarBlobs(con, "id_archivo",
+                    ((Integer) archivo[0]).intValue());
+            assertEquals(1, liberacion.sin_uso.size());
+            con.rollback();
+            con.setAutoCommit(true);
+        }
+        assertEquals(1, referencias((String) archivo[1]));
+        assertNotNull(PruebasEmbebida.storage().info((String) archivo[1]));
+    }
+
+    @Test
+    public void borrarLiberadosRespetaUnaSubidaPosterior() throws Exception {
+        Object[] archivo = PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA);
+        ArchivosService.Liberacion liberacion = liberar("id_archivo", (Integer) archivo[0]);
+        // Entre el commit y el borrado llega otra subida del mismo contenido.
+        PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3", PISTA);
+
+        ArchivosService.borrarLiberados(PruebasEmbebida.storage(), liberacion);
+        assertNotNull(PruebasEmbebida.storage().info((String) archivo[1]));
+        assertEquals(1, referencias((String) archivo[1]));
+    }
+
+    /**
+     * Descuenta y borra las filas en una transaccion, como ArchivosServlet.
+     *
+     * @param columna "id_archivo" o "id_usuario".
+     * @param id valor de la columna.
+     * @return resultado de liberarBlobs tras el commit.
+     */
+    private ArchivosService.Liberacion liberar(String columna, Integer id) throws Exception {
+        try (Connection con = DB.getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                ArchivosService.Liberacion liberacion = ArchivosService.liberarBlobs(con, columna, id.intValue());
+                try (PreparedStatement ps = con.prepareStatement(
+                        "DELETE FROM archivos_multimedia WHERE " + columna + " = ?")) {
+                    ps.setInt(1, id.intValue());
+                    assertTrue(ps.executeUpdate() > 0);
+                }
+                con.commit();
+                return liberacion;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    private long referencias(String ruta_archivo) throws Exception {
+        return PruebasEmbebida.valor("SELECT referencias FROM blobs_multimedia WHERE ruta_archivo = ?", ruta_archivo);
+    }
+}
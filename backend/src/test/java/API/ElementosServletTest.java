@@ -0,0 +1,69 @@
+package API;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Actualizacion por lote contra H2 (perfil embebida): batch condicionado por
+ * version, relectura con IN de las filas del lote y operaciones registradas.
+ *
+ */
+public class ElementosServletTest {
+    private ElementosServlet servlet;
+
+    @Before
+    public void reiniciar() throws Exception {
+        PruebasEmbebida.reiniciar();
+        servlet = PruebasEmbebida.iniciar(new ElementosServlet());
+    }
+
+    @Test
+    public void loteDevuelveVersionNuevaYFilaActualEnConflictos() throws Exception {
+        PruebasEmbebida.Respuesta respuesta = PruebasEmbebida.llamar(servlet, "PUT", "/api/elementos/lote",
+                PruebasEmbebida.json("{\"elementos\":["
+                        + elemento(4, "Con version", "\"version\":0") + ","
+                        + elemento(5, "Version vieja", "\"version\":99") + ","
+                        + elemento(6, "Sin version", null) + "]}"));
+        assertEquals(respuesta.texto(), 200, respuesta.status);
+        JsonObject body = respuesta.json();
+        assertEquals(respuesta.texto(), 2, body.getInt("actualizados"));
+        JsonArray resultados = body.getJsonArray("resultados");
+
+        JsonObject aplicado = resultados.getJsonObject(0);
+        assertTrue(aplicado.getBoolean("ok"));
+        assertEquals(1, aplicado.getInt("version"));
+
+        JsonObject conflicto = resultados.getJsonObject(1);
+        assertFalse(conflicto.getBoolean("ok"));
+        assertEquals("conflicto_version", conflicto.getString("mensaje"));
+        assertEquals(0, conflicto.getJsonObject("actual").getInt("version"));
+        assertEquals(5, conflicto.getJsonObject("actual").getInt("id_elemento"));
+
+        JsonObject sin_version = resultados.getJsonObject(2);
+        assertTrue(sin_version.getBoolean("ok"));
+        assertEquals(1, sin_version.getInt("version"));
+
+        assertEquals(2, PruebasEmbebida.valor("SELECT COUNT(*) FROM operaciones_diagrama WHERE id_diagrama = 1"));
+        // Las secuencias se reservan antes del batch: el conflicto deja un hueco.
+        assertEquals(3, PruebasEmbebida.valor("SELECT ultima_secuencia FROM diagramas_uml WHERE id_diagrama = 1"));
+        assertEquals(0, PruebasEmbebida.valor("SELECT version FROM elementos_diagrama WHERE id_elemento = 5"));
+    }
+
+    /**
+     * @param id_elemento elemento del diagrama 1.
+     * @param etiqueta etiqueta nueva.
+     * @param extra campo adicional (o null).
+     * @return item del lote en JSON.
+     */
+    private static String elemento(int id_elemento, String etiqueta, String extra) {
+        return "{\"id_elemento\":" + id_elemento + ",\"id_diagrama\":1,\"tipo_elemento\":\"CASO_DE_USO\","
+                + "\"etiqueta\":\"" + etiqueta + "\",\"pos_x\":10,\"pos_y\":20,\"ancho\":120,\"alto\":60"
+                + (extra == null ? "" : "," + extra) + "}";
+    }
+}
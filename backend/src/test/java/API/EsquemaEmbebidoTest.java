@@ -0,0 +1,235 @@
+package API;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Comprueba el modo embebido contra H2 (perfil embebida):
+ * mvn -f backend/pom.xml -P embebida test
+ *
+ * Cada prueba crea una base en memoria con {@link EsquemaEmbebido#inicializar}
+ * y los datos iniciales de basededatos.sql (diagramas 1 a 3). Las constantes
+ * SQL_* de los servlets se leen por reflexion para probar exactamente el SQL
+ * que ejecutan en produccion.
+ *
+ */
+public class EsquemaEmbebidoTest {
+    private static final Class<?>[] SERVLETS = {
+        DiagramasServlet.class, DiagramaCambiosServlet.class, ElementosServlet.class, ConexionesServlet.class
+    };
+    private static int bases;
+
+    private Connection con;
+
+    @Before
+    public void crearBase() throws Exception {
+        bases++;
+        con = DriverManager.getConnection("jdbc:h2:mem:prueba" + bases
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH");
+        assertTrue(EsquemaEmbebido.inicializar(con));
+    }
+
+    @After
+    public void cerrarBase() throws SQLException {
+        con.close();
+    }
+
+    @Test
+    public void inicializarNoRepiteElEsquema() throws Exception {
+        assertFalse(EsquemaEmbebido.inicializar(con));
+        assertEquals(3, contar("SELECT COUNT(*) FROM diagramas_uml"));
+    }
+
+    @Test
+    public void autoIncrementContinuaDespuesDeLosDatosIniciales() throws Exception {
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("INSERT INTO elementos_diagrama (id_diagrama, tipo_elemento) VALUES (1, 'NOTA')",
+                    Statement.RETURN_GENERATED_KEYS);
+            try (ResultSet rs = st.getGeneratedKeys()) {
+                assertTrue(rs.next());
+                assertEquals(23, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void todasLasConstantesSqlCompilan() throws Exception {
+        List<String> fallidas = new ArrayList<>();
+        int probadas = 0;
+        for (Class<?> servlet : SERVLETS) {
+            for (Field campo : servlet.getDeclaredFields()) {
+                if (!Modifier.isStatic(campo.getModifiers()) || campo.getType() != String.class
+                        || !campo.getName().startsWith("SQL_")) {
+                    continue;
+                }
+                probadas++;
+                try (PreparedStatement ps = con.prepareStatement(sql(servlet, campo.getName()))) {
+                    // H2 resuelve tablas y columnas al preparar.
+                } catch (SQLException ex) {
+                    fallidas.add(servlet.getSimpleName() + "." + campo.getName() + ": " + ex.getMessage());
+                }
+            }
+        }
+        assertTrue(probadas > 0);
+        if (!fallidas.isEmpty()) {
+            fail(fallidas.toString());
+        }
+    }
+
+    @Test
+    public void filasPorIdDevuelvenLosDatosIniciales() throws Exception {
+        assertEquals(Arrays.asList(1), ids(sql(DiagramasServlet.class, "SQL_DIAGRAMA"), 1));
+        assertEquals(Arrays.asList(1), ids(sql(DiagramaCambiosServlet.class, "SQL_DIAGRAMA"), 1));
+        assertEquals(Arrays.asList(4), ids(sql(ElementosServlet.class, "SQL_ELEMENTO"), 4));
+        assertEquals(Arrays.asList(5), ids(sql(ConexionesServlet.class, "SQL_CONEXION"), 5));
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7), ids(sql(DiagramaCambiosServlet.class, "SQL_ELEMENTOS"), 1));
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), ids(sql(DiagramaCambiosServlet.class, "SQL_CONEXIONES"), 1));
+    }
+
+    @Test
+    public void actualizarRespetaLaVersion() throws Exception {
+        String actualizar = sql(ElementosServlet.class, "SQL_ACTUALIZAR");
+        // Sin version no se verifica; con la version actual aplica; con una vieja no.
+        assertEquals(1, actualizarElemento(actualizar, 4, null));
+        assertEquals(1, actualizarElemento(actualizar, 4, Integer.valueOf(1)));
+        assertEquals(0, actualizarElemento(actualizar, 4, Integer.valueOf(1)));
+        assertEquals(2, contar("SELECT version FROM elementos_diagrama WHERE id_elemento = 4"));
+    }
+
+    @Test
+    public void cambiosIncluyenActualizadosYBorrados() throws Exception {
+        con.setAutoCommit(false);
+        long secuencia = OperacionesDiagrama.reservar(con, 1, 3);
+        assertEquals(1, secuencia);
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("UPDATE elementos_diagrama SET etiqueta = 'Editar', version = version + 1 "
+                    + "WHERE id_elemento = 4");
+            st.executeUpdate("DELETE FROM elementos_diagrama WHERE id_elemento = 5");
+        }
+        OperacionesDiagrama.registrar(con, Integer.valueOf(1), Arrays.asList(
+                new OperacionesDiagrama.Operacion(1, secuencia, OperacionesDiagrama.ELEMENTO,
+                        OperacionesDiagrama.ACTUALIZAR, 4, null),
+                new OperacionesDiagrama.Operacion(1, secuencia + 1, OperacionesDiagrama.CONEXION,
+                        OperacionesDiagrama.BORRAR, 3, null),
+                new OperacionesDiagrama.Operacion(1, secuencia + 2, OperacionesDiagrama.ELEMENTO,
+                        OperacionesDiagrama.BORRAR, 5, null)));
+        con.commit();
+        con.setAutoCommit(true);
+
+        assertEquals(3, OperacionesDiagrama.ultimaSecuencia(con, 1));
+        assertEquals(Arrays.asList(4), ids(sql(DiagramaCambiosServlet.class, "SQL_ELEMENTOS_CAMBIADOS"), 1, 1, 0));
+        assertEquals(Arrays.asList(), ids(sql(DiagramaCambiosServlet.class, "SQL_CONEXIONES_CAMBIADAS"), 1, 1, 0));
+        assertEquals(Arrays.asList(5), ids(sql(DiagramaCambiosServlet.class, "SQL_ELEMENTOS_BORRADOS"), 1, 0));
+        assertEquals(Arrays.asList(3), ids(sql(DiagramaCambiosServlet.class, "SQL_CONEXIONES_BORRADAS"), 1, 0));
+        // Desde la ultima secuencia ya no hay cambios.
+        assertEquals(Arrays.asList(), ids(sql(DiagramaCambiosServlet.class, "SQL_ELEMENTOS_BORRADOS"), 1, 3));
+    }
+
+    @Test
+    public void borrarElementoSueltaHijosYBorraConexiones() throws Exception {
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("UPDATE elementos_diagrama SET id_elemento_padre = 2 WHERE id_elemento IN (3, 4)");
+        }
+        assertEquals(Arrays.asList(3, 4), ids(sql(ElementosServlet.class, "SQL_HIJOS"), 1, 2));
+        assertEquals(Arrays.asList(2, 5), ids(sql(ElementosServlet.class, "SQL_CONEXIONES_DEL_ELEMENTO"), 1, 4, 4));
+        try (PreparedStatement ps = con.prepareStatement(sql(ElementosServlet.class, "SQL_SOLTAR_HIJOS"))) {
+            ps.setInt(1, 1);
+            ps.setInt(2, 2);
+            assertEquals(2, ps.executeUpdate());
+        }
+        assertEquals(Arrays.asList(), ids(sql(ElementosServlet.class, "SQL_HIJOS"), 1, 2));
+    }
+
+    /**
+     * @param servlet clase que declara la constante.
+     * @param nombre nombre de la constante.
+     * @return SQL de la constante.
+     */
+    private static String sql(Class<?> servlet, String nombre) throws Exception {
+        Field campo = servlet.getDeclaredField(nombre);
+        campo.setAccessible(true);
+        return (String) campo.get(null);
+    }
+
+    /**
+     * @param sql consulta cuyo primer campo es un id.
+     * @param parametros parametros enteros en orden.
+     * @return ids devueltos.
+     */
+    private List<Integer> ids(String sql, int... parametros) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int i = 0; i < parametros.length; i++) {
+                ps.setInt(i + 1, parametros[i]);
+            }
+            List<Integer> ids = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * @param sql consulta de un solo valor entero.
+     * @return valor devuelto.
+     */
+    private int contar(String sql) throws SQLException {
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Enlaza los parametros como ElementosServlet.bindActualizacion.
+     *
+     * @param actualizar SQL_ACTUALIZAR.
+     * @param id_elemento elemento del diagrama 1.
+     * @param version version esperada (null = sin verificar).
+     * @return filas actualizadas.
+     */
+    private int actualizarElemento(String actualizar, int id_elemento, Integer version) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(actualizar)) {
+            ps.setInt(1, 1);
+            ps.setNull(2, Types.INTEGER);
+            ps.setString(3, "CASO_DE_USO");
+            ps.setString(4, "Editar diagrama");
+            ps.setInt(5, 260);
+            ps.setInt(6, 260);
+            ps.setInt(7, 220);
+            ps.setInt(8, 70);
+            ps.setBigDecimal(9, new BigDecimal("0.00"));
+            ps.setInt(10, 10);
+            ps.setString(11, "{\"color\":\"#fff\"}");
+            ps.setNull(12, Types.LONGVARCHAR);
+            ps.setInt(13, id_elemento);
+            if (version == null) {
+                ps.setNull(14, Types.INTEGER);
+            } else {
+                ps.setInt(14, version.intValue());
+            }
+            return ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package API;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reconciliador de almacenamiento contra H2 (perfil embebida): cursores por
+ * keyset con LIMIT, revalidacion con SELECT ... LIMIT 1 FOR UPDATE y LIKE de
+ * variantes, y expiracion de subidas desde la pasada periodica.
+ *
+ */
+public class HuerfanosServiceTest {
+    private static final byte[] CONTENIDO = "contenido".getBytes(StandardCharsets.UTF_8);
+
+    private long antiguo;
+
+    @Before
+    public void reiniciar() throws Exception {
+        PruebasEmbebida.reiniciar();
+        antiguo = System.currentTimeMillis() - HuerfanosService.GRACIA_MS - 60000;
+    }
+
+    @Test
+    public void borraSoloObjetosSinFilaFueraDeLaGracia() throws Exception {
+        String referenciado = (String) PruebasEmbebida.registrarArchivo(
+                PruebasEmbebida.ADMIN, "IMAGEN", "jpg", CONTENIDO)[1];
+        PruebasEmbebida.storage().archivoLocal(referenciado).setLastModified(antiguo);
+        String variante = MiniaturasService.base(referenciado) + ".w" + MiniaturasService.ANCHOS[0] + ".jpg";
+        PruebasEmbebida.guardarObjeto(variante, CONTENIDO, antiguo);
+        String huerfano = "uploads/00/00/huerfano.jpg";
+        PruebasEmbebida.guardarObjeto(huerfano, CONTENIDO, antiguo);
+        String variante_huerfana = "uploads/00/00/huerfano.w" + MiniaturasService.ANCHOS[0] + ".jpg";
+        PruebasEmbebida.guardarObjeto(variante_huerfana, CONTENIDO, antiguo);
+        String reciente = "uploads/00/01/reciente.jpg";
+        PruebasEmbebida.guardarObjeto(reciente, CONTENIDO, System.currentTimeMillis());
+        // Fila de legado cuyo objeto ya no esta.
+        PruebasEmbebida.ejecutar("INSERT INTO archivos_multimedia (id_usuario, tipo_media, tamano_bytes, ruta_archivo) "
+                + "VALUES (?, 'IMAGEN', 1, 'uploads/zz/faltante.jpg')", PruebasEmbebida.ADMIN);
+
+        HuerfanosService.Reporte reporte = HuerfanosService.ejecutar(PruebasEmbebida.storage());
+        assertNull(reporte.error);
+        assertEquals(5, reporte.objetos_revisados);
+        assertEquals(2, reporte.huerfanos);
+        assertEquals(2, reporte.borrados);
+        assertEquals(1, reporte.recientes);
+        assertEquals(1, reporte.faltantes);
+
+        MediaStorage storage = PruebasEmbebida.storage();
+        assertNotNull(storage.info(referenciado));
+        assertNotNull(storage.info(variante));
+        assertNotNull(storage.info(reciente));
+        assertNull(storage.info(huerfano));
+        assertNull(storage.info(variante_huerfana));
+    }
+
+    @Test
+    public void conservaObjetosConFilaSoloEnArchivos() throws Exception {
+        String legado = "uploads/legado.mp3";
+        PruebasEmbebida.guardarObjeto(legado, CONTENIDO, antiguo);
+        PruebasEmbebida.ejecutar("INSERT INTO archivos_multimedia (id_usuario, tipo_media, tamano_bytes, ruta_archivo) "
+                + "VALUES (?, 'AUDIO', ?, ?)", PruebasEmbebida.ADMIN, CONTENIDO.length, legado);
+
+        HuerfanosService.Reporte reporte = HuerfanosService.ejecutar(PruebasEmbebida.storage());
+        assertNull(reporte.error);
+        assertEquals(0, reporte.huerfanos);
+        assertNotNull(PruebasEmbebida.storage().info(legado));
+    }
+
+    @Test
+    public void expiraSubidasVencidas() throws Exception {
+        PruebasEmbebida.ejecutar("INSERT INTO subidas_multimedia (id_subida, id_usuario, tipo_media, extension, "
+                + "tamano_bytes, fecha_creacion) VALUES ('0123456789abcdef0123456789abcdef', ?, 'AUDIO', 'mp3', 10, ?)",
+                PruebasEmbebida.ADMIN, new Timestamp(System.currentTimeMillis() - SubidasServlet.TTL_MS - 60000));
+
+        HuerfanosService.Reporte reporte = HuerfanosService.ejecutar(PruebasEmbebida.storage());
+        assertNull(reporte.error);
+        assertEquals(1, reporte.subidas_vencidas);
+        assertEquals(0, PruebasEmbebida.valor("SELECT COUNT(*) FROM subidas_multimedia"));
+    }
+}
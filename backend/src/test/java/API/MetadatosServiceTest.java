@@ -0,0 +1,42 @@
+package API;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.imageio.ImageIO;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Backfill de metadatos contra H2 (perfil embebida): lectura por keyset de
+ * las filas incompletas y UPDATE con COALESCE que conserva lo no extraido.
+ *
+ */
+public class MetadatosServiceTest {
+    @Before
+    public void reiniciar() throws Exception {
+        PruebasEmbebida.reiniciar();
+    }
+
+    @Test
+    public void backfillCompletaSoloLoQueExtrae() throws Exception {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(32, 16, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+        Integer imagen = (Integer) PruebasEmbebida.registrarArchivo(
+                PruebasEmbebida.ADMIN, "IMAGEN", "jpg", jpeg.toByteArray())[0];
+        // El alto declarado por el cliente se reemplaza por el leido del archivo.
+        PruebasEmbebida.ejecutar("UPDATE archivos_multimedia SET alto = 5 WHERE id_archivo = ?", imagen);
+        // Cabecera MP3 invalida: no se extrae nada y la fila no cambia.
+        Integer audio = (Integer) PruebasEmbebida.registrarArchivo(PruebasEmbebida.ADMIN, "AUDIO", "mp3",
+                "no es mp3".getBytes(StandardCharsets.UTF_8))[0];
+
+        MetadatosService.backfill(PruebasEmbebida.storage());
+
+        assertEquals(32, PruebasEmbebida.valor("SELECT ancho FROM archivos_multimedia WHERE id_archivo = ?", imagen));
+        assertEquals(16, PruebasEmbebida.valor("SELECT alto FROM archivos_multimedia WHERE id_archivo = ?", imagen));
+        assertEquals(1, PruebasEmbebida.valor("SELECT COUNT(*) FROM archivos_multimedia "
+                + "WHERE id_archivo = ? AND duracion_segundos IS NULL", audio));
+    }
+}
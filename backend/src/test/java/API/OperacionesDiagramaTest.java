@@ -0,0 +1,118 @@
+package API;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Registro de operaciones y compactacion contra H2 (perfil embebida): la
+ * lectura del snapshot en REPEATABLE READ, el reemplazo bajo FOR UPDATE y el
+ * recorte de las operaciones cubiertas por el snapshot anterior.
+ *
+ */
+public class OperacionesDiagramaTest {
+    private static final int DIAGRAMA = 1;
+
+    @Before
+    public void reiniciar() throws Exception {
+        PruebasEmbebida.reiniciar();
+    }
+
+    @Test
+    public void compactarConservaElTramoDesdeElSnapshotAnterior() throws Exception {
+        registrar(3);
+        OperacionesDiagrama.compactarDiagrama(DIAGRAMA);
+        OperacionesDiagrama.Snapshot snapshot = snapshot();
+        assertEquals(3, snapshot.secuencia);
+        assertEquals(0, snapshot.desde_secuencia);
+        assertEquals(3, operaciones());
+
+        registrar(2);
+        OperacionesDiagrama.compactarDiagrama(DIAGRAMA);
+        snapshot = snapshot();
+        assertEquals(5, snapshot.secuencia);
+        assertEquals(3, snapshot.desde_secuencia);
+        // Solo quedan las posteriores al snapshot anterior.
+        assertEquals(2, operaciones());
+        assertEquals(4, PruebasEmbebida.valor(
+                "SELECT MIN(secuencia) FROM operaciones_diagrama WHERE id_diagrama = ?", DIAGRAMA));
+
+        JsonObject contenido = leer(snapshot.contenido_json);
+        assertEquals(PruebasEmbebida.valor("SELECT COUNT(*) FROM elementos_diagrama WHERE id_diagrama = ?", DIAGRAMA),
+                contenido.getJsonArray("elementos").size());
+        assertEquals(PruebasEmbebida.valor("SELECT COUNT(*) FROM conexiones_diagrama WHERE id_diagrama = ?",
+                DIAGRAMA), contenido.getJsonArray("conexiones").size());
+    }
+
+    @Test
+    public void compactarSinOperacionesNuevasNoCambiaNada() throws Exception {
+        registrar(2);
+        OperacionesDiagrama.compactarDiagrama(DIAGRAMA);
+        OperacionesDiagrama.compactarDiagrama(DIAGRAMA);
+        OperacionesDiagrama.Snapshot snapshot = snapshot();
+        assertEquals(2, snapshot.secuencia);
+        assertEquals(0, snapshot.desde_secuencia);
+        assertEquals(2, operaciones());
+    }
+
+    @Test
+    public void pasadaIgnoraDiagramasBajoElUmbral() throws Exception {
+        registrar(1);
+        assertEquals(0, OperacionesDiagrama.compactar());
+        assertNull(snapshot());
+        try (Connection con = DB.getConnection()) {
+            assertEquals(1, OperacionesDiagrama.ultimaSecuencia(con, DIAGRAMA));
+        }
+    }
+
+    /**
+     * Registra cambios de etiqueta del elemento 4 como lo hacen los servlets.
+     *
+     * @param cantidad operaciones.
+     */
+    private void registrar(int cantidad) throws Exception {
+        try (Connection con = DB.getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                long secuencia = OperacionesDiagrama.reservar(con, DIAGRAMA, cantidad);
+                List<OperacionesDiagrama.Operacion> operaciones = new ArrayList<>();
+                for (int i = 0; i < cantidad; i++) {
+                    operaciones.add(new OperacionesDiagrama.Operacion(DIAGRAMA, secuencia + i,
+                            OperacionesDiagrama.ELEMENTO, OperacionesDiagrama.ACTUALIZAR, 4,
+                            Json.createObjectBuilder().add("etiqueta", "Cambio " + (secuencia + i)).build()));
+                }
+                OperacionesDiagrama.registrar(con, Integer.valueOf(PruebasEmbebida.ADMIN), operaciones);
+                con.commit();
+            } finally {
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    private OperacionesDiagrama.Snapshot snapshot() throws Exception {
+        try (Connection con = DB.getConnection()) {
+            return OperacionesDiagrama.snapshot(con, DIAGRAMA);
+        }
+    }
+
+    private long operaciones() throws Exception {
+        return PruebasEmbebida.valor("SELECT COUNT(*) FROM operaciones_diagrama WHERE id_diagrama = ?", DIAGRAMA);
+    }
+
+    private static JsonObject leer(String json) {
+        assertNotNull(json);
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+}
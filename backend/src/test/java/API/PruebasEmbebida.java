@@ -0,0 +1,416 @@
+package API;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Apoyo de las pruebas que corren contra la base de {@link DB} (db.url del
+ * perfil embebida: H2 en memoria en modo MySQL) y el almacenamiento local de
+ * storage.dir, para ejecutar el SQL de produccion tal cual.
+ *
+ * Los servlets se invocan con request/response simulados por proxies que solo
+ * implementan lo que usan: ruta, metodo, parametros, body, atributos de
+ * autenticacion (como los deja AuthFilter) y el body de la respuesta.
+ *
+ */
+final class PruebasEmbebida {
+    // Usuario administrador de los datos iniciales de basededatos.sql.
+    static final int ADMIN = 1;
+
+    private PruebasEmbebida() {
+    }
+
+    /**
+     * Respuesta capturada de un servlet.
+     */
+    static final class Respuesta {
+        int status = HttpServletResponse.SC_OK;
+        final ByteArrayOutputStream cuerpo = new ByteArrayOutputStream();
+
+        /**
+         * @return body como objeto JSON.
+         */
+        JsonObject json() {
+            try (JsonReader reader = Json.createReader(new StringReader(texto()))) {
+                return reader.readObject();
+            }
+        }
+
+        /**
+         * @return body como texto UTF-8.
+         */
+        String texto() {
+            return new String(cuerpo.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Deja la base como recien instalada (esquema y datos iniciales) y vacia
+     * el almacenamiento.
+     *
+     * @throws Exception si falla el esquema.
+     */
+    static void reiniciar() throws Exception {
+        try (Connection con = DB.getConnection(); Statement st = con.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+            EsquemaEmbebido.inicializar(con);
+        }
+        borrar(new File(DB.getValue("STORAGE_DIR", "storage.dir", null)));
+    }
+
+    /**
+     * @return almacenamiento compartido de los servlets.
+     */
+    static MediaStorage storage() {
+        return ArchivosService.storage(contexto());
+    }
+
+    /**
+     * Inicializa un servlet con un contexto vacio.
+     *
+     * @param servlet servlet nuevo.
+     * @param <T> tipo del servlet.
+     * @return el mismo servlet.
+     * @throws Exception si falla init.
+     */
+    static <T extends HttpServlet> T iniciar(T servlet) throws Exception {
+        final ServletContext context = contexto();
+        servlet.init((ServletConfig) proxy(ServletConfig.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getServletContext".equals(method.getName())) {
+                    return context;
+                }
+                return vacio(method);
+            }
+        }));
+        return servlet;
+    }
+
+    /**
+     * Ejecuta un request como el administrador.
+     *
+     * @param servlet servlet inicializado.
+     * @param metodo metodo HTTP.
+     * @param ruta servlet path (por ejemplo /api/archivos/subidas).
+     * @param cuerpo body del request (puede ser null).
+     * @param parametros pares nombre, valor de la query.
+     * @return respuesta capturada.
+     * @throws Exception si el servlet lanza.
+     */
+    static Respuesta llamar(HttpServlet servlet, final String metodo, final String ruta, byte[] cuerpo,
+            String... parametros) throws Exception {
+        final Map<String, String> query = new HashMap<>();
+        for (int i = 0; i + 1 < parametros.length; i += 2) {
+            query.put(parametros[i], parametros[i + 1]);
+        }
+        final Map<String, Object> atributos = new HashMap<>();
+        atributos.put("id_usuario", Integer.valueOf(ADMIN));
+        atributos.put("id_rol", Integer.valueOf(ADMIN));
+        final InputStream entrada = new ByteArrayInputStream(cuerpo == null ? new byte[0] : cuerpo);
+        HttpServletRequest request = (HttpServletRequest) proxy(HttpServletRequest.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getMethod":
+                        return metodo;
+                    case "getServletPath":
+                    case "getRequestURI":
+                        return ruta;
+                    case "getContextPath":
+                        return "";
+                    case "getProtocol":
+                        return "HTTP/1.1";
+                    case "getParameter":
+                        return query.get(args[0]);
+                    case "getAttribute":
+                        return atributos.get(args[0]);
+                    case "setAttribute":
+                        atributos.put((String) args[0], args[1]);
+                        return null;
+                    case "removeAttribute":
+                        atributos.remove(args[0]);
+                        return null;
+                    case "getInputStream":
+                        return entrada(entrada);
+                    case "getDateHeader":
+                        return Long.valueOf(-1);
+                    default:
+                        return vacio(method);
+                }
+            }
+        });
+        final Respuesta respuesta = new Respuesta();
+        HttpServletResponse response = (HttpServletResponse) proxy(HttpServletResponse.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "setStatus":
+                    case "sendError":
+                        respuesta.status = ((Integer) args[0]).intValue();
+                        return null;
+                    case "getStatus":
+                        return Integer.valueOf(respuesta.status);
+                    case "getOutputStream":
+                        return salida(respuesta.cuerpo);
+                    case "resetBuffer":
+                    case "reset":
+                        respuesta.cuerpo.reset();
+                        return null;
+                    default:
+                        return vacio(method);
+                }
+            }
+        });
+        servlet.service(request, response);
+        return respuesta;
+    }
+
+    /**
+     * @param texto JSON del body.
+     * @return bytes UTF-8.
+     */
+    static byte[] json(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Registra un archivo como lo hace una subida: guarda el blob antes de
+     * la transaccion y en ella suma la referencia e inserta la fila.
+     *
+     * @param id_usuario propietario.
+     * @param tipo_media IMAGEN, AUDIO o VIDEO.
+     * @param extension extension valida para el tipo.
+     * @param contenido bytes del archivo.
+     * @return {id_archivo, ruta_archivo}.
+     * @throws Exception si falla el guardado o la BD.
+     */
+    static Object[] registrarArchivo(int id_usuario, String tipo_media, String extension, byte[] contenido)
+            throws Exception {
+        MediaStorage storage = storage();
+        File dir = storage.temporales();
+        dir.mkdirs();
+        ArchivosService.Blob blob = ArchivosService.recibirBlob(new ByteArrayInputStream(contenido), dir);
+        try {
+            ArchivosService.precargarBlob(storage, blob, extension);
+            try (Connection con = DB.getConnection()) {
+                con.setAutoCommit(false);
+                try {
+                    String ruta_archivo = ArchivosService.registrarBlob(con, storage, blob, extension);
+                    Integer id_archivo = ArchivosService.insertArchivo(con, id_usuario, tipo_media, null, null,
+                            blob.tamano_bytes, null, null, null, ruta_archivo);
+                    con.commit();
+                    return new Object[] {id_archivo, ruta_archivo};
+                } catch (Exception ex) {
+                    con.rollback();
+                    throw ex;
+                } finally {
+                    con.setAutoCommit(true);
+                }
+            }
+        } finally {
+            blob.temporal.delete();
+        }
+    }
+
+    /**
+     * Escribe un objeto directo en el almacenamiento.
+     *
+     * @param clave clave del objeto.
+     * @param contenido bytes.
+     * @param modificado fecha de modificacion (epoch ms).
+     * @throws IOException si falla la escritura.
+     */
+    static void guardarObjeto(String clave, byte[] contenido, long modificado) throws IOException {
+        MediaStorage storage = storage();
+        File temporal = File.createTempFile("objeto", ".tmp");
+        try {
+            Files.write(temporal.toPath(), contenido);
+            storage.guardar(clave, temporal);
+        } finally {
+            temporal.delete();
+        }
+        storage.archivoLocal(clave).setLastModified(modificado);
+    }
+
+    /**
+     * @param sql consulta de un solo valor numerico.
+     * @param parametros parametros en orden.
+     * @return valor devuelto (0 si no hay fila).
+     * @throws SQLException si falla la consulta.
+     */
+    static long valor(String sql, Object... parametros) throws SQLException {
+        try (Connection con = DB.getConnection(); PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int i = 0; i < parametros.length; i++) {
+                ps.setObject(i + 1, parametros[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * @param sql sentencia de escritura.
+     * @param parametros parametros en orden.
+     * @return filas afectadas.
+     * @throws SQLException si falla la sentencia.
+     */
+    static int ejecutar(String sql, Object... parametros) throws SQLException {
+        try (Connection con = DB.getConnection(); PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int i = 0; i < parametros.length; i++) {
+                ps.setObject(i + 1, parametros[i]);
+            }
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * @return contexto sin carpeta real (el almacenamiento usa storage.dir).
+     */
+    private static ServletContext contexto() {
+        return (ServletContext) proxy(ServletContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return vacio(method);
+            }
+        });
+    }
+
+    /**
+     * @param tipo interfaz a simular.
+     * @param handler implementacion.
+     * @return proxy de la interfaz.
+     */
+    private static Object proxy(Class<?> tipo, InvocationHandler handler) {
+        return Proxy.newProxyInstance(PruebasEmbebida.class.getClassLoader(), new Class<?>[] {tipo}, handler);
+    }
+
+    /**
+     * @param method metodo no simulado.
+     * @return valor neutro de su tipo de retorno.
+     */
+    private static Object vacio(Method method) {
+        Class<?> tipo = method.getReturnType();
+        if (tipo == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (tipo == int.class) {
+            return Integer.valueOf(0);
+        }
+        if (tipo == long.class) {
+            return Long.valueOf(0);
+        }
+        if (tipo == Enumeration.class) {
+            return Collections.emptyEnumeration();
+        }
+        return null;
+    }
+
+    /**
+     * @param in contenido del body.
+     * @return stream del request.
+     */
+    private static ServletInputStream entrada(final InputStream in) {
+        return new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in.read(b, off, len);
+            }
+
+            @Override
+            public boolean isFinished() {
+                return false;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener listener) {
+            }
+        };
+    }
+
+    /**
+     * @param out destino del body.
+     * @return stream de la respuesta.
+     */
+    private static ServletOutputStream salida(final ByteArrayOutputStream out) {
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+    }
+
+    /**
+     * Borra el contenido de una carpeta (la carpeta se conserva).
+     *
+     * @param dir carpeta.
+     */
+    private static void borrar(File dir) {
+        File[] hijos = dir.listFiles();
+        if (hijos == null) {
+            return;
+        }
+        for (File hijo : hijos) {
+            if (hijo.isDirectory()) {
+                borrar(hijo);
+            }
+            hijo.delete();
+        }
+    }
+}
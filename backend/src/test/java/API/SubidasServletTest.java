@@ -0,0 +1,174 @@
+package API;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Subidas reanudables contra H2 (perfil embebida): alta con limites,
+ * fragmentos reenviados (ON DUPLICATE KEY UPDATE ... GREATEST), finalizacion
+ * con blob deduplicado y limpieza de sesiones vencidas.
+ *
+ */
+public class SubidasServletTest {
+    private static final String RUTA = "/api/archivos/subidas";
+    private static final byte[] CONTENIDO = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    private SubidasServlet servlet;
+
+    @Before
+    public void reiniciar() throws Exception {
+        PruebasEmbebida.reiniciar();
+        servlet = PruebasEmbebida.iniciar(new SubidasServlet());
+    }
+
+    @Test
+    public void fragmentosReenviadosAmplianElRango() throws Exception {
+        String id_subida = crear(CONTENIDO.length);
+        assertEquals(200, escribir(id_subida, 0, Arrays.copyOfRange(CONTENIDO, 0, 4)).status);
+        // Reintento del mismo offset con mas datos: el rango crece, no se duplica.
+        assertEquals(200, escribir(id_subida, 0, Arrays.copyOfRange(CONTENIDO, 0, 6)).status);
+        assertEquals(6, PruebasEmbebida.valor("SELECT fin FROM subidas_fragmentos WHERE id_subida = ?", id_subida));
+        // Un reintento mas corto no lo reduce.
+        assertEquals(200, escribir(id_subida, 0, Arrays.copyOfRange(CONTENIDO, 0, 2)).status);
+        assertEquals(6, PruebasEmbebida.valor("SELECT fin FROM subidas_fragmentos WHERE id_subida = ?", id_subida));
+        assertFalse(estado(id_subida).getBoolean("completo"));
+
+        assertEquals(200, escribir(id_subida, 4, Arrays.copyOfRange(CONTENIDO, 4, 10)).status);
+        JsonObject estado = estado(id_subida);
+        assertTrue(estado.getBoolean("completo"));
+        assertEquals(10, estado.getJsonNumber("bytes_recibidos").longValue());
+        JsonArray rangos = estado.getJsonArray("rangos");
+        assertEquals(1, rangos.size());
+    }
+
+    @Test
+    public void finalizarGuardaUnBlobDeduplicado() throws Exception {
+        JsonObject primero = subir();
+        JsonObject segundo = subir();
+        String ruta_archivo = primero.getString("ruta_archivo");
+        assertEquals(ruta_archivo, segundo.getString("ruta_archivo"));
+        assertEquals(2, PruebasEmbebida.valor(
+                "SELECT referencias FROM blobs_multimedia WHERE ruta_archivo = ?", ruta_archivo));
+        assertEquals(2, PruebasEmbebida.valor(
+                "SELECT COUNT(*) FROM archivos_multimedia WHERE ruta_archivo = ?", ruta_archivo));
+        assertEquals(0, PruebasEmbebida.valor("SELECT COUNT(*) FROM subidas_multimedia"));
+        assertEquals(0, PruebasEmbebida.valor("SELECT COUNT(*) FROM subidas_fragmentos"));
+        try (InputStream in = PruebasEmbebida.storage().abrir(ruta_archivo, 0, CONTENIDO.length)) {
+            byte[] leido = new byte[CONTENIDO.length];
+            int total = 0;
+            int n;
+            while (total < leido.length && (n = in.read(leido, total, leido.length - total)) > 0) {
+                total += n;
+            }
+            assertArrayEquals(CONTENIDO, leido);
+        }
+    }
+
+    @Test
+    public void finalizarIncompletoResponde409() throws Exception {
+        String id_subida = crear(CONTENIDO.length);
+        escribir(id_subida, 0, Arrays.copyOfRange(CONTENIDO, 0, 4));
+        assertEquals(409, finalizar(id_subida).status);
+        assertEquals(1, PruebasEmbebida.valor("SELECT COUNT(*) FROM subidas_multimedia"));
+    }
+
+    @Test
+    public void limitaLasSesionesAbiertasPorUsuario() throws Exception {
+        for (int i = 0; i < SubidasServlet.MAX_SESIONES_USUARIO; i++) {
+            crear(CONTENIDO.length);
+        }
+        PruebasEmbebida.Respuesta respuesta = PruebasEmbebida.llamar(servlet, "POST", RUTA, alta(CONTENIDO.length));
+        assertEquals(429, respuesta.status);
+        assertEquals("limite_subidas", respuesta.json().getString("mensaje"));
+        assertEquals(SubidasServlet.MAX_SESIONES_USUARIO,
+                PruebasEmbebida.valor("SELECT COUNT(*) FROM subidas_multimedia"));
+    }
+
+    @Test
+    public void limpiarVencidasBorraSesionYParcial() throws Exception {
+        String vencida = crear(CONTENIDO.length);
+        String vigente = crear(CONTENIDO.length);
+        escribir(vencida, 0, Arrays.copyOfRange(CONTENIDO, 0, 4));
+        PruebasEmbebida.ejecutar("UPDATE subidas_multimedia SET fecha_creacion = ?, fecha_actualizacion = NULL "
+                + "WHERE id_subida = ?", new Timestamp(System.currentTimeMillis() - SubidasServlet.TTL_MS - 60000),
+                vencida);
+        File dir = PruebasEmbebida.storage().temporales();
+        assertTrue(new File(dir, vencida + ".part").isFile());
+
+        try (Connection con = DB.getConnection()) {
+            assertEquals(1, SubidasServlet.limpiarVencidas(con, dir));
+        }
+        assertFalse(new File(dir, vencida + ".part").exists());
+        assertTrue(new File(dir, vigente + ".part").isFile());
+        assertEquals(0, PruebasEmbebida.valor("SELECT COUNT(*) FROM subidas_fragmentos WHERE id_subida = ?",
+                vencida));
+        assertEquals(404, estado404(vencida));
+    }
+
+    /**
+     * Sube CONTENIDO completo en dos fragmentos y finaliza.
+     *
+     * @return respuesta de finalizar.
+     */
+    private JsonObject subir() throws Exception {
+        String id_subida = crear(CONTENIDO.length);
+        assertEquals(200, escribir(id_subida, 5, Arrays.copyOfRange(CONTENIDO, 5, 10)).status);
+        assertEquals(200, escribir(id_subida, 0, Arrays.copyOfRange(CONTENIDO, 0, 5)).status);
+        PruebasEmbebida.Respuesta respuesta = finalizar(id_subida);
+        assertEquals(respuesta.texto(), 200, respuesta.status);
+        return respuesta.json();
+    }
+
+    /**
+     * @param tamano_bytes tamanio declarado.
+     * @return id_subida creado.
+     */
+    private String crear(long tamano_bytes) throws Exception {
+        PruebasEmbebida.Respuesta respuesta = PruebasEmbebida.llamar(servlet, "POST", RUTA, alta(tamano_bytes));
+        assertEquals(respuesta.texto(), 200, respuesta.status);
+        return respuesta.json().getString("id_subida");
+    }
+
+    /**
+     * @param tamano_bytes tamanio declarado.
+     * @return body del alta de un audio.
+     */
+    private byte[] alta(long tamano_bytes) {
+        return PruebasEmbebida.json("{\"tipo_media\":\"AUDIO\",\"nombre_archivo\":\"pista.mp3\","
+                + "\"titulo\":\"Pista\",\"tamano_bytes\":" + tamano_bytes + "}");
+    }
+
+    private PruebasEmbebida.Respuesta escribir(String id_subida, long offset, byte[] datos) throws Exception {
+        return PruebasEmbebida.llamar(servlet, "PUT", RUTA, datos, "id_subida", id_subida,
+                "offset", String.valueOf(offset));
+    }
+
+    private JsonObject estado(String id_subida) throws Exception {
+        PruebasEmbebida.Respuesta respuesta = PruebasEmbebida.llamar(servlet, "GET", RUTA, null,
+                "id_subida", id_subida);
+        assertEquals(respuesta.texto(), 200, respuesta.status);
+        return respuesta.json();
+    }
+
+    private int estado404(String id_subida) throws Exception {
+        return PruebasEmbebida.llamar(servlet, "GET", RUTA, null, "id_subida", id_subida).status;
+    }
+
+    private PruebasEmbebida.Respuesta finalizar(String id_subida) throws Exception {
+        return PruebasEmbebida.llamar(servlet, "POST", RUTA + "/finalizar",
+                PruebasEmbebida.json("{\"id_subida\":\"" + id_subida + "\"}"));
+    }
+}
@@ -77,8 +77,23 @@ CREATE TABLE `usuarios` (
 --   - `estado` controla el ciclo de vida (BORRADOR/ACTIVO/ARCHIVADO).
 --   - `ancho_lienzo`/`alto_lienzo` define el tamano del canvas.
 --   - `configuracion_json` guarda preferencias del editor (opcional).
--- Integridad: Al borrar un diagrama se eliminan sus elementos, conexiones
--- y asociaciones multimedia (ON DELETE CASCADE).
+--   - `ultima_secuencia` es la secuencia de la ultima operacion registrada
+--     en `operaciones_diagrama` y sirve de version del diagrama: cada cambio
+--     del diagrama, sus elementos o conexiones la incrementa (y actualiza
+--     `fecha_actualizacion`). En una base existente:
+--     ALTER TABLE `diagramas_uml` ADD `ultima_secuencia`
+--       BIGINT UNSIGNED NOT NULL DEFAULT 0 AFTER `configuracion_json`;
+--     y, si `operaciones_diagrama` ya existia:
+--     ALTER TABLE `operaciones_diagrama` MODIFY `entidad`
+--       ENUM('DIAGRAMA','ELEMENTO','CONEXION') NOT NULL;
+--   - `version` es la version de la fila para control optimista: cada
+--     UPDATE de la cabecera la incrementa y solo aplica si coincide con la
+--     que envio el cliente (los cambios de elementos no la tocan). En una
+--     base existente (igual en `elementos_diagrama` y `conexiones_diagrama`):
+--     ALTER TABLE `diagramas_uml` ADD `version`
+--       INT UNSIGNED NOT NULL DEFAULT 0 AFTER `ultima_secuencia`;
+-- Integridad: Al borrar un diagrama se eliminan sus elementos, conexiones,
+-- operaciones, snapshots y asociaciones multimedia (ON DELETE CASCADE).
 DROP TABLE IF EXISTS `diagramas_uml`;
 CREATE TABLE `diagramas_uml` (
   `id_diagrama`   INT UNSIGNED NOT NULL AUTO_INCREMENT,
@@ -89,6 +104,8 @@ CREATE TABLE `diagramas_uml` (
   `ancho_lienzo`  INT NOT NULL DEFAULT 1280,
   `alto_lienzo`   INT NOT NULL DEFAULT 720,
   `configuracion_json` JSON DEFAULT NULL,
+  `ultima_secuencia` BIGINT UNSIGNED NOT NULL DEFAULT 0,
+  `version`       INT UNSIGNED NOT NULL DEFAULT 0,
   `fecha_creacion` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `fecha_actualizacion` TIMESTAMP NULL DEFAULT NULL ON UPDATE CURRENT_TIMESTAMP,
   PRIMARY KEY (`id_diagrama`),
@@ -116,6 +133,7 @@ CREATE TABLE `diagramas_uml` (
 --   - `pos_x`, `pos_y`, `ancho`, `alto`, `rotacion_grados`, `orden_z`
 --     controlan posicion, tamano y orden visual en el canvas.
 --   - `estilo_json`/`metadatos_json` guardan estilos o datos extendidos.
+--   - `version` se incrementa en cada UPDATE (control optimista).
 -- Integridad:
 --   - Al borrar el diagrama se eliminan los elementos (CASCADE).
 --   - Si se borra un padre, el hijo queda sin padre (SET NULL).
@@ -142,6 +160,7 @@ CREATE TABLE `elementos_diagrama` (
   `orden_z`             INT NOT NULL DEFAULT 0,
   `estilo_json`         JSON DEFAULT NULL,
   `metadatos_json`      JSON DEFAULT NULL,
+  `version`             INT UNSIGNED NOT NULL DEFAULT 0,
   `fecha_creacion`      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `fecha_actualizacion` TIMESTAMP NULL DEFAULT NULL ON UPDATE CURRENT_TIMESTAMP,
   PRIMARY KEY (`id_elemento`),
@@ -171,6 +190,7 @@ CREATE TABLE `elementos_diagrama` (
 --   - `tipo_conexion` define el estilo de linea y flecha en el editor.
 --   - `etiqueta` permite texto (por ejemplo <<include>>).
 --   - `puntos_json`/`estilo_json` permiten rutas y estilos personalizados.
+--   - `version` se incrementa en cada UPDATE (control optimista).
 -- Integridad: Al borrar diagramas o elementos se eliminan conexiones
 -- para evitar referencias colgantes (CASCADE).
 DROP TABLE IF EXISTS `conexiones_diagrama`;
@@ -190,6 +210,7 @@ CREATE TABLE `conexiones_diagrama` (
   `etiqueta`            VARCHAR(255) DEFAULT NULL,
   `puntos_json`         JSON DEFAULT NULL,
   `estilo_json`         JSON DEFAULT NULL,
+  `version`             INT UNSIGNED NOT NULL DEFAULT 0,
   `fecha_creacion`      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `fecha_actualizacion` TIMESTAMP NULL DEFAULT NULL ON UPDATE CURRENT_TIMESTAMP,
   PRIMARY KEY (`id_conexion`),
@@ -210,6 +231,69 @@ CREATE TABLE `conexiones_diagrama` (
     ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_spanish_ci;
 
+-- ---------------------------------------------------------------------
+-- Registro de Operaciones
+-- ---------------------------------------------------------------------
+-- Historial de solo agregado de los cambios del diagrama, sus elementos y
+-- conexiones.
+-- Finalidad: Auditar y reproducir un diagrama y sincronizar clientes de
+-- forma incremental (operaciones con `secuencia` mayor a la conocida).
+-- Conexiones:
+--   - FK `id_diagrama` -> `diagramas_uml.id_diagrama`.
+--   - Sin FK a `id_entidad`: la operacion sobrevive al borrado del
+--     elemento o conexion que describe.
+-- Datos:
+--   - `secuencia` crece por diagrama (`diagramas_uml.ultima_secuencia`) y
+--     se asigna en la misma transaccion que el cambio; puede tener huecos.
+--   - `entidad` DIAGRAMA solo se registra al actualizar la cabecera
+--     (`id_entidad` = `id_diagrama`).
+--   - `datos_json` lleva los campos escritos (GEOMETRIA: solo los
+--     recibidos; BORRAR: NULL). Borrar un elemento implica borrar sus
+--     conexiones y dejar sin padre a sus hijos, como en las FK.
+-- Integridad: ON DELETE CASCADE al borrar el diagrama; el compactador
+-- borra las operaciones ya incluidas en el snapshot anterior.
+DROP TABLE IF EXISTS `operaciones_diagrama`;
+CREATE TABLE `operaciones_diagrama` (
+  `id_diagrama`         INT UNSIGNED NOT NULL,
+  `secuencia`           BIGINT UNSIGNED NOT NULL,
+  `entidad`             ENUM('DIAGRAMA','ELEMENTO','CONEXION') NOT NULL,
+  `accion`              ENUM('CREAR','ACTUALIZAR','GEOMETRIA','BORRAR') NOT NULL,
+  `id_entidad`          INT UNSIGNED NOT NULL,
+  `id_usuario`          INT UNSIGNED DEFAULT NULL,
+  `datos_json`          JSON DEFAULT NULL,
+  `fecha_creacion`      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id_diagrama`, `secuencia`),
+  CONSTRAINT `fk_operaciones_diagrama`
+    FOREIGN KEY (`id_diagrama`) REFERENCES `diagramas_uml` (`id_diagrama`)
+    ON UPDATE CASCADE
+    ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_spanish_ci;
+
+-- Estado compactado de un diagrama (uno por diagrama, el mas reciente).
+-- Finalidad: Punto de partida para reproducir el diagrama sin recorrer
+-- todo el historial; el compactador lo regenera cada OPERACIONES_UMBRAL
+-- operaciones.
+-- Datos:
+--   - `secuencia`: el snapshot refleja el diagrama tras esa operacion.
+--   - `desde_secuencia`: secuencia del snapshot anterior; el registro
+--     conserva completas las operaciones posteriores a ella.
+--   - `contenido_json`: {"elementos":[...],"conexiones":[...]} con el
+--     mismo formato que /api/diagramas/snapshot.
+-- Integridad: ON DELETE CASCADE al borrar el diagrama.
+DROP TABLE IF EXISTS `snapshots_diagrama`;
+CREATE TABLE `snapshots_diagrama` (
+  `id_diagrama`         INT UNSIGNED NOT NULL,
+  `secuencia`           BIGINT UNSIGNED NOT NULL,
+  `desde_secuencia`     BIGINT UNSIGNED NOT NULL DEFAULT 0,
+  `contenido_json`      JSON NOT NULL,
+  `fecha_creacion`      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id_diagrama`),
+  CONSTRAINT `fk_snapshots_diagrama`
+    FOREIGN KEY (`id_diagrama`) REFERENCES `diagramas_uml` (`id_diagrama`)
+    ON UPDATE CASCADE
+    ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_spanish_ci;
+
 -- ---------------------------------------------------------------------
 -- Multimedia (MP3, MP4, JPG)
 -- ---------------------------------------------------------------------
@@ -222,6 +306,10 @@ CREATE TABLE `conexiones_diagrama` (
 --   - Referenciada por `elemento_multimedia` (adjuntos por elemento).
 -- Datos:
 --   - `ruta_archivo` apunta al archivo fisico que sirve el backend.
+--     Collation binaria: el reconciliador de huerfanos la recorre en el
+--     mismo orden que el listado del almacenamiento. En una base existente:
+--     ALTER TABLE `archivos_multimedia` MODIFY `ruta_archivo`
+--       VARCHAR(500) COLLATE utf8mb4_bin NOT NULL;
 --   - `tipo_media` y `ruta_archivo` deben coincidir via CHECK.
 --   - `tamano_bytes`, `duracion_segundos`, `ancho`, `alto` para metadatos.
 -- Integridad: Al borrar el usuario se eliminan sus archivos (CASCADE).
@@ -236,12 +324,13 @@ CREATE TABLE `archivos_multimedia` (
   `duracion_segundos`   DECIMAL(10,2) DEFAULT NULL,
   `ancho`               INT DEFAULT NULL,
   `alto`                INT DEFAULT NULL,
-  `ruta_archivo`        VARCHAR(500) NOT NULL,
+  `ruta_archivo`        VARCHAR(500) COLLATE utf8mb4_bin NOT NULL,
   `fecha_creacion`      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `fecha_actualizacion` TIMESTAMP NULL DEFAULT NULL ON UPDATE CURRENT_TIMESTAMP,
   PRIMARY KEY (`id_archivo`),
   KEY `idx_multimedia_usuario` (`id_usuario`),
   KEY `idx_multimedia_tipo` (`tipo_media`),
+  KEY `idx_multimedia_ruta` (`ruta_archivo`),
   CONSTRAINT `fk_multimedia_usuario`
     FOREIGN KEY (`id_usuario`) REFERENCES `usuarios` (`id_usuario`)
     ON UPDATE CASCADE
@@ -318,6 +407,88 @@ CREATE TABLE `elemento_multimedia` (
     ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_spanish_ci;
 
+-- ---------------------------------------------------------------------
+-- Subidas reanudables (por fragmentos)
+-- ---------------------------------------------------------------------
+-- Sesiones de subida de archivos grandes que se envian en fragmentos.
+-- Finalidad: Permitir reanudar una subida interrumpida y enviar
+-- fragmentos en paralelo; al finalizar se crea el registro en
+-- `archivos_multimedia` y la sesion se elimina.
+-- Conexiones:
+--   - FK `id_usuario` -> `usuarios.id_usuario` (propietario de la subida).
+--   - Referenciada por `subidas_fragmentos` (rangos recibidos).
+-- Datos:
+--   - `id_subida` es un identificador opaco (UUID sin guiones).
+--   - `tamano_bytes` es el tamanio declarado; se verifica al finalizar.
+--   - `fecha_actualizacion` marca la ultima actividad (expiracion).
+-- Integridad: ON DELETE CASCADE al borrar el usuario.
+DROP TABLE IF EXISTS `subidas_multimedia`;
+CREATE TABLE `subidas_multimedia` (
+  `id_subida`           CHAR(32) NOT NULL,
+  `id_usuario`          INT UNSIGNED NOT NULL,
+  `tipo_media`          ENUM('IMAGEN','AUDIO','VIDEO') NOT NULL,
+  `extension`           VARCHAR(10) NOT NULL,
+  `titulo`              VARCHAR(120) DEFAULT NULL,
+  `descripcion`         TEXT DEFAULT NULL,
+  `tamano_bytes`        BIGINT UNSIGNED NOT NULL,
+  `duracion_segundos`   DECIMAL(10,2) DEFAULT NULL,
+  `ancho`               INT DEFAULT NULL,
+  `alto`                INT DEFAULT NULL,
+  `fecha_creacion`      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `fecha_actualizacion` TIMESTAMP NULL DEFAULT NULL ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id_subida`),
+  KEY `idx_subidas_usuario` (`id_usuario`),
+  CONSTRAINT `fk_subidas_usuario`
+    FOREIGN KEY (`id_usuario`) REFERENCES `usuarios` (`id_usuario`)
+    ON UPDATE CASCADE
+    ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_spanish_ci;
+
+-- Rangos de bytes recibidos por sesion de subida.
+-- Datos:
+--   - [`inicio`, `fin`) en bytes; un reintento del mismo offset amplia `fin`.
+-- Integridad: PK (`id_subida`, `inicio`); ON DELETE CASCADE con la sesion.
+DROP TABLE IF EXISTS `subidas_fragmentos`;
+CREATE TABLE `subidas_fragmentos` (
+  `id_subida`           CHAR(32) NOT NULL,
+  `inicio`              BIGINT UNSIGNED NOT NULL,
+  `fin`                 BIGINT UNSIGNED NOT NULL,
+  PRIMARY KEY (`id_subida`, `inicio`),
+  CONSTRAINT `fk_fragmentos_subida`
+    FOREIGN KEY (`id_subida`) REFERENCES `subidas_multimedia` (`id_subida`)
+    ON UPDATE CASCADE
+    ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_spanish_ci;
+
+-- ---------------------------------------------------------------------
+-- Blobs multimedia (almacenamiento deduplicado)
+-- ---------------------------------------------------------------------
+-- Contenido fisico unico en /uploads, direccionado por SHA-256.
+-- Finalidad: Guardar una sola copia de archivos identicos subidos por
+-- distintos usuarios; cada fila de `archivos_multimedia` apunta al blob
+-- con la misma `ruta_archivo`.
+-- Conexiones:
+--   - Sin FK: `archivos_multimedia.ruta_archivo` = `ruta_archivo`.
+-- Datos:
+--   - (`sha256`, `extension`) identifica el blob; la extension forma parte
+--     de la llave para respetar la regla ruta/tipo de `archivos_multimedia`.
+--   - `referencias` cuenta las filas de `archivos_multimedia` que lo usan;
+--     el archivo fisico se borra cuando llega a 0.
+--   - `ruta_archivo` con collation binaria, igual que en `archivos_multimedia`.
+-- Integridad: El contador se mantiene en la misma transaccion que el
+-- alta/baja de `archivos_multimedia` (incluido el borrado de usuarios).
+DROP TABLE IF EXISTS `blobs_multimedia`;
+CREATE TABLE `blobs_multimedia` (
+  `sha256`              CHAR(64) NOT NULL,
+  `extension`           VARCHAR(10) NOT NULL,
+  `ruta_archivo`        VARCHAR(500) COLLATE utf8mb4_bin NOT NULL,
+  `tamano_bytes`        BIGINT UNSIGNED NOT NULL,
+  `referencias`         INT UNSIGNED NOT NULL DEFAULT 0,
+  `fecha_creacion`      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`sha256`, `extension`),
+  UNIQUE KEY `uk_blobs_ruta` (`ruta_archivo`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_spanish_ci;
+
 -- ---------------------------------------------------------------------
 -- Datos Iniciales
 -- ---------------------------------------------------------------------
@@ -0,0 +1,139 @@
+package API;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Random;
+
+/**
+ * Generador de filas sinteticas con la forma de las tablas del esquema.
+ *
+ * Las columnas siguen el orden de los SELECT de cada servlet. Los valores
+ * se generan con semilla fija para que todas las corridas midan los mismos
+ * datos; cerca de un 20% de las columnas opcionales vienen en null.
+ *
+ */
+final class Datos {
+    static final String[] COLUMNAS_ELEMENTOS = {"id_elemento", "id_diagrama", "id_elemento_padre",
+        "tipo_elemento", "etiqueta", "pos_x", "pos_y", "ancho", "alto", "rotacion_grados", "orden_z",
+        "estilo_json", "metadatos_json", "version", "fecha_creacion", "fecha_actualizacion"};
+    static final String[] COLUMNAS_CONEXIONES = {"id_conexion", "id_diagrama", "id_elemento_origen",
+        "id_elemento_destino", "tipo_conexion", "etiqueta", "puntos_json", "estilo_json", "version",
+        "fecha_creacion", "fecha_actualizacion"};
+    static final String[] COLUMNAS_ARCHIVOS = {"id_archivo", "id_usuario", "tipo_media", "titulo",
+        "descripcion", "tamano_bytes", "duracion_segundos", "ancho", "alto", "ruta_archivo", "fecha_creacion",
+        "fecha_actualizacion"};
+
+    private static final String[] TIPOS_ELEMENTO = {"ACTOR", "CASO_USO", "LIMITE_SISTEMA", "NOTA"};
+    private static final String[] TIPOS_CONEXION = {"ASOCIACION", "INCLUDE", "EXTEND", "GENERALIZACION"};
+    private static final String[] TIPOS_MEDIA = {"IMAGEN", "VIDEO", "AUDIO"};
+    private static final String[] ETIQUETAS = {"Usuario", "Administrador", "Iniciar sesion",
+        "Registrar diagrama", "Exportar a PDF", "Validacion \"estricta\"", "Edicion de elementos"};
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private Datos() {
+    }
+
+    /**
+     * @param filas cantidad de filas.
+     * @return filas de elementos_diagrama.
+     */
+    static Object[][] elementos(int filas) {
+        Random random = new Random(42);
+        Object[][] datos = new Object[filas][];
+        for (int i = 0; i < filas; i++) {
+            datos[i] = new Object[] {
+                Integer.valueOf(i + 1),
+                Integer.valueOf(7),
+                opcional(random, Integer.valueOf(random.nextInt(i + 1) + 1)),
+                TIPOS_ELEMENTO[random.nextInt(TIPOS_ELEMENTO.length)],
+                opcional(random, ETIQUETAS[random.nextInt(ETIQUETAS.length)]),
+                Integer.valueOf(random.nextInt(4000)),
+                Integer.valueOf(random.nextInt(3000)),
+                Integer.valueOf(40 + random.nextInt(200)),
+                Integer.valueOf(40 + random.nextInt(120)),
+                BigDecimal.valueOf(random.nextInt(36000), 2),
+                Integer.valueOf(random.nextInt(100)),
+                opcional(random, "{\"color\":\"#" + Integer.toHexString(0x100000 + random.nextInt(0xEFFFFF))
+                        + "\",\"grosor\":" + (1 + random.nextInt(4)) + "}"),
+                opcional(random, "{\"notas\":\"fila " + i + "\"}"),
+                Integer.valueOf(random.nextInt(5)),
+                fecha(random),
+                opcional(random, fecha(random))
+            };
+        }
+        return datos;
+    }
+
+    /**
+     * @param filas cantidad de filas.
+     * @return filas de conexiones_diagrama.
+     */
+    static Object[][] conexiones(int filas) {
+        Random random = new Random(43);
+        Object[][] datos = new Object[filas][];
+        for (int i = 0; i < filas; i++) {
+            datos[i] = new Object[] {
+                Integer.valueOf(i + 1),
+                Integer.valueOf(7),
+                Integer.valueOf(random.nextInt(filas) + 1),
+                Integer.valueOf(random.nextInt(filas) + 1),
+                TIPOS_CONEXION[random.nextInt(TIPOS_CONEXION.length)],
+                opcional(random, ETIQUETAS[random.nextInt(ETIQUETAS.length)]),
+                opcional(random, "[{\"x\":" + random.nextInt(4000) + ",\"y\":" + random.nextInt(3000)
+                        + "},{\"x\":" + random.nextInt(4000) + ",\"y\":" + random.nextInt(3000) + "}]"),
+                opcional(random, "{\"linea\":\"punteada\"}"),
+                Integer.valueOf(random.nextInt(5)),
+                fecha(random),
+                opcional(random, fecha(random))
+            };
+        }
+        return datos;
+    }
+
+    /**
+     * @param filas cantidad de filas.
+     * @return filas de archivos_multimedia.
+     */
+    static Object[][] archivos(int filas) {
+        Random random = new Random(44);
+        Object[][] datos = new Object[filas][];
+        for (int i = 0; i < filas; i++) {
+            String tipo = TIPOS_MEDIA[random.nextInt(TIPOS_MEDIA.length)];
+            boolean imagen = "IMAGEN".equals(tipo);
+            datos[i] = new Object[] {
+                Integer.valueOf(i + 1),
+                Integer.valueOf(3),
+                tipo,
+                opcional(random, "Archivo " + i),
+                opcional(random, ETIQUETAS[random.nextInt(ETIQUETAS.length)]),
+                Long.valueOf(1024L + random.nextInt(50000000)),
+                imagen ? null : BigDecimal.valueOf(random.nextInt(600000), 3),
+                imagen || "VIDEO".equals(tipo) ? Integer.valueOf(320 + random.nextInt(3520)) : null,
+                imagen || "VIDEO".equals(tipo) ? Integer.valueOf(240 + random.nextInt(1920)) : null,
+                "ab/cd/" + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()),
+                fecha(random),
+                opcional(random, fecha(random))
+            };
+        }
+        return datos;
+    }
+
+    /**
+     * @param random generador.
+     * @param valor valor a devolver.
+     * @return valor o null (20%).
+     */
+    private static Object opcional(Random random, Object valor) {
+        return random.nextInt(5) == 0 ? null : valor;
+    }
+
+    /**
+     * @param random generador.
+     * @return fecha dentro de 2024.
+     */
+    private static Timestamp fecha(Random random) {
+        return new Timestamp(1704067200000L + (long) (random.nextDouble() * 31536000000L));
+    }
+}
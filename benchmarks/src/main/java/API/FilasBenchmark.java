@@ -0,0 +1,219 @@
+package API;
+
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.stream.JsonGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark del mapeo de un listado completo de filas a JSON.
+ *
+ * Cada invocacion recorre todas las filas del ResultSet sintetico y escribe
+ * la misma respuesta que el listado del servlet ({"ok":true,"<tabla>":[...]})
+ * en un OutputStream que descarta los bytes:
+ * - arbol: JsonObjectBuilder por fila y toString() final, como antes de
+ *   escribir en streaming.
+ * - streaming: JsonGenerator con el writeX real del servlet.
+ * - streamingPorIndice: igual, pero leyendo columnas por indice.
+ *
+ * Con -prof gc se obtiene ademas la asignacion por operacion.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilasBenchmark {
+    @Param({"elementos", "conexiones", "archivos"})
+    public String tabla;
+
+    @Param({"10", "1000", "100000"})
+    public int filas;
+
+    private Mapeos.Mapeo mapeo;
+    private ResultSetSintetico rs;
+    private final SalidaNula salida = new SalidaNula();
+
+    /**
+     * Genera las filas una sola vez por corrida.
+     */
+    @Setup(Level.Trial)
+    public void preparar() {
+        mapeo = Mapeos.de(tabla);
+        rs = new ResultSetSintetico(mapeo.columnas(), mapeo.filas(filas));
+    }
+
+    /**
+     * @return bytes escritos.
+     * @throws Exception si falla el mapeo.
+     */
+    @Benchmark
+    public long arbol() throws Exception {
+        // Rebobinar es una asignacion; se hace aqui y no con Level.Invocation.
+        rs.beforeFirst();
+        JsonArrayBuilder arreglo = Json.createArrayBuilder();
+        while (rs.next()) {
+            arreglo.add(mapeo.construir(rs));
+        }
+        String json = Json.createObjectBuilder()
+                .add("ok", true)
+                .add(mapeo.arreglo(), arreglo)
+                .build()
+                .toString();
+        salida.reiniciar();
+        salida.write(json.getBytes(StandardCharsets.UTF_8));
+        return salida.bytes;
+    }
+
+    /**
+     * @return bytes escritos.
+     * @throws Exception si falla el mapeo.
+     */
+    @Benchmark
+    public long streaming() throws Exception {
+        rs.beforeFirst();
+        salida.reiniciar();
+        try (JsonGenerator gen = abrir()) {
+            while (rs.next()) {
+                gen.writeStartObject();
+                mapeo.escribir(gen, rs);
+                gen.writeEnd();
+            }
+            cerrar(gen);
+        }
+        return salida.bytes;
+    }
+
+    /**
+     * @return bytes escritos.
+     * @throws Exception si falla el mapeo.
+     */
+    @Benchmark
+    public long streamingPorIndice() throws Exception {
+        rs.beforeFirst();
+        salida.reiniciar();
+        try (JsonGenerator gen = abrir()) {
+            while (rs.next()) {
+                gen.writeStartObject();
+                mapeo.escribirPorIndice(gen, rs);
+                gen.writeEnd();
+            }
+            cerrar(gen);
+        }
+        return salida.bytes;
+    }
+
+    /**
+     * @return generador posicionado dentro del arreglo de la respuesta.
+     */
+    private JsonGenerator abrir() {
+        JsonGenerator gen = Json.createGenerator(salida);
+        gen.writeStartObject();
+        gen.write("ok", true);
+        gen.writeStartArray(mapeo.arreglo());
+        return gen;
+    }
+
+    /**
+     * @param gen generador abierto con {@link #abrir()}.
+     */
+    private void cerrar(JsonGenerator gen) {
+        gen.writeEnd();
+        gen.writeEnd();
+    }
+
+    /**
+     * Salida que solo cuenta bytes, para medir el mapeo y no la red.
+     */
+    static final class SalidaNula extends OutputStream {
+        long bytes;
+
+        void reiniciar() {
+            bytes = 0;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    /**
+     * Verifica que las tres variantes escriben exactamente los mismos bytes.
+     *
+     * @param args no se usan.
+     * @throws Exception si alguna variante difiere.
+     */
+    public static void main(String[] args) throws Exception {
+        for (String nombre : new String[] {"elementos", "conexiones", "archivos"}) {
+            FilasBenchmark benchmark = new FilasBenchmark();
+            benchmark.tabla = nombre;
+            benchmark.filas = 1000;
+            benchmark.preparar();
+            String[] salidas = new String[3];
+            for (int variante = 0; variante < 3; variante++) {
+                benchmark.rs.beforeFirst();
+                salidas[variante] = benchmark.capturar(variante);
+            }
+            if (!salidas[0].equals(salidas[1]) || !salidas[1].equals(salidas[2])) {
+                throw new IllegalStateException("variantes_distintas: " + nombre);
+            }
+            System.out.println(nombre + ": " + salidas[0].length() + " caracteres, variantes identicas");
+        }
+    }
+
+    /**
+     * @param variante 0 arbol, 1 streaming, 2 streamingPorIndice.
+     * @return JSON completo de la variante.
+     * @throws Exception si falla el mapeo.
+     */
+    private String capturar(int variante) throws Exception {
+        if (variante == 0) {
+            JsonArrayBuilder arreglo = Json.createArrayBuilder();
+            while (rs.next()) {
+                arreglo.add(mapeo.construir(rs));
+            }
+            return Json.createObjectBuilder().add("ok", true).add(mapeo.arreglo(), arreglo).build().toString();
+        }
+        StringWriter texto = new StringWriter();
+        try (JsonGenerator gen = Json.createGenerator(texto)) {
+            gen.writeStartObject();
+            gen.write("ok", true);
+            gen.writeStartArray(mapeo.arreglo());
+            while (rs.next()) {
+                gen.writeStartObject();
+                if (variante == 1) {
+                    mapeo.escribir(gen, rs);
+                } else {
+                    mapeo.escribirPorIndice(gen, rs);
+                }
+                gen.writeEnd();
+            }
+            gen.writeEnd();
+            gen.writeEnd();
+        }
+        return texto.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package API;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark de los helpers por campo de {@link JsonUtil}.
+ *
+ * getInt se mide con los casos que llegan en los payloads de elementos:
+ * numero JSON, numero enviado como texto, null y clave ausente. add se
+ * compara contra llamar al builder directamente con un valor no nulo.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonUtilBenchmark {
+    private JsonObject payload;
+    private String etiqueta;
+    private Integer pos_x;
+    private BigDecimal rotacion;
+
+    /**
+     * Parsea el payload de ejemplo una sola vez.
+     */
+    @Setup
+    public void preparar() {
+        String json = "{\"id_elemento\":1234,\"pos_x\":\"456\",\"pos_y\":789,\"etiqueta\":null,"
+                + "\"rotacion_grados\":12.50,\"estilo_json\":\"{\\\"color\\\":\\\"#ff0000\\\"}\"}";
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            payload = reader.readObject();
+        }
+        etiqueta = "Iniciar sesion";
+        pos_x = Integer.valueOf(456);
+        rotacion = new BigDecimal("12.50");
+    }
+
+    /**
+     * @return valor leido de un numero JSON.
+     */
+    @Benchmark
+    public Integer getIntNumero() {
+        return JsonUtil.getInt(payload, "id_elemento");
+    }
+
+    /**
+     * @return valor leido de un numero enviado como texto.
+     */
+    @Benchmark
+    public Integer getIntTexto() {
+        return JsonUtil.getInt(payload, "pos_x");
+    }
+
+    /**
+     * @return null (valor JSON null).
+     */
+    @Benchmark
+    public Integer getIntNulo() {
+        return JsonUtil.getInt(payload, "etiqueta");
+    }
+
+    /**
+     * @return null (clave ausente).
+     */
+    @Benchmark
+    public Integer getIntAusente() {
+        return JsonUtil.getInt(payload, "orden_z");
+    }
+
+    /**
+     * @param bh sumidero de JMH.
+     */
+    @Benchmark
+    public void addJsonUtil(Blackhole bh) {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        JsonUtil.add(builder, "etiqueta", etiqueta);
+        JsonUtil.add(builder, "pos_x", pos_x);
+        JsonUtil.add(builder, "rotacion_grados", rotacion);
+        JsonUtil.add(builder, "estilo_json", (String) null);
+        bh.consume(builder.build());
+    }
+
+    /**
+     * @param bh sumidero de JMH.
+     */
+    @Benchmark
+    public void addDirecto(Blackhole bh) {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        builder.add("etiqueta", etiqueta);
+        builder.add("pos_x", pos_x.intValue());
+        builder.add("rotacion_grados", rotacion);
+        builder.addNull("estilo_json");
+        bh.consume(builder.build());
+    }
+}
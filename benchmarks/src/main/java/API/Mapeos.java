@@ -0,0 +1,332 @@
+package API;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Variantes de mapeo fila -> JSON que comparan los benchmarks.
+ *
+ * Para cada tabla hay tres variantes que producen el mismo JSON:
+ * - construir: arbol con JsonObjectBuilder y JsonUtil.add, como los antiguos
+ *   buildElemento/buildConexion/buildArchivo.
+ * - escribir: el metodo real del servlet (writeElemento, etc.), streaming y
+ *   acceso por nombre de columna.
+ * - escribirPorIndice: el mismo streaming leyendo por indice de columna.
+ *
+ *
+ */
+final class Mapeos {
+    static final String CONTEXT_PATH = "/backend";
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private Mapeos() {
+    }
+
+    /**
+     * Mapeo de una tabla.
+     */
+    interface Mapeo {
+        /**
+         * @return nombre del arreglo en la respuesta (elementos, conexiones, archivos).
+         */
+        String arreglo();
+
+        /**
+         * @return etiquetas de columna en el orden del SELECT.
+         */
+        String[] columnas();
+
+        /**
+         * @param filas cantidad de filas.
+         * @return filas sinteticas.
+         */
+        Object[][] filas(int filas);
+
+        /**
+         * @param rs ResultSet posicionado.
+         * @return objeto construido con JsonObjectBuilder.
+         * @throws Exception si falla la lectura.
+         */
+        JsonObjectBuilder construir(ResultSet rs) throws Exception;
+
+        /**
+         * @param gen generador dentro de un objeto.
+         * @param rs ResultSet posicionado.
+         * @throws Exception si falla la lectura.
+         */
+        void escribir(JsonGenerator gen, ResultSet rs) throws Exception;
+
+        /**
+         * @param gen generador dentro de un objeto.
+         * @param rs ResultSet posicionado.
+         * @throws Exception si falla la lectura.
+         */
+        void escribirPorIndice(JsonGenerator gen, ResultSet rs) throws Exception;
+    }
+
+    /**
+     * @param tabla elementos, conexiones o archivos.
+     * @return mapeo correspondiente.
+     */
+    static Mapeo de(String tabla) {
+        if ("elementos".equals(tabla)) {
+            return new Elementos();
+        }
+        if ("conexiones".equals(tabla)) {
+            return new Conexiones();
+        }
+        if ("archivos".equals(tabla)) {
+            return new Archivos();
+        }
+        throw new IllegalArgumentException("tabla_invalida: " + tabla);
+    }
+
+    /**
+     * elementos_diagrama (ElementosServlet).
+     */
+    static final class Elementos implements Mapeo {
+        @Override
+        public String arreglo() {
+            return "elementos";
+        }
+
+        @Override
+        public String[] columnas() {
+            return Datos.COLUMNAS_ELEMENTOS;
+        }
+
+        @Override
+        public Object[][] filas(int filas) {
+            return Datos.elementos(filas);
+        }
+
+        @Override
+        public JsonObjectBuilder construir(ResultSet rs) throws Exception {
+            JsonObjectBuilder elemento = Json.createObjectBuilder();
+            elemento.add("id_elemento", rs.getInt("id_elemento"));
+            elemento.add("id_diagrama", rs.getInt("id_diagrama"));
+            int padre = rs.getInt("id_elemento_padre");
+            if (rs.wasNull()) {
+                JsonUtil.add(elemento, "id_elemento_padre", (Integer) null);
+            } else {
+                elemento.add("id_elemento_padre", padre);
+            }
+            elemento.add("tipo_elemento", rs.getString("tipo_elemento"));
+            JsonUtil.add(elemento, "etiqueta", rs.getString("etiqueta"));
+            elemento.add("pos_x", rs.getInt("pos_x"));
+            elemento.add("pos_y", rs.getInt("pos_y"));
+            elemento.add("ancho", rs.getInt("ancho"));
+            elemento.add("alto", rs.getInt("alto"));
+            elemento.add("rotacion_grados", rs.getBigDecimal("rotacion_grados"));
+            elemento.add("orden_z", rs.getInt("orden_z"));
+            JsonUtil.add(elemento, "estilo_json", rs.getString("estilo_json"));
+            JsonUtil.add(elemento, "metadatos_json", rs.getString("metadatos_json"));
+            elemento.add("version", rs.getInt("version"));
+            Timestamp creado = rs.getTimestamp("fecha_creacion");
+            Timestamp actualizado = rs.getTimestamp("fecha_actualizacion");
+            JsonUtil.add(elemento, "fecha_creacion", creado == null ? null : creado.toString());
+            JsonUtil.add(elemento, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+            return elemento;
+        }
+
+        @Override
+        public void escribir(JsonGenerator gen, ResultSet rs) throws Exception {
+            ElementosServlet.writeElemento(gen, rs);
+        }
+
+        @Override
+        public void escribirPorIndice(JsonGenerator gen, ResultSet rs) throws Exception {
+            gen.write("id_elemento", rs.getInt(1));
+            gen.write("id_diagrama", rs.getInt(2));
+            int padre = rs.getInt(3);
+            if (rs.wasNull()) {
+                gen.writeNull("id_elemento_padre");
+            } else {
+                gen.write("id_elemento_padre", padre);
+            }
+            gen.write("tipo_elemento", rs.getString(4));
+            JsonUtil.write(gen, "etiqueta", rs.getString(5));
+            gen.write("pos_x", rs.getInt(6));
+            gen.write("pos_y", rs.getInt(7));
+            gen.write("ancho", rs.getInt(8));
+            gen.write("alto", rs.getInt(9));
+            gen.write("rotacion_grados", rs.getBigDecimal(10));
+            gen.write("orden_z", rs.getInt(11));
+            JsonUtil.write(gen, "estilo_json", rs.getString(12));
+            JsonUtil.write(gen, "metadatos_json", rs.getString(13));
+            gen.write("version", rs.getInt(14));
+            Timestamp creado = rs.getTimestamp(15);
+            Timestamp actualizado = rs.getTimestamp(16);
+            JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+            JsonUtil.write(gen, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+        }
+    }
+
+    /**
+     * conexiones_diagrama (ConexionesServlet).
+     */
+    static final class Conexiones implements Mapeo {
+        @Override
+        public String arreglo() {
+            return "conexiones";
+        }
+
+        @Override
+        public String[] columnas() {
+            return Datos.COLUMNAS_CONEXIONES;
+        }
+
+        @Override
+        public Object[][] filas(int filas) {
+            return Datos.conexiones(filas);
+        }
+
+        @Override
+        public JsonObjectBuilder construir(ResultSet rs) throws Exception {
+            JsonObjectBuilder conexion = Json.createObjectBuilder();
+            conexion.add("id_conexion", rs.getInt("id_conexion"));
+            conexion.add("id_diagrama", rs.getInt("id_diagrama"));
+            conexion.add("id_elemento_origen", rs.getInt("id_elemento_origen"));
+            conexion.add("id_elemento_destino", rs.getInt("id_elemento_destino"));
+            conexion.add("tipo_conexion", rs.getString("tipo_conexion"));
+            JsonUtil.add(conexion, "etiqueta", rs.getString("etiqueta"));
+            JsonUtil.add(conexion, "puntos_json", rs.getString("puntos_json"));
+            JsonUtil.add(conexion, "estilo_json", rs.getString("estilo_json"));
+            conexion.add("version", rs.getInt("version"));
+            Timestamp creado = rs.getTimestamp("fecha_creacion");
+            Timestamp actualizado = rs.getTimestamp("fecha_actualizacion");
+            JsonUtil.add(conexion, "fecha_creacion", creado == null ? null : creado.toString());
+            JsonUtil.add(conexion, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+            return conexion;
+        }
+
+        @Override
+        public void escribir(JsonGenerator gen, ResultSet rs) throws Exception {
+            ConexionesServlet.writeConexion(gen, rs);
+        }
+
+        @Override
+        public void escribirPorIndice(JsonGenerator gen, ResultSet rs) throws Exception {
+            gen.write("id_conexion", rs.getInt(1));
+            gen.write("id_diagrama", rs.getInt(2));
+            gen.write("id_elemento_origen", rs.getInt(3));
+            gen.write("id_elemento_destino", rs.getInt(4));
+            gen.write("tipo_conexion", rs.getString(5));
+            JsonUtil.write(gen, "etiqueta", rs.getString(6));
+            JsonUtil.write(gen, "puntos_json", rs.getString(7));
+            JsonUtil.write(gen, "estilo_json", rs.getString(8));
+            gen.write("version", rs.getInt(9));
+            Timestamp creado = rs.getTimestamp(10);
+            Timestamp actualizado = rs.getTimestamp(11);
+            JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+            JsonUtil.write(gen, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+        }
+    }
+
+    /**
+     * archivos_multimedia (ArchivosServlet).
+     */
+    static final class Archivos implements Mapeo {
+        @Override
+        public String arreglo() {
+            return "archivos";
+        }
+
+        @Override
+        public String[] columnas() {
+            return Datos.COLUMNAS_ARCHIVOS;
+        }
+
+        @Override
+        public Object[][] filas(int filas) {
+            return Datos.archivos(filas);
+        }
+
+        @Override
+        public JsonObjectBuilder construir(ResultSet rs) throws Exception {
+            JsonObjectBuilder archivo = Json.createObjectBuilder();
+            archivo.add("id_archivo", rs.getInt("id_archivo"));
+            archivo.add("id_usuario", rs.getInt("id_usuario"));
+            archivo.add("tipo_media", rs.getString("tipo_media"));
+            JsonUtil.add(archivo, "titulo", rs.getString("titulo"));
+            JsonUtil.add(archivo, "descripcion", rs.getString("descripcion"));
+            archivo.add("tamano_bytes", rs.getLong("tamano_bytes"));
+            if (rs.getObject("duracion_segundos") == null) {
+                JsonUtil.add(archivo, "duracion_segundos", (String) null);
+            } else {
+                archivo.add("duracion_segundos", rs.getBigDecimal("duracion_segundos"));
+            }
+            int ancho = rs.getInt("ancho");
+            if (rs.wasNull()) {
+                JsonUtil.add(archivo, "ancho", (Integer) null);
+            } else {
+                archivo.add("ancho", ancho);
+            }
+            int alto = rs.getInt("alto");
+            if (rs.wasNull()) {
+                JsonUtil.add(archivo, "alto", (Integer) null);
+            } else {
+                archivo.add("alto", alto);
+            }
+            String ruta = rs.getString("ruta_archivo");
+            JsonUtil.add(archivo, "ruta_archivo", ruta);
+            if (ruta != null) {
+                archivo.add("url_publica", CONTEXT_PATH + "/api/media?id_archivo=" + rs.getInt("id_archivo"));
+            } else {
+                JsonUtil.add(archivo, "url_publica", (String) null);
+            }
+            Timestamp creado = rs.getTimestamp("fecha_creacion");
+            Timestamp actualizado = rs.getTimestamp("fecha_actualizacion");
+            JsonUtil.add(archivo, "fecha_creacion", creado == null ? null : creado.toString());
+            JsonUtil.add(archivo, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+            return archivo;
+        }
+
+        @Override
+        public void escribir(JsonGenerator gen, ResultSet rs) throws Exception {
+            ArchivosServlet.writeArchivo(gen, rs, CONTEXT_PATH);
+        }
+
+        @Override
+        public void escribirPorIndice(JsonGenerator gen, ResultSet rs) throws Exception {
+            int id_archivo = rs.getInt(1);
+            gen.write("id_archivo", id_archivo);
+            gen.write("id_usuario", rs.getInt(2));
+            gen.write("tipo_media", rs.getString(3));
+            JsonUtil.write(gen, "titulo", rs.getString(4));
+            JsonUtil.write(gen, "descripcion", rs.getString(5));
+            gen.write("tamano_bytes", rs.getLong(6));
+            BigDecimal duracion = rs.getBigDecimal(7);
+            JsonUtil.write(gen, "duracion_segundos", duracion);
+            int ancho = rs.getInt(8);
+            if (rs.wasNull()) {
+                gen.writeNull("ancho");
+            } else {
+                gen.write("ancho", ancho);
+            }
+            int alto = rs.getInt(9);
+            if (rs.wasNull()) {
+                gen.writeNull("alto");
+            } else {
+                gen.write("alto", alto);
+            }
+            String ruta = rs.getString(10);
+            JsonUtil.write(gen, "ruta_archivo", ruta);
+            if (ruta != null) {
+                gen.write("url_publica", CONTEXT_PATH + "/api/media?id_archivo=" + id_archivo);
+            } else {
+                gen.writeNull("url_publica");
+            }
+            Timestamp creado = rs.getTimestamp(11);
+            Timestamp actualizado = rs.getTimestamp(12);
+            JsonUtil.write(gen, "fecha_creacion", creado == null ? null : creado.toString());
+            JsonUtil.write(gen, "fecha_actualizacion", actualizado == null ? null : actualizado.toString());
+        }
+    }
+}
@@ -0,0 +1,1059 @@
+package API;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ResultSet en memoria, forward-only y de solo lectura, para los benchmarks.
+ *
+ * Las filas se generan una vez y se recorren de nuevo con
+ * {@link #beforeFirst()} en cada invocacion, de modo que el benchmark mide
+ * solo el mapeo a JSON. El acceso por nombre resuelve la etiqueta igual que
+ * el driver de MySQL (mapa exacto y luego sin distinguir mayusculas) para que
+ * la comparacion contra el acceso por indice sea representativa. Los metodos
+ * que no usan los servlets lanzan SQLFeatureNotSupportedException.
+ *
+ */
+@SuppressWarnings("deprecation")
+final class ResultSetSintetico implements ResultSet {
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final Map<String, Integer> indices_minusculas = new HashMap<>();
+    private final Object[][] filas;
+    private int fila = -1;
+    private boolean nulo;
+    private boolean cerrado;
+
+    /**
+     * @param columnas etiquetas de columna en el orden del SELECT.
+     * @param filas valores por fila (Integer, Long, String, BigDecimal, Timestamp o null).
+     */
+    ResultSetSintetico(String[] columnas, Object[][] filas) {
+        for (int i = 0; i < columnas.length; i++) {
+            indices.put(columnas[i], Integer.valueOf(i + 1));
+            indices_minusculas.put(columnas[i].toLowerCase(Locale.ROOT), Integer.valueOf(i + 1));
+        }
+        this.filas = filas;
+    }
+
+    /**
+     * @param columna indice 1-based.
+     * @return valor crudo de la fila actual; actualiza wasNull().
+     * @throws SQLException si no hay fila actual o el indice no existe.
+     */
+    private Object valor(int columna) throws SQLException {
+        if (fila < 0 || fila >= filas.length) {
+            throw new SQLException("sin_fila_actual");
+        }
+        Object[] actual = filas[fila];
+        if (columna < 1 || columna > actual.length) {
+            throw new SQLException("columna_invalida: " + columna);
+        }
+        Object valor = actual[columna - 1];
+        nulo = valor == null;
+        return valor;
+    }
+
+    /**
+     * @return excepcion para metodos fuera del alcance del benchmark.
+     */
+    private static SQLFeatureNotSupportedException noSoportado() {
+        return new SQLFeatureNotSupportedException("no_soportado");
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (fila < filas.length) {
+            fila++;
+        }
+        return fila < filas.length;
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        fila = -1;
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return nulo;
+    }
+
+    @Override
+    public int findColumn(String etiqueta) throws SQLException {
+        Integer indice = indices.get(etiqueta);
+        if (indice == null) {
+            indice = indices_minusculas.get(etiqueta.toLowerCase(Locale.ROOT));
+        }
+        if (indice == null) {
+            throw new SQLException("columna_invalida: " + etiqueta);
+        }
+        return indice.intValue();
+    }
+
+    @Override
+    public int getInt(int columna) throws SQLException {
+        Object valor = valor(columna);
+        return valor == null ? 0 : ((Number) valor).intValue();
+    }
+
+    @Override
+    public int getInt(String etiqueta) throws SQLException {
+        return getInt(findColumn(etiqueta));
+    }
+
+    @Override
+    public long getLong(int columna) throws SQLException {
+        Object valor = valor(columna);
+        return valor == null ? 0L : ((Number) valor).longValue();
+    }
+
+    @Override
+    public long getLong(String etiqueta) throws SQLException {
+        return getLong(findColumn(etiqueta));
+    }
+
+    @Override
+    public String getString(int columna) throws SQLException {
+        Object valor = valor(columna);
+        return valor == null ? null : valor.toString();
+    }
+
+    @Override
+    public String getString(String etiqueta) throws SQLException {
+        return getString(findColumn(etiqueta));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columna) throws SQLException {
+        Object valor = valor(columna);
+        if (valor == null || valor instanceof BigDecimal) {
+            return (BigDecimal) valor;
+        }
+        return new BigDecimal(valor.toString());
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String etiqueta) throws SQLException {
+        return getBigDecimal(findColumn(etiqueta));
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columna) throws SQLException {
+        return (Timestamp) valor(columna);
+    }
+
+    @Override
+    public Timestamp getTimestamp(String etiqueta) throws SQLException {
+        return getTimestamp(findColumn(etiqueta));
+    }
+
+    @Override
+    public Object getObject(int columna) throws SQLException {
+        return valor(columna);
+    }
+
+    @Override
+    public Object getObject(String etiqueta) throws SQLException {
+        return getObject(findColumn(etiqueta));
+    }
+
+    @Override
+    public void close() throws SQLException {
+        cerrado = true;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return cerrado;
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        return TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        return CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setFetchSize(int filas) throws SQLException {
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> tipo) throws SQLException {
+        if (tipo.isInstance(this)) {
+            return tipo.cast(this);
+        }
+        throw new SQLException("no_es_wrapper: " + tipo.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> tipo) throws SQLException {
+        return tipo.isInstance(this);
+    }
+
+    // Resto de la interfaz: no lo usan los servlets medidos.
+
+    @Override
+    public <T> T getObject(int columna, Class<T> tipo) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public <T> T getObject(String etiqueta, Class<T> tipo) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean absolute(int fila) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean getBoolean(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean getBoolean(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean relative(int filas) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public byte getByte(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public byte getByte(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public byte[] getBytes(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public byte[] getBytes(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public double getDouble(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public double getDouble(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public float getFloat(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public float getFloat(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public InputStream getAsciiStream(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public InputStream getBinaryStream(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public InputStream getUnicodeStream(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public InputStream getUnicodeStream(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Reader getCharacterStream(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Reader getCharacterStream(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Reader getNCharacterStream(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Reader getNCharacterStream(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Object getObject(int columna, Map<String, Class<?>> mapa) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Object getObject(String etiqueta, Map<String, Class<?>> mapa) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public String getNString(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public String getNString(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columna, int escala) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String etiqueta, int escala) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public URL getURL(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public URL getURL(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Array getArray(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Array getArray(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Blob getBlob(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Blob getBlob(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Clob getClob(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Clob getClob(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Date getDate(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Date getDate(int columna, Calendar cal) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Date getDate(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Date getDate(String etiqueta, Calendar cal) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public NClob getNClob(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public NClob getNClob(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Ref getRef(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Ref getRef(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public RowId getRowId(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public RowId getRowId(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public SQLXML getSQLXML(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public SQLXML getSQLXML(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Time getTime(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Time getTime(int columna, Calendar cal) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Time getTime(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Time getTime(String etiqueta, Calendar cal) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columna, Calendar cal) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public Timestamp getTimestamp(String etiqueta, Calendar cal) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public short getShort(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public short getShort(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void insertRow() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void setFetchDirection(int direccion) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateArray(int columna, Array valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateArray(String etiqueta, Array valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateAsciiStream(int columna, InputStream valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateAsciiStream(int columna, InputStream valor, int longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateAsciiStream(int columna, InputStream valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateAsciiStream(String etiqueta, InputStream valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateAsciiStream(String etiqueta, InputStream valor, int longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateAsciiStream(String etiqueta, InputStream valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBigDecimal(int columna, BigDecimal valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBigDecimal(String etiqueta, BigDecimal valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBinaryStream(int columna, InputStream valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBinaryStream(int columna, InputStream valor, int longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBinaryStream(int columna, InputStream valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBinaryStream(String etiqueta, InputStream valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBinaryStream(String etiqueta, InputStream valor, int longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBinaryStream(String etiqueta, InputStream valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBlob(int columna, InputStream valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBlob(int columna, InputStream valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBlob(int columna, Blob valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBlob(String etiqueta, InputStream valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBlob(String etiqueta, InputStream valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBlob(String etiqueta, Blob valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBoolean(int columna, boolean valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBoolean(String etiqueta, boolean valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateByte(int columna, byte valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateByte(String etiqueta, byte valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBytes(int columna, byte[] valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateBytes(String etiqueta, byte[] valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateCharacterStream(int columna, Reader valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateCharacterStream(int columna, Reader valor, int longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateCharacterStream(int columna, Reader valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateCharacterStream(String etiqueta, Reader valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateCharacterStream(String etiqueta, Reader valor, int longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateCharacterStream(String etiqueta, Reader valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateClob(int columna, Reader valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateClob(int columna, Reader valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateClob(int columna, Clob valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateClob(String etiqueta, Reader valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateClob(String etiqueta, Reader valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateClob(String etiqueta, Clob valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateDate(int columna, Date valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateDate(String etiqueta, Date valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateDouble(int columna, double valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateDouble(String etiqueta, double valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateFloat(int columna, float valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateFloat(String etiqueta, float valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateInt(int columna, int valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateInt(String etiqueta, int valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateLong(int columna, long valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateLong(String etiqueta, long valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNCharacterStream(int columna, Reader valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNCharacterStream(int columna, Reader valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNCharacterStream(String etiqueta, Reader valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNCharacterStream(String etiqueta, Reader valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNClob(int columna, Reader valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNClob(int columna, Reader valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNClob(int columna, NClob valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNClob(String etiqueta, Reader valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNClob(String etiqueta, Reader valor, long longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNClob(String etiqueta, NClob valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNString(int columna, String valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNString(String etiqueta, String valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNull(int columna) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateNull(String etiqueta) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateObject(int columna, Object valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateObject(int columna, Object valor, int longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateObject(String etiqueta, Object valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateObject(String etiqueta, Object valor, int longitud) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateRef(int columna, Ref valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateRef(String etiqueta, Ref valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateRow() throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateRowId(int columna, RowId valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateRowId(String etiqueta, RowId valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateSQLXML(int columna, SQLXML valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateSQLXML(String etiqueta, SQLXML valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateShort(int columna, short valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateShort(String etiqueta, short valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateString(int columna, String valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateString(String etiqueta, String valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateTime(int columna, Time valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateTime(String etiqueta, Time valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateTimestamp(int columna, Timestamp valor) throws SQLException {
+        throw noSoportado();
+    }
+
+    @Override
+    public void updateTimestamp(String etiqueta, Timestamp valor) throws SQLException {
+        throw noSoportado();
+    }
+}
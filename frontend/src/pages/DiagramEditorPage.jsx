@@ -8,13 +8,14 @@ import {
   actualizarConexion,
   actualizarDiagrama,
   actualizarElemento,
+  actualizarGeometriaElemento,
   crearConexion,
   crearElemento,
   eliminarConexion,
   eliminarElemento,
-  listarConexiones,
-  listarElementos,
-  obtenerDiagrama
+  obtenerCambiosDiagrama,
+  obtenerSnapshotDiagrama,
+  suscribirDiagrama
 } from '../services/diagramas.js';
 import ElementIcon from '../components/ElementIcon.jsx';
 import { validarConexion, validarDiagrama, validarElemento } from '../utils/validators.js';
@@ -63,6 +64,8 @@ export default function DiagramEditorPage() {
   const canvasRef = useRef(null);
   // Ref para acceder a elementos durante drag sin re-render sincronico.
   const elementsRef = useRef([]);
+  // Version del diagrama del ultimo snapshot o sincronizacion (null: sin cargar).
+  const versionRef = useRef(null);
 
   const [diagrama, setDiagrama] = useState(null);
   const [elementos, setElementos] = useState([]);
@@ -138,20 +141,19 @@ export default function DiagramEditorPage() {
    * @returns {Promise<void>} no retorna valor; actualiza estado local.
    * Si falla la red o el backend, actualiza el mensaje de error.
    *
-   * Se llama a tres endpoints (diagrama, elementos, conexiones)
-   * y actualiza el estado en serie para que el canvas tenga datos coherentes.
+   * Se llama una sola vez al endpoint de snapshot (diagrama, elementos y
+   * conexiones leidos juntos) para que el canvas tenga datos coherentes.
    *
    */
   const cargar = async () => {
     setLoading(true);
     setError('');
     try {
-      const dataDiagrama = await obtenerDiagrama(id_diagrama);
-      setDiagrama(dataDiagrama.diagrama);
-      const dataElementos = await listarElementos(id_diagrama);
-      setElementos(dataElementos.elementos || []);
-      const dataConexiones = await listarConexiones(id_diagrama);
-      setConexiones(dataConexiones.conexiones || []);
+      const data = await obtenerSnapshotDiagrama(id_diagrama);
+      versionRef.current = typeof data.version === 'number' ? data.version : null;
+      setDiagrama(data.diagrama);
+      setElementos(data.elementos || []);
+      setConexiones(data.conexiones || []);
     } catch (err) {
       setError(err?.data?.mensaje || 'No se pudo cargar el diagrama.');
     } finally {
@@ -160,9 +162,98 @@ export default function DiagramEditorPage() {
   };
 
   useEffect(() => {
+    versionRef.current = null;
     cargar();
   }, [id_diagrama]);
 
+  /**
+   * Trae solo los cambios desde la ultima version conocida (al reconectar).
+   *
+   * @returns {Promise<void>} no retorna valor; actualiza estado local.
+   * Si no hay version o falla la llamada, recarga el snapshot completo.
+   *
+   * Se reemplazan las filas recibidas y se quitan los tombstones; el
+   * backend ya incluye las conexiones borradas en cascada y los hijos
+   * que quedaron sin padre.
+   *
+   */
+  const sincronizar = async () => {
+    if (versionRef.current === null) {
+      await cargar();
+      return;
+    }
+    let data;
+    try {
+      data = await obtenerCambiosDiagrama(id_diagrama, versionRef.current);
+    } catch (err) {
+      await cargar();
+      return;
+    }
+    versionRef.current = data.version;
+    setDiagrama(data.diagrama);
+    if (data.completo) {
+      setElementos(data.elementos || []);
+      setConexiones(data.conexiones || []);
+      return;
+    }
+    const reemplazar = (lista, filas, borrados, clave) => {
+      const ids = new Set([...borrados, ...filas.map((fila) => fila[clave])]);
+      return [...lista.filter((actual) => !ids.has(actual[clave])), ...filas];
+    };
+    setElementos((prev) => reemplazar(prev, data.elementos || [], data.elementos_borrados || [], 'id_elemento'));
+    setConexiones((prev) => reemplazar(prev, data.conexiones || [], data.conexiones_borradas || [], 'id_conexion'));
+  };
+
+  /**
+   * Aplica a una lista los items de un delta de colaboracion.
+   *
+   * @param {Array<object>} lista elementos o conexiones actuales.
+   * @param {object} delta mensaje recibido del canal.
+   * @param {string} clave nombre del id (id_elemento o id_conexion).
+   * @returns {Array<object>} nueva lista.
+   *
+   * Se agregan los creados, se mezclan los campos de los actualizados y se
+   * quitan los borrados o los movidos a otro diagrama.
+   *
+   */
+  const aplicarItems = (lista, delta, clave) => {
+    let siguiente = lista;
+    delta.items.forEach((item) => {
+      const existe = siguiente.some((actual) => actual[clave] === item[clave]);
+      const fuera = item.id_diagrama !== undefined && String(item.id_diagrama) !== String(id_diagrama);
+      if (delta.accion === 'borrar' || fuera) {
+        siguiente = siguiente.filter((actual) => actual[clave] !== item[clave]);
+      } else if (existe) {
+        siguiente = siguiente.map((actual) => (actual[clave] === item[clave] ? { ...actual, ...item } : actual));
+      } else if (delta.accion !== 'geometria') {
+        siguiente = [...siguiente, item];
+      }
+    });
+    return siguiente;
+  };
+
+  /**
+   * Reemplaza un elemento local por la fila indicada (misma id_elemento).
+   *
+   * @param {object} fila elemento con sus campos y version.
+   * @returns {void} no retorna valor; solo actualiza estado.
+   *
+   */
+  const reemplazarElemento = (fila) => {
+    setElementos((prev) => prev.map((el) => (el.id_elemento === fila.id_elemento ? { ...el, ...fila } : el)));
+  };
+
+  // Recibe en vivo los cambios hechos desde otras pestanias o usuarios.
+  useEffect(() => suscribirDiagrama(id_diagrama, (delta) => {
+    if (!Array.isArray(delta.items)) return;
+    if (delta.entidad === 'elemento') {
+      // Las conexiones y los hijos afectados por un borrado llegan en sus propios deltas.
+      setElementos((prev) => aplicarItems(prev, delta, 'id_elemento'));
+    } else if (delta.entidad === 'conexion') {
+      setConexiones((prev) => aplicarItems(prev, delta, 'id_conexion'));
+    }
+  }, sincronizar), [id_diagrama]);
+
   /**
    * Actualiza estado local del diagrama a partir de inputs del formulario.
    *
@@ -198,8 +289,9 @@ export default function DiagramEditorPage() {
       return;
     }
     try {
-      await actualizarDiagrama({
+      const data = await actualizarDiagrama({
         id_diagrama: diagrama.id_diagrama,
+        version: diagrama.version,
         nombre: diagrama.nombre,
         descripcion: diagrama.descripcion,
         estado: diagrama.estado,
@@ -207,8 +299,16 @@ export default function DiagramEditorPage() {
         alto_lienzo: Number(diagrama.alto_lienzo),
         configuracion_json: diagrama.configuracion_json || null
       });
+      if (typeof data?.version === 'number') {
+        setDiagrama((prev) => ({ ...prev, version: data.version }));
+      }
       setSuccess('Diagrama actualizado.');
     } catch (err) {
+      if (err?.status === 409 && err.data?.actual) {
+        setDiagrama(err.data.actual);
+        setError('Otra persona modificó el diagrama; se cargó la versión actual.');
+        return;
+      }
       setError(err?.data?.mensaje || 'No se pudo actualizar el diagrama.');
     }
   };
@@ -377,7 +477,7 @@ export default function DiagramEditorPage() {
      * @returns {Promise<void>} no retorna valor; actualiza backend.
      *
      * Se toma el elemento desde elementsRef (evita stale state)
-     * y llama al endpoint de actualizacion.
+     * y envia solo la posicion al endpoint de geometria.
      *
      */
     const onUp = async () => {
@@ -386,8 +486,21 @@ export default function DiagramEditorPage() {
       if (!elemento) return;
 
       try {
-        await actualizarElemento({ ...elemento });
+        const data = await actualizarGeometriaElemento({
+          id_elemento: elemento.id_elemento,
+          version: elemento.version,
+          pos_x: elemento.pos_x,
+          pos_y: elemento.pos_y
+        });
+        if (typeof data?.version === 'number') {
+          reemplazarElemento({ ...elemento, version: data.version });
+        }
       } catch (err) {
+        if (err?.status === 409 && err.data?.actual) {
+          reemplazarElemento(err.data.actual);
+          setError('Otra persona movió el elemento; se cargó la versión actual.');
+          return;
+        }
         setError('No se pudo guardar la posición.');
       }
     };
@@ -452,6 +565,11 @@ export default function DiagramEditorPage() {
       setSuccess('Elemento actualizado.');
       await cargar();
     } catch (err) {
+      if (err?.status === 409 && err.data?.actual) {
+        reemplazarElemento(err.data.actual);
+        setError('Otra persona modificó el elemento; se cargó la versión actual.');
+        return;
+      }
       setError(err?.data?.mensaje || 'No se pudo actualizar el elemento.');
     }
   };
@@ -577,6 +695,7 @@ export default function DiagramEditorPage() {
     try {
       await actualizarConexion({
         id_conexion: connectionForm.id_conexion,
+        version: connectionForm.version,
         id_diagrama: diagrama.id_diagrama,
         id_elemento_origen: Number(connectionForm.id_elemento_origen),
         id_elemento_destino: Number(connectionForm.id_elemento_destino),
@@ -588,6 +707,12 @@ export default function DiagramEditorPage() {
       setSuccess('Conexión actualizada.');
       await cargar();
     } catch (err) {
+      if (err?.status === 409 && err.data?.actual) {
+        const actual = err.data.actual;
+        setConexiones((prev) => prev.map((conn) => (conn.id_conexion === actual.id_conexion ? actual : conn)));
+        setError('Otra persona modificó la conexión; se cargó la versión actual.');
+        return;
+      }
       setError(err?.data?.mensaje || 'No se pudo actualizar la conexión.');
     }
   };
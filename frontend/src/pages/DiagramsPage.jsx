@@ -29,6 +29,8 @@ const ESTADOS = [
 export default function DiagramsPage() {
   const navigate = useNavigate();
   const [diagramas, setDiagramas] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
   const [loading, setLoading] = useState(false);
   const [error, setError] = useState('');
   const [success, setSuccess] = useState('');
@@ -48,7 +50,7 @@ export default function DiagramsPage() {
    * @returns {Promise<void>} no retorna valor; actualiza estado local.
    * En caso de error, registra el mensaje via setError.
    *
-   * Se llama a listarDiagramas y guarda el arreglo resultante.
+   * Se llama a listarDiagramas y guarda la primera pagina y su cursor.
    *
    */
   const cargar = async () => {
@@ -57,6 +59,7 @@ export default function DiagramsPage() {
     try {
       const data = await listarDiagramas();
       setDiagramas(data.diagramas || []);
+      setNextCursor(data.next_cursor || null);
     } catch (err) {
       setError(err?.data?.mensaje || 'No se pudieron cargar los diagramas.');
     } finally {
@@ -64,6 +67,29 @@ export default function DiagramsPage() {
     }
   };
 
+  /**
+   * Carga la siguiente pagina de diagramas y la agrega al listado.
+   *
+   * @returns {Promise<void>} no retorna valor; actualiza estado local.
+   *
+   * Se usa el next_cursor de la respuesta anterior.
+   *
+   */
+  const cargarMas = async () => {
+    if (!nextCursor) return;
+    setLoadingMore(true);
+    setError('');
+    try {
+      const data = await listarDiagramas(nextCursor);
+      setDiagramas((prev) => [...prev, ...(data.diagramas || [])]);
+      setNextCursor(data.next_cursor || null);
+    } catch (err) {
+      setError(err?.data?.mensaje || 'No se pudieron cargar los diagramas.');
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   useEffect(() => {
     cargar();
   }, []);
@@ -339,6 +365,13 @@ export default function DiagramsPage() {
               ))}
             </div>
           )}
+          {nextCursor && (
+            <div className="text-center mt-4">
+              <button className="btn btn-outline-primary" onClick={cargarMas} disabled={loadingMore}>
+                {loadingMore ? 'Cargando...' : 'Cargar más'}
+              </button>
+            </div>
+          )}
         </>
       )}
     </div>
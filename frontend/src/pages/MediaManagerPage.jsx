@@ -6,10 +6,11 @@ import {
   agregarDiagramaMultimedia,
   eliminarDiagramaMultimedia,
   listarDiagramaMultimedia,
-  subirArchivo
+  subirArchivo,
+  subirArchivoReanudable
 } from '../services/diagramas.js';
-import { buildFileUrl } from '../services/api.js';
-import { obtenerTipoMedia, validarArchivo } from '../utils/validators.js';
+import { buildMediaUrl } from '../services/api.js';
+import { SUBIDA_POR_FRAGMENTOS_MB, obtenerTipoMedia, validarArchivo } from '../utils/validators.js';
 
 /**
  * Gestor de multimedia asociada a un diagrama.
@@ -26,6 +27,7 @@ export default function MediaManagerPage() {
   const [loading, setLoading] = useState(false);
   const [error, setError] = useState('');
   const [success, setSuccess] = useState('');
+  const [progreso, setProgreso] = useState(null);
 
   /**
    * Carga la lista de multimedia asociada al diagrama.
@@ -60,7 +62,8 @@ export default function MediaManagerPage() {
    * @returns {Promise<void>} no retorna valor; actualiza listado.
    * Si el backend falla, actualiza el mensaje de error.
    *
-   * Se valida la extension y el tamano, se sube via multipart y
+   * Se valida la extension y el tamano, se sube via multipart (o por
+   * fragmentos reanudables si supera SUBIDA_POR_FRAGMENTOS_MB) y
    * se crea la relacion en diagrama_multimedia.
    *
    */
@@ -78,11 +81,20 @@ export default function MediaManagerPage() {
     }
     const tipo_media = obtenerTipoMedia(file);
     try {
-      const formData = new FormData();
-      formData.append('archivo', file);
-      formData.append('tipo_media', tipo_media);
-      formData.append('titulo', file.name);
-      const result = await subirArchivo(formData);
+      let result;
+      if (file.size > SUBIDA_POR_FRAGMENTOS_MB * 1024 * 1024) {
+        result = await subirArchivoReanudable(
+          file,
+          { tipo_media, titulo: file.name },
+          (enviados, total) => setProgreso(Math.floor((enviados * 100) / total))
+        );
+      } else {
+        const formData = new FormData();
+        formData.append('archivo', file);
+        formData.append('tipo_media', tipo_media);
+        formData.append('titulo', file.name);
+        result = await subirArchivo(formData);
+      }
       if (result?.id_archivo) {
         await agregarDiagramaMultimedia({
           id_diagrama: Number(id_diagrama),
@@ -95,6 +107,8 @@ export default function MediaManagerPage() {
       }
     } catch (err) {
       setError(err?.data?.mensaje || 'Error al subir el archivo.');
+    } finally {
+      setProgreso(null);
     }
   };
 
@@ -162,6 +176,13 @@ export default function MediaManagerPage() {
               accept=".mp3,.mp4,.jpg,.jpeg"
               onChange={(event) => handleFiles(event.target.files)}
             />
+            {progreso !== null && (
+              <div className="progress mt-3">
+                <div className="progress-bar" role="progressbar" style={{ width: `${progreso}%` }}>
+                  {progreso}%
+                </div>
+              </div>
+            )}
           </div>
         </div>
       </div>
@@ -176,14 +197,19 @@ export default function MediaManagerPage() {
             {!loading && multimedia.length > 0 && (
               <div className="row g-3">
                 {multimedia.map((item) => {
-                  const url = buildFileUrl(item.ruta_archivo);
+                  const url = buildMediaUrl(item.id_archivo);
                   return (
                     <div className="col-md-6" key={`${item.id_diagrama}-${item.id_archivo}`}>
                       <div className="card h-100">
                         <div className="card-body">
                           <h6 className="card-title">{item.titulo || item.tipo_media}</h6>
                           {item.tipo_media === 'IMAGEN' && (
-                            <img className="img-fluid rounded" src={url} alt={item.titulo || 'imagen'} />
+                            <img
+                              className="img-fluid rounded"
+                              src={buildMediaUrl(item.id_archivo, 640)}
+                              alt={item.titulo || 'imagen'}
+                              loading="lazy"
+                            />
                           )}
                           {item.tipo_media === 'VIDEO' && (
                             <video className="w-100" controls src={url} />
@@ -2,6 +2,10 @@
 // Esto facilita desplegar el mismo bundle contra distintos backends.
 const BASE_URL = window.BACKEND_URL || '';
 
+// Id de esta pestania: el backend lo devuelve en los deltas de colaboracion
+// (header X-Cliente-Id) para que la pestania no reaplique sus propios cambios.
+export const CLIENTE_ID = Math.random().toString(36).slice(2) + Date.now().toString(36);
+
 /**
  * Ejecuta una solicitud HTTP con credenciales de sesion y parseo de respuesta.
  *
@@ -25,9 +29,11 @@ async function request(path, options = {}) {
   if (!config.headers) {
     config.headers = {};
   }
+  config.headers['X-Cliente-Id'] = CLIENTE_ID;
 
-  // Para payload JSON, agrega Content-Type automaticamente.
-  if (config.body && !(config.body instanceof FormData)) {
+  // Para payload JSON, agrega Content-Type automaticamente
+  // (FormData y Blob llevan su propio tipo).
+  if (config.body && !(config.body instanceof FormData) && !(config.body instanceof Blob)) {
     config.headers['Content-Type'] = 'application/json';
   }
 
@@ -136,6 +142,27 @@ export function upload(path, formData) {
   });
 }
 
+/**
+ * Wrapper PUT con body binario.
+ *
+ * Se envia el Blob tal cual (application/octet-stream), sin serializar.
+ *
+ *
+ * @param {string} path ruta del backend.
+ * @param {Blob} blob datos binarios.
+ * @param {AbortSignal} [signal] senal para cancelar el envio.
+ * @returns {Promise<any|null>} respuesta parseada.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function putBinary(path, blob, signal) {
+  return request(path, {
+    method: 'PUT',
+    headers: { 'Content-Type': 'application/octet-stream' },
+    body: blob,
+    signal
+  });
+}
+
 /**
  * Construye una URL absoluta para una ruta de archivo almacenada en backend.
  *
@@ -156,3 +183,37 @@ export function buildFileUrl(ruta) {
   const cleaned = ruta.replace(/^\/+/, '');
   return `${BASE_URL}/${cleaned}`;
 }
+
+/**
+ * Construye la URL de entrega de un archivo multimedia por id.
+ *
+ * Se usa /api/media, que valida la sesion y soporta Range (seek en
+ * video/audio) y cache por ETag. Para imagenes, ancho pide la miniatura
+ * mas chica que lo cubra (48, 160 o 640 px) si ya fue generada.
+ *
+ *
+ * @param {number|string} id_archivo id del archivo.
+ * @param {number} [ancho] ancho de presentacion en px (solo imagenes).
+ * @returns {string|null} URL completa o null si no hay id.
+ */
+export function buildMediaUrl(id_archivo, ancho) {
+  if (id_archivo === null || id_archivo === undefined || id_archivo === '') {
+    return null;
+  }
+  const sufijo = ancho ? `&ancho=${ancho}` : '';
+  return `${BASE_URL}/api/media?id_archivo=${id_archivo}${sufijo}`;
+}
+
+/**
+ * Construye la URL ws:// o wss:// de un canal WebSocket del backend.
+ *
+ * Se usa BASE_URL si esta configurado; si no, el host de la pagina.
+ *
+ *
+ * @param {string} path ruta del canal (ej: /ws/diagramas/1).
+ * @returns {string} URL absoluta del socket.
+ */
+export function buildSocketUrl(path) {
+  const base = BASE_URL || window.location.origin;
+  return `${base.replace(/^http/, 'ws')}${path}`;
+}
@@ -1,16 +1,18 @@
-import { del, get, post, put, upload } from './api.js';
+import { CLIENTE_ID, buildSocketUrl, del, get, post, put, putBinary, upload } from './api.js';
 
 /**
  * Lista diagramas del usuario autenticado (o todos si admin).
  *
- * Se realiza una llamada GET al endpoint /api/diagramas.
+ * Se realiza una llamada GET al endpoint /api/diagramas; el listado es
+ * paginado y la respuesta trae next_cursor (null en la ultima pagina).
  *
  *
- * @returns {Promise<object>} respuesta con arreglo de diagramas.
+ * @param {string|null} [cursor] next_cursor de la pagina anterior.
+ * @returns {Promise<object>} respuesta con arreglo de diagramas y next_cursor.
  * @throws {Error} si la respuesta no es ok.
  */
-export function listarDiagramas() {
-  return get('/api/diagramas');
+export function listarDiagramas(cursor) {
+  return get(cursor ? `/api/diagramas?cursor=${encodeURIComponent(cursor)}` : '/api/diagramas');
 }
 
 /**
@@ -27,6 +29,95 @@ export function obtenerDiagrama(id_diagrama) {
   return get(`/api/diagramas?id_diagrama=${id_diagrama}`);
 }
 
+/**
+ * Obtiene el contenido completo de un diagrama en una sola llamada.
+ *
+ * Se envia el id como query string a /api/diagramas/snapshot; la respuesta
+ * incluye diagrama, elementos, conexiones y multimedia asociada.
+ *
+ *
+ * @param {number|string} id_diagrama id del diagrama.
+ * @returns {Promise<object>} respuesta con diagrama, elementos y conexiones.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function obtenerSnapshotDiagrama(id_diagrama) {
+  return get(`/api/diagramas/snapshot?id_diagrama=${id_diagrama}`);
+}
+
+/**
+ * Obtiene los cambios de un diagrama desde una version conocida.
+ *
+ * Se envia id y version a /api/diagramas/cambios; la respuesta trae la
+ * version nueva, la cabecera, los elementos y conexiones creados o
+ * modificados y los ids borrados (elementos_borrados, conexiones_borradas).
+ * Con completo = true trae el contenido completo en lugar de los cambios.
+ *
+ *
+ * @param {number|string} id_diagrama id del diagrama.
+ * @param {number} version version del ultimo snapshot o sincronizacion.
+ * @returns {Promise<object>} respuesta con los cambios.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function obtenerCambiosDiagrama(id_diagrama, version) {
+  return get(`/api/diagramas/cambios?id_diagrama=${id_diagrama}&version=${version}`);
+}
+
+/**
+ * Se suscribe a los cambios de un diagrama hechos desde otras pestanias.
+ *
+ * Se abre el WebSocket /ws/diagramas/{id}; cada mensaje es un delta
+ * {entidad, accion, items}. Si el socket se cierra (red, reinicio o cola
+ * llena en el servidor) se reintenta con espera creciente y se llama a
+ * onReconectado para sincronizar los cambios perdidos, porque los deltas no
+ * se reenvian.
+ *
+ *
+ * @param {number|string} id_diagrama id del diagrama.
+ * @param {function(object): void} onDelta recibe cada delta.
+ * @param {function(): void} onReconectado se llama tras cada reconexion.
+ * @returns {function(): void} cierra la suscripcion.
+ */
+export function suscribirDiagrama(id_diagrama, onDelta, onReconectado) {
+  let socket = null;
+  let timer = null;
+  let intentos = 0;
+  let activo = true;
+
+  const abrir = () => {
+    socket = new WebSocket(buildSocketUrl(`/ws/diagramas/${id_diagrama}?cliente=${CLIENTE_ID}`));
+    socket.onopen = () => {
+      if (intentos > 0) {
+        onReconectado();
+      }
+      intentos = 0;
+    };
+    socket.onmessage = (event) => {
+      try {
+        onDelta(JSON.parse(event.data));
+      } catch (err) {
+        // Mensaje invalido: se ignora.
+      }
+    };
+    socket.onclose = (event) => {
+      // 1008: sin sesion o sin acceso; no tiene sentido reintentar.
+      if (!activo || event.code === 1008) {
+        return;
+      }
+      intentos += 1;
+      timer = setTimeout(abrir, Math.min(30000, 1000 * 2 ** Math.min(intentos, 5)));
+    };
+  };
+
+  abrir();
+  return () => {
+    activo = false;
+    clearTimeout(timer);
+    if (socket) {
+      socket.close();
+    }
+  };
+}
+
 /**
  * Crea un diagrama nuevo.
  *
@@ -111,6 +202,36 @@ export function actualizarElemento(payload) {
   return put('/api/elementos', payload);
 }
 
+/**
+ * Actualiza solo la geometria de un elemento.
+ *
+ * Se envia id_elemento y los campos de geometria cambiados (pos_x, pos_y,
+ * ancho, alto, rotacion_grados, orden_z) en PUT a /api/elementos/geometria.
+ *
+ *
+ * @param {object} payload id_elemento y campos de geometria.
+ * @returns {Promise<object>} respuesta del backend.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function actualizarGeometriaElemento(payload) {
+  return put('/api/elementos/geometria', payload);
+}
+
+/**
+ * Actualiza varios elementos en una sola llamada.
+ *
+ * Se envia {elementos: [...]} en PUT a /api/elementos/lote; cada item usa el
+ * mismo formato que actualizarElemento y la respuesta trae un resultado por item.
+ *
+ *
+ * @param {Array<object>} elementos datos de los elementos.
+ * @returns {Promise<object>} respuesta con resultados por elemento.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function actualizarElementosLote(elementos) {
+  return put('/api/elementos/lote', { elementos });
+}
+
 /**
  * Elimina un elemento por id.
  *
@@ -195,6 +316,166 @@ export function subirArchivo(formData) {
   return upload('/api/archivos', formData);
 }
 
+// Tamanio de fragmento y fragmentos simultaneos de la subida reanudable.
+const FRAGMENTO_BYTES = 8 * 1024 * 1024;
+const FRAGMENTOS_EN_PARALELO = 3;
+const REINTENTOS_FRAGMENTO = 3;
+
+/**
+ * Crea una sesion de subida reanudable.
+ *
+ * Se envia en POST a /api/archivos/subidas el tipo, nombre y tamanio declarado.
+ *
+ *
+ * @param {object} payload {tipo_media, nombre_archivo, tamano_bytes, titulo, ...}.
+ * @returns {Promise<object>} respuesta con id_subida y fragmento_max_bytes.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function crearSubida(payload) {
+  return post('/api/archivos/subidas', payload);
+}
+
+/**
+ * Envia un fragmento binario en su offset.
+ *
+ * @param {string} id_subida id de la sesion.
+ * @param {number} offset posicion del fragmento.
+ * @param {Blob} fragmento datos a enviar.
+ * @returns {Promise<object>} respuesta con el rango recibido.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function enviarFragmento(id_subida, offset, fragmento) {
+  return putBinary(`/api/archivos/subidas?id_subida=${id_subida}&offset=${offset}`, fragmento);
+}
+
+/**
+ * Consulta los rangos ya recibidos de una subida.
+ *
+ * @param {string} id_subida id de la sesion.
+ * @returns {Promise<object>} respuesta con rangos, bytes_recibidos y completo.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function estadoSubida(id_subida) {
+  return get(`/api/archivos/subidas?id_subida=${id_subida}`);
+}
+
+/**
+ * Finaliza una subida completa y crea el archivo multimedia.
+ *
+ * @param {string} id_subida id de la sesion.
+ * @returns {Promise<object>} respuesta con id_archivo y ruta_archivo.
+ * @throws {Error} si la respuesta no es ok (409 si faltan fragmentos).
+ */
+export function finalizarSubida(id_subida) {
+  return post('/api/archivos/subidas/finalizar', { id_subida });
+}
+
+/**
+ * Cancela una subida y descarta lo recibido.
+ *
+ * @param {string} id_subida id de la sesion.
+ * @returns {Promise<object>} respuesta del backend.
+ * @throws {Error} si la respuesta no es ok.
+ */
+export function cancelarSubida(id_subida) {
+  return del(`/api/archivos/subidas?id_subida=${id_subida}`);
+}
+
+/**
+ * Sube un archivo grande por fragmentos, reanudando si se interrumpio.
+ *
+ * Se guarda id_subida en localStorage (clave por nombre, tamanio y fecha del
+ * archivo); si existe una sesion previa se piden sus rangos y solo se envian
+ * los huecos. Los fragmentos se envian en paralelo con reintentos y al final
+ * se llama a finalizar.
+ *
+ *
+ * @param {File} file archivo a subir.
+ * @param {object} datos {tipo_media, titulo, descripcion}.
+ * @param {(enviados: number, total: number) => void} [onProgreso] avance en bytes.
+ * @returns {Promise<object>} respuesta de finalizar (id_archivo, ruta_archivo).
+ * @throws {Error} si la sesion o algun fragmento falla tras los reintentos.
+ */
+export async function subirArchivoReanudable(file, datos, onProgreso) {
+  const clave = `subida:${file.name}:${file.size}:${file.lastModified}`;
+  let id_subida = window.localStorage.getItem(clave);
+  let rangos = [];
+  let fragmento_bytes = FRAGMENTO_BYTES;
+
+  if (id_subida) {
+    try {
+      const estado = await estadoSubida(id_subida);
+      rangos = estado?.rangos || [];
+      fragmento_bytes = Math.min(FRAGMENTO_BYTES, estado?.fragmento_max_bytes || FRAGMENTO_BYTES);
+    } catch (err) {
+      // La sesion vencio o no existe: se empieza de cero.
+      id_subida = null;
+    }
+  }
+  if (!id_subida) {
+    const creada = await crearSubida({
+      ...datos,
+      nombre_archivo: file.name,
+      tamano_bytes: file.size
+    });
+    id_subida = creada.id_subida;
+    fragmento_bytes = Math.min(FRAGMENTO_BYTES, creada?.fragmento_max_bytes || FRAGMENTO_BYTES);
+    window.localStorage.setItem(clave, id_subida);
+  }
+
+  // Huecos pendientes partidos en fragmentos de fragmento_bytes.
+  const pendientes = [];
+  let recibidos = 0;
+  let cursor = 0;
+  const agregarHueco = (inicio, fin) => {
+    for (let offset = inicio; offset < fin; offset += fragmento_bytes) {
+      pendientes.push([offset, Math.min(fin, offset + fragmento_bytes)]);
+    }
+  };
+  rangos.forEach((rango) => {
+    agregarHueco(cursor, rango.inicio);
+    recibidos += rango.fin - rango.inicio;
+    cursor = Math.max(cursor, rango.fin);
+  });
+  agregarHueco(cursor, file.size);
+
+  let enviados = recibidos;
+  if (onProgreso) {
+    onProgreso(enviados, file.size);
+  }
+  const enviarConReintentos = async ([inicio, fin]) => {
+    for (let intento = 1; ; intento += 1) {
+      try {
+        await enviarFragmento(id_subida, inicio, file.slice(inicio, fin));
+        return;
+      } catch (err) {
+        if (intento >= REINTENTOS_FRAGMENTO || (err?.status && err.status < 500)) {
+          throw err;
+        }
+      }
+    }
+  };
+  const trabajador = async () => {
+    while (pendientes.length > 0) {
+      const fragmento = pendientes.shift();
+      await enviarConReintentos(fragmento);
+      enviados += fragmento[1] - fragmento[0];
+      if (onProgreso) {
+        onProgreso(enviados, file.size);
+      }
+    }
+  };
+  const trabajadores = [];
+  for (let i = 0; i < FRAGMENTOS_EN_PARALELO; i += 1) {
+    trabajadores.push(trabajador());
+  }
+  await Promise.all(trabajadores);
+
+  const result = await finalizarSubida(id_subida);
+  window.localStorage.removeItem(clave);
+  return result;
+}
+
 /**
  * Lista archivos multimedia del usuario.
  *
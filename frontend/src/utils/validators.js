@@ -1,6 +1,10 @@
 // Limite maximo para archivos multimedia en MB.
-// Se usa para validar uploads en cliente antes de enviar al backend.
-const MAX_MB = 20;
+// Se usa para validar uploads en cliente antes de enviar al backend
+// (coincide con UPLOAD_MAX_BYTES del backend).
+const MAX_MB = 2048;
+
+// Desde este tamanio los archivos se suben por fragmentos (reanudable).
+export const SUBIDA_POR_FRAGMENTOS_MB = 8;
 
 /**
  * Valida datos minimos de un diagrama.
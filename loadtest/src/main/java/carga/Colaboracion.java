@@ -0,0 +1,153 @@
+package carga;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.CloseReason;
+import javax.websocket.ContainerProvider;
+import javax.websocket.DeploymentException;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+
+/**
+ * Socket de edicion colaborativa (/ws/diagramas/{id}) que un usuario virtual
+ * mantiene abierto durante una sesion de editor.
+ *
+ * Los PUT de geometria no envian X-Cliente-Id, asi que el propio socket
+ * recibe el delta que publica el backend: se mide desde el inicio del PUT
+ * hasta la llegada del delta (commit, publicacion, cola y envio). Los
+ * deltas llegan en el hilo del contenedor WebSocket; solo se encolan y el
+ * usuario virtual los pasa a sus estadisticas al cerrar el socket.
+ *
+ */
+final class Colaboracion extends Endpoint {
+    static final String SOCKET = "WS /ws/diagramas";
+    static final String DELTA = "WS delta geometria";
+
+    // Tiempo maximo para recibir los deltas pendientes al cerrar; los que falten cuentan como error.
+    private static final long ESPERA_MS = 5000;
+    private static final Pattern GEOMETRIA = Pattern.compile("\"accion\"\\s*:\\s*\"geometria\"");
+    private static final Pattern ID_ELEMENTO = Pattern.compile("\"id_elemento\"\\s*:\\s*(\\d+)");
+    private static final WebSocketContainer CONTENEDOR = ContainerProvider.getWebSocketContainer();
+
+    // id_elemento -> System.nanoTime() al iniciar el PUT.
+    private final ConcurrentMap<Integer, Long> pendientes = new ConcurrentHashMap<>();
+    // {inicio, llegada} en nanos.
+    private final ConcurrentLinkedQueue<long[]> recibidos = new ConcurrentLinkedQueue<>();
+    private Session session;
+
+    /**
+     * Abre el socket con la cookie de sesion del usuario virtual.
+     *
+     * @param url ws://host:puerto/contexto/ws/diagramas/{id}?cliente=...
+     * @param cookie cookie de sesion o token.
+     * @return socket abierto.
+     * @throws DeploymentException si el handshake falla.
+     * @throws IOException si falla la conexion.
+     */
+    static Colaboracion abrir(String url, final String cookie) throws DeploymentException, IOException {
+        Colaboracion colaboracion = new Colaboracion();
+        ClientEndpointConfig config = ClientEndpointConfig.Builder.create()
+                .configurator(new ClientEndpointConfig.Configurator() {
+                    @Override
+                    public void beforeRequest(Map<String, List<String>> headers) {
+                        headers.put("Cookie", Collections.singletonList(cookie));
+                    }
+                }).build();
+        colaboracion.session = CONTENEDOR.connectToServer(colaboracion, config, URI.create(url));
+        return colaboracion;
+    }
+
+    /**
+     * @param session socket abierto.
+     * @param config configuracion del cliente.
+     */
+    @Override
+    public void onOpen(Session session, EndpointConfig config) {
+        session.addMessageHandler(new MessageHandler.Whole<String>() {
+            @Override
+            public void onMessage(String mensaje) {
+                recibir(mensaje);
+            }
+        });
+    }
+
+    /**
+     * Registra un PUT de geometria cuyo delta se espera. Si el elemento ya
+     * tenia uno pendiente se conserva el primero: los deltas llegan en orden.
+     *
+     * @param id_elemento elemento movido.
+     * @param inicio System.nanoTime() al iniciar el PUT.
+     */
+    void esperar(int id_elemento, long inicio) {
+        pendientes.putIfAbsent(id_elemento, inicio);
+    }
+
+    /**
+     * @param id_elemento elemento cuyo PUT fallo (no habra delta).
+     */
+    void descartar(int id_elemento) {
+        pendientes.remove(id_elemento);
+    }
+
+    /**
+     * @param mensaje delta recibido.
+     */
+    private void recibir(String mensaje) {
+        if (!GEOMETRIA.matcher(mensaje).find()) {
+            return;
+        }
+        long llegada = System.nanoTime();
+        Matcher id = ID_ELEMENTO.matcher(mensaje);
+        while (id.find()) {
+            Long inicio = pendientes.remove(Integer.valueOf(id.group(1)));
+            if (inicio != null) {
+                recibidos.add(new long[] {inicio.longValue(), llegada});
+            }
+        }
+    }
+
+    /**
+     * Espera hasta ESPERA_MS los deltas pendientes, los registra y cierra el
+     * socket. Solo cuenta los PUT iniciados despues del calentamiento.
+     *
+     * @param estadisticas estadisticas del usuario virtual.
+     * @param inicio_medicion System.nanoTime() en que termina el calentamiento.
+     * @throws InterruptedException si se interrumpe la espera.
+     */
+    void cerrar(Estadisticas estadisticas, long inicio_medicion) throws InterruptedException {
+        long limite = System.nanoTime() + ESPERA_MS * 1000000L;
+        while (!pendientes.isEmpty() && session.isOpen() && System.nanoTime() < limite) {
+            Thread.sleep(5);
+        }
+        long[] recibido;
+        while ((recibido = recibidos.poll()) != null) {
+            if (recibido[0] >= inicio_medicion) {
+                estadisticas.registrar(DELTA, (recibido[1] - recibido[0]) / 1000, true);
+            }
+        }
+        for (Iterator<Long> it = pendientes.values().iterator(); it.hasNext();) {
+            if (it.next().longValue() >= inicio_medicion) {
+                estadisticas.registrar(DELTA, 0, false);
+            }
+            it.remove();
+        }
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "fin_sesion"));
+        } catch (IOException ex) {
+            // El servidor ya lo cerro.
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package carga;
+
+/**
+ * Parametros de la prueba de carga.
+ *
+ * Se leen igual que en el backend (variable de entorno, luego propiedad
+ * -D, luego valor por defecto) para poder fijarlos desde un script de CI o
+ * desde la linea de comandos.
+ *
+ */
+final class Configuracion {
+    // Datos sinteticos.
+    final int usuarios = (int) numero("CARGA_USUARIOS", "carga.usuarios", 20);
+    final int diagramas_por_usuario = (int) numero("CARGA_DIAGRAMAS", "carga.diagramas", 2);
+    final int elementos_por_diagrama = (int) numero("CARGA_ELEMENTOS", "carga.elementos", 200);
+    final int conexiones_por_diagrama = (int) numero("CARGA_CONEXIONES", "carga.conexiones", 150);
+    final int archivos_por_usuario = (int) numero("CARGA_ARCHIVOS", "carga.archivos", 10);
+    final long semilla = numero("CARGA_SEMILLA", "carga.semilla", 42);
+
+    // Trafico.
+    final int usuarios_virtuales = (int) numero("CARGA_VUS", "carga.vus", 16);
+    final long duracion_ms = numero("CARGA_DURACION_S", "carga.duracion_s", 60) * 1000L;
+    final long calentamiento_ms = numero("CARGA_CALENTAMIENTO_S", "carga.calentamiento_s", 10) * 1000L;
+    final long pausa_ms = numero("CARGA_PAUSA_MS", "carga.pausa_ms", 0);
+    final int arrastres_por_sesion = (int) numero("CARGA_ARRASTRES", "carga.arrastres", 10);
+    final int probabilidad_subida = (int) numero("CARGA_PROB_SUBIDA", "carga.prob_subida", 5);
+    // 0 para no abrir el socket de colaboracion en cada sesion.
+    final boolean colaboracion = numero("CARGA_COLABORACION", "carga.colaboracion", 1) != 0;
+
+    // Entorno.
+    final String webapp = valor("CARGA_WEBAPP", "carga.webapp", "../backend/target/backend-1");
+    final String contexto = valor("CARGA_CONTEXTO", "carga.contexto", "/backend");
+    final String salida_csv = valor("CARGA_CSV", "carga.csv", null);
+
+    /**
+     * @param env_key variable de entorno.
+     * @param prop_key propiedad del sistema.
+     * @param fallback valor por defecto.
+     * @return valor configurado (trim) o el fallback.
+     */
+    static String valor(String env_key, String prop_key, String fallback) {
+        String value = System.getenv(env_key);
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getProperty(prop_key);
+        }
+        if (value == null || value.trim().isEmpty()) {
+            return fallback;
+        }
+        return value.trim();
+    }
+
+    /**
+     * @param env_key variable de entorno.
+     * @param prop_key propiedad del sistema.
+     * @param fallback valor por defecto si falta o no es numerico.
+     * @return valor configurado.
+     */
+    static long numero(String env_key, String prop_key, long fallback) {
+        String value = valor(env_key, prop_key, null);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+
+    /**
+     * @return resumen para el encabezado del reporte.
+     */
+    @Override
+    public String toString() {
+        return "usuarios=" + usuarios + " diagramas/usuario=" + diagramas_por_usuario
+                + " elementos/diagrama=" + elementos_por_diagrama + " conexiones/diagrama=" + conexiones_por_diagrama
+                + " archivos/usuario=" + archivos_por_usuario + " vus=" + usuarios_virtuales
+                + " duracion_s=" + duracion_ms / 1000 + " calentamiento_s=" + calentamiento_ms / 1000
+                + " pausa_ms=" + pausa_ms + " colaboracion=" + colaboracion + " semilla=" + semilla;
+    }
+}
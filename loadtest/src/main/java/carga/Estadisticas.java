@@ -0,0 +1,168 @@
+package carga;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencias por endpoint de la fase medida.
+ *
+ * Cada usuario virtual guarda sus propias muestras (sin compartir estado
+ * entre hilos); al terminar se combinan y se ordenan para obtener
+ * percentiles exactos. Los errores (status &gt;= 400 o excepcion) se cuentan
+ * aparte y no entran en los percentiles.
+ *
+ */
+final class Estadisticas {
+    private final Map<String, Muestras> por_endpoint = new TreeMap<>();
+
+    /**
+     * Latencias en microsegundos de un endpoint.
+     */
+    static final class Muestras {
+        long[] valores = new long[256];
+        int cantidad;
+        long errores;
+
+        /**
+         * @param micros latencia medida.
+         */
+        void agregar(long micros) {
+            if (cantidad == valores.length) {
+                valores = Arrays.copyOf(valores, cantidad * 2);
+            }
+            valores[cantidad++] = micros;
+        }
+
+        /**
+         * @param otras muestras a sumar.
+         */
+        void combinar(Muestras otras) {
+            for (int i = 0; i < otras.cantidad; i++) {
+                agregar(otras.valores[i]);
+            }
+            errores += otras.errores;
+        }
+    }
+
+    /**
+     * @param endpoint etiqueta "METODO /ruta".
+     * @return muestras del endpoint (se crean si faltan).
+     */
+    Muestras de(String endpoint) {
+        Muestras muestras = por_endpoint.get(endpoint);
+        if (muestras == null) {
+            muestras = new Muestras();
+            por_endpoint.put(endpoint, muestras);
+        }
+        return muestras;
+    }
+
+    /**
+     * @param endpoint etiqueta del endpoint.
+     * @param micros latencia en microsegundos.
+     * @param ok false si la respuesta fue un error.
+     */
+    void registrar(String endpoint, long micros, boolean ok) {
+        Muestras muestras = de(endpoint);
+        if (ok) {
+            muestras.agregar(micros);
+        } else {
+            muestras.errores++;
+        }
+    }
+
+    /**
+     * @param otras estadisticas de otro usuario virtual.
+     */
+    void combinar(Estadisticas otras) {
+        for (Map.Entry<String, Muestras> entry : otras.por_endpoint.entrySet()) {
+            de(entry.getKey()).combinar(entry.getValue());
+        }
+    }
+
+    /**
+     * Imprime la tabla de resultados y, si se pide, la escribe como CSV.
+     *
+     * @param out destino de la tabla.
+     * @param segundos duracion de la fase medida.
+     * @param csv ruta del CSV o null.
+     * @throws IOException si falla la escritura del CSV.
+     */
+    void reportar(PrintStream out, double segundos, String csv) throws IOException {
+        List<String[]> filas = new ArrayList<>();
+        long total = 0;
+        long errores = 0;
+        for (Map.Entry<String, Muestras> entry : por_endpoint.entrySet()) {
+            Muestras muestras = entry.getValue();
+            long[] ordenadas = Arrays.copyOf(muestras.valores, muestras.cantidad);
+            Arrays.sort(ordenadas);
+            total += muestras.cantidad;
+            errores += muestras.errores;
+            filas.add(new String[] {
+                entry.getKey(),
+                String.valueOf(muestras.cantidad),
+                String.valueOf(muestras.errores),
+                decimal(muestras.cantidad / segundos),
+                ms(percentil(ordenadas, 50)),
+                ms(percentil(ordenadas, 90)),
+                ms(percentil(ordenadas, 99)),
+                ms(ordenadas.length == 0 ? 0 : ordenadas[ordenadas.length - 1])
+            });
+        }
+        String[] encabezado = {"endpoint", "ok", "errores", "req_s", "p50_ms", "p90_ms", "p99_ms", "max_ms"};
+        out.println(String.format(Locale.ROOT, "%-36s %9s %8s %9s %9s %9s %9s %9s", (Object[]) encabezado));
+        for (String[] fila : filas) {
+            out.println(String.format(Locale.ROOT, "%-36s %9s %8s %9s %9s %9s %9s %9s", (Object[]) fila));
+        }
+        out.println(String.format(Locale.ROOT, "total: %d ok, %d errores, %s req/s en %.1f s", total, errores,
+                decimal(total / segundos), segundos));
+
+        if (csv != null) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(csv), StandardCharsets.UTF_8)) {
+                writer.write(unir(encabezado));
+                for (String[] fila : filas) {
+                    writer.write(unir(fila));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param ordenadas latencias ordenadas.
+     * @param p percentil (0-100).
+     * @return valor por el metodo nearest-rank, o 0 si no hay muestras.
+     */
+    static long percentil(long[] ordenadas, int p) {
+        if (ordenadas.length == 0) {
+            return 0;
+        }
+        int rango = (int) Math.ceil(p / 100.0 * ordenadas.length);
+        return ordenadas[Math.max(0, rango - 1)];
+    }
+
+    private static String ms(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+
+    private static String decimal(double valor) {
+        return String.format(Locale.ROOT, "%.1f", valor);
+    }
+
+    private static String unir(String[] campos) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < campos.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(campos[i]);
+        }
+        return sb.append('\n').toString();
+    }
+}
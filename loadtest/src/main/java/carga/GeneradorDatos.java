@@ -0,0 +1,322 @@
+package carga;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Llena la base con usuarios, diagramas, elementos, conexiones y archivos.
+ *
+ * El esquema lo crea el backend al arrancar en modo embebido. Los ids se
+ * asignan en bloques contiguos a partir de los datos iniciales del script, de
+ * modo que los usuarios virtuales conocen los ids de sus diagramas y
+ * elementos sin consultarlos. Los inserts van en batch con un commit cada
+ * LOTE filas; al final se reinician los AUTO_INCREMENT.
+ *
+ */
+final class GeneradorDatos {
+    static final int ID_ROL_USUARIO = 2;
+    static final String CONTRASENA = "carga";
+
+    private static final int LOTE = 1000;
+    private static final String[] TIPOS_ELEMENTO = {"ACTOR", "CASO_DE_USO", "CASO_DE_USO", "CASO_DE_USO", "NOTA"};
+    private static final String[] TIPOS_CONEXION = {"ASOCIACION", "INCLUSION", "EXTENSION", "GENERALIZACION"};
+
+    private final Configuracion config;
+    private final Random random;
+
+    // Primer id de cada bloque; se calculan al generar.
+    int primer_usuario;
+    int primer_diagrama;
+    int primer_elemento;
+
+    /**
+     * @param config parametros de la prueba.
+     */
+    GeneradorDatos(Configuracion config) {
+        this.config = config;
+        this.random = new Random(config.semilla);
+    }
+
+    /**
+     * Genera todos los datos sinteticos.
+     *
+     * @param con conexion con el esquema ya creado.
+     * @throws SQLException si falla algun insert.
+     */
+    void generar(Connection con) throws SQLException {
+        primer_usuario = siguienteId(con, "usuarios", "id_usuario");
+        primer_diagrama = siguienteId(con, "diagramas_uml", "id_diagrama");
+        primer_elemento = siguienteId(con, "elementos_diagrama", "id_elemento");
+        int primer_conexion = siguienteId(con, "conexiones_diagrama", "id_conexion");
+        int primer_archivo = siguienteId(con, "archivos_multimedia", "id_archivo");
+
+        con.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO roles (id_rol, nombre_rol, descripcion) VALUES (?, 'USUARIO', 'Usuario de carga')")) {
+                ps.setInt(1, ID_ROL_USUARIO);
+                ps.executeUpdate();
+            }
+            usuarios(con);
+            diagramas(con);
+            elementos(con);
+            conexiones(con, primer_conexion);
+            archivos(con, primer_archivo);
+            con.commit();
+        } catch (SQLException ex) {
+            con.rollback();
+            throw ex;
+        } finally {
+            con.setAutoCommit(true);
+        }
+        reiniciarAutoIncrement(con);
+    }
+
+    /**
+     * @param usuario indice 0-based del usuario.
+     * @return nombre de login del usuario.
+     */
+    static String nombreUsuario(int usuario) {
+        return "carga_" + (usuario + 1);
+    }
+
+    /**
+     * @param usuario indice 0-based.
+     * @param diagrama indice 0-based dentro del usuario.
+     * @return id del diagrama.
+     */
+    int idDiagrama(int usuario, int diagrama) {
+        return primer_diagrama + usuario * config.diagramas_por_usuario + diagrama;
+    }
+
+    /**
+     * @param id_diagrama id devuelto por {@link #idDiagrama}.
+     * @return id del primer elemento del diagrama (los demas son contiguos).
+     */
+    int primerElemento(int id_diagrama) {
+        return primer_elemento + (id_diagrama - primer_diagrama) * config.elementos_por_diagrama;
+    }
+
+    /**
+     * Usuarios carga_1..carga_N con rol USUARIO y contrasena {@link #CONTRASENA}.
+     *
+     * @param con conexion en transaccion.
+     * @throws SQLException si falla el batch.
+     */
+    private void usuarios(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO usuarios (id_usuario, nombre_usuario, correo, "
+                + "contrasena, id_rol) VALUES (?,?,?,?,?)")) {
+            for (int i = 0; i < config.usuarios; i++) {
+                ps.setInt(1, primer_usuario + i);
+                ps.setString(2, nombreUsuario(i));
+                ps.setString(3, nombreUsuario(i) + "@carga.local");
+                ps.setString(4, CONTRASENA);
+                ps.setInt(5, ID_ROL_USUARIO);
+                agregar(con, ps, i);
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Diagramas ACTIVO por usuario.
+     *
+     * @param con conexion en transaccion.
+     * @throws SQLException si falla el batch.
+     */
+    private void diagramas(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO diagramas_uml (id_diagrama, id_usuario, "
+                + "nombre, descripcion, estado, ancho_lienzo, alto_lienzo) VALUES (?,?,?,?,'ACTIVO',4000,3000)")) {
+            int n = 0;
+            for (int u = 0; u < config.usuarios; u++) {
+                for (int d = 0; d < config.diagramas_por_usuario; d++) {
+                    ps.setInt(1, idDiagrama(u, d));
+                    ps.setInt(2, primer_usuario + u);
+                    ps.setString(3, "Diagrama " + (d + 1) + " de " + nombreUsuario(u));
+                    ps.setString(4, "Generado para prueba de carga");
+                    agregar(con, ps, n++);
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Elementos con posicion y tamano aleatorios dentro de un lienzo de 4000x3000.
+     *
+     * @param con conexion en transaccion.
+     * @throws SQLException si falla el batch.
+     */
+    private void elementos(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO elementos_diagrama (id_elemento, id_diagrama, "
+                + "tipo_elemento, etiqueta, pos_x, pos_y, ancho, alto, rotacion_grados, orden_z, estilo_json) "
+                + "VALUES (?,?,?,?,?,?,?,?,0.00,?,?)")) {
+            int n = 0;
+            int diagramas = config.usuarios * config.diagramas_por_usuario;
+            for (int d = 0; d < diagramas; d++) {
+                int id_diagrama = primer_diagrama + d;
+                int base = primerElemento(id_diagrama);
+                for (int e = 0; e < config.elementos_por_diagrama; e++) {
+                    ps.setInt(1, base + e);
+                    ps.setInt(2, id_diagrama);
+                    ps.setString(3, TIPOS_ELEMENTO[random.nextInt(TIPOS_ELEMENTO.length)]);
+                    ps.setString(4, "Elemento " + (e + 1));
+                    ps.setInt(5, random.nextInt(3800));
+                    ps.setInt(6, random.nextInt(2900));
+                    ps.setInt(7, 120 + random.nextInt(120));
+                    ps.setInt(8, 60 + random.nextInt(60));
+                    ps.setInt(9, random.nextInt(20));
+                    ps.setString(10, random.nextInt(4) == 0 ? null : "{\"color\":\"#" + Integer.toHexString(
+                            0x100000 + random.nextInt(0xEFFFFF)) + "\"}");
+                    agregar(con, ps, n++);
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Conexiones entre elementos distintos del mismo diagrama.
+     *
+     * @param con conexion en transaccion.
+     * @param primer_conexion primer id libre.
+     * @throws SQLException si falla el batch.
+     */
+    private void conexiones(Connection con, int primer_conexion) throws SQLException {
+        if (config.elementos_por_diagrama < 2) {
+            return;
+        }
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO conexiones_diagrama (id_conexion, id_diagrama, "
+                + "id_elemento_origen, id_elemento_destino, tipo_conexion, etiqueta, puntos_json) "
+                + "VALUES (?,?,?,?,?,?,?)")) {
+            int n = 0;
+            int diagramas = config.usuarios * config.diagramas_por_usuario;
+            for (int d = 0; d < diagramas; d++) {
+                int id_diagrama = primer_diagrama + d;
+                int base = primerElemento(id_diagrama);
+                for (int c = 0; c < config.conexiones_por_diagrama; c++) {
+                    int origen = random.nextInt(config.elementos_por_diagrama);
+                    int destino = (origen + 1 + random.nextInt(config.elementos_por_diagrama - 1))
+                            % config.elementos_por_diagrama;
+                    ps.setInt(1, primer_conexion + n);
+                    ps.setInt(2, id_diagrama);
+                    ps.setInt(3, base + origen);
+                    ps.setInt(4, base + destino);
+                    String tipo = TIPOS_CONEXION[random.nextInt(TIPOS_CONEXION.length)];
+                    ps.setString(5, tipo);
+                    ps.setString(6, "INCLUSION".equals(tipo) ? "<<include>>" : null);
+                    ps.setString(7, random.nextInt(3) == 0 ? "[{\"x\":" + random.nextInt(3800) + ",\"y\":"
+                            + random.nextInt(2900) + "}]" : null);
+                    agregar(con, ps, n++);
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Imagenes por usuario con su blob (referencias = 1). Solo se crean las
+     * filas: el contenido fisico no existe, por lo que no se piden por /api/media.
+     *
+     * @param con conexion en transaccion.
+     * @param primer_archivo primer id libre.
+     * @throws SQLException si falla el batch.
+     */
+    private void archivos(Connection con, int primer_archivo) throws SQLException {
+        try (PreparedStatement archivo = con.prepareStatement("INSERT INTO archivos_multimedia (id_archivo, "
+                + "id_usuario, tipo_media, titulo, tamano_bytes, ancho, alto, ruta_archivo) "
+                + "VALUES (?,?,'IMAGEN',?,?,?,?,?)");
+             PreparedStatement blob = con.prepareStatement("INSERT INTO blobs_multimedia (sha256, extension, "
+                + "ruta_archivo, tamano_bytes, referencias) VALUES (?,'jpg',?,?,1)")) {
+            int n = 0;
+            for (int u = 0; u < config.usuarios; u++) {
+                for (int a = 0; a < config.archivos_por_usuario; a++) {
+                    String sha = String.format("%064x", Long.valueOf(primer_archivo + n));
+                    String ruta = "uploads/" + sha.substring(0, 2) + "/" + sha.substring(2, 4) + "/" + sha + ".jpg";
+                    long tamano = 20000 + random.nextInt(2000000);
+                    archivo.setInt(1, primer_archivo + n);
+                    archivo.setInt(2, primer_usuario + u);
+                    archivo.setString(3, "Imagen " + (a + 1));
+                    archivo.setLong(4, tamano);
+                    archivo.setInt(5, 640 + random.nextInt(1280));
+                    archivo.setInt(6, 480 + random.nextInt(720));
+                    archivo.setString(7, ruta);
+                    archivo.addBatch();
+                    blob.setString(1, sha);
+                    blob.setString(2, ruta);
+                    blob.setLong(3, tamano);
+                    blob.addBatch();
+                    n++;
+                    if (n % LOTE == 0) {
+                        archivo.executeBatch();
+                        blob.executeBatch();
+                        con.commit();
+                    }
+                }
+            }
+            archivo.executeBatch();
+            blob.executeBatch();
+        }
+    }
+
+    /**
+     * Agrega la fila al batch y lo envia cada LOTE filas.
+     *
+     * @param con conexion (se hace commit del lote).
+     * @param ps sentencia con parametros asignados.
+     * @param n filas agregadas antes de esta.
+     * @throws SQLException si falla el batch.
+     */
+    private static void agregar(Connection con, PreparedStatement ps, int n) throws SQLException {
+        ps.addBatch();
+        if ((n + 1) % LOTE == 0) {
+            ps.executeBatch();
+            con.commit();
+        }
+    }
+
+    /**
+     * @param con conexion.
+     * @param tabla tabla.
+     * @param columna llave primaria.
+     * @return MAX(columna) + 1.
+     * @throws SQLException si falla la consulta.
+     */
+    private static int siguienteId(Connection con, String tabla, String columna) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT COALESCE(MAX(" + columna + "), 0) + 1 FROM " + tabla);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 1;
+        }
+    }
+
+    /**
+     * H2 no siempre avanza la identidad al insertar ids explicitos (MySQL si):
+     * se reinicia cada AUTO_INCREMENT despues del mayor id para que las altas
+     * del backend no choquen con los datos generados.
+     *
+     * @param con conexion a H2.
+     * @throws SQLException si falla la consulta de metadatos o el ALTER.
+     */
+    private static void reiniciarAutoIncrement(Connection con) throws SQLException {
+        List<String[]> identidades = new ArrayList<>();
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT table_name, column_name FROM information_schema.columns "
+                     + "WHERE table_schema = SCHEMA() AND is_identity = 'YES'")) {
+            while (rs.next()) {
+                identidades.add(new String[] {rs.getString(1), rs.getString(2)});
+            }
+        }
+        try (Statement st = con.createStatement()) {
+            for (String[] identidad : identidades) {
+                st.execute("ALTER TABLE " + identidad[0] + " ALTER COLUMN " + identidad[1] + " RESTART WITH "
+                        + siguienteId(con, identidad[0], identidad[1]));
+            }
+        }
+    }
+}
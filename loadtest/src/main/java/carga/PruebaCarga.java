@@ -0,0 +1,206 @@
+package carga;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.util.Properties;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * Prueba de carga de extremo a extremo, sin servicios externos.
+ *
+ * Levanta el WAR real del backend (exploded, en backend/target/backend-1,
+ * empaquetado con el perfil embebida) dentro de un Tomcat embebido en modo
+ * de base embebida (H2 en memoria, modo MySQL; el backend crea el esquema
+ * al arrancar), genera datos
+ * sinteticos con {@link GeneradorDatos} y lanza N usuarios virtuales que
+ * repiten sesiones de editor, incluido el socket de colaboracion
+ * (tomcat-embed-websocket despliega DiagramaSocket y aporta el cliente). Al
+ * final imprime throughput y percentiles por endpoint.
+ *
+ * Flujo:
+ * 1) Configura el backend por propiedades del sistema (db.url, storage.dir).
+ * 2) Inicia Tomcat en un puerto libre con el WAR (crea el esquema).
+ * 3) Genera los datos sinteticos por JDBC sobre la misma base (driver del WAR).
+ * 4) Ejecuta calentamiento + fase medida con los usuarios virtuales.
+ * 5) Combina estadisticas, imprime el reporte y detiene Tomcat.
+ *
+ *
+ */
+public final class PruebaCarga {
+    static final String URL_H2 = "jdbc:h2:mem:casos;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+            + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+    static final String USUARIO_H2 = "carga";
+    static final String CONTRASENA_H2 = "carga";
+
+    // Imagenes distintas que se suben; al repetirse tambien se ejercita la deduplicacion.
+    private static final int IMAGENES = 16;
+
+    /**
+     * Constructor privado para evitar instanciacion.
+     */
+    private PruebaCarga() {
+    }
+
+    /**
+     * @param args sin uso; la configuracion se lee de entorno y -D (ver {@link Configuracion}).
+     * @throws Exception si falla la preparacion o algun usuario virtual.
+     */
+    public static void main(String[] args) throws Exception {
+        Configuracion config = new Configuracion();
+        File webapp = new File(config.webapp).getAbsoluteFile();
+        if (!new File(webapp, "WEB-INF").isDirectory() || !incluyeH2(webapp)) {
+            System.err.println("No existe el WAR exploded con H2 en " + webapp
+                    + "; ejecute primero: mvn -f backend/pom.xml -P embebida package");
+            System.exit(2);
+        }
+        System.out.println("config: " + config);
+
+        Path base = Files.createTempDirectory("casos-carga");
+        configurarBackend(config, base);
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(base.resolve("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        Context contexto = tomcat.addWebapp(config.contexto, webapp.getPath());
+        // Al iniciar, el backend crea el esquema en la base embebida.
+        tomcat.start();
+        try (Connection con = conectar(contexto)) {
+            long inicio = System.nanoTime();
+            GeneradorDatos datos = new GeneradorDatos(config);
+            datos.generar(con);
+            System.out.println("datos generados en " + (System.nanoTime() - inicio) / 1000000 + " ms");
+
+            String base_url = "http://127.0.0.1:" + tomcat.getConnector().getLocalPort() + config.contexto;
+            System.out.println("backend en " + base_url);
+            Estadisticas total = ejecutar(config, datos, base_url);
+            total.reportar(System.out, config.duracion_ms / 1000.0, config.salida_csv);
+        } finally {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    /**
+     * Abre una conexion a la base del backend con el driver H2 del propio WAR:
+     * cada copia de H2 tiene sus propias bases en memoria, asi que con otra
+     * copia (la del harness) jdbc:h2:mem:casos seria una base vacia distinta.
+     *
+     * @param contexto contexto del backend ya iniciado.
+     * @return conexion a la base embebida del backend.
+     * @throws Exception si el WAR no incluye H2 o falla la conexion.
+     */
+    private static Connection conectar(Context contexto) throws Exception {
+        Driver driver = (Driver) Class.forName("org.h2.Driver", true, contexto.getLoader().getClassLoader())
+                .newInstance();
+        Properties credenciales = new Properties();
+        credenciales.setProperty("user", USUARIO_H2);
+        credenciales.setProperty("password", CONTRASENA_H2);
+        return driver.connect(URL_H2, credenciales);
+    }
+
+    /**
+     * @param webapp WAR exploded del backend.
+     * @return true si WEB-INF/lib incluye el driver H2 (perfil embebida).
+     */
+    private static boolean incluyeH2(File webapp) {
+        File[] jars = new File(webapp, "WEB-INF/lib").listFiles();
+        if (jars != null) {
+            for (File jar : jars) {
+                if (jar.getName().startsWith("h2-")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * El backend lee su configuracion de entorno o propiedades del sistema;
+     * como corre en la misma JVM basta con fijar las propiedades antes de
+     * iniciar Tomcat.
+     *
+     * @param config parametros de la prueba.
+     * @param base directorio temporal de la corrida.
+     */
+    private static void configurarBackend(Configuracion config, Path base) {
+        System.setProperty("db.url", URL_H2);
+        System.setProperty("db.user", USUARIO_H2);
+        System.setProperty("db.pass", CONTRASENA_H2);
+        System.setProperty("db.pool.max", String.valueOf(Math.max(20, config.usuarios_virtuales)));
+        System.setProperty("storage.dir", base.resolve("storage").toString());
+        // Evita que el reconciliador de huerfanos corra durante la medicion.
+        System.setProperty("huerfanos.intervalo_ms", String.valueOf(24L * 3600 * 1000));
+        // Un socket keep-alive por usuario virtual.
+        System.setProperty("http.maxConnections", String.valueOf(config.usuarios_virtuales));
+    }
+
+    /**
+     * Lanza los usuarios virtuales, espera a que terminen y combina sus
+     * estadisticas.
+     *
+     * @param config parametros de la prueba.
+     * @param datos ids de los datos generados.
+     * @param base_url URL del contexto.
+     * @return estadisticas de la fase medida.
+     * @throws Exception si un usuario virtual fallo antes de terminar.
+     */
+    private static Estadisticas ejecutar(Configuracion config, GeneradorDatos datos, String base_url)
+            throws Exception {
+        byte[][] imagenes = imagenes(config.semilla);
+        long ahora = System.nanoTime();
+        long inicio_medicion = ahora + config.calentamiento_ms * 1000000L;
+        long fin = inicio_medicion + config.duracion_ms * 1000000L;
+
+        UsuarioVirtual[] usuarios = new UsuarioVirtual[config.usuarios_virtuales];
+        Thread[] hilos = new Thread[usuarios.length];
+        for (int i = 0; i < usuarios.length; i++) {
+            usuarios[i] = new UsuarioVirtual(i, config, datos, base_url, imagenes, inicio_medicion, fin);
+            hilos[i] = new Thread(usuarios[i], "carga-vu-" + i);
+            hilos[i].start();
+        }
+        Estadisticas total = new Estadisticas();
+        Exception fallo = null;
+        for (int i = 0; i < usuarios.length; i++) {
+            hilos[i].join();
+            total.combinar(usuarios[i].estadisticas);
+            if (usuarios[i].fallo != null && fallo == null) {
+                fallo = usuarios[i].fallo;
+            }
+        }
+        if (fallo != null) {
+            throw fallo;
+        }
+        return total;
+    }
+
+    /**
+     * @param semilla semilla del generador.
+     * @return JPEG pequenos con ruido para que cada uno tenga hash distinto.
+     * @throws IOException si ImageIO no puede codificar JPEG.
+     */
+    private static byte[][] imagenes(long semilla) throws IOException {
+        Random random = new Random(semilla);
+        byte[][] imagenes = new byte[IMAGENES][];
+        for (int i = 0; i < IMAGENES; i++) {
+            BufferedImage imagen = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < imagen.getHeight(); y++) {
+                for (int x = 0; x < imagen.getWidth(); x++) {
+                    imagen.setRGB(x, y, random.nextInt(0x1000000));
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(imagen, "jpg", out);
+            imagenes[i] = out.toByteArray();
+        }
+        return imagenes;
+    }
+}
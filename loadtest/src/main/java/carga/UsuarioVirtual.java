@@ -0,0 +1,310 @@
+package carga;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.websocket.DeploymentException;
+
+/**
+ * Usuario virtual que repite sesiones de editor contra el backend.
+ *
+ * Cada sesion abre el socket de colaboracion ({@link Colaboracion}) de un
+ * diagrama propio y luego su snapshot, arrastra varios elementos (PUT de
+ * geometria, cuyo delta se espera por el socket), crea una conexion, revisa
+ * su lista de archivos y, con la probabilidad configurada, sube una imagen y
+ * la descarga por /api/media. Mantiene su propia cookie de sesion y sus
+ * propias estadisticas; solo registra lo que ocurre despues del
+ * calentamiento.
+ *
+ */
+final class UsuarioVirtual implements Runnable {
+    private static final Pattern ID_ARCHIVO = Pattern.compile("\"id_archivo\"\\s*:\\s*(\\d+)");
+
+    final Estadisticas estadisticas = new Estadisticas();
+    Exception fallo;
+
+    private final int indice;
+    private final Configuracion config;
+    private final GeneradorDatos datos;
+    private final String base_url;
+    private final byte[][] imagenes;
+    private final long inicio_medicion_nanos;
+    private final long fin_nanos;
+    private final Random random;
+    private String cookie;
+
+    /**
+     * @param indice numero del usuario virtual (define el usuario de BD).
+     * @param config parametros de la prueba.
+     * @param datos ids de los datos generados.
+     * @param base_url http://host:puerto/contexto.
+     * @param imagenes JPEG a subir.
+     * @param inicio_medicion_nanos System.nanoTime() en que termina el calentamiento.
+     * @param fin_nanos System.nanoTime() en que termina la prueba.
+     */
+    UsuarioVirtual(int indice, Configuracion config, GeneradorDatos datos, String base_url, byte[][] imagenes,
+            long inicio_medicion_nanos, long fin_nanos) {
+        this.indice = indice;
+        this.config = config;
+        this.datos = datos;
+        this.base_url = base_url;
+        this.imagenes = imagenes;
+        this.inicio_medicion_nanos = inicio_medicion_nanos;
+        this.fin_nanos = fin_nanos;
+        this.random = new Random(config.semilla + indice);
+    }
+
+    /**
+     * Inicia sesion y repite sesiones de editor hasta el fin de la prueba.
+     */
+    @Override
+    public void run() {
+        try {
+            int usuario = indice % config.usuarios;
+            String login = "{\"nombre_usuario\":\"" + GeneradorDatos.nombreUsuario(usuario) + "\",\"contrasena\":\""
+                    + GeneradorDatos.CONTRASENA + "\"}";
+            Respuesta respuesta = enviar("POST /api/auth/login", "POST", "/api/auth/login", json(), bytes(login));
+            if (cookie == null) {
+                throw new IllegalStateException("login_fallido: " + respuesta.status + " " + respuesta.cuerpo);
+            }
+            while (System.nanoTime() < fin_nanos) {
+                sesion(usuario);
+            }
+        } catch (Exception ex) {
+            fallo = ex;
+        }
+    }
+
+    /**
+     * Una sesion de editor sobre un diagrama del usuario.
+     *
+     * @param usuario indice 0-based del usuario de BD.
+     * @throws IOException si falla la conexion HTTP.
+     * @throws InterruptedException si se interrumpe la pausa.
+     */
+    private void sesion(int usuario) throws IOException, InterruptedException {
+        int id_diagrama = datos.idDiagrama(usuario, random.nextInt(config.diagramas_por_usuario));
+        int primer_elemento = datos.primerElemento(id_diagrama);
+        int elementos = config.elementos_por_diagrama;
+
+        // Socket antes del snapshot: los cambios posteriores a la carga llegan por el canal.
+        Colaboracion socket = config.colaboracion ? abrirSocket(id_diagrama) : null;
+        try {
+            enviar("GET /api/diagramas/snapshot", "GET", "/api/diagramas/snapshot?id_diagrama=" + id_diagrama,
+                    null, null);
+            pausa();
+            if (elementos > 0) {
+                for (int i = 0; i < config.arrastres_por_sesion; i++) {
+                    int id_elemento = primer_elemento + random.nextInt(elementos);
+                    String cuerpo = "{\"id_elemento\":" + id_elemento + ",\"pos_x\":" + random.nextInt(3800)
+                            + ",\"pos_y\":" + random.nextInt(2900) + "}";
+                    if (socket != null) {
+                        socket.esperar(id_elemento, System.nanoTime());
+                    }
+                    Respuesta respuesta = enviar("PUT /api/elementos/geometria", "PUT", "/api/elementos/geometria",
+                            json(), bytes(cuerpo));
+                    if (socket != null && respuesta.status >= 400) {
+                        socket.descartar(id_elemento);
+                    }
+                    pausa();
+                }
+            }
+        } finally {
+            if (socket != null) {
+                socket.cerrar(estadisticas, inicio_medicion_nanos);
+            }
+        }
+        if (elementos > 1) {
+            int origen = random.nextInt(elementos);
+            int destino = (origen + 1 + random.nextInt(elementos - 1)) % elementos;
+            String cuerpo = "{\"id_diagrama\":" + id_diagrama + ",\"id_elemento_origen\":" + (primer_elemento + origen)
+                    + ",\"id_elemento_destino\":" + (primer_elemento + destino) + ",\"tipo_conexion\":\"ASOCIACION\"}";
+            enviar("POST /api/conexiones", "POST", "/api/conexiones", json(), bytes(cuerpo));
+            pausa();
+        }
+        enviar("GET /api/archivos", "GET", "/api/archivos?limit=50", null, null);
+        pausa();
+        if (random.nextInt(100) < config.probabilidad_subida) {
+            subir();
+        }
+    }
+
+    /**
+     * Abre el socket de colaboracion del diagrama con la cookie de la sesion.
+     *
+     * @param id_diagrama diagrama abierto en el editor.
+     * @return socket abierto o null si el handshake fallo (cuenta como error).
+     */
+    private Colaboracion abrirSocket(int id_diagrama) {
+        long inicio = System.nanoTime();
+        String url = "ws" + base_url.substring("http".length()) + "/ws/diagramas/" + id_diagrama
+                + "?cliente=carga-vu-" + indice;
+        try {
+            Colaboracion socket = Colaboracion.abrir(url, cookie);
+            registrar(Colaboracion.SOCKET, inicio, true);
+            return socket;
+        } catch (DeploymentException | IOException ex) {
+            registrar(Colaboracion.SOCKET, inicio, false);
+            return null;
+        }
+    }
+
+    /**
+     * Sube una imagen por multipart y la descarga.
+     *
+     * @throws IOException si falla la conexion HTTP.
+     * @throws InterruptedException si se interrumpe la pausa.
+     */
+    private void subir() throws IOException, InterruptedException {
+        String limite = "----carga" + Long.toHexString(random.nextLong());
+        ByteArrayOutputStream cuerpo = new ByteArrayOutputStream();
+        campo(cuerpo, limite, "tipo_media", "IMAGEN");
+        campo(cuerpo, limite, "titulo", "Subida de carga");
+        cuerpo.write(bytes("--" + limite + "\r\nContent-Disposition: form-data; name=\"archivo\"; "
+                + "filename=\"carga.jpg\"\r\nContent-Type: image/jpeg\r\n\r\n"));
+        cuerpo.write(imagenes[random.nextInt(imagenes.length)]);
+        cuerpo.write(bytes("\r\n--" + limite + "--\r\n"));
+        Respuesta respuesta = enviar("POST /api/archivos", "POST", "/api/archivos",
+                "multipart/form-data; boundary=" + limite, cuerpo.toByteArray());
+        pausa();
+        Matcher id = ID_ARCHIVO.matcher(respuesta.cuerpo);
+        if (respuesta.status < 400 && id.find()) {
+            enviar("GET /api/media", "GET", "/api/media?id_archivo=" + id.group(1), null, null);
+            pausa();
+        }
+    }
+
+    /**
+     * Respuesta HTTP leida por completo.
+     */
+    static final class Respuesta {
+        final int status;
+        final String cuerpo;
+
+        Respuesta(int status, String cuerpo) {
+            this.status = status;
+            this.cuerpo = cuerpo;
+        }
+    }
+
+    /**
+     * Ejecuta un request, lee la respuesta completa (para reusar la conexion
+     * keep-alive) y registra la latencia si ya paso el calentamiento.
+     *
+     * @param endpoint etiqueta para las estadisticas.
+     * @param metodo metodo HTTP.
+     * @param ruta ruta con query string, relativa al contexto.
+     * @param tipo Content-Type del cuerpo o null.
+     * @param cuerpo cuerpo o null.
+     * @return status y cuerpo (el de las imagenes no se conserva).
+     * @throws IOException si falla la conexion.
+     */
+    private Respuesta enviar(String endpoint, String metodo, String ruta, String tipo, byte[] cuerpo)
+            throws IOException {
+        long inicio = System.nanoTime();
+        int status = -1;
+        String texto = "";
+        try {
+            HttpURLConnection http = (HttpURLConnection) new URL(base_url + ruta).openConnection();
+            http.setRequestMethod(metodo);
+            http.setConnectTimeout(10000);
+            http.setReadTimeout(60000);
+            if (cookie != null) {
+                http.setRequestProperty("Cookie", cookie);
+            }
+            if (cuerpo != null) {
+                http.setDoOutput(true);
+                http.setRequestProperty("Content-Type", tipo);
+                http.setFixedLengthStreamingMode(cuerpo.length);
+                try (OutputStream out = http.getOutputStream()) {
+                    out.write(cuerpo);
+                }
+            }
+            status = http.getResponseCode();
+            // Sesion del contenedor o, con AUTH_MODO=token, la cookie del token.
+            String set_cookie = http.getHeaderField("Set-Cookie");
+            if (set_cookie != null && (set_cookie.startsWith("JSESSIONID=") || set_cookie.startsWith("auth_token="))) {
+                cookie = set_cookie.split(";", 2)[0];
+            }
+            InputStream in = status >= 400 ? http.getErrorStream() : http.getInputStream();
+            if (in != null) {
+                try (InputStream stream = in) {
+                    texto = leer(stream, !endpoint.startsWith("GET /api/media"));
+                }
+            }
+        } catch (IOException ex) {
+            registrar(endpoint, inicio, false);
+            throw ex;
+        }
+        registrar(endpoint, inicio, status < 400);
+        return new Respuesta(status, texto);
+    }
+
+    /**
+     * @param endpoint etiqueta.
+     * @param inicio System.nanoTime() al iniciar el request.
+     * @param ok false si fue error.
+     */
+    private void registrar(String endpoint, long inicio, boolean ok) {
+        if (inicio >= inicio_medicion_nanos) {
+            estadisticas.registrar(endpoint, (System.nanoTime() - inicio) / 1000, ok);
+        }
+    }
+
+    /**
+     * @param in stream de respuesta.
+     * @param conservar false para solo consumir los bytes.
+     * @return cuerpo como texto (vacio si no se conserva).
+     * @throws IOException si falla la lectura.
+     */
+    private static String leer(InputStream in, boolean conservar) throws IOException {
+        byte[] buffer = new byte[16384];
+        ByteArrayOutputStream out = conservar ? new ByteArrayOutputStream() : null;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            if (out != null) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out == null ? "" : new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param out cuerpo multipart.
+     * @param limite boundary.
+     * @param nombre nombre del campo.
+     * @param valor valor del campo.
+     * @throws IOException no ocurre con ByteArrayOutputStream.
+     */
+    private static void campo(ByteArrayOutputStream out, String limite, String nombre, String valor)
+            throws IOException {
+        out.write(bytes("--" + limite + "\r\nContent-Disposition: form-data; name=\"" + nombre + "\"\r\n\r\n"
+                + valor + "\r\n"));
+    }
+
+    /**
+     * Espera el tiempo de pensamiento configurado (0 = sin pausa).
+     *
+     * @throws InterruptedException si se interrumpe el hilo.
+     */
+    private void pausa() throws InterruptedException {
+        if (config.pausa_ms > 0) {
+            Thread.sleep(config.pausa_ms);
+        }
+    }
+
+    private static String json() {
+        return "application/json; charset=UTF-8";
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+}